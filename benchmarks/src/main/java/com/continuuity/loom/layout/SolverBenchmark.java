@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.layout;
+
+import com.continuuity.loom.cluster.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the layout solver, over templates generated by {@link SolverInput}. Each stage of solving is also
+ * measured on its own, so that a change in the time to solve can be traced back to the stage it comes from.
+ * Allocation rates can be measured by running with the gc profiler, and parameters can be overridden to try inputs
+ * that take too long to be part of a default run, for example:
+ * <pre>
+ *   java -jar benchmarks/target/benchmarks.jar SolverBenchmark -prof gc -p numServices=20
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverBenchmark {
+
+  @Param({"5", "10", "15"})
+  public int numServices;
+
+  @Param({"0", "0.1"})
+  public double mustCoexistDensity;
+
+  @Param({"0", "0.1", "0.3"})
+  public double cantCoexistDensity;
+
+  @Param({"1", "3"})
+  public int numHardwareTypes;
+
+  @Param({"1", "3"})
+  public int numImageTypes;
+
+  @Param({"10", "100", "1000", "5000"})
+  public int clusterSize;
+
+  private SolverInput input;
+  private List<NodeLayout> nodeLayoutPreferences;
+
+  @Setup
+  public void setup() {
+    input = new SolverInput(numServices, mustCoexistDensity, cantCoexistDensity, numHardwareTypes, numImageTypes);
+    nodeLayoutPreferences = newNodeLayoutGenerator().generateNodeLayoutPreferences();
+  }
+
+  @Benchmark
+  public Map<String, Node> solveConstraints() {
+    return Solver.solveConstraints("00000001", input.template, "benchmark", clusterSize, input.hardwareTypeMap,
+                                   input.imageTypeMap, input.serviceNames, input.serviceMap, null);
+  }
+
+  @Benchmark
+  public List<NodeLayout> generateNodeLayoutPreferences() {
+    return newNodeLayoutGenerator().generateNodeLayoutPreferences();
+  }
+
+  @Benchmark
+  public int[] findValidNodeCounts() {
+    return new ClusterLayoutFinder(nodeLayoutPreferences, input.template, input.serviceNames, clusterSize)
+      .findValidNodeCounts();
+  }
+
+  private NodeLayoutGenerator newNodeLayoutGenerator() {
+    return new NodeLayoutGenerator(input.template, input.serviceNames,
+                                   input.hardwareTypeMap.keySet(), input.imageTypeMap.keySet());
+  }
+}
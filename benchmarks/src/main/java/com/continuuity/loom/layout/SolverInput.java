@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.layout;
+
+import com.continuuity.loom.admin.ClusterDefaults;
+import com.continuuity.loom.admin.ClusterTemplate;
+import com.continuuity.loom.admin.Compatibilities;
+import com.continuuity.loom.admin.Constraints;
+import com.continuuity.loom.admin.LayoutConstraint;
+import com.continuuity.loom.admin.ProvisionerAction;
+import com.continuuity.loom.admin.Service;
+import com.continuuity.loom.admin.ServiceAction;
+import com.continuuity.loom.admin.ServiceConstraint;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generated input for the layout solver. Every service gets its own name, and every pair of services is made to
+ * either not coexist, coexist, or neither, at random, with the given densities as probabilities. Pairs that must
+ * coexist are only picked among pairs that are allowed to coexist, so that constraints do not trivially contradict
+ * each other. Every fifth service can only be placed once in the cluster, like master services usually are. Inputs
+ * are generated from a fixed seed, so the same parameters always give the same input.
+ */
+final class SolverInput {
+  private static final long SEED = 0x5eedL;
+
+  final ClusterTemplate template;
+  final Set<String> serviceNames;
+  final Map<String, Service> serviceMap;
+  final Map<String, String> hardwareTypeMap;
+  final Map<String, String> imageTypeMap;
+
+  SolverInput(int numServices, double mustCoexistDensity, double cantCoexistDensity,
+              int numHardwareTypes, int numImageTypes) {
+    Random random = new Random(SEED);
+
+    this.serviceNames = Sets.newLinkedHashSet();
+    this.serviceMap = Maps.newHashMap();
+    Map<String, ServiceConstraint> serviceConstraints = Maps.newHashMap();
+    for (int i = 0; i < numServices; i++) {
+      String name = "service" + i;
+      serviceNames.add(name);
+      serviceMap.put(name, new Service(name, name, ImmutableSet.<String>of(),
+                                       ImmutableMap.<ProvisionerAction, ServiceAction>of()));
+      if (i % 5 == 0) {
+        serviceConstraints.put(name, new ServiceConstraint(null, null, 1, 1, null, null));
+      }
+    }
+
+    Set<Set<String>> mustCoexist = Sets.newHashSet();
+    Set<Set<String>> cantCoexist = Sets.newHashSet();
+    List<String> names = Lists.newArrayList(serviceNames);
+    for (int i = 0; i < names.size(); i++) {
+      for (int j = i + 1; j < names.size(); j++) {
+        Set<String> pair = ImmutableSet.of(names.get(i), names.get(j));
+        if (random.nextDouble() < cantCoexistDensity) {
+          cantCoexist.add(pair);
+        } else if (random.nextDouble() < mustCoexistDensity) {
+          mustCoexist.add(pair);
+        }
+      }
+    }
+
+    this.hardwareTypeMap = Maps.newHashMap();
+    for (int i = 0; i < numHardwareTypes; i++) {
+      hardwareTypeMap.put("hardware" + i, "flavor" + i);
+    }
+    this.imageTypeMap = Maps.newHashMap();
+    for (int i = 0; i < numImageTypes; i++) {
+      imageTypeMap.put("image" + i, "image" + i);
+    }
+
+    this.template = new ClusterTemplate(
+      "benchmark", "generated template",
+      new ClusterDefaults(serviceNames, "provider", null, null, null, null),
+      new Compatibilities(hardwareTypeMap.keySet(), imageTypeMap.keySet(), serviceNames),
+      new Constraints(serviceConstraints, new LayoutConstraint(mustCoexist, cantCoexist)),
+      null
+    );
+  }
+}
@@ -24,6 +24,9 @@ CREATE TABLE IF NOT EXISTS clusters (
     create_time TIMESTAMP DEFAULT '0000-00-00 00:00:00',
     expire_time TIMESTAMP NULL,
     status VARCHAR(32),
+    template_name VARCHAR(255),
+    num_nodes INT,
+    latest_job_num BIGINT,
     cluster MEDIUMBLOB,
     PRIMARY KEY (id),
     INDEX cluster_user_index (owner_id, id),
@@ -66,6 +69,15 @@ CREATE TABLE IF NOT EXISTS nodes (
     INDEX cluster_node_index (cluster_id, id)
 ) ENGINE = InnoDB;
 
+CREATE TABLE IF NOT EXISTS task_configs (
+    id VARCHAR(64),
+    job_num BIGINT,
+    cluster_id BIGINT,
+    config MEDIUMBLOB,
+    PRIMARY KEY (id, job_num, cluster_id),
+    FOREIGN KEY (job_num, cluster_id) REFERENCES jobs(job_num, cluster_id)
+) ENGINE = InnoDB;
+
 CREATE TABLE IF NOT EXISTS providerTypes (
     name VARCHAR(255),
     tenant_id VARCHAR(255),
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.cluster;
+
+import com.continuuity.loom.account.Account;
+import com.continuuity.loom.scheduler.task.ClusterJob;
+import com.google.common.base.Objects;
+
+import javax.annotation.Nullable;
+
+/**
+ * Summary of a {@link Cluster}, made up of the fields of a cluster that are stored in their own columns plus the
+ * status of its latest job, so that clusters can be listed without reading and deserializing the full clusters.
+ */
+public final class ClusterSummary {
+  private final String id;
+  private final Account account;
+  private final String name;
+  private final long createTime;
+  private final long expireTime;
+  private final Cluster.Status status;
+  private final String templateName;
+  private final int numNodes;
+  private final String latestJobId;
+  private final ClusterJob.Status latestJobStatus;
+
+  public ClusterSummary(String id, Account account, String name, long createTime, long expireTime,
+                        Cluster.Status status, @Nullable String templateName, int numNodes,
+                        @Nullable String latestJobId, @Nullable ClusterJob.Status latestJobStatus) {
+    this.id = id;
+    this.account = account;
+    this.name = name;
+    this.createTime = createTime;
+    this.expireTime = expireTime;
+    this.status = status;
+    this.templateName = templateName;
+    this.numNodes = numNodes;
+    this.latestJobId = latestJobId;
+    this.latestJobStatus = latestJobStatus;
+  }
+
+  /**
+   * Get the id of the cluster.
+   *
+   * @return Id of the cluster.
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Get the account of the owner of the cluster.
+   *
+   * @return Account of the owner of the cluster.
+   */
+  public Account getAccount() {
+    return account;
+  }
+
+  /**
+   * Get the name of the cluster.
+   *
+   * @return Name of the cluster.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Get the timestamp in milliseconds of when the cluster was created.
+   *
+   * @return Timestamp in milliseconds of when the cluster was created.
+   */
+  public long getCreateTime() {
+    return createTime;
+  }
+
+  /**
+   * Get the timestamp in milliseconds of when the cluster will expire.
+   *
+   * @return Timestamp in milliseconds of when the cluster will expire, with 0 meaning never.
+   */
+  public long getExpireTime() {
+    return expireTime;
+  }
+
+  /**
+   * Get the {@link Cluster.Status} of the cluster.
+   *
+   * @return Status of the cluster.
+   */
+  public Cluster.Status getStatus() {
+    return status;
+  }
+
+  /**
+   * Get the name of the cluster template used with the cluster.
+   *
+   * @return Name of the cluster template used with the cluster, or null if it is not known.
+   */
+  public String getTemplateName() {
+    return templateName;
+  }
+
+  /**
+   * Get the number of nodes in the cluster.
+   *
+   * @return Number of nodes in the cluster.
+   */
+  public int getNumNodes() {
+    return numNodes;
+  }
+
+  /**
+   * Get the id of the most recent job performed, or being performed, on the cluster.
+   *
+   * @return Id of the most recent job on the cluster, or null if the cluster has no jobs.
+   */
+  public String getLatestJobId() {
+    return latestJobId;
+  }
+
+  /**
+   * Get the status of the most recent job performed, or being performed, on the cluster.
+   *
+   * @return Status of the most recent job on the cluster, or null if the cluster has no jobs.
+   */
+  public ClusterJob.Status getLatestJobStatus() {
+    return latestJobStatus;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ClusterSummary)) {
+      return false;
+    }
+    ClusterSummary other = (ClusterSummary) o;
+    return Objects.equal(id, other.id) &&
+      Objects.equal(account, other.account) &&
+      Objects.equal(name, other.name) &&
+      createTime == other.createTime &&
+      expireTime == other.expireTime &&
+      Objects.equal(status, other.status) &&
+      Objects.equal(templateName, other.templateName) &&
+      numNodes == other.numNodes &&
+      Objects.equal(latestJobId, other.latestJobId) &&
+      Objects.equal(latestJobStatus, other.latestJobStatus);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(id, account, name, createTime, expireTime, status, templateName, numNodes,
+                            latestJobId, latestJobStatus);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("id", id)
+      .add("account", account)
+      .add("name", name)
+      .add("createTime", createTime)
+      .add("expireTime", expireTime)
+      .add("status", status)
+      .add("templateName", templateName)
+      .add("numNodes", numNodes)
+      .add("latestJobId", latestJobId)
+      .add("latestJobStatus", latestJobStatus)
+      .toString();
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.codec.store;
+
+import com.continuuity.loom.codec.json.JsonSerde;
+import com.google.common.base.Charsets;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Type;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Format that writes objects as json, compressed with deflate. Json is streamed straight through the compressor,
+ * without building the whole json string first. Cluster tasks and nodes repeat the same keys and values over and over,
+ * so they compress to a fraction of their json size, and the fastest compression level is used since objects are
+ * written about as often as they are read.
+ */
+public class DeflatedJsonFormat implements StoreFormat {
+  public static final byte VERSION = 1;
+  private static final int BUFFER_SIZE = 8192;
+  private final Gson gson;
+
+  public DeflatedJsonFormat(JsonSerde jsonSerde) {
+    this.gson = jsonSerde.getGson();
+  }
+
+  @Override
+  public byte getVersion() {
+    return VERSION;
+  }
+
+  @Override
+  public <T> void write(T object, Type type, OutputStream out) throws IOException {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      DeflaterOutputStream deflaterOut = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+      JsonWriter writer = new JsonWriter(new OutputStreamWriter(deflaterOut, Charsets.UTF_8));
+      try {
+        gson.toJson(object, type, writer);
+      } catch (JsonIOException e) {
+        throw new IOException(e);
+      }
+      writer.flush();
+      deflaterOut.finish();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  @Override
+  public <T> T read(InputStream in, Type type) throws IOException {
+    InflaterInputStream inflaterIn = new InflaterInputStream(in);
+    try {
+      return gson.fromJson(new InputStreamReader(inflaterIn, Charsets.UTF_8), type);
+    } catch (JsonIOException e) {
+      throw new IOException(e);
+    } finally {
+      inflaterIn.close();
+    }
+  }
+}
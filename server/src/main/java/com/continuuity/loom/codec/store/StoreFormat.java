@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.codec.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+/**
+ * A format for serializing objects persisted in the store. Each format has its own version, which is written in
+ * the header of every serialized object so that objects are always read with the format they were written with.
+ */
+public interface StoreFormat {
+
+  /**
+   * Get the version of the format, which must be unique among formats and must never change once objects have been
+   * written with the format.
+   *
+   * @return Version of the format.
+   */
+  byte getVersion();
+
+  /**
+   * Serialize an object of the given type to the given stream.
+   *
+   * @param object Object to serialize.
+   * @param type Type of the object.
+   * @param out Stream to write the serialized object to. Must not be closed by the format.
+   * @param <T> Object class.
+   * @throws IOException if there was a problem writing the object.
+   */
+  <T> void write(T object, Type type, OutputStream out) throws IOException;
+
+  /**
+   * Deserialize an object of the given type from the given stream.
+   *
+   * @param in Stream to read the serialized object from, positioned right after the header.
+   * @param type Type of the object.
+   * @param <T> Object class.
+   * @return Deserialized object.
+   * @throws IOException if there was a problem reading the object.
+   */
+  <T> T read(InputStream in, Type type) throws IOException;
+}
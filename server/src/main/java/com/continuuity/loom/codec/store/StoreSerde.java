@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.codec.store;
+
+import com.continuuity.loom.codec.json.JsonSerde;
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonIOException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * Serializes objects persisted in the store. Objects are written with a single {@link StoreFormat}, behind a two byte
+ * header holding a marker and the version of the format. Objects are read with whichever of the known formats they
+ * were written with, and objects without a header are read as plain json, which is how they were written before
+ * formats were introduced, so existing data never needs to be rewritten.
+ */
+public class StoreSerde {
+  // json text never starts with a zero byte, so it tells apart objects with a header from plain json.
+  private static final int HEADER_MARKER = 0;
+  private final JsonSerde jsonSerde;
+  private final StoreFormat writeFormat;
+  private final Map<Byte, StoreFormat> formats;
+
+  /**
+   * Create a serde that writes objects as deflated json.
+   */
+  public StoreSerde() {
+    this(new JsonSerde());
+  }
+
+  private StoreSerde(JsonSerde jsonSerde) {
+    this(jsonSerde, new DeflatedJsonFormat(jsonSerde));
+  }
+
+  /**
+   * Create a serde that writes objects with the given format, and reads objects written with the given format, with
+   * any of the other given formats, or as plain json.
+   *
+   * @param jsonSerde Serde for reading plain json.
+   * @param writeFormat Format to write objects with.
+   * @param otherFormats Other formats to read objects with.
+   */
+  public StoreSerde(JsonSerde jsonSerde, StoreFormat writeFormat, StoreFormat... otherFormats) {
+    this.jsonSerde = jsonSerde;
+    this.writeFormat = writeFormat;
+    ImmutableMap.Builder<Byte, StoreFormat> builder = ImmutableMap.builder();
+    builder.put(writeFormat.getVersion(), writeFormat);
+    for (StoreFormat format : otherFormats) {
+      builder.put(format.getVersion(), format);
+    }
+    this.formats = builder.build();
+  }
+
+  /**
+   * Serialize the object of specified type.
+   *
+   * @param object Object to serialize.
+   * @param type Type of the object to serialize.
+   * @param <T> Object class.
+   * @return serialized object, including the header.
+   */
+  public <T> byte[] serialize(T object, Type type) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(HEADER_MARKER);
+    out.write(writeFormat.getVersion());
+    try {
+      writeFormat.write(object, type, out);
+    } catch (IOException e) {
+      // can only come from serializing the object, as writing to a byte array never fails.
+      throw Throwables.propagate(e);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Deserialize an object from a stream, using the format given in its header, or as plain json if there is no
+   * header.
+   *
+   * @param in Stream to read the serialized object from.
+   * @param type Type of the object to deserialize.
+   * @param <T> Object class.
+   * @return deserialized object.
+   * @throws IOException if there was a problem reading the object or if it was written with an unknown format.
+   */
+  public <T> T deserialize(InputStream in, Type type) throws IOException {
+    PushbackInputStream pushbackIn = new PushbackInputStream(in, 1);
+    int first = pushbackIn.read();
+    if (first == HEADER_MARKER) {
+      int version = pushbackIn.read();
+      StoreFormat format = formats.get((byte) version);
+      if (format == null) {
+        throw new IOException("Unknown store format version " + version);
+      }
+      return format.read(pushbackIn, type);
+    }
+
+    if (first != -1) {
+      pushbackIn.unread(first);
+    }
+    try {
+      return jsonSerde.deserialize(new InputStreamReader(pushbackIn, Charsets.UTF_8), type);
+    } catch (JsonIOException e) {
+      throw new IOException(e);
+    }
+  }
+}
@@ -39,12 +39,21 @@ public class Constants {
   public static final String DB_PASSWORD = "server.db.password";
   public static final String DB_VALIDATION_QUERY = "server.jdbc.validation.query";
   public static final String DB_MAX_ACTIVE_CONNECTIONS = "server.jdbc.max.active.connections";
+  public static final String DB_STATEMENT_CACHE_SIZE = "server.jdbc.statement.cache.size";
+  public static final String ENTITY_CACHE_TTL_SECS = "server.entity.cache.ttl.seconds";
   public static final String LOCAL_DATA_DIR = "server.local.data.dir";
   public static final String EMBEDDED_DERBY_DRIVER = "org.apache.derby.jdbc.EmbeddedDriver";
 
   public static final String SCHEDULER_INTERVAL_SECS = "server.scheduler.run.interval.seconds";
   public static final String SOLVER_NUM_THREADS = "server.solver.num.threads";
+  public static final String SOLVER_LAYOUT_CACHE_SIZE = "server.solver.layout.cache.size";
+  public static final String SOLVER_MAX_SEARCH_MS = "server.solver.max.search.ms";
+  public static final String SOLVER_SEARCH_NUM_THREADS = "server.solver.search.num.threads";
+  public static final String JOB_SCHEDULER_NUM_THREADS = "server.scheduler.job.num.threads";
   public static final String TASK_TIMEOUT_SECS = "server.task.timeout.seconds";
+  public static final String TASK_TAKE_MAX_TASKS = "server.task.take.max.tasks";
+  public static final String TASK_TAKE_MAX_WAIT_MS = "server.task.take.max.wait.ms";
+  public static final String TASK_TAKE_NUM_THREADS = "server.task.take.num.threads";
   public static final String CLUSTER_CLEANUP_SECS = "server.cluster.cleanup.seconds";
   public static final String NETTY_EXEC_NUM_THREADS = "server.netty.exec.num.threads";
   public static final String NETTY_WORKER_NUM_THREADS = "server.netty.worker.num.threads";
@@ -56,6 +65,7 @@ public class Constants {
 
   public static final String ID_START_NUM = "server.ids.start.num";
   public static final String ID_INCREMENT_BY = "server.ids.increment.by";
+  public static final String ID_BLOCK_SIZE = "server.ids.block.size";
 
   public static final String CALLBACK_CLASS = "server.callback.class";
 
@@ -16,8 +16,10 @@
 package com.continuuity.loom.common.queue;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.twill.common.Cancellable;
 
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Queue that tracks consuming of the elements and may re-add elements that were attempted to be consumed.
@@ -60,6 +62,17 @@ public interface TrackingQueue {
    */
   Element take(String consumerId);
 
+  /**
+   * Take up to the given number of available elements from the queue at once. Taken elements are handled just like
+   * elements taken one by one through {@link #take(String)}, but the queue is only walked once, which is cheaper than
+   * taking elements one at a time.
+   *
+   * @param consumerId element consumer
+   * @param maxElements max number of elements to take
+   * @return available elements in the order they were taken, or an empty list if no element is available
+   */
+  List<Element> take(String consumerId, int maxElements);
+
   /**
    * Records progress of consuming the element. If element no longer belongs to this consumer this will be noted in
    * returned possession state as {@link PossessionState#NOT_POSSESSES}. This may happen e.g. if {@link TrackingQueue}
@@ -105,7 +118,9 @@ public interface TrackingQueue {
    * Get all {@link QueuedElement} in the queue that are not being consumed.
    *
    * @return an iterator over the queued (but not being consumed) elements in this queue. The iterator returns elements
-   *         ordered in the way they are offered to be consumed starting with the top of the queue.
+   *         ordered in the way they are offered to be consumed starting with the top of the queue. It is weakly
+   *         consistent: elements whose priority changes while iterating may be skipped or returned twice, and
+   *         returned elements may have started being consumed since.
    */
   Iterator<QueuedElement> getQueued();
 
@@ -123,6 +138,29 @@ public interface TrackingQueue {
    */
   int size();
 
+  /**
+   * Adds a listener that is notified whenever an element becomes available to take, either because it was added or
+   * because it was put back into the queue. When the queue is shared with other processes, changes made by them are
+   * notified as soon as this queue sees them. Listeners are called by the thread that made or observed the change, so
+   * they must return quickly and must not block.
+   *
+   * @param listener listener to notify
+   * @return {@link Cancellable} for removing the listener
+   */
+  Cancellable addListener(Listener listener);
+
+  /**
+   * Listener for elements that become available to take.
+   */
+  static interface Listener {
+    /**
+     * Called when an element becomes available to take. It may already have been taken by the time this is called.
+     *
+     * @param elementId id of the element that became available
+     */
+    void available(String elementId);
+  }
+
   /**
    * Defines Tracking Queue Consuming Status.
    */
@@ -17,7 +17,10 @@ package com.continuuity.loom.common.queue.internal;
 
 import com.continuuity.loom.common.queue.Element;
 import com.continuuity.loom.common.queue.QueuedElement;
+import com.continuuity.loom.common.queue.TrackingQueue;
+import org.apache.twill.common.Cancellable;
 
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -41,6 +44,16 @@ public interface ElementsTracking {
    */
   Element startConsuming(String consumerId);
 
+  /**
+   * Start consuming up to the given number of elements from the queue in a single pass over the queue. Elements are
+   * taken in the order they would be taken by {@link #startConsuming(String)}.
+   *
+   * @param consumerId Id of the consumer.
+   * @param maxElements Max number of elements to start consuming.
+   * @return Elements to start consuming, in the order they were taken. Empty if there are no elements to consume.
+   */
+  List<Element> startConsuming(String consumerId, int maxElements);
+
   /**
    * Stop consuming an element and add it back to the queue to allow it to be consumed again. The operation may
    * fail if there is no element in the queue matching the element id, or if the element is being consumed by a
@@ -104,11 +117,15 @@ public interface ElementsTracking {
   boolean toHighestPriority(String elementId);
 
   /**
-   * Get a list of elements in the queue that are not being consumed.
+   * Get the elements in the queue that are not being consumed, in the order they would be consumed in. The iterator
+   * walks the queue lazily, so only the elements that are actually iterated over are visited, and it may or may not
+   * reflect changes made to the queue after it was created. Elements returned are never modified, but an element whose
+   * priority changes while iterating may be skipped or returned twice, and an element may have started being consumed
+   * by the time it is returned. Callers that need a consistent view must copy it and check each element again.
    *
-   * @return List of elements in the queue that are not being consumed.
+   * @return Iterator over the elements in the queue that are not being consumed.
    */
-  List<QueuedElement> getQueued();
+  Iterator<QueuedElement> getQueued();
 
   /**
    * Get a list of elements in the queue that are being consumed.
@@ -125,6 +142,15 @@ public interface ElementsTracking {
    */
   int size();
 
+  /**
+   * Add a listener that is notified whenever an element becomes available to take. See
+   * {@link TrackingQueue#addListener(TrackingQueue.Listener)} for details.
+   *
+   * @param listener Listener to notify.
+   * @return Cancellable for removing the listener.
+   */
+  Cancellable addListener(TrackingQueue.Listener listener);
+
   /**
    * Walker interface to process Queue Element.
    */
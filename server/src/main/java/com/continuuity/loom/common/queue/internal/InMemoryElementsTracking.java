@@ -17,23 +17,20 @@ package com.continuuity.loom.common.queue.internal;
 
 import com.continuuity.loom.common.queue.Element;
 import com.continuuity.loom.common.queue.QueuedElement;
+import com.continuuity.loom.common.queue.TrackingQueue;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import org.apache.twill.common.Cancellable;
 
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
 
 /**
  * In-memory implementation of {@link ElementsTracking}.
  */
 public class InMemoryElementsTracking implements ElementsTracking {
-  private PriorityQueue<PrioritizedElement> notStarted = new PriorityQueue<PrioritizedElement>();
-  // elementId->elemBeingConsumed
-  private Map<String, ElementBeingConsumed> inProgress = Maps.newHashMap();
+  private final QueueIndex<Entry> index = new QueueIndex<Entry>();
 
   // Moves to the top of the queue. Since we reset priority when we start consuming, it is safe to use 0L here
   // See {@link #getCurrentHighestPriority()} for more info.
@@ -41,89 +38,93 @@ public class InMemoryElementsTracking implements ElementsTracking {
 
   @Override
   public synchronized boolean addToQueue(Element element) {
-    return notStarted.add(new PrioritizedElement(element, getCurrentHighestPriority()));
+    Entry entry = new Entry(element, getCurrentHighestPriority());
+    index.putQueued(element.getId(), entry.priority, entry);
+    return true;
   }
 
   @Override
   public synchronized Element startConsuming(String consumerId) {
-    PrioritizedElement element = notStarted.poll();
-    if (element == null) {
+    Entry entry = index.getFirstQueued();
+    if (entry == null) {
       return null;
     }
-    inProgress.put(element.element.getId(), new ElementBeingConsumed(element.element, consumerId, element.priority));
-    return element.element;
+    index.putBeingConsumed(entry.element.getId(),
+                           new Entry(entry.element, entry.priority, consumerId, System.currentTimeMillis()));
+    return entry.element;
+  }
+
+  @Override
+  public synchronized List<Element> startConsuming(String consumerId, int maxElements) {
+    List<Element> taken = Lists.newArrayList();
+    while (taken.size() < maxElements) {
+      Element element = startConsuming(consumerId);
+      if (element == null) {
+        break;
+      }
+      taken.add(element);
+    }
+    return taken;
   }
 
   @Override
   public synchronized boolean stopConsumingAndAddBackToQueue(String elementId, String consumerId) {
-    ElementBeingConsumed element = inProgress.get(elementId);
-    if (element == null || !consumerId.equals(element.consumerId)) {
+    Entry entry = index.getBeingConsumed(elementId);
+    if (entry == null || !consumerId.equals(entry.consumerId)) {
       return false;
     }
-    stopAndReschedule(element);
+    stopAndReschedule(entry);
     return true;
   }
 
-  private synchronized void stopAndReschedule(ElementBeingConsumed element) {
-    inProgress.remove(element.element.getId());
-    notStarted.add(new PrioritizedElement(element.element, element.priority));
+  private synchronized void stopAndReschedule(Entry entry) {
+    index.putQueued(entry.element.getId(), entry.priority, new Entry(entry.element, entry.priority));
   }
 
   @Override
   public synchronized boolean finishConsuming(String elementId, String consumerId) {
-    ElementBeingConsumed element = inProgress.get(elementId);
-    if (element == null || !consumerId.equals(element.consumerId)) {
+    Entry entry = index.getBeingConsumed(elementId);
+    if (entry == null || !consumerId.equals(entry.consumerId)) {
       return false;
     }
-    inProgress.remove(elementId);
+    index.remove(elementId);
     return true;
   }
 
   @Override
   public synchronized boolean recordProgress(String elementId, String consumerId) {
-    ElementBeingConsumed element = inProgress.get(elementId);
-    if (element == null || !consumerId.equals(element.consumerId)) {
+    Entry entry = index.getBeingConsumed(elementId);
+    if (entry == null || !consumerId.equals(entry.consumerId)) {
       return false;
     }
-    element.lastProgressReportTs = System.currentTimeMillis();
+    index.putBeingConsumed(elementId, new Entry(entry.element, entry.priority, consumerId, System.currentTimeMillis()));
     return true;
   }
 
   @Override
   public synchronized void walkThruElementsBeingConsumed(Walker walker) {
-    List<ElementBeingConsumed> toBeStoppedAndRescheduled = Lists.newArrayList();
-    for (ElementBeingConsumed element : inProgress.values()) {
-      boolean stopAndReschedule = walker.process(element.element, element.consumerId, element.lastProgressReportTs);
+    List<Entry> toBeStoppedAndRescheduled = Lists.newArrayList();
+    for (Entry entry : index.getBeingConsumed()) {
+      boolean stopAndReschedule = walker.process(entry.element, entry.consumerId, entry.lastProgressReportTs);
       if (stopAndReschedule) {
-        toBeStoppedAndRescheduled.add(element);
+        toBeStoppedAndRescheduled.add(entry);
       }
     }
 
-    for (ElementBeingConsumed element : toBeStoppedAndRescheduled) {
-      stopAndReschedule(element);
+    for (Entry entry : toBeStoppedAndRescheduled) {
+      stopAndReschedule(entry);
     }
   }
 
   @Override
   public synchronized boolean remove(String elementId) {
-    PrioritizedElement toRemove = null;
-    for (PrioritizedElement elem : notStarted) {
-      if (elementId.equals(elem.element.getId())) {
-        toRemove = elem;
-        break;
-      }
-    }
-    if (toRemove != null) {
-      notStarted.remove(toRemove);
-    }
-    inProgress.remove(elementId);
+    index.remove(elementId);
     return true;
   }
 
   @Override
   public synchronized boolean removeAll() {
-    notStarted.clear();
-    inProgress.clear();
+    index.clear();
     return true;
   }
 
@@ -131,38 +132,22 @@ public class InMemoryElementsTracking implements ElementsTracking {
   public synchronized boolean toHighestPriority(String elementId) {
     // we adjust priority only in those not being consumed. If consuming fails for the element it will be promoted to
     // highest priority anyways
-    PrioritizedElement toChange = null;
-    for (PrioritizedElement elem : notStarted) {
-      if (elementId.equals(elem.element.getId())) {
-        toChange = elem;
-        break;
-      }
-    }
-    if (toChange != null) {
-      notStarted.remove(toChange);
-      toChange.priority = HIGHEST_PRIORITY;
-      notStarted.add(toChange);
+    Entry entry = index.getQueued(elementId);
+    if (entry != null) {
+      index.putQueued(elementId, HIGHEST_PRIORITY, new Entry(entry.element, HIGHEST_PRIORITY));
     }
 
     return true;
   }
 
   @Override
-  public List<QueuedElement> getQueued() {
-    List<QueuedElement> result = Lists.newArrayList();
-    List<PrioritizedElement> list = new ArrayList<PrioritizedElement>(notStarted);
-    Collections.sort(list);
-    for (PrioritizedElement elem : list) {
-      result.add(elem);
-    }
-    return result;
+  public Iterator<QueuedElement> getQueued() {
+    return Collections.<QueuedElement>unmodifiableCollection(index.getQueued()).iterator();
   }
 
   @Override
   public List<QueuedElement> getBeingConsumed() {
-    ImmutableList.Builder<QueuedElement> listBuilder = new ImmutableList.Builder<QueuedElement>();
-    listBuilder.addAll(inProgress.values());
-    return listBuilder.build();
+    return ImmutableList.<QueuedElement>copyOf(index.getBeingConsumed());
   }
 
   /**
@@ -179,56 +164,33 @@ public class InMemoryElementsTracking implements ElementsTracking {
     return System.currentTimeMillis();
   }
 
-  private static class PrioritizedElement implements QueuedElement, Comparable<PrioritizedElement> {
-    private Element element;
-    private long priority;
-
-    private PrioritizedElement(Element element, long priority) {
-      this.element = element;
-      this.priority = priority;
-    }
-
-    @Override
-    public Element getElement() {
-      return element;
-    }
-
-    @Override
-    public long getStatusTime() {
-      return 0;
-    }
-
-    @Override
-    public String getConsumerId() {
-      return "";
-    }
-
-    @Override
-    public int compareTo(PrioritizedElement o) {
-      if (o.priority == priority) {
-        return 0;
-      } else {
-        return priority > o.priority ? 1 : -1;
-      }
-    }
+  @Override
+  public Cancellable addListener(TrackingQueue.Listener listener) {
+    return index.addListener(listener);
   }
 
   @Override
   public int size() {
-    return notStarted.size() + inProgress.size();
+    return index.size();
   }
 
-  private static class ElementBeingConsumed implements QueuedElement {
-    private Element element;
-    private String consumerId;
-    private long priority;
-    private long lastProgressReportTs;
+  // entries are never modified once indexed, but replaced, so that views over the index never see half updated entries.
+  private static class Entry implements QueuedElement {
+    private final Element element;
+    private final long priority;
+    // will be empty if it is not in progress
+    private final String consumerId;
+    private final long lastProgressReportTs;
+
+    private Entry(Element element, long priority) {
+      this(element, priority, "", 0);
+    }
 
-    private ElementBeingConsumed(Element element, String consumerId, long priority) {
+    private Entry(Element element, long priority, String consumerId, long lastProgressReportTs) {
       this.element = element;
-      this.consumerId = consumerId;
       this.priority = priority;
-      this.lastProgressReportTs = System.currentTimeMillis();
+      this.consumerId = consumerId;
+      this.lastProgressReportTs = lastProgressReportTs;
     }
 
     @Override
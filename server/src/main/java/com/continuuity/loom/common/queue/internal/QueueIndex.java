@@ -0,0 +1,216 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.common.queue.internal;
+
+import com.continuuity.loom.common.queue.TrackingQueue;
+import com.google.common.collect.Maps;
+import org.apache.twill.common.Cancellable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Index over the elements of a queue. Elements that are not being consumed are kept ordered by priority, so that the
+ * next element to consume is found in O(log n) and queued elements can be walked in order without copying or
+ * sorting them. Elements that are being consumed are kept separately by element id.
+ * <p/>
+ * Listeners are notified while the index is locked, right after an element is indexed as not being consumed.
+ * <p/>
+ * Views returned by {@link #getQueued()} and {@link #getBeingConsumed()} are weakly consistent: they can be used while
+ * the index is being modified, and may or may not reflect modifications made after they were created.
+ *
+ * @param <T> Type of value kept for each element.
+ */
+final class QueueIndex<T> {
+  private static final Logger LOG = LoggerFactory.getLogger(QueueIndex.class);
+  private final ConcurrentNavigableMap<Key, T> queued = new ConcurrentSkipListMap<Key, T>();
+  // elementId->key of the element in the queued map
+  private final ConcurrentMap<String, Key> queuedKeys = Maps.newConcurrentMap();
+  // elementId->element being consumed
+  private final ConcurrentMap<String, T> beingConsumed = Maps.newConcurrentMap();
+  private final List<TrackingQueue.Listener> listeners = new CopyOnWriteArrayList<TrackingQueue.Listener>();
+
+  /**
+   * Add a listener that is notified every time an element is indexed as not being consumed.
+   *
+   * @param listener Listener to notify.
+   * @return Cancellable for removing the listener.
+   */
+  Cancellable addListener(final TrackingQueue.Listener listener) {
+    listeners.add(listener);
+    return new Cancellable() {
+      @Override
+      public void cancel() {
+        listeners.remove(listener);
+      }
+    };
+  }
+
+  /**
+   * Index an element as not being consumed, replacing whatever was indexed for the element before.
+   *
+   * @param elementId Id of the element.
+   * @param priority Priority of the element, lower values come first.
+   * @param value Value to index.
+   */
+  synchronized void putQueued(String elementId, long priority, T value) {
+    remove(elementId);
+    Key key = new Key(priority, elementId);
+    queued.put(key, value);
+    queuedKeys.put(elementId, key);
+    for (TrackingQueue.Listener listener : listeners) {
+      try {
+        listener.available(elementId);
+      } catch (Throwable t) {
+        LOG.error("Exception notifying listener that element {} is available.", elementId, t);
+      }
+    }
+  }
+
+  /**
+   * Index an element as being consumed, replacing whatever was indexed for the element before.
+   *
+   * @param elementId Id of the element.
+   * @param value Value to index.
+   */
+  synchronized void putBeingConsumed(String elementId, T value) {
+    remove(elementId);
+    beingConsumed.put(elementId, value);
+  }
+
+  /**
+   * Remove an element from the index.
+   *
+   * @param elementId Id of the element to remove.
+   */
+  synchronized void remove(String elementId) {
+    Key key = queuedKeys.remove(elementId);
+    if (key != null) {
+      queued.remove(key);
+    }
+    beingConsumed.remove(elementId);
+  }
+
+  /**
+   * Remove all elements from the index.
+   */
+  synchronized void clear() {
+    queued.clear();
+    queuedKeys.clear();
+    beingConsumed.clear();
+  }
+
+  /**
+   * Get the element that is not being consumed with the highest priority.
+   *
+   * @return Element that is not being consumed with the highest priority, or null if there is none.
+   */
+  T getFirstQueued() {
+    Map.Entry<Key, T> first = queued.firstEntry();
+    return first == null ? null : first.getValue();
+  }
+
+  /**
+   * Get an element that is not being consumed.
+   *
+   * @param elementId Id of the element.
+   * @return Element, or null if there is no such element or if it is being consumed.
+   */
+  T getQueued(String elementId) {
+    Key key = queuedKeys.get(elementId);
+    return key == null ? null : queued.get(key);
+  }
+
+  /**
+   * Get an element that is being consumed.
+   *
+   * @param elementId Id of the element.
+   * @return Element, or null if there is no such element or if it is not being consumed.
+   */
+  T getBeingConsumed(String elementId) {
+    return beingConsumed.get(elementId);
+  }
+
+  /**
+   * Get the elements that are not being consumed, ordered by priority starting with the highest.
+   *
+   * @return Unmodifiable view of the elements that are not being consumed.
+   */
+  Collection<T> getQueued() {
+    return Collections.unmodifiableCollection(queued.values());
+  }
+
+  /**
+   * Get the elements that are being consumed.
+   *
+   * @return Unmodifiable view of the elements that are being consumed.
+   */
+  Collection<T> getBeingConsumed() {
+    return Collections.unmodifiableCollection(beingConsumed.values());
+  }
+
+  /**
+   * Get the number of elements in the index, both being consumed and not being consumed.
+   *
+   * @return Number of elements in the index.
+   */
+  int size() {
+    return queuedKeys.size() + beingConsumed.size();
+  }
+
+  /**
+   * Orders elements by priority, and elements of the same priority by id.
+   */
+  private static final class Key implements Comparable<Key> {
+    private final long priority;
+    private final String elementId;
+
+    private Key(long priority, String elementId) {
+      this.priority = priority;
+      this.elementId = elementId;
+    }
+
+    @Override
+    public int compareTo(Key o) {
+      if (priority != o.priority) {
+        return priority > o.priority ? 1 : -1;
+      }
+      return elementId.compareTo(o.elementId);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return priority == other.priority && elementId.equals(other.elementId);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * elementId.hashCode() + (int) (priority ^ (priority >>> 32));
+    }
+  }
+}
@@ -22,11 +22,13 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import org.apache.twill.common.Cancellable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -81,6 +83,14 @@ public class TimeoutTrackingQueue implements TrackingQueue {
     return elementsTracking.startConsuming(consumerId);
   }
 
+  @Override
+  public List<Element> take(String consumerId, int maxElements) {
+    Preconditions.checkArgument(consumerId != null, "id of the consumer that takes elements should not be null");
+    Preconditions.checkArgument(maxElements > 0, "max number of elements to take must be positive");
+    checkThatStarted();
+    return elementsTracking.startConsuming(consumerId, maxElements);
+  }
+
   @Override
   public PossessionState recordProgress(String consumerId, String elementId, ConsumingStatus status, String result) {
     Preconditions.checkArgument(consumerId != null, "id of the consumer that reports progress should not be null");
@@ -144,7 +154,7 @@ public class TimeoutTrackingQueue implements TrackingQueue {
 
   @Override
   public Iterator<QueuedElement> getQueued() {
-    return elementsTracking.getQueued().iterator();
+    return elementsTracking.getQueued();
   }
 
   @Override
@@ -152,6 +162,12 @@ public class TimeoutTrackingQueue implements TrackingQueue {
     return elementsTracking.getBeingConsumed().iterator();
   }
 
+  @Override
+  public Cancellable addListener(Listener listener) {
+    Preconditions.checkArgument(listener != null, "listener to add should not be null");
+    return elementsTracking.addListener(listener);
+  }
+
   public void stop() {
     thread.finish();
     thread.interrupt();
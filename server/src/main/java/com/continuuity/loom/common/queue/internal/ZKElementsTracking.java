@@ -17,31 +17,38 @@ package com.continuuity.loom.common.queue.internal;
 
 import com.continuuity.loom.common.queue.Element;
 import com.continuuity.loom.common.queue.QueuedElement;
-import com.continuuity.loom.common.zookeeper.ZKClientExt;
+import com.continuuity.loom.common.queue.TrackingQueue;
 import com.continuuity.loom.common.zookeeper.lib.Serializer;
-import com.continuuity.loom.common.zookeeper.lib.SynchronizedZKMap;
-import com.continuuity.loom.common.zookeeper.lib.ZKInterProcessReentrantLock;
+import com.continuuity.loom.common.zookeeper.lib.Versioned;
+import com.continuuity.loom.common.zookeeper.lib.VersionedZKMap;
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
-import com.google.common.util.concurrent.Futures;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.gson.Gson;
+import org.apache.twill.common.Cancellable;
 import org.apache.twill.zookeeper.ZKClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
-import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 
 /**
- * Simple implementation that uses ZK to store element data.
+ * Implementation that uses ZK to store element data, with each element kept in its own znode.
  * <p/>
- * Given that queue is not going to be big, at max will contain hundreds or thousands of elements *for simplicity* we
- * use {@link Map} backed by ZK - underneath:
- * <p/>
- * Again, for simplicity we use *single* lock and wrap all methods with it.
+ * There is no lock shared between consumers. Every change to an element is a write to the element's znode that is
+ * conditional on the version of the znode the change was based on. If some other consumer changed the element in
+ * between, the write fails, the element is re-read and the change is re-evaluated against the latest state. This way
+ * two consumers can never both take the same element, while consumers taking different elements never wait on each
+ * other. Elements are read from a local view that is kept up to date through watches, so taking an element costs a
+ * single write in the common case. Elements that are not being consumed are indexed by priority, so finding the
+ * next element to take does not scan the elements being consumed or sort anything.
  */
 public class ZKElementsTracking implements ElementsTracking {
   private static final Logger LOG = LoggerFactory.getLogger(ZKElementsTracking.class);
@@ -50,36 +57,33 @@ public class ZKElementsTracking implements ElementsTracking {
   private static final long HIGHEST_PRIORITY = 0L;
   private static final String NO_CONSUMER_ASSIGNED = "";
   private static final EntrySerializer ENTRY_SERIALIZER = new EntrySerializer();
-
-  private final ThreadLocal<ZKInterProcessReentrantLock> globalLock;
-  private final Map<String, Entry> queueElements;
-
-  public ZKElementsTracking(final ZKClient zkClient, final String basePath)  {
-    String queuePath = basePath + "/queue";
-    Futures.getUnchecked(ZKClientExt.ensureExists(zkClient, queuePath));
-    this.queueElements = new SynchronizedZKMap<Entry>(zkClient, queuePath + "/map", ENTRY_SERIALIZER);
-
-    this.globalLock = new ThreadLocal<ZKInterProcessReentrantLock>() {
+  private static final Function<Versioned<Entry>, QueuedElement> TO_QUEUED_ELEMENT =
+    new Function<Versioned<Entry>, QueuedElement>() {
       @Override
-      protected ZKInterProcessReentrantLock initialValue() {
-        return new ZKInterProcessReentrantLock(zkClient, basePath);
+      public QueuedElement apply(Versioned<Entry> input) {
+        return input.getValue();
       }
     };
+
+  // kept in sync with the local view of the elements, must be created before the elements are loaded
+  private final QueueIndex<Versioned<Entry>> index = new QueueIndex<Versioned<Entry>>();
+  // elements that threads in this process are currently trying to take, so that they don't compete with each other
+  private final Set<String> beingTaken = Sets.newSetFromMap(Maps.<String, Boolean>newConcurrentMap());
+  private final VersionedZKMap<Entry> queueElements;
+
+  public ZKElementsTracking(final ZKClient zkClient, final String basePath)  {
+    // same location elements were kept in when they were stored in a SynchronizedZKMap, so that elements queued
+    // before an upgrade are still picked up.
+    this.queueElements = new VersionedZKMap<Entry>(zkClient, basePath + "/queue/map/entries", ENTRY_SERIALIZER,
+                                                   new IndexingListener());
   }
 
   @Override
   public boolean addToQueue(Element element) {
     try {
-      // we actually may need no lock here: we just adding new element (it is assumed that test adds unique
-      // elems into queue)
-      globalLock.get().acquire();
-      try {
-        Entry entry = new Entry(element, getCurrentHighestPriority());
-        queueElements.put(entry.element.getId(), entry);
-        return true;
-      } finally {
-        globalLock.get().release();
-      }
+      Entry entry = new Entry(element, getCurrentHighestPriority());
+      queueElements.put(entry.element.getId(), entry);
+      return true;
     } catch (Exception e) {
       LOG.error("error during adding to queue", e);
       return false;
@@ -88,57 +92,54 @@ public class ZKElementsTracking implements ElementsTracking {
 
   @Override
   public Element startConsuming(String consumerId) {
+    List<Element> taken = startConsuming(consumerId, 1);
+    return taken.isEmpty() ? null : taken.get(0);
+  }
+
+  @Override
+  public List<Element> startConsuming(String consumerId, int maxElements) {
+    List<Element> taken = Lists.newArrayListWithCapacity(Math.min(maxElements, index.size()));
     try {
-      globalLock.get().acquire();
-      try {
-        Entry entry = getNotStartedWithHighestPriority();
-        if (entry == null) {
-          return null;
+      // walks elements in priority order, a failed attempt to take an element re-reads it which moves it out of the
+      // queued elements if it was taken by someone else.
+      Iterator<Versioned<Entry>> candidates = index.getQueued().iterator();
+      while (taken.size() < maxElements && candidates.hasNext()) {
+        Versioned<Entry> candidate = candidates.next();
+        Entry entry = candidate.getValue();
+        String elementId = entry.element.getId();
+        if (!beingTaken.add(elementId)) {
+          continue;
+        }
+        try {
+          Entry claimed = new Entry(entry.element, getCurrentHighestPriority(), System.currentTimeMillis(),
+                                    consumerId);
+          if (queueElements.replace(elementId, claimed, candidate.getVersion()) != null) {
+            taken.add(claimed.element);
+          }
+        } finally {
+          beingTaken.remove(elementId);
         }
-        entry.consumerId = consumerId;
-        entry.lastProgressReportTs = System.currentTimeMillis();
-        entry.priority = getCurrentHighestPriority();
-        queueElements.put(entry.element.getId(), entry);
-        return entry.element;
-      } finally {
-        globalLock.get().release();
       }
     } catch (Exception e) {
+      // elements taken so far are still handed out, the rest will be taken next time
       LOG.error("error during start consuming", e);
-      return null;
-    }
-  }
-
-  private Entry getNotStartedWithHighestPriority() throws Exception {
-    Entry result = null;
-    for (Entry entry : queueElements.values()) {
-      // we are walking thru *all* element items, hence need to skip those that are in progress
-      if (!NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
-        continue;
-      }
-      // choosing entry with highest priority
-      if (result == null || result.priority > entry.priority) {
-        result = entry;
-      }
     }
-    return result;
+    return taken;
   }
 
   @Override
   public boolean stopConsumingAndAddBackToQueue(String elementId, String consumerId) {
     try {
-      globalLock.get().acquire();
-      try {
-        Entry entry = queueElements.get(elementId);
-
-        if (entry == null || !consumerId.equals(entry.consumerId)) {
-          return false;
+      Versioned<Entry> current = getConsumedBy(elementId, consumerId);
+      while (current != null) {
+        Entry entry = current.getValue();
+        Entry stopped = new Entry(entry.element, entry.priority, 0L, NO_CONSUMER_ASSIGNED);
+        if (queueElements.replace(elementId, stopped, current.getVersion()) != null) {
+          return true;
         }
-        stopAndReschedule(entry);
-
-      } finally {
-        globalLock.get().release();
+        current = getConsumedBy(elementId, consumerId);
       }
+      return false;
     } catch (Exception e) {
       LOG.error("error during stop & reschedule", e);
       // it is OK to leave it now in "in-progress" list - we'll attempt to reschedule it by timeout
@@ -147,26 +148,17 @@ public class ZKElementsTracking implements ElementsTracking {
     return true;
   }
 
-  private void stopAndReschedule(Entry entry) throws Exception {
-    entry.consumerId = NO_CONSUMER_ASSIGNED;
-    entry.lastProgressReportTs = 0;
-    queueElements.put(entry.element.getId(), entry);
-  }
-
   @Override
   public boolean finishConsuming(String elementId, String consumerId) {
     try {
-      globalLock.get().acquire();
-      try {
-        Entry entry = queueElements.get(elementId);
-        if (entry == null || !consumerId.equals(entry.consumerId)) {
-          return false;
+      Versioned<Entry> current = getConsumedBy(elementId, consumerId);
+      while (current != null) {
+        if (queueElements.remove(elementId, current.getVersion())) {
+          return true;
         }
-        queueElements.remove(elementId);
-
-      } finally {
-        globalLock.get().release();
+        current = getConsumedBy(elementId, consumerId);
       }
+      return false;
     } catch (Exception e) {
       LOG.error("error during marking finishConsuming", e);
       // TODO: this is actually bad: we will try to do element again, even though it was done already :(
@@ -178,18 +170,16 @@ public class ZKElementsTracking implements ElementsTracking {
   @Override
   public boolean recordProgress(String elementId, String consumerId) {
     try {
-      globalLock.get().acquire();
-      try {
-        Entry entry = queueElements.get(elementId);
-        if (entry == null || !consumerId.equals(entry.consumerId)) {
-          return false;
+      Versioned<Entry> current = getConsumedBy(elementId, consumerId);
+      while (current != null) {
+        Entry entry = current.getValue();
+        Entry updated = new Entry(entry.element, entry.priority, System.currentTimeMillis(), consumerId);
+        if (queueElements.replace(elementId, updated, current.getVersion()) != null) {
+          return true;
         }
-        entry.lastProgressReportTs = System.currentTimeMillis();
-        queueElements.put(entry.element.getId(), entry);
-
-      } finally {
-        globalLock.get().release();
+        current = getConsumedBy(elementId, consumerId);
       }
+      return false;
     } catch (Exception e) {
       LOG.error("error during checking state", e);
       // should be OK not do anything: we are just reporting a progress...
@@ -198,26 +188,32 @@ public class ZKElementsTracking implements ElementsTracking {
     return true;
   }
 
+  /**
+   * Get the element if it is being consumed by the given consumer. The local view may not have caught up yet with a
+   * change made through some other server, for example when the element was taken through one server and progress
+   * is reported through another, so the element is read from ZK before deciding that the consumer does not own it.
+   */
+  private Versioned<Entry> getConsumedBy(String elementId, String consumerId) {
+    Versioned<Entry> current = queueElements.get(elementId);
+    if (current == null || !consumerId.equals(current.getValue().consumerId)) {
+      current = queueElements.refresh(elementId);
+    }
+    return current == null || !consumerId.equals(current.getValue().consumerId) ? null : current;
+  }
+
   @Override
   public void walkThruElementsBeingConsumed(Walker walker) {
     try {
-      globalLock.get().acquire();
-      try {
-        for (Entry entry : queueElements.values()) {
-          // we are walking thru *all* element items, hence need to skip those not in progress
-          if (NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
-            continue;
-          }
-          boolean stopAndReschedule = walker.process(entry.element,
-                                                     entry.consumerId,
-                                                     entry.lastProgressReportTs);
-          if (stopAndReschedule) {
-            stopAndReschedule(entry);
-          }
+      for (Versioned<Entry> current : index.getBeingConsumed()) {
+        Entry entry = current.getValue();
+        boolean stopAndReschedule = walker.process(entry.element,
+                                                   entry.consumerId,
+                                                   entry.lastProgressReportTs);
+        if (stopAndReschedule) {
+          // if the element changed in the meantime it was not abandoned after all, we'll check it next time
+          Entry stopped = new Entry(entry.element, entry.priority, 0L, NO_CONSUMER_ASSIGNED);
+          queueElements.replace(entry.element.getId(), stopped, current.getVersion());
         }
-
-      } finally {
-        globalLock.get().release();
       }
     } catch (Exception e) {
       LOG.error("error during walking", e);
@@ -228,12 +224,7 @@ public class ZKElementsTracking implements ElementsTracking {
   @Override
   public boolean remove(String elementId) {
     try {
-      globalLock.get().acquire();
-      try {
-        queueElements.remove(elementId);
-      } finally {
-        globalLock.get().release();
-      }
+      queueElements.remove(elementId);
     } catch (Exception e) {
       LOG.error("error during removing element", e);
       return false;
@@ -244,12 +235,7 @@ public class ZKElementsTracking implements ElementsTracking {
   @Override
   public boolean removeAll() {
     try {
-      globalLock.get().acquire();
-      try {
-        queueElements.clear();
-      } finally {
-        globalLock.get().release();
-      }
+      queueElements.clear();
     } catch (Exception e) {
       LOG.error("error during cleanup of the queue", e);
       return false;
@@ -261,15 +247,14 @@ public class ZKElementsTracking implements ElementsTracking {
   @Override
   public boolean toHighestPriority(String elementId) {
     try {
-      globalLock.get().acquire();
-      try {
-        Entry entry = queueElements.get(elementId);
-        if (NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
-          entry.priority = HIGHEST_PRIORITY;
-          queueElements.put(entry.element.getId(), entry);
+      Versioned<Entry> current = index.getQueued(elementId);
+      while (current != null && NO_CONSUMER_ASSIGNED.equals(current.getValue().consumerId)) {
+        Entry entry = current.getValue();
+        Entry promoted = new Entry(entry.element, HIGHEST_PRIORITY, entry.lastProgressReportTs, entry.consumerId);
+        if (queueElements.replace(elementId, promoted, current.getVersion()) != null) {
+          break;
         }
-      } finally {
-        globalLock.get().release();
+        current = queueElements.get(elementId);
       }
     } catch (Exception e) {
       LOG.error("error during promoting element to highest priority", e);
@@ -280,48 +265,13 @@ public class ZKElementsTracking implements ElementsTracking {
   }
 
   @Override
-  public List<QueuedElement> getQueued() {
-    List<QueuedElement> list = Lists.newArrayList();
-    try {
-      globalLock.get().acquire();
-      try {
-        List<Entry> all = Lists.newArrayList(queueElements.values());
-        // we want to return the list ordered by priority
-        Collections.sort(all);
-        for (Entry entry : all) {
-          if (NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
-            list.add(entry);
-          }
-        }
-      } finally {
-        globalLock.get().release();
-      }
-    } catch (Exception e) {
-      LOG.error("error during getting queued elements", e);
-    }
-
-    return list;
+  public Iterator<QueuedElement> getQueued() {
+    return Iterators.transform(index.getQueued().iterator(), TO_QUEUED_ELEMENT);
   }
 
   @Override
   public List<QueuedElement> getBeingConsumed() {
-    ImmutableList.Builder<QueuedElement> listBuilder = new ImmutableList.Builder<QueuedElement>();
-    try {
-      globalLock.get().acquire();
-      try {
-        for (Entry entry : queueElements.values()) {
-          if (!NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
-            listBuilder.add(entry);
-          }
-        }
-      } finally {
-        globalLock.get().release();
-      }
-    } catch (Exception e) {
-      LOG.error("error during getting queued elements", e);
-    }
-
-    return listBuilder.build();
+    return ImmutableList.copyOf(Iterators.transform(index.getBeingConsumed().iterator(), TO_QUEUED_ELEMENT));
   }
 
   /**
@@ -338,12 +288,13 @@ public class ZKElementsTracking implements ElementsTracking {
     return System.currentTimeMillis();
   }
 
-  static class Entry implements QueuedElement, Comparable<Entry> {
-    Element element;
-    long priority;
+  // instances are shared through the local view of the queue, and must not be modified once created
+  static class Entry implements QueuedElement {
+    final Element element;
+    final long priority;
     // will be empty if it is not in progress
-    String consumerId;
-    long lastProgressReportTs;
+    final String consumerId;
+    final long lastProgressReportTs;
 
     public Entry(Element element, long priority) {
       this(element, priority, 0L, NO_CONSUMER_ASSIGNED);
@@ -370,15 +321,6 @@ public class ZKElementsTracking implements ElementsTracking {
     public String getConsumerId() {
       return consumerId;
     }
-
-    @Override
-    public int compareTo(Entry o) {
-      if (o.priority == priority) {
-        return 0;
-      } else {
-        return priority > o.priority ? 1 : -1;
-      }
-    }
   }
 
   private static final class EntrySerializer implements Serializer<Entry> {
@@ -406,8 +348,32 @@ public class ZKElementsTracking implements ElementsTracking {
     }
   }
 
+  @Override
+  public Cancellable addListener(TrackingQueue.Listener listener) {
+    return index.addListener(listener);
+  }
+
   @Override
   public int size() {
-    return queueElements.size();
+    return index.size();
+  }
+
+  /**
+   * Keeps the index in sync with the local view of the elements.
+   */
+  private final class IndexingListener implements VersionedZKMap.Listener<Entry> {
+    @Override
+    public void updated(String key, Versioned<Entry> value) {
+      if (NO_CONSUMER_ASSIGNED.equals(value.getValue().consumerId)) {
+        index.putQueued(key, value.getValue().priority, value);
+      } else {
+        index.putBeingConsumed(key, value);
+      }
+    }
+
+    @Override
+    public void removed(String key) {
+      index.remove(key);
+    }
   }
 }
@@ -17,9 +17,10 @@ package com.continuuity.loom.common.zookeeper;
 
 import com.continuuity.loom.common.conf.Configuration;
 import com.continuuity.loom.common.conf.Constants;
-import com.continuuity.loom.common.zookeeper.lib.ZKInterProcessReentrantLock;
 import com.continuuity.loom.scheduler.task.JobId;
 import com.continuuity.loom.scheduler.task.TaskId;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
 import com.google.common.primitives.Longs;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.common.util.concurrent.Futures;
@@ -27,17 +28,24 @@ import com.google.inject.Inject;
 import org.apache.twill.zookeeper.NodeData;
 import org.apache.twill.zookeeper.ZKClient;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.data.Stat;
 
+import java.util.Map;
+
 /**
- * Uses Zookeeper for creating new unique ids.
+ * Uses Zookeeper for creating new unique ids. Ids are not reserved in Zookeeper one at a time. Instead, blocks of ids
+ * are leased by moving the counter of the id type past the block with a conditional write on the version of the
+ * counter, and ids are then handed out from the block in memory. Ids stay unique across servers, but are not handed
+ * out in order across servers, and the ids remaining in a block are never used if the server stops.
  */
 public final class IdService extends AbstractIdleService {
   private static final String IDS_BASEPATH = "/ids";
 
   private final long startId;
   private final long incrementBy;
-  private ThreadLocal<ZKInterProcessReentrantLock> idLock;
+  private final long blockSize;
+  private final Map<Type, IdBlock> idBlocks;
 
   private final ZKClient zkClient;
 
@@ -57,33 +65,26 @@ public final class IdService extends AbstractIdleService {
 
   @Inject
   private IdService(final ZKClient zkClient, Configuration conf)  {
-    this.zkClient = zkClient;
-    this.startId = conf.getInt(Constants.ID_START_NUM);
-    this.incrementBy = conf.getInt(Constants.ID_INCREMENT_BY);
+    this(zkClient, conf.getInt(Constants.ID_START_NUM), conf.getInt(Constants.ID_INCREMENT_BY),
+         conf.getInt(Constants.ID_BLOCK_SIZE));
   }
 
   // for unit testing
-  IdService(final ZKClient zkClient, int startId, int incrementBy) {
+  IdService(final ZKClient zkClient, int startId, int incrementBy, int blockSize) {
     this.zkClient = zkClient;
     this.startId = startId;
     this.incrementBy = incrementBy;
+    this.blockSize = blockSize;
+    this.idBlocks = Maps.newEnumMap(Type.class);
+    for (Type type : Type.values()) {
+      idBlocks.put(type, new IdBlock());
+    }
   }
 
   @Override
   protected void startUp() {
-    this.idLock = new ThreadLocal<ZKInterProcessReentrantLock>() {
-      @Override
-      protected ZKInterProcessReentrantLock initialValue() {
-        return new ZKInterProcessReentrantLock(zkClient, IDS_BASEPATH + "/lock");
-      }
-    };
-    idLock.get().acquire();
-    try {
-      for (Type type : Type.values()) {
-        initializeCounter(type);
-      }
-    } finally {
-      idLock.get().release();
+    for (Type type : Type.values()) {
+      initializeCounter(type);
     }
   }
 
@@ -121,24 +122,57 @@ public final class IdService extends AbstractIdleService {
     return new TaskId(jobId, generateId(Type.TASK));
   }
 
-  // This generally should not be a noticeable amount of time compared to the time it takes to perform tasks
-  // TODO: try optimistic locking before actual locking to improve performance.
   private long generateId(Type type) {
-    idLock.get().acquire();
-    try {
+    IdBlock idBlock = idBlocks.get(type);
+    synchronized (idBlock) {
+      if (idBlock.remaining == 0) {
+        leaseBlock(type, idBlock);
+      }
+      long id = idBlock.next;
+      idBlock.next += incrementBy;
+      idBlock.remaining--;
+      return id;
+    }
+  }
+
+  // moves the counter past the next block of ids, retrying if some other server moved the counter in the meantime.
+  private void leaseBlock(Type type, IdBlock idBlock) {
+    while (true) {
       NodeData nodeData = Futures.getUnchecked(zkClient.getData(type.path));
       long counterVal = Longs.fromByteArray(nodeData.getData());
-      Futures.getUnchecked(zkClient.setData(type.path, Longs.toByteArray(counterVal + incrementBy)));
-      return counterVal;
-    } finally {
-      idLock.get().release();
+      try {
+        Futures.getUnchecked(zkClient.setData(type.path, Longs.toByteArray(counterVal + blockSize * incrementBy),
+                                              nodeData.getStat().getVersion()));
+        idBlock.next = counterVal;
+        idBlock.remaining = blockSize;
+        return;
+      } catch (RuntimeException e) {
+        if (!(Throwables.getRootCause(e) instanceof KeeperException.BadVersionException)) {
+          throw e;
+        }
+      }
     }
   }
 
   private void initializeCounter(Type type) {
     Stat stat = Futures.getUnchecked(zkClient.exists(type.path));
     if (stat == null) {
-      Futures.getUnchecked(zkClient.create(type.path, Longs.toByteArray(startId), CreateMode.PERSISTENT, true));
+      try {
+        Futures.getUnchecked(zkClient.create(type.path, Longs.toByteArray(startId), CreateMode.PERSISTENT, true));
+      } catch (RuntimeException e) {
+        // fine if another server created the counter first
+        if (!(Throwables.getRootCause(e) instanceof KeeperException.NodeExistsException)) {
+          throw e;
+        }
+      }
     }
   }
+
+  /**
+   * Ids leased for a type that have not been handed out yet.
+   */
+  private static final class IdBlock {
+    private long next;
+    private long remaining;
+  }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.common.zookeeper.lib;
+
+import com.google.common.base.Objects;
+
+/**
+ * A value read from a znode, along with the version of the znode it was read at.
+ *
+ * @param <T> Type of the value.
+ */
+public final class Versioned<T> {
+  private final T value;
+  private final int version;
+  private final long modifiedZxid;
+
+  public Versioned(T value, int version, long modifiedZxid) {
+    this.value = value;
+    this.version = version;
+    this.modifiedZxid = modifiedZxid;
+  }
+
+  /**
+   * Get the value.
+   *
+   * @return Value.
+   */
+  public T getValue() {
+    return value;
+  }
+
+  /**
+   * Get the data version of the znode the value was read from, to be used for conditional writes.
+   *
+   * @return Data version of the znode.
+   */
+  public int getVersion() {
+    return version;
+  }
+
+  /**
+   * Get the zxid of the last modification of the znode the value was read from. Unlike the version, zxids are
+   * globally ordered, and are used to tell which of two reads of the same znode is more recent.
+   *
+   * @return Zxid of the last modification of the znode.
+   */
+  public long getModifiedZxid() {
+    return modifiedZxid;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("value", value)
+      .add("version", version)
+      .add("modifiedZxid", modifiedZxid)
+      .toString();
+  }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.common.zookeeper.lib;
+
+import com.continuuity.loom.common.zookeeper.ZKClientExt;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.twill.zookeeper.NodeChildren;
+import org.apache.twill.zookeeper.NodeData;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.twill.zookeeper.ZKClients;
+import org.apache.twill.zookeeper.ZKOperations;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Map backed by Zookeeper that keeps every entry in its own znode. Writes go directly to the znode of the entry and
+ * can be made conditional on the version of the entry that was last seen, so that concurrent writers, in this or in
+ * other processes, never need to hold a common lock.
+ * <p/>
+ * A local view of all entries is kept in sync through watches on the parent znode and on every entry. Reads are
+ * served from the local view, and only entries that actually changed are read again from Zookeeper. The local view
+ * may lag behind Zookeeper for a short time, which is why modifications that depend on the current value should be
+ * done through {@link #replace(String, Object, int)} and {@link #remove(String, int)}. When those fail because of a
+ * version conflict, the entry is re-read so that the next {@link #get(String)} returns the latest value.
+ *
+ * @param <T> Type of object to keep in the map.
+ */
+public class VersionedZKMap<T> {
+  private static final Logger LOG = LoggerFactory.getLogger(VersionedZKMap.class);
+  private final ZKClient zkClient;
+  private final Serializer<T> serializer;
+  private final ConcurrentMap<String, Versioned<T>> currentView;
+  private final Watcher entryWatcher;
+  // keys that entryWatcher is set on. Watchers are wrapped by the client, so Zookeeper cannot tell that the same
+  // watcher is set on a znode again, and would call it once for every time it was set.
+  private final Set<String> watchedKeys;
+  private final Listener<T> listener;
+
+  public VersionedZKMap(ZKClient zkClient, String namespace, Serializer<T> serializer) {
+    this(zkClient, namespace, serializer, null);
+  }
+
+  /**
+   * Create a map that notifies the given listener of every change to its local view, including the entries loaded
+   * when the map is created.
+   */
+  public VersionedZKMap(ZKClient zkClient, String namespace, Serializer<T> serializer,
+                        @Nullable Listener<T> listener) {
+    Futures.getUnchecked(ZKClientExt.ensureExists(zkClient, namespace));
+    this.zkClient = ZKClients.namespace(zkClient, namespace);
+    this.serializer = serializer;
+    this.listener = listener;
+    this.currentView = Maps.newConcurrentMap();
+    this.watchedKeys = Sets.newSetFromMap(Maps.<String, Boolean>newConcurrentMap());
+    this.entryWatcher = new Watcher() {
+      @Override
+      public void process(WatchedEvent event) {
+        if (event.getPath() == null) {
+          return;
+        }
+        String key = event.getPath().substring(event.getPath().lastIndexOf('/') + 1);
+        // a watch only fires once, so it is set again by the next read
+        watchedKeys.remove(key);
+        if (event.getType() == Event.EventType.NodeDeleted) {
+          evict(key);
+        } else if (event.getType() == Event.EventType.NodeDataChanged) {
+          fetch(key);
+        }
+      }
+    };
+    Futures.getUnchecked(setExternalChangeWatcher());
+  }
+
+  /**
+   * Get the value of the given key as currently seen by this map.
+   *
+   * @param key Key to get the value of.
+   * @return Value of the given key along with its version, or null if there is no such key.
+   */
+  public Versioned<T> get(String key) {
+    return currentView.get(key);
+  }
+
+  /**
+   * Read the value of the given key from Zookeeper, bypassing the local view.
+   *
+   * @param key Key to read the value of.
+   * @return Value of the given key along with its version, or null if there is no such key.
+   */
+  public Versioned<T> refresh(String key) {
+    NodeData nodeData;
+    try {
+      nodeData = Futures.getUnchecked(getData(key));
+    } catch (RuntimeException e) {
+      if (causedBy(e, KeeperException.NoNodeException.class)) {
+        evict(key);
+        return null;
+      }
+      throw e;
+    }
+    return update(key, nodeData.getData(), nodeData.getStat());
+  }
+
+  /**
+   * Get all values as currently seen by this map.
+   *
+   * @return Unmodifiable view of all values in the map.
+   */
+  public Collection<Versioned<T>> values() {
+    return Collections.unmodifiableCollection(currentView.values());
+  }
+
+  /**
+   * Get the number of entries as currently seen by this map.
+   *
+   * @return Number of entries in the map.
+   */
+  public int size() {
+    return currentView.size();
+  }
+
+  /**
+   * Set the value of a key, regardless of whether or not it already exists and of what its current version is.
+   *
+   * @param key Key to set.
+   * @param value Value to set.
+   * @return New value of the key along with its version.
+   */
+  public Versioned<T> put(String key, T value) {
+    ZKClientExt.SetResult result = Futures.getUnchecked(
+      ZKClientExt.createOrSet(zkClient, getNodePath(key), serializer.serialize(value), CreateMode.PERSISTENT));
+    if (result.getStat() == null) {
+      // node was created, read it back to get its stat and to start watching it
+      return refresh(key);
+    }
+    return update(key, value, result.getStat());
+  }
+
+  /**
+   * Set the value of a key if its version in Zookeeper matches the given version.
+   *
+   * @param key Key to set.
+   * @param value Value to set.
+   * @param expectedVersion Version the key must be at for the value to be set.
+   * @return New value of the key along with its version, or null if the key does not exist or is not at the
+   *         expected version.
+   */
+  public Versioned<T> replace(String key, T value, int expectedVersion) {
+    try {
+      Stat stat = Futures.getUnchecked(zkClient.setData(getNodePath(key), serializer.serialize(value),
+                                                        expectedVersion));
+      return update(key, value, stat);
+    } catch (RuntimeException e) {
+      if (causedBy(e, KeeperException.BadVersionException.class)) {
+        refresh(key);
+        return null;
+      } else if (causedBy(e, KeeperException.NoNodeException.class)) {
+        evict(key);
+        return null;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Remove a key if its version in Zookeeper matches the given version.
+   *
+   * @param key Key to remove.
+   * @param expectedVersion Version the key must be at for it to be removed.
+   * @return true if the key was removed, false if the key does not exist or is not at the expected version.
+   */
+  public boolean remove(String key, int expectedVersion) {
+    try {
+      Futures.getUnchecked(zkClient.delete(getNodePath(key), expectedVersion));
+      evict(key);
+      return true;
+    } catch (RuntimeException e) {
+      if (causedBy(e, KeeperException.BadVersionException.class)) {
+        refresh(key);
+        return false;
+      } else if (causedBy(e, KeeperException.NoNodeException.class)) {
+        evict(key);
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Remove a key regardless of what its current version is. Removing a key that does not exist is a no-op.
+   *
+   * @param key Key to remove.
+   */
+  public void remove(String key) {
+    Futures.getUnchecked(ZKClientExt.delete(zkClient, getNodePath(key), true));
+    evict(key);
+  }
+
+  /**
+   * Remove all keys.
+   */
+  public void clear() {
+    NodeChildren nodeChildren = Futures.getUnchecked(zkClient.getChildren(""));
+    List<ListenableFuture<String>> deleteFutures = Lists.newArrayList();
+    for (String node : nodeChildren.getChildren()) {
+      deleteFutures.add(ZKClientExt.delete(zkClient, getNodePath(node), true));
+    }
+    Futures.getUnchecked(Futures.allAsList(deleteFutures));
+    for (String key : currentView.keySet()) {
+      evict(key);
+    }
+  }
+
+  private ListenableFuture<Void> setExternalChangeWatcher() {
+    final SettableFuture<Void> initialized = SettableFuture.create();
+    ZKOperations.watchChildren(zkClient, "", new ZKOperations.ChildrenCallback() {
+      @Override
+      public void updated(NodeChildren nodeChildren) {
+        Set<String> newKeys = Sets.newHashSet(nodeChildren.getChildren());
+        long zxid = nodeChildren.getStat().getPzxid();
+        synchronized (VersionedZKMap.this) {
+          for (Map.Entry<String, Versioned<T>> entry : currentView.entrySet()) {
+            // entries modified after the listing may have been created after it, so they are left alone
+            if (!newKeys.contains(entry.getKey()) && entry.getValue().getModifiedZxid() <= zxid) {
+              evict(entry.getKey());
+            }
+          }
+        }
+        newKeys.removeAll(currentView.keySet());
+        final AtomicInteger remaining = new AtomicInteger(newKeys.size());
+        if (remaining.get() == 0) {
+          initialized.set(null);
+        }
+        for (String key : newKeys) {
+          Futures.addCallback(fetch(key), new FutureCallback<Versioned<T>>() {
+            @Override
+            public void onSuccess(Versioned<T> result) {
+              if (remaining.decrementAndGet() == 0) {
+                initialized.set(null);
+              }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+              onSuccess(null);
+            }
+          });
+        }
+      }
+    });
+    return initialized;
+  }
+
+  private ListenableFuture<Versioned<T>> fetch(final String key) {
+    final SettableFuture<Versioned<T>> result = SettableFuture.create();
+    Futures.addCallback(getData(key), new FutureCallback<NodeData>() {
+      @Override
+      public void onSuccess(NodeData nodeData) {
+        result.set(update(key, nodeData.getData(), nodeData.getStat()));
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        if (causedBy(t, KeeperException.NoNodeException.class)) {
+          evict(key);
+        } else {
+          LOG.error("Failed to read entry {}", key, t);
+        }
+        result.setException(t);
+      }
+    });
+    return result;
+  }
+
+  // reads the znode of the key, setting the entry watcher on it only if it is not already set.
+  private ListenableFuture<NodeData> getData(final String key) {
+    if (!watchedKeys.add(key)) {
+      return zkClient.getData(getNodePath(key));
+    }
+    ListenableFuture<NodeData> result = zkClient.getData(getNodePath(key), entryWatcher);
+    Futures.addCallback(result, new FutureCallback<NodeData>() {
+      @Override
+      public void onSuccess(NodeData nodeData) {
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        // no watch is left on a znode that could not be read
+        watchedKeys.remove(key);
+      }
+    });
+    return result;
+  }
+
+  private Versioned<T> update(String key, byte[] data, Stat stat) {
+    return update(key, serializer.deserialize(data), stat);
+  }
+
+  // only replaces what is in the local view if the given value is more recent, so that reads completing out of order
+  // do not move the local view back in time.
+  private synchronized Versioned<T> update(String key, T value, Stat stat) {
+    Versioned<T> existing = currentView.get(key);
+    if (existing != null && existing.getModifiedZxid() >= stat.getMzxid()) {
+      return existing;
+    }
+    Versioned<T> versioned = new Versioned<T>(value, stat.getVersion(), stat.getMzxid());
+    currentView.put(key, versioned);
+    if (listener != null) {
+      listener.updated(key, versioned);
+    }
+    return versioned;
+  }
+
+  private synchronized void evict(String key) {
+    watchedKeys.remove(key);
+    if (currentView.remove(key) != null && listener != null) {
+      listener.removed(key);
+    }
+  }
+
+  private String getNodePath(String key) {
+    return "/" + key;
+  }
+
+  private static boolean causedBy(Throwable t, Class<? extends KeeperException> ex) {
+    for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+      if (ex.isInstance(cause)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Listener for changes to the local view of the map. Listeners are called while the map is locked, so they see
+   * changes in the same order the local view does, and must not block.
+   *
+   * @param <T> Type of object kept in the map.
+   */
+  public interface Listener<T> {
+    /**
+     * Called when a key is added to the local view, or when its value in the local view changes.
+     *
+     * @param key Key that was added or changed.
+     * @param value New value of the key.
+     */
+    void updated(String key, Versioned<T> value);
+
+    /**
+     * Called when a key is removed from the local view.
+     *
+     * @param key Key that was removed.
+     */
+    void removed(String key);
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.http.handler;
+
+import com.continuuity.http.HttpResponder;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMultimap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * Writer that sends what is written to it as a chunked JSON response, so that large responses can be written without
+ * building them up in memory first. Written characters are buffered and sent as a chunk whenever the buffer fills up
+ * or the writer is flushed. The response is only started when the first chunk is sent, which means an error response
+ * can still be sent instead as long as {@link #isStarted()} returns false. Closing the writer ends the response.
+ */
+final class ChunkResponderWriter extends Writer {
+  private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+  private final HttpResponder responder;
+  private final char[] buffer;
+  private int size;
+  private boolean started;
+  private boolean closed;
+
+  ChunkResponderWriter(HttpResponder responder) {
+    this(responder, DEFAULT_BUFFER_SIZE);
+  }
+
+  ChunkResponderWriter(HttpResponder responder, int bufferSize) {
+    Preconditions.checkArgument(bufferSize > 1, "Buffer size must be greater than 1.");
+    this.responder = responder;
+    this.buffer = new char[bufferSize];
+  }
+
+  /**
+   * Returns whether or not the response has been started, which is the case once any chunk has been sent.
+   *
+   * @return True if the response has been started, false if not.
+   */
+  boolean isStarted() {
+    return started;
+  }
+
+  @Override
+  public void write(char[] cbuf, int off, int len) throws IOException {
+    ensureOpen();
+    int offset = off;
+    int remaining = len;
+    while (remaining > 0) {
+      int num = Math.min(remaining, buffer.length - size);
+      System.arraycopy(cbuf, offset, buffer, size, num);
+      size += num;
+      offset += num;
+      remaining -= num;
+      if (size == buffer.length) {
+        sendBuffered(false);
+      }
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    ensureOpen();
+    sendBuffered(false);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    sendBuffered(true);
+    start();
+    closed = true;
+    responder.sendChunkEnd();
+  }
+
+  private void sendBuffered(boolean all) {
+    int num = size;
+    // a surrogate pair can't be encoded in two halves, so a trailing high surrogate waits for the next chunk.
+    if (!all && num > 0 && Character.isHighSurrogate(buffer[num - 1])) {
+      num--;
+    }
+    if (num == 0) {
+      return;
+    }
+    start();
+    responder.sendChunk(ChannelBuffers.wrappedBuffer(Charsets.UTF_8.encode(CharBuffer.wrap(buffer, 0, num))));
+    if (num < size) {
+      buffer[0] = buffer[num];
+    }
+    size -= num;
+  }
+
+  private void start() {
+    if (!started) {
+      started = true;
+      responder.sendChunkStart(HttpResponseStatus.OK,
+                               ImmutableMultimap.of(HttpHeaders.Names.CONTENT_TYPE, "application/json"));
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Writer is closed.");
+    }
+  }
+}
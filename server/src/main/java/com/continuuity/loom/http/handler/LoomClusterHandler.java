@@ -18,6 +18,7 @@ package com.continuuity.loom.http.handler;
 import com.continuuity.http.HttpResponder;
 import com.continuuity.loom.account.Account;
 import com.continuuity.loom.cluster.Cluster;
+import com.continuuity.loom.cluster.ClusterSummary;
 import com.continuuity.loom.cluster.Node;
 import com.continuuity.loom.codec.json.JsonSerde;
 import com.continuuity.loom.common.conf.Configuration;
@@ -34,15 +35,18 @@ import com.continuuity.loom.scheduler.task.JobId;
 import com.continuuity.loom.scheduler.task.MissingClusterException;
 import com.continuuity.loom.scheduler.task.MissingEntityException;
 import com.continuuity.loom.scheduler.task.TaskId;
+import com.continuuity.loom.store.ResultHandler;
 import com.continuuity.loom.store.cluster.ClusterStore;
 import com.continuuity.loom.store.cluster.ClusterStoreService;
 import com.continuuity.loom.store.cluster.ClusterStoreView;
 import com.continuuity.loom.store.tenant.TenantStore;
 import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonWriter;
 import com.google.inject.Inject;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.jboss.netty.handler.codec.http.HttpRequest;
@@ -91,7 +95,9 @@ public class LoomClusterHandler extends LoomAuthHandler {
   }
 
   /**
-   * Get all clusters visible to the user.
+   * Get all clusters visible to the user, newest first. Clusters are streamed from the store as a chunked response.
+   * The optional "limit" and "after" query parameters page through the clusters, where "after" is the id of the last
+   * cluster of the previous page.
    *
    * @param request Request for clusters.
    * @param responder Responder for sending the response.
@@ -103,30 +109,47 @@ public class LoomClusterHandler extends LoomAuthHandler {
       return;
     }
 
-    List<Cluster> clusters = null;
+    Pagination pagination;
     try {
-      clusters = clusterStoreService.getView(account).getAllClusters();
-    } catch (IOException e) {
-      responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Exception getting clusters.");
+      pagination = Pagination.fromClusterRequest(request);
+    } catch (IllegalArgumentException e) {
+      responder.sendError(HttpResponseStatus.BAD_REQUEST, e.getMessage());
+      return;
     }
 
-    JsonArray jsonArray = new JsonArray();
-    for (Cluster cluster : clusters) {
-      JsonObject obj = new JsonObject();
-      obj.addProperty("id", cluster.getId());
-      obj.addProperty("name", cluster.getName());
-      obj.addProperty("createTime", cluster.getCreateTime());
-      obj.addProperty("expireTime", cluster.getExpireTime());
-      obj.addProperty("clusterTemplate",
-                      cluster.getClusterTemplate() == null ? "..." : cluster.getClusterTemplate().getName());
-      obj.addProperty("numNodes", cluster.getNodes().size());
-      obj.addProperty("status", cluster.getStatus().name());
-      obj.addProperty("ownerId", cluster.getAccount().getUserId());
-
-      jsonArray.add(obj);
+    ChunkResponderWriter writer = new ChunkResponderWriter(responder);
+    final JsonWriter jsonWriter = new JsonWriter(writer);
+    try {
+      jsonWriter.beginArray();
+      clusterStoreService.getView(account).getClusterSummaries(
+        pagination.getAfter(), pagination.getLimit(), new ResultHandler<ClusterSummary>() {
+        @Override
+        public boolean handle(ClusterSummary cluster) throws IOException {
+          JsonObject obj = new JsonObject();
+          obj.addProperty("id", cluster.getId());
+          obj.addProperty("name", cluster.getName());
+          obj.addProperty("createTime", cluster.getCreateTime());
+          obj.addProperty("expireTime", cluster.getExpireTime());
+          obj.addProperty("clusterTemplate", cluster.getTemplateName() == null ? "..." : cluster.getTemplateName());
+          obj.addProperty("numNodes", cluster.getNumNodes());
+          obj.addProperty("status", cluster.getStatus().name());
+          obj.addProperty("ownerId", cluster.getAccount().getUserId());
+
+          GSON.toJson(obj, jsonWriter);
+          return true;
+        }
+      });
+      jsonWriter.endArray();
+      jsonWriter.close();
+    } catch (IOException e) {
+      LOG.error("Exception getting clusters for account {}.", account, e);
+      if (writer.isStarted()) {
+        // too late for an error response, end the response so the client sees the json is cut short.
+        Closeables.closeQuietly(writer);
+      } else {
+        responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Exception getting clusters.");
+      }
     }
-
-    responder.sendJson(HttpResponseStatus.OK, jsonArray);
   }
 
   /**
@@ -267,6 +290,10 @@ public class LoomClusterHandler extends LoomAuthHandler {
   }
 
   protected static JsonObject getClusterResponseJson(Cluster cluster, ClusterJob job) {
+    return getClusterResponseJson(cluster.getId(), cluster.getStatus(), job);
+  }
+
+  protected static JsonObject getClusterResponseJson(String clusterId, Cluster.Status clusterStatus, ClusterJob job) {
     Map<String, ClusterTask.Status> taskStatus = job.getTaskStatus();
 
     int completedTasks = 0;
@@ -277,10 +304,10 @@ public class LoomClusterHandler extends LoomAuthHandler {
     }
 
     JsonObject object = new JsonObject();
-    object.addProperty("clusterid", cluster.getId());
+    object.addProperty("clusterid", clusterId);
     object.addProperty("stepstotal", taskStatus.size());
     object.addProperty("stepscompleted", completedTasks);
-    object.addProperty("status", cluster.getStatus().name());
+    object.addProperty("status", clusterStatus.name());
     object.addProperty("actionstatus", job.getJobStatus().toString());
     object.addProperty("action", job.getClusterAction().name());
 
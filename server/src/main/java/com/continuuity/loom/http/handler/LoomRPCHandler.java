@@ -18,29 +18,36 @@ package com.continuuity.loom.http.handler;
 import com.continuuity.http.HttpResponder;
 import com.continuuity.loom.account.Account;
 import com.continuuity.loom.admin.Service;
-import com.continuuity.loom.cluster.Cluster;
+import com.continuuity.loom.cluster.ClusterSummary;
 import com.continuuity.loom.cluster.Node;
 import com.continuuity.loom.codec.json.NodePropertiesRequestCodec;
 import com.continuuity.loom.http.request.NodePropertiesRequest;
 import com.continuuity.loom.scheduler.task.ClusterJob;
 import com.continuuity.loom.scheduler.task.JobId;
+import com.continuuity.loom.store.ResultHandler;
 import com.continuuity.loom.store.cluster.ClusterStore;
 import com.continuuity.loom.store.cluster.ClusterStoreService;
+import com.continuuity.loom.store.cluster.ClusterStoreView;
 import com.continuuity.loom.store.tenant.TenantStore;
 import com.google.common.base.Charsets;
-import com.google.common.collect.Maps;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import com.google.inject.Inject;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.List;
@@ -54,6 +61,9 @@ import java.util.Set;
 public class LoomRPCHandler extends LoomAuthHandler {
   private static final Gson GSON = new GsonBuilder()
     .registerTypeAdapter(NodePropertiesRequest.class, new NodePropertiesRequestCodec()).create();
+  private static final Logger LOG  = LoggerFactory.getLogger(LoomRPCHandler.class);
+  // number of clusters to read from the store at a time when getting cluster statuses.
+  private static final int STATUS_BATCH_SIZE = 100;
   private final ClusterStoreService clusterStoreService;
   private final ClusterStore clusterStore;
 
@@ -66,7 +76,11 @@ public class LoomRPCHandler extends LoomAuthHandler {
   }
 
   /**
-   * Get the cluster status for all clusters readable by the user making the request.
+   * Get the cluster status for all clusters readable by the user making the request, newest cluster first. Cluster
+   * summaries are read from the store in batches and streamed as a chunked response, along with the latest job of
+   * each cluster in the batch.
+   * The optional "limit" and "after" query parameters page through the clusters, where "after" is the id of the last
+   * cluster of the previous page.
    *
    * @param request The request for cluster statuses.
    * @param responder Responder for sending the response.
@@ -80,33 +94,88 @@ public class LoomRPCHandler extends LoomAuthHandler {
       return;
     }
 
-    // TODO: Improve this logic by using a table join instead of separate calls for cluster and jobId
-
-    List<Cluster> clusters = clusterStoreService.getView(account).getAllClusters();
-    if (clusters.size() == 0) {
-      responder.sendError(HttpResponseStatus.NOT_FOUND, String.format("No clusters found"));
+    Pagination pagination;
+    try {
+      pagination = Pagination.fromClusterRequest(request);
+    } catch (IllegalArgumentException e) {
+      responder.sendError(HttpResponseStatus.BAD_REQUEST, e.getMessage());
       return;
     }
 
-    JsonArray response = new JsonArray();
-
-    Map<JobId, Cluster> clusterMap = Maps.newHashMap();
-    for (Cluster cluster : clusters) {
-      clusterMap.put(JobId.fromString(cluster.getLatestJobId()), cluster);
-    }
+    ClusterStoreView view = clusterStoreService.getView(account);
+    ChunkResponderWriter writer = new ChunkResponderWriter(responder);
+    JsonWriter jsonWriter = new JsonWriter(writer);
+    boolean foundClusters = false;
+    boolean foundJobs = false;
+    try {
+      jsonWriter.beginArray();
+      String after = pagination.getAfter();
+      int remaining = pagination.getLimit();
+      while (remaining != 0) {
+        int batchSize = remaining < 0 ? STATUS_BATCH_SIZE : Math.min(remaining, STATUS_BATCH_SIZE);
+        final List<ClusterSummary> clusters = Lists.newArrayListWithCapacity(batchSize);
+        view.getClusterSummaries(after, batchSize, new ResultHandler<ClusterSummary>() {
+          @Override
+          public boolean handle(ClusterSummary cluster) {
+            clusters.add(cluster);
+            return true;
+          }
+        });
+        if (clusters.isEmpty()) {
+          break;
+        }
+        foundClusters = true;
 
-    Map<JobId, ClusterJob> jobs = clusterStore.getClusterJobs(clusterMap.keySet(), account.getTenantId());
+        Set<JobId> jobIds = Sets.newHashSet();
+        for (ClusterSummary cluster : clusters) {
+          if (cluster.getLatestJobId() != null) {
+            jobIds.add(JobId.fromString(cluster.getLatestJobId()));
+          }
+        }
+        Map<JobId, ClusterJob> jobs = jobIds.isEmpty() ? ImmutableMap.<JobId, ClusterJob>of() :
+          clusterStore.getClusterJobs(jobIds, account.getTenantId());
+        for (ClusterSummary cluster : clusters) {
+          if (cluster.getLatestJobId() == null) {
+            continue;
+          }
+          ClusterJob job = jobs.get(JobId.fromString(cluster.getLatestJobId()));
+          if (job != null) {
+            foundJobs = true;
+            GSON.toJson(LoomClusterHandler.getClusterResponseJson(cluster.getId(), cluster.getStatus(), job),
+                        jsonWriter);
+          }
+        }
 
-    if (jobs.size() == 0) {
-      responder.sendError(HttpResponseStatus.NOT_FOUND, String.format("No jobs found for clusters"));
+        if (clusters.size() < batchSize) {
+          break;
+        }
+        after = clusters.get(clusters.size() - 1).getId();
+        if (remaining > 0) {
+          remaining -= clusters.size();
+        }
+      }
+    } catch (IOException e) {
+      LOG.error("Exception getting cluster statuses for account {}.", account, e);
+      if (writer.isStarted()) {
+        // too late for an error response, end the response so the client sees the json is cut short.
+        Closeables.closeQuietly(writer);
+      } else {
+        responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Exception getting cluster statuses.");
+      }
       return;
     }
 
-    for (JobId jobId : jobs.keySet()) {
-      response.add(LoomClusterHandler.getClusterResponseJson(clusterMap.get(jobId), jobs.get(jobId)));
+    // nothing is sent before the writer fills up, so if nothing was found an error can still be sent instead.
+    // Later pages are allowed to be empty.
+    boolean canSendNotFound = !writer.isStarted() && pagination.getAfter() == null && pagination.getLimit() != 0;
+    if (canSendNotFound && !foundClusters) {
+      responder.sendError(HttpResponseStatus.NOT_FOUND, String.format("No clusters found"));
+    } else if (canSendNotFound && !foundJobs) {
+      responder.sendError(HttpResponseStatus.NOT_FOUND, String.format("No jobs found for clusters"));
+    } else {
+      jsonWriter.endArray();
+      jsonWriter.close();
     }
-
-    responder.sendJson(HttpResponseStatus.OK, response);
   }
 
   /**
@@ -115,7 +184,9 @@ public class LoomRPCHandler extends LoomAuthHandler {
    * of node properties like "ipaddress" and "hostname" to return in the response. The "services" key maps to an
    * array of service names, indicating that all nodes returned by have all services given in the array. The response
    * is a JSON object with node ids as keys and JSON objects as values, where the value contains the properties passed
-   * in, or all properties if none were passed in.
+   * in, or all properties if none were passed in. Nodes are streamed from the store as a chunked response, ordered by
+   * node id. The optional "limit" and "after" query parameters page through the nodes, where "after" is the id of the
+   * last node of the previous page.
    *
    * @param request Request for node properties in a cluster.
    * @param responder Responder for sending the response.
@@ -140,38 +211,68 @@ public class LoomRPCHandler extends LoomAuthHandler {
       return;
     }
 
-    Map<String, JsonObject> output = Maps.newHashMap();
-    Set<Node> clusterNodes = clusterStoreService.getView(account).getClusterNodes(nodeRequest.getClusterId());
-    Set<String> properties = nodeRequest.getProperties();
-    Set<String> requiredServices = nodeRequest.getServices();
+    final Pagination pagination;
+    try {
+      pagination = Pagination.fromRequest(request);
+    } catch (IllegalArgumentException e) {
+      responder.sendError(HttpResponseStatus.BAD_REQUEST, e.getMessage());
+      return;
+    }
 
-    for (Node node : clusterNodes) {
-      Set<String> nodeServices = Sets.newHashSet();
-      for (Service service : node.getServices()) {
-        nodeServices.add(service.getName());
-      }
+    final Set<String> properties = nodeRequest.getProperties();
+    final Set<String> requiredServices = nodeRequest.getServices();
+    ChunkResponderWriter writer = new ChunkResponderWriter(responder);
+    final JsonWriter jsonWriter = new JsonWriter(writer);
+    try {
+      jsonWriter.beginObject();
+      // nodes are filtered after they are read, so the limit is applied to the nodes written instead of in the store.
+      if (pagination.getLimit() != 0) {
+        clusterStoreService.getView(account).getClusterNodes(
+          nodeRequest.getClusterId(), pagination.getAfter(), -1, new ResultHandler<Node>() {
+          private int numWritten = 0;
+
+          @Override
+          public boolean handle(Node node) throws IOException {
+            Set<String> nodeServices = Sets.newHashSet();
+            for (Service service : node.getServices()) {
+              nodeServices.add(service.getName());
+            }
 
-      // if the node has all services needed
-      if (nodeServices.containsAll(requiredServices)) {
-        JsonObject outputProperties;
-        // if the request contains a list of properties, just include those properties
-        if (properties.size() > 0) {
-          outputProperties = new JsonObject();
-          JsonObject nodeProperties = node.getProperties();
-          // add all requested node properties
-          for (String property : properties) {
-            if (nodeProperties.has(property)) {
-              outputProperties.add(property, nodeProperties.get(property));
+            // if the node has all services needed
+            if (nodeServices.containsAll(requiredServices)) {
+              JsonObject outputProperties;
+              // if the request contains a list of properties, just include those properties
+              if (properties.size() > 0) {
+                outputProperties = new JsonObject();
+                JsonObject nodeProperties = node.getProperties();
+                // add all requested node properties
+                for (String property : properties) {
+                  if (nodeProperties.has(property)) {
+                    outputProperties.add(property, nodeProperties.get(property));
+                  }
+                }
+              } else {
+                // request did not contain a list of properties, include them all
+                outputProperties = node.getProperties();
+              }
+              jsonWriter.name(node.getId());
+              GSON.toJson(outputProperties, jsonWriter);
+              numWritten++;
             }
+            return pagination.getLimit() < 0 || numWritten < pagination.getLimit();
           }
-        } else {
-          // request did not contain a list of properties, include them all
-          outputProperties = node.getProperties();
-        }
-        output.put(node.getId(), outputProperties);
+        });
+      }
+      jsonWriter.endObject();
+      jsonWriter.close();
+    } catch (IOException e) {
+      LOG.error("Exception getting node properties for cluster {}.", nodeRequest.getClusterId(), e);
+      if (writer.isStarted()) {
+        // too late for an error response, end the response so the client sees the json is cut short.
+        Closeables.closeQuietly(writer);
+      } else {
+        responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Exception getting node properties.");
       }
     }
-
-    responder.sendJson(HttpResponseStatus.OK, output);
   }
 }
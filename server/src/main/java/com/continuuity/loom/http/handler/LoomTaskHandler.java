@@ -16,10 +16,15 @@
 package com.continuuity.loom.http.handler;
 
 import com.continuuity.http.AbstractHttpHandler;
+import com.continuuity.http.HandlerContext;
 import com.continuuity.http.HttpResponder;
 import com.continuuity.loom.codec.json.JsonSerde;
 import com.continuuity.loom.scheduler.task.TaskQueueService;
 import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.inject.Inject;
@@ -33,6 +38,7 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.List;
 
 /**
  * Handles requests to take and finish tasks from provisioners.
@@ -49,10 +55,20 @@ public final class LoomTaskHandler extends AbstractHttpHandler {
     this.taskQueueService = taskQueueService;
   }
 
+  @Override
+  public void destroy(HandlerContext context) {
+    // workers still waiting for tasks are given none, so that their requests can be answered before shutting down.
+    taskQueueService.shutdown();
+  }
+
   /**
    * Take a task from the queue to execute. Post body must contain a workerId key, which must also be passed back
    * when finishing a task. Tasks are returned as a json object with taskId, jobId, clusterId, taskName and nodeId
    * as key value pairs, and with a config key whose value is a json object with all the configuration settings.
+   * If the post body contains a maxTasks key, up to that many tasks are taken at once and returned as a json array of
+   * task objects, which saves a round trip per task for workers that can run several tasks. If the post body contains
+   * a waitMs key and there are no tasks to take, the request waits up to that many milliseconds for tasks to be added
+   * before a 204 is returned, so that idle workers don't have to keep polling.
    *
    * @param request The request to take a task.
    * @param responder Responder to send the response.
@@ -60,7 +76,7 @@ public final class LoomTaskHandler extends AbstractHttpHandler {
    */
   @POST
   @Path("/take")
-  public void handleTakeTask(HttpRequest request, HttpResponder responder) throws Exception {
+  public void handleTakeTask(HttpRequest request, final HttpResponder responder) throws Exception {
     JsonObject body;
 
     try {
@@ -75,15 +91,67 @@ public final class LoomTaskHandler extends AbstractHttpHandler {
       return;
     }
 
-    String workerId = body.get("workerId").getAsString();
-    String taskJson = taskQueueService.takeNextClusterTask(workerId);
+    final String workerId = body.get("workerId").getAsString();
+
+    final boolean multipleTasks = body.has("maxTasks") && body.get("maxTasks") != null;
+    int maxTasks = 1;
+    if (multipleTasks) {
+      try {
+        maxTasks = body.get("maxTasks").getAsInt();
+      } catch (Exception e) {
+        responder.sendError(HttpResponseStatus.BAD_REQUEST, "maxTasks must be a number.");
+        return;
+      }
+      if (maxTasks < 1) {
+        responder.sendError(HttpResponseStatus.BAD_REQUEST, "maxTasks must be at least 1.");
+        return;
+      }
+    }
 
-    if (taskJson == null) {
-      responder.sendError(HttpResponseStatus.NO_CONTENT, "no tasks to take for worker " + workerId);
+    long waitMs = 0;
+    if (body.has("waitMs") && body.get("waitMs") != null) {
+      try {
+        waitMs = body.get("waitMs").getAsLong();
+      } catch (Exception e) {
+        responder.sendError(HttpResponseStatus.BAD_REQUEST, "waitMs must be a number.");
+        return;
+      }
+      if (waitMs < 0) {
+        responder.sendError(HttpResponseStatus.BAD_REQUEST, "waitMs must not be negative.");
+        return;
+      }
+    }
+
+    if (waitMs == 0) {
+      sendTasks(taskQueueService.takeNextClusterTasks(workerId, maxTasks), multipleTasks, workerId, responder);
       return;
     }
 
-    responder.sendString(HttpResponseStatus.OK, taskJson);
+    // the response is sent once tasks are available or the wait is over, without holding up the handler thread.
+    ListenableFuture<List<String>> taken = taskQueueService.takeNextClusterTasks(workerId, maxTasks, waitMs);
+    Futures.addCallback(taken, new FutureCallback<List<String>>() {
+      @Override
+      public void onSuccess(List<String> taskJsons) {
+        sendTasks(taskJsons, multipleTasks, workerId, responder);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        LOG.error("Exception taking tasks for worker {}.", workerId, t);
+        responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "error taking tasks.");
+      }
+    });
+  }
+
+  private void sendTasks(List<String> taskJsons, boolean multipleTasks, String workerId, HttpResponder responder) {
+    if (taskJsons.isEmpty()) {
+      responder.sendError(HttpResponseStatus.NO_CONTENT, "no tasks to take for worker " + workerId);
+    } else if (multipleTasks) {
+      // task json is already serialized, no need to parse it again just to put it in an array
+      responder.sendString(HttpResponseStatus.OK, "[" + Joiner.on(',').join(taskJsons) + "]");
+    } else {
+      responder.sendString(HttpResponseStatus.OK, taskJsons.get(0));
+    }
   }
 
   /**
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.http.handler;
+
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.QueryStringDecoder;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cursor based pagination parameters of a request, given as query parameters. The "limit" parameter is the max
+ * number of items to return, and the "after" parameter is the id of the last item of the previous page. Both are
+ * optional, and a request without them gets all items.
+ */
+final class Pagination {
+  static final String LIMIT_PARAM = "limit";
+  static final String AFTER_PARAM = "after";
+  private final int limit;
+  private final String after;
+
+  private Pagination(int limit, String after) {
+    this.limit = limit;
+    this.after = after;
+  }
+
+  /**
+   * Get the pagination parameters of the given request, for items whose ids can be any string.
+   *
+   * @param request Request to get the pagination parameters of.
+   * @return Pagination parameters of the request.
+   * @throws IllegalArgumentException if the limit is not a non-negative integer.
+   */
+  static Pagination fromRequest(HttpRequest request) {
+    return fromRequest(request, false);
+  }
+
+  /**
+   * Get the pagination parameters of the given request, for clusters, whose ids are numbers.
+   *
+   * @param request Request to get the pagination parameters of.
+   * @return Pagination parameters of the request.
+   * @throws IllegalArgumentException if the limit is not a non-negative integer or the after id is not a number.
+   */
+  static Pagination fromClusterRequest(HttpRequest request) {
+    return fromRequest(request, true);
+  }
+
+  private static Pagination fromRequest(HttpRequest request, boolean numericIds) {
+    Map<String, List<String>> params = new QueryStringDecoder(request.getUri()).getParameters();
+    int limit = -1;
+    String limitStr = getFirst(params, LIMIT_PARAM);
+    if (limitStr != null) {
+      try {
+        limit = Integer.parseInt(limitStr);
+      } catch (NumberFormatException e) {
+        limit = -1;
+      }
+      if (limit < 0) {
+        throw new IllegalArgumentException("Invalid " + LIMIT_PARAM + " " + limitStr +
+                                             ". Must be a non-negative integer.");
+      }
+    }
+    String after = getFirst(params, AFTER_PARAM);
+    if (after != null && numericIds) {
+      try {
+        Long.parseLong(after);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid " + AFTER_PARAM + " " + after + ". Must be a cluster id.");
+      }
+    }
+    return new Pagination(limit, after);
+  }
+
+  /**
+   * Get the max number of items to return.
+   *
+   * @return Max number of items to return, or a negative number if there is no limit.
+   */
+  int getLimit() {
+    return limit;
+  }
+
+  /**
+   * Get the id of the item after which to start returning items.
+   *
+   * @return Id of the item after which to start returning items, or null to start from the first item.
+   */
+  @Nullable
+  String getAfter() {
+    return after;
+  }
+
+  private static String getFirst(Map<String, List<String>> params, String name) {
+    List<String> values = params.get(name);
+    return values == null || values.isEmpty() ? null : values.get(0);
+  }
+}
@@ -17,12 +17,20 @@ package com.continuuity.loom.layout;
 
 import com.continuuity.loom.admin.ClusterTemplate;
 import com.continuuity.loom.admin.ServiceConstraint;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
 
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Class that takes in an ordered list of {@link NodeLayout}s by preference, {@link ClusterTemplate}, number of
@@ -30,29 +38,86 @@ import java.util.Set;
  * be used to satisfy constraints in the template.
  */
 public class ClusterLayoutFinder {
-  private final List<NodeLayout> nodePreferences;
+  // how many search steps to take between checks of the time budget
+  private static final int STEPS_PER_BUDGET_CHECK = 1024;
+  // how many parts to split the search into for each thread searching in parallel, so that threads that finish their
+  // part early can take another.
+  private static final int PARTS_PER_THREAD = 4;
   private final int numMachines;
-  private final Map<String, ServiceConstraint> serviceConstraints;
-  private Map<String, Integer> serviceCounts;
+  private final long maxSearchMillis;
+  // services and constraints are compiled into arrays indexed by service, so that the search only does int arithmetic.
+  // services without constraints have a min of 0 and a max of integer max.
+  private final int[] minCounts;
+  private final int[] maxCounts;
+  // indexes of services that have constraints
+  private final int[] constrainedServices;
+  // layoutServices[i] is the indexes of the services on the i'th node layout
+  private final int[][] layoutServices;
+  // serviceLayouts[s] is the indexes of the node layouts that have service s, in increasing order
+  private final int[][] serviceLayouts;
 
   public ClusterLayoutFinder(List<NodeLayout> nodePreferences, ClusterTemplate template, Set<String> services,
                              int numMachines) {
-    this.nodePreferences = nodePreferences;
+    this(nodePreferences, template, services, numMachines, 0);
+  }
+
+  /**
+   * Create a finder that gives up looking for a layout after the given amount of time.
+   *
+   * @param nodePreferences Node layouts that can be used, ordered by preference.
+   * @param template Template of the cluster.
+   * @param services Services to place on the cluster.
+   * @param numMachines Number of machines in the cluster.
+   * @param maxSearchMillis Milliseconds to look for a layout for before giving up, 0 to never give up.
+   */
+  public ClusterLayoutFinder(List<NodeLayout> nodePreferences, ClusterTemplate template, Set<String> services,
+                             int numMachines, long maxSearchMillis) {
     this.numMachines = numMachines;
-    serviceConstraints = Maps.newHashMap();
+    this.maxSearchMillis = maxSearchMillis;
+
+    Map<String, Integer> serviceIndexes = Maps.newHashMap();
+    for (String service : services) {
+      serviceIndexes.put(service, serviceIndexes.size());
+    }
+    int numServices = serviceIndexes.size();
+    this.minCounts = new int[numServices];
+    this.maxCounts = new int[numServices];
+    Arrays.fill(maxCounts, Integer.MAX_VALUE);
 
     // we only care about the constraints that apply to services that are on the cluster
     Map<String, ServiceConstraint> allServiceConstraints = template.getConstraints().getServiceConstraints();
-    for (String service : services) {
-      if (allServiceConstraints.containsKey(service)) {
-        serviceConstraints.put(service, allServiceConstraints.get(service));
+    List<Integer> constrained = Lists.newArrayList();
+    for (Map.Entry<String, Integer> entry : serviceIndexes.entrySet()) {
+      ServiceConstraint constraint = allServiceConstraints.get(entry.getKey());
+      if (constraint != null) {
+        int serviceIndex = entry.getValue();
+        minCounts[serviceIndex] = constraint.getMinCount();
+        maxCounts[serviceIndex] = constraint.getMaxCount();
+        constrained.add(serviceIndex);
       }
     }
+    this.constrainedServices = Ints.toArray(constrained);
 
-    // calculate number of each service across the entire cluster
-    serviceCounts = Maps.newHashMap();
-    for (String service : services) {
-      serviceCounts.put(service, 0);
+    int numLayouts = nodePreferences.size();
+    this.layoutServices = new int[numLayouts][];
+    List<List<Integer>> layoutsOfService = Lists.newArrayListWithCapacity(numServices);
+    for (int s = 0; s < numServices; s++) {
+      layoutsOfService.add(Lists.<Integer>newArrayList());
+    }
+    for (int i = 0; i < numLayouts; i++) {
+      List<Integer> servicesOfLayout = Lists.newArrayList();
+      for (String service : nodePreferences.get(i).getServiceNames()) {
+        Integer serviceIndex = serviceIndexes.get(service);
+        if (serviceIndex != null) {
+          servicesOfLayout.add(serviceIndex);
+          layoutsOfService.get(serviceIndex).add(i);
+        }
+      }
+      layoutServices[i] = Ints.toArray(servicesOfLayout);
+    }
+    this.serviceLayouts = new int[numServices][];
+    for (int s = 0; s < numServices; s++) {
+      serviceLayouts[s] = Ints.toArray(layoutsOfService.get(s));
     }
   }
 
@@ -61,144 +126,224 @@ public class ClusterLayoutFinder {
    * satisfies all cluster constraints. The cluster layout is returned as an array integer, with the i'th value in the
    * array being the number of nodes to use of the i'th node layout. For example, returning {5, 3, 0, 0, 1} means
    * there should be 5 of the first node layout, 3 of the second, and 1 of the fifth.
+   * <p/>
+   * Layouts that use more of the earlier node layouts are preferred. In other words, of all valid layouts, the one
+   * returned has the most nodes of the first node layout, then of those, the most nodes of the second node layout,
+   * and so on. Node counts are searched in that order, and node counts that can not lead to a valid layout, because
+   * the nodes left to place can not bring some service up to its min count, are skipped along with everything after
+   * them.
    *
    * @return Array containing how many of each node type to use.
+   * @throws SearchBudgetExceededException if no layout was found, and not every possible layout was ruled out, within
+   *                                       the time budget of the finder.
    */
   public int[] findValidNodeCounts() {
-    int[] initialLayout = getInitialNodeCounts();
-    if (initialLayout == null) {
-      return null;
-    }
+    int[] nodeCounts = new int[layoutServices.length];
+    return new Search(getDeadline(), false).search(0, numMachines, nodeCounts) ? nodeCounts : null;
+  }
 
-    SlottedCombinationIterator layoutIter = new SlottedCombinationIterator(initialLayout, getGlobalNodeLayoutMaxes());
-    int[] previousLayout = initialLayout;
-    // while we haven't looked at all candidate layouts
-    while (layoutIter.hasNext()) {
-      int[] candidateLayout = layoutIter.next();
-      // update service counts for layout validation
-      for (int i = 0; i < candidateLayout.length; i++) {
-        // update is based on the difference between this layout and the previous one.
-        int countDiff = candidateLayout[i] - previousLayout[i];
-        updateServiceCounts(i, countDiff);
-      }
-      // if this is a valid layout, return it
-      if (isValidCluster(serviceCounts)) {
-        return candidateLayout;
-      }
-      previousLayout = candidateLayout;
+  /**
+   * Same as {@link #findValidNodeCounts()}, except that the search is split up by the number of nodes of the first
+   * node layout, and the parts are searched in parallel on the given executor. The layout returned is the same one
+   * that {@link #findValidNodeCounts()} returns.
+   *
+   * @param executor Executor to search on.
+   * @param numThreads Number of threads to split the search across. The search is not split up if this is 1 or less.
+   * @return Array containing how many of each node type to use.
+   * @throws SearchBudgetExceededException if no layout was found, and not every possible layout was ruled out, within
+   *                                       the time budget of the finder.
+   */
+  public int[] findValidNodeCounts(ExecutorService executor, final int numThreads) {
+    if (numThreads <= 1 || layoutServices.length < 2) {
+      return findValidNodeCounts();
     }
-    return null;
-  }
+    final long deadline = getDeadline();
+    Search search = new Search(deadline, false);
+    if (!search.canReachMinCounts(0, numMachines)) {
+      return null;
+    }
+    final int max = search.getMaxForNodelayout(0, numMachines);
+    final int numParts = Math.min(max + 1, numThreads * PARTS_PER_THREAD);
+    // part k searches counts of the first node layout from high(k) down to high(k + 1) + 1
+    Iterator<Callable<int[]>> parts = new AbstractIterator<Callable<int[]>>() {
+      private int part = 0;
 
-  // get the max number of each nodelayout possible, assuming no other node layouts are used.
-  private int[] getGlobalNodeLayoutMaxes() {
-    int[] layoutsMaxes = new int[nodePreferences.size()];
-    for (int i = 0; i < layoutsMaxes.length; i++) {
-      NodeLayout layout = nodePreferences.get(i);
-      int max = Integer.MAX_VALUE;
-      for (String service : layout.getServiceNames()) {
-        ServiceConstraint constraint = serviceConstraints.get(service);
-        if (constraint != null) {
-          int constraintMax = constraint.getMaxCount();
-          if (constraintMax < max) {
-            max = constraintMax;
-          }
+      @Override
+      protected Callable<int[]> computeNext() {
+        if (part == numParts) {
+          return endOfData();
         }
+        final int high = max - (int) ((long) (max + 1) * part / numParts);
+        final int low = max + 1 - (int) ((long) (max + 1) * (part + 1) / numParts);
+        part++;
+        return new Callable<int[]>() {
+          @Override
+          public int[] call() {
+            int[] nodeCounts = new int[layoutServices.length];
+            return new Search(deadline, true).searchCounts(0, numMachines, nodeCounts, high, low) ? nodeCounts : null;
+          }
+        };
       }
-      layoutsMaxes[i] = max;
-    }
-    return layoutsMaxes;
+    };
+    return OrderedSearch.findFirst(executor, parts, numThreads);
+  }
+
+  private long getDeadline() {
+    return maxSearchMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxSearchMillis) : 0;
   }
 
-  // initialize the node counts to the first possible cluster layout based on max service counts.
-  private int[] getInitialNodeCounts() {
-    int[] nodeCounts = new int[nodePreferences.size()];
-    // start off with as many of the most preferred node layout as possible
+  // given the number of each nodelayout to use, determine whether it is a valid cluster. If clusterlayout[x] = y,
+  // this means the x'th node layout in nodeLayouts has y nodes in the cluster.  For example, if clusterlayout[0] = 5,
+  // this means there are 5 nodes with nodelayout of nodelayouts.get(0) in the cluster.
+  // for unit testing only
+  boolean isValidCluster(int[] nodeCounts) {
+    Search search = new Search(0, false);
     for (int i = 0; i < nodeCounts.length; i++) {
-      int maxNodeCount = getMaxForNodelayout(i, nodeCounts);
-      nodeCounts[i] = maxNodeCount;
-      if (maxNodeCount > 0) {
-        updateServiceCounts(i, maxNodeCount);
+      int nodeCount = nodeCounts[i];
+      if (nodeCount > 0) {
+        search.updateServiceCounts(i, nodeCount);
       }
     }
-    // if the max # of nodes we can place is below the # of nodes in the cluster, there is no possible solution.
-    int total = 0;
-    for (int nodeCount : nodeCounts) {
-      total += nodeCount;
-    }
-    if (total < numMachines) {
-      return null;
-    }
-    return nodeCounts;
+    return search.isValidServiceCounts();
   }
 
-  // get the max number of nodes of the i'th node layout, given the service constraints and how many machines are
-  // accounted for already.
-  int getMaxForNodelayout(int i, int[] counts) {
-    int maxSoFar = numMachines - getTotalCount(counts);
-    if (maxSoFar == 0) {
-      return 0;
+  /**
+   * State of one search through node counts. Searches in parallel each have their own.
+   */
+  private final class Search {
+    private final long deadline;
+    // whether to give up when the thread searching is interrupted, which happens when the search is one of several
+    // parts of a search and an earlier part already found a layout.
+    private final boolean stopOnInterrupt;
+    private final int[] serviceCounts;
+    // scratch space for the max number of nodes of each node layout
+    private final int[] layoutMaxes;
+    private int steps;
+
+    private Search(long deadline, boolean stopOnInterrupt) {
+      this.deadline = deadline;
+      this.stopOnInterrupt = stopOnInterrupt;
+      this.serviceCounts = new int[minCounts.length];
+      this.layoutMaxes = new int[layoutServices.length];
     }
-    NodeLayout nodeLayout = nodePreferences.get(i);
-    for (String service : nodeLayout.getServiceNames()) {
-      ServiceConstraint constraint = serviceConstraints.get(service);
-      if (constraint != null) {
-        int serviceCount = serviceCounts.get(service);
-        int serviceMax = constraint.getMaxCount() - serviceCount;
-        if (serviceMax < maxSoFar) {
-          maxSoFar = serviceMax;
+
+    // try counts for the i'th node layout from most to fewest nodes, given that the earlier node layouts are fixed
+    // and there are the given number of nodes left to place. Returns true once a valid layout is found, leaving it in
+    // nodeCounts.
+    private boolean search(int i, int remaining, int[] nodeCounts) {
+      if (++steps % STEPS_PER_BUDGET_CHECK == 0) {
+        if (deadline != 0 && System.nanoTime() > deadline) {
+          throw new SearchBudgetExceededException(
+            "No cluster layout found for " + numMachines + " machines within " + maxSearchMillis + " ms.");
+        }
+        if (stopOnInterrupt && Thread.currentThread().isInterrupted()) {
+          throw new CancellationException("search was cancelled");
         }
       }
+      if (i == nodeCounts.length) {
+        return remaining == 0 && isValidServiceCounts();
+      }
+      if (!canReachMinCounts(i, remaining)) {
+        return false;
+      }
+      int max = getMaxForNodelayout(i, remaining);
+      // the last node layout has to take all the nodes that are left
+      int min = i == nodeCounts.length - 1 ? remaining : 0;
+      return searchCounts(i, remaining, nodeCounts, max, min);
     }
-    return maxSoFar;
-  }
 
-  private int getTotalCount(int[] counts) {
-    int sum = 0;
-    for (int count : counts) {
-      sum += count;
-    }
-    return sum;
-  }
-
-  // update service counts from changing nodePreferences[nodeNum] by nodesChanged
-  private void updateServiceCounts(int nodeNum, int nodesChanged) {
-    for (String service : nodePreferences.get(nodeNum).getServiceNames()) {
-      serviceCounts.put(service, serviceCounts.get(service) + nodesChanged);
+    // try counts for the i'th node layout from max down to min.
+    private boolean searchCounts(int i, int remaining, int[] nodeCounts, int max, int min) {
+      if (max < min) {
+        return false;
+      }
+      nodeCounts[i] = max;
+      updateServiceCounts(i, max);
+      while (true) {
+        if (search(i + 1, remaining - nodeCounts[i], nodeCounts)) {
+          return true;
+        }
+        if (nodeCounts[i] == min) {
+          break;
+        }
+        nodeCounts[i]--;
+        updateServiceCounts(i, -1);
+      }
+      updateServiceCounts(i, -nodeCounts[i]);
+      nodeCounts[i] = 0;
+      return false;
     }
-  }
 
-  // given a list of node layouts, a cluster template, a number of machines, and the number of each nodelayout to use,
-  // determine whether it is a valid cluster based on the size constraints for each service as
-  // defined in the cluster template.  If clusterlayout[x] = y, this means the x'th node layout in nodeLayouts has
-  // y nodes in the cluster.  For example, if clusterlayout[0] = 5, this means there are 5 nodes with nodelayout of
-  // nodelayouts.get(0) in the cluster.
-  private boolean isValidCluster(Map<String, Integer> serviceCounts) {
-    for (Map.Entry<String, ServiceConstraint> entry : serviceConstraints.entrySet()) {
-      String service = entry.getKey();
-      ServiceConstraint constraint = entry.getValue();
-      int serviceCount = serviceCounts.get(service);
-      // TODO: ratio constraint
-      if (serviceCount < constraint.getMinCount() || serviceCount > constraint.getMaxCount()
-        || serviceCount > numMachines) {
+    // returns whether the given number of nodes, placed in the i'th node layout and the ones after it, can possibly
+    // place all the nodes while bringing every service up to its min count.
+    private boolean canReachMinCounts(int i, int remaining) {
+      long capacity = 0;
+      for (int j = i; j < layoutMaxes.length; j++) {
+        layoutMaxes[j] = getMaxForNodelayout(j, remaining);
+        capacity += layoutMaxes[j];
+      }
+      if (capacity < remaining) {
         return false;
       }
+      for (int service : constrainedServices) {
+        int needed = minCounts[service] - serviceCounts[service];
+        if (needed <= 0) {
+          continue;
+        }
+        if (needed > remaining) {
+          return false;
+        }
+        long reachable = 0;
+        for (int j : serviceLayouts[service]) {
+          if (j >= i) {
+            reachable += layoutMaxes[j];
+            if (reachable >= needed) {
+              break;
+            }
+          }
+        }
+        if (reachable < needed) {
+          return false;
+        }
+      }
+      return true;
     }
 
-    return true;
-  }
+    // get the max number of nodes of the i'th node layout, given the service constraints and how many machines are
+    // left to place.
+    private int getMaxForNodelayout(int i, int remaining) {
+      int maxSoFar = remaining;
+      if (maxSoFar == 0) {
+        return 0;
+      }
+      for (int service : layoutServices[i]) {
+        int serviceMax = maxCounts[service] - serviceCounts[service];
+        if (serviceMax < maxSoFar) {
+          maxSoFar = serviceMax;
+        }
+      }
+      return Math.max(maxSoFar, 0);
+    }
 
-  // for unit testing only
-  boolean isValidCluster(int[] nodeCounts) {
-    for (String service : serviceCounts.keySet()) {
-      serviceCounts.put(service, 0);
+    // update service counts from changing nodePreferences[nodeNum] by nodesChanged
+    private void updateServiceCounts(int nodeNum, int nodesChanged) {
+      for (int service : layoutServices[nodeNum]) {
+        serviceCounts[service] += nodesChanged;
+      }
     }
-    for (int i = 0; i < nodeCounts.length; i++) {
-      int nodeCount = nodeCounts[i];
-      if (nodeCount > 0) {
-        updateServiceCounts(i, nodeCount);
+
+    // determine whether the current service counts make a valid cluster based on the size constraints for each
+    // service as defined in the cluster template.
+    private boolean isValidServiceCounts() {
+      for (int service : constrainedServices) {
+        int serviceCount = serviceCounts[service];
+        // TODO: ratio constraint
+        if (serviceCount < minCounts[service] || serviceCount > maxCounts[service] || serviceCount > numMachines) {
+          return false;
+        }
       }
+
+      return true;
     }
-    return isValidCluster(serviceCounts);
   }
 }
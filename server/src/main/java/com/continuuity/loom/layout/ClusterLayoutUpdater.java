@@ -19,19 +19,27 @@ import com.continuuity.loom.admin.Constraints;
 import com.continuuity.loom.admin.ServiceConstraint;
 import com.continuuity.loom.cluster.Cluster;
 import com.continuuity.loom.cluster.Node;
+import com.continuuity.loom.common.conf.Configuration;
 import com.continuuity.loom.layout.change.AddServiceChangeIterator;
 import com.continuuity.loom.layout.change.ClusterLayoutChange;
 import com.continuuity.loom.layout.change.ClusterLayoutTracker;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Lists;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
 
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
-import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Class that takes in an existing cluster and a request to update the cluster in some way, whether its by adding
@@ -39,6 +47,15 @@ import java.util.SortedSet;
  */
 public class ClusterLayoutUpdater {
   private static final ServiceMaxComparator serviceComparator = new ServiceMaxComparator();
+  private final ExecutorService searchExecutor;
+  private final int searchNumThreads;
+
+  @Inject
+  private ClusterLayoutUpdater(@Named("solver.search.executor.service") ListeningExecutorService searchExecutor,
+                               Configuration conf) {
+    this.searchExecutor = searchExecutor;
+    this.searchNumThreads = OrderedSearch.getNumThreads(conf);
+  }
 
   public ClusterLayoutTracker addServicesToCluster(Cluster cluster, Set<Node> clusterNodes,
                                                    Set<String> servicesToAdd) throws Exception {
@@ -49,31 +66,69 @@ public class ClusterLayoutUpdater {
     Constraints clusterConstraints = cluster.getClusterTemplate().getConstraints();
     ClusterLayout clusterLayout = ClusterLayout.fromNodes(clusterNodes, clusterConstraints);
 
-    Set<String> servicesToAddCopy = Sets.newHashSet(servicesToAdd);
-    SortedSet<Map.Entry<String, ServiceConstraint>> sortedConstraints = Sets.newTreeSet(serviceComparator);
-    sortedConstraints.addAll(clusterConstraints.getServiceConstraints().entrySet());
-    Queue<String> sortedServices = Lists.newLinkedList();
-    for (Map.Entry<String, ServiceConstraint> entry : sortedConstraints) {
-      if (servicesToAddCopy.contains(entry.getKey())) {
-        sortedServices.add(entry.getKey());
-        servicesToAddCopy.remove(entry.getKey());
-      }
+    Set<Map.Entry<ClusterLayout, Set<String>>> failedStates =
+      Sets.newSetFromMap(Maps.<Map.Entry<ClusterLayout, Set<String>>, Boolean>newConcurrentMap());
+    Set<String> services = ImmutableSet.copyOf(servicesToAdd);
+    if (searchNumThreads > 1 && !services.isEmpty()) {
+      return findTrackerInParallel(clusterLayout, services, failedStates);
     }
-    // any service without a constraint has no limit on the number of nodes it can be placed on, so add them to the end
-    sortedServices.addAll(servicesToAddCopy);
-
     ClusterLayoutTracker tracker = new ClusterLayoutTracker(clusterLayout);
-    return canAddServicesToCluster(tracker, sortedServices) ? tracker : null;
+    return canAddServicesToCluster(tracker, services, failedStates, false) ? tracker : null;
+  }
+
+  // same search as canAddServicesToCluster, but with each way of adding the first service searched in parallel.
+  // The tracker of the first way, in search order, that all the services can be added with is returned.
+  private ClusterLayoutTracker findTrackerInParallel(final ClusterLayout clusterLayout, Set<String> servicesToAdd,
+                                                     final Set<Map.Entry<ClusterLayout, Set<String>>> failedStates) {
+    String service = getTightestService(clusterLayout, servicesToAdd);
+    final Set<String> otherServices = ImmutableSet.copyOf(Sets.difference(servicesToAdd, ImmutableSet.of(service)));
+    final Iterator<ClusterLayoutChange> changes = new AddServiceChangeIterator(clusterLayout, service);
+    Iterator<Callable<ClusterLayoutTracker>> parts = new AbstractIterator<Callable<ClusterLayoutTracker>>() {
+      @Override
+      protected Callable<ClusterLayoutTracker> computeNext() {
+        if (!changes.hasNext()) {
+          return endOfData();
+        }
+        final ClusterLayoutChange change = changes.next();
+        return new Callable<ClusterLayoutTracker>() {
+          @Override
+          public ClusterLayoutTracker call() {
+            ClusterLayoutTracker tracker = new ClusterLayoutTracker(clusterLayout);
+            if (!tracker.addChangeIfValid(change) || !tracker.getCurrentLayout().isValid()) {
+              return null;
+            }
+            return canAddServicesToCluster(tracker, otherServices, failedStates, true) ? tracker : null;
+          }
+        };
+      }
+    };
+    return OrderedSearch.findFirst(searchExecutor, parts, searchNumThreads);
   }
 
-  private boolean canAddServicesToCluster(ClusterLayoutTracker tracker, Queue<String> servicesToAdd) {
+  // Services are added one at a time, tightest first, so that searches that can not succeed fail early. Failed
+  // states are the layouts, along with the services left to add to them, that were already found to not lead to a way
+  // to add those services. Adding services in different orders, or in different ways, can lead to the same state,
+  // which only needs to be searched once. When the search is one of several parts of a parallel search, it gives up
+  // once the thread searching is interrupted, which happens when an earlier part already found a way.
+  private boolean canAddServicesToCluster(ClusterLayoutTracker tracker, Set<String> servicesToAdd,
+                                          Set<Map.Entry<ClusterLayout, Set<String>>> failedStates,
+                                          boolean stopOnInterrupt) {
     if (servicesToAdd.isEmpty()) {
       return true;
     }
+    // give up without marking the state as failed, since it was not fully searched
+    if (stopOnInterrupt && Thread.currentThread().isInterrupted()) {
+      throw new CancellationException("search was cancelled");
+    }
 
-    String service = servicesToAdd.remove();
     ClusterLayout currentLayout = tracker.getCurrentLayout();
-    // find valid moves, where a move is adding some number of the first service in the queue to nodes in the cluster
+    Map.Entry<ClusterLayout, Set<String>> state = Maps.immutableEntry(currentLayout, servicesToAdd);
+    if (failedStates.contains(state)) {
+      return false;
+    }
+    String service = getTightestService(currentLayout, servicesToAdd);
+    Set<String> otherServices = ImmutableSet.copyOf(Sets.difference(servicesToAdd, ImmutableSet.of(service)));
+    // find valid moves, where a move is adding some number of the tightest service to nodes in the cluster
     Iterator<ClusterLayoutChange> changes = new AddServiceChangeIterator(currentLayout, service);
 
     while (changes.hasNext()) {
@@ -89,7 +144,7 @@ public class ClusterLayoutUpdater {
         }
 
         // successfully added the service. See if we can add the rest of the services.
-        if (canAddServicesToCluster(tracker, servicesToAdd)) {
+        if (canAddServicesToCluster(tracker, otherServices, failedStates, stopOnInterrupt)) {
           return true;
         } else {
           // we were not able to add the rest of the services. Move on to the next change for this service.
@@ -97,9 +152,72 @@ public class ClusterLayoutUpdater {
         }
       }
     }
+    failedStates.add(state);
     return false;
   }
 
+  // get the service with the fewest ways to be added to the given layout.
+  private String getTightestService(ClusterLayout clusterLayout, Set<String> services) {
+    ServiceTightnessComparator comparator = new ServiceTightnessComparator(clusterLayout);
+    Map<String, ServiceConstraint> serviceConstraints = clusterLayout.getConstraints().getServiceConstraints();
+    Map.Entry<String, ServiceConstraint> tightest = null;
+    for (String service : services) {
+      Map.Entry<String, ServiceConstraint> entry = Maps.immutableEntry(service, serviceConstraints.get(service));
+      if (tightest == null || comparator.compare(entry, tightest) < 0) {
+        tightest = entry;
+      }
+    }
+    return tightest.getKey();
+  }
+
+  /**
+   * Comparator to sort service constraints by how many ways there are to add the service to a cluster layout, fewest
+   * first. A service that can only be placed on a few of the nodes that can take it, relative to its min count, has
+   * few ways to be added. A service without a constraint has the most ways to be added. Services with the same number
+   * of ways are sorted by {@link ServiceMaxComparator}.
+   */
+  private static class ServiceTightnessComparator implements Comparator<Map.Entry<String, ServiceConstraint>> {
+    private final ClusterLayout clusterLayout;
+    private final Map<String, Integer> slacks;
+
+    private ServiceTightnessComparator(ClusterLayout clusterLayout) {
+      this.clusterLayout = clusterLayout;
+      this.slacks = Maps.newHashMap();
+    }
+
+    @Override
+    public int compare(Map.Entry<String, ServiceConstraint> entry1, Map.Entry<String, ServiceConstraint> entry2) {
+      int compare = getSlack(entry1).compareTo(getSlack(entry2));
+      return compare != 0 ? compare : serviceComparator.compare(entry1, entry2);
+    }
+
+    // number of nodes beyond its min count that the service can be placed on.
+    private Integer getSlack(Map.Entry<String, ServiceConstraint> entry) {
+      if (entry.getValue() == null) {
+        return Integer.MAX_VALUE;
+      }
+      String service = entry.getKey();
+      Integer slack = slacks.get(service);
+      if (slack == null) {
+        Set<String> clusterServices = Sets.newHashSet(service);
+        for (NodeLayout nodeLayout : clusterLayout.getLayout().elementSet()) {
+          clusterServices.addAll(nodeLayout.getServiceNames());
+        }
+        int numNodes = 0;
+        for (Multiset.Entry<NodeLayout> layoutEntry : clusterLayout.getLayout().entrySet()) {
+          NodeLayout expanded = NodeLayout.addServiceToNodeLayout(layoutEntry.getElement(), service);
+          if (expanded.satisfiesConstraints(clusterLayout.getConstraints(), clusterServices)) {
+            numNodes += layoutEntry.getCount();
+          }
+        }
+        ServiceConstraint constraint = entry.getValue();
+        slack = Math.min(numNodes, constraint.getMaxCount()) - constraint.getMinCount();
+        slacks.put(service, slack);
+      }
+      return slack;
+    }
+  }
+
   /**
    * Comparator to sort services constraints so that services are sorted first by their max count (lower max count means
    * the constraint is lower), sorted next by their min count (higher min count means the constraint is lower), and
@@ -26,7 +26,6 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
@@ -149,43 +148,13 @@ public class NodeLayoutGenerator {
     return unconstrained;
   }
 
-  // search through all possible service combinations, keeping track of valid service combinations.
+  // find all valid service combinations, without building the ones that break layout constraints.
   Set<Set<String>> findValidServiceSets(Set<String> services) {
-    Set<Set<String>> validServiceSets = Sets.newHashSet();
-
-    if (!services.isEmpty()) {
-      LayoutConstraint layoutConstraint = clusterTemplate.getConstraints().getLayoutConstraint();
-      int[] maxCounts = new int[services.size()];
-      for (int i = 0; i < maxCounts.length; i++) {
-        maxCounts[i] = 1;
-      }
-
-      List<String> serviceList = Lists.newArrayList(services);
-      for (int i = 1; i <= services.size(); i++) {
-        // This iterator will go through all combinations of service sets of size i.
-        Iterator<int[]> serviceIter = new SlottedCombinationIterator(services.size(), i, maxCounts);
-        while (serviceIter.hasNext()) {
-          // build the candidate service set
-          int[] serviceCounts = serviceIter.next();
-          Set<String> candidateSet = Sets.newHashSet();
-          // the j'th int in serviceCounts indicates whether or not the j'th service in serviceList is in the
-          // candidate set.
-          for (int j = 0; j < serviceCounts.length; j++) {
-            // j'th service is in the candidate set, add it.
-            if (serviceCounts[j] == 1) {
-              candidateSet.add(serviceList.get(j));
-            }
-          }
-
-          // if the candidate set satisfies layout constraints, add it to the list of valid sets.
-          if (isValidServiceSet(candidateSet, layoutConstraint, clusterServices)) {
-            validServiceSets.add(candidateSet);
-          }
-        }
-      }
+    if (services.isEmpty()) {
+      return Sets.newHashSet();
     }
-
-    return validServiceSets;
+    LayoutConstraint layoutConstraint = clusterTemplate.getConstraints().getLayoutConstraint();
+    return new ServiceSetEnumerator(services, layoutConstraint, clusterServices).getValidServiceSets();
   }
 
   // given a set of valid service sets, a collection of available hardware types, and a collection of available
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.layout;
+
+import com.continuuity.loom.admin.ClusterTemplate;
+import com.continuuity.loom.common.conf.Configuration;
+import com.continuuity.loom.common.conf.Constants;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Inject;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded cache of the node layout preferences generated by {@link NodeLayoutGenerator}, so that creating clusters
+ * from the same template with the same services does not enumerate service sets every time. Preferences are cached by
+ * the value of the template, the cluster services, and the allowed hardware and image types. Changing a template
+ * changes its value, so preferences generated from older versions of a template are never used again, and are evicted
+ * as the least recently used entries once the cache is full.
+ */
+public class NodeLayoutPreferencesCache {
+  private final Map<Key, List<NodeLayout>> cache;
+
+  @Inject
+  private NodeLayoutPreferencesCache(Configuration conf) {
+    this(conf.getInt(Constants.SOLVER_LAYOUT_CACHE_SIZE));
+  }
+
+  NodeLayoutPreferencesCache(final int maxSize) {
+    this.cache = new LinkedHashMap<Key, List<NodeLayout>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, List<NodeLayout>> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Get the node layouts that can be used in a cluster, ordered by preference, generating them if they are not cached.
+   *
+   * @param clusterTemplate Template of the cluster.
+   * @param clusterServices Services to place on the cluster.
+   * @param allowedHardwareTypes Hardware types that can be used in the cluster.
+   * @param allowedImageTypes Image types that can be used in the cluster.
+   * @return Unmodifiable list of node layouts that can be used in the cluster, ordered by preference.
+   */
+  public List<NodeLayout> getNodeLayoutPreferences(ClusterTemplate clusterTemplate, Set<String> clusterServices,
+                                                   Set<String> allowedHardwareTypes, Set<String> allowedImageTypes) {
+    Key key = new Key(clusterTemplate, clusterServices, allowedHardwareTypes, allowedImageTypes);
+    synchronized (cache) {
+      List<NodeLayout> preferences = cache.get(key);
+      if (preferences != null) {
+        return preferences;
+      }
+    }
+    // generate outside of the lock, different keys should not wait on each other. Concurrent misses on the same key
+    // generate the same preferences, so it does not matter which one ends up cached.
+    List<NodeLayout> preferences = ImmutableList.copyOf(
+      new NodeLayoutGenerator(clusterTemplate, key.clusterServices, key.allowedHardwareTypes, key.allowedImageTypes)
+        .generateNodeLayoutPreferences());
+    synchronized (cache) {
+      cache.put(key, preferences);
+    }
+    return preferences;
+  }
+
+  /**
+   * Remove all cached node layout preferences.
+   */
+  public void clear() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+  int size() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  private static final class Key {
+    private final ClusterTemplate clusterTemplate;
+    private final Set<String> clusterServices;
+    private final Set<String> allowedHardwareTypes;
+    private final Set<String> allowedImageTypes;
+    private final int hashCode;
+
+    private Key(ClusterTemplate clusterTemplate, Set<String> clusterServices,
+                Set<String> allowedHardwareTypes, Set<String> allowedImageTypes) {
+      this.clusterTemplate = clusterTemplate;
+      this.clusterServices = ImmutableSet.copyOf(clusterServices);
+      this.allowedHardwareTypes = ImmutableSet.copyOf(allowedHardwareTypes);
+      this.allowedImageTypes = ImmutableSet.copyOf(allowedImageTypes);
+      this.hashCode = Objects.hashCode(clusterTemplate, this.clusterServices,
+                                       this.allowedHardwareTypes, this.allowedImageTypes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return hashCode == other.hashCode &&
+        Objects.equal(clusterTemplate, other.clusterTemplate) &&
+        Objects.equal(clusterServices, other.clusterServices) &&
+        Objects.equal(allowedHardwareTypes, other.allowedHardwareTypes) &&
+        Objects.equal(allowedImageTypes, other.allowedImageTypes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.layout;
+
+import com.continuuity.loom.common.conf.Configuration;
+import com.continuuity.loom.common.conf.Constants;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the parts of a search in parallel while keeping the result the same as searching the parts one after the
+ * other. Parts are given in search order, and the result of the earliest part that finds something is returned, even
+ * if later parts finish first. Parts after that one are cancelled, and parts are only submitted a few at a time so
+ * that a search that ends early does not leave a lot of work behind it.
+ */
+public final class OrderedSearch {
+
+  private OrderedSearch() {
+  }
+
+  /**
+   * Get the number of threads a single search can be split across.
+   *
+   * @param conf Configuration to get the number of threads from.
+   * @return Number of threads a single search can be split across.
+   */
+  public static int getNumThreads(Configuration conf) {
+    int numThreads = conf.getInt(Constants.SOLVER_SEARCH_NUM_THREADS);
+    return numThreads > 0 ? numThreads : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Run parts of a search on the given executor, returning the result of the first part in order that returns
+   * something other than null. Exceptions thrown by that part, or by any part before it, are rethrown.
+   *
+   * @param executor Executor to run the parts on.
+   * @param parts Parts of the search, in search order.
+   * @param maxInFlight Max number of parts to submit to the executor at a time.
+   * @param <T> Type of result of the search.
+   * @return Result of the first part in search order that finds something, or null if none of them do.
+   */
+  static <T> T findFirst(ExecutorService executor, Iterator<? extends Callable<T>> parts, int maxInFlight) {
+    Deque<Future<T>> inFlight = Lists.newLinkedList();
+    try {
+      while (true) {
+        while (inFlight.size() < maxInFlight && parts.hasNext()) {
+          inFlight.addLast(executor.submit(parts.next()));
+        }
+        Future<T> first = inFlight.pollFirst();
+        if (first == null) {
+          return null;
+        }
+        T result = first.get();
+        if (result != null) {
+          return result;
+        }
+      }
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } finally {
+      for (Future<T> future : inFlight) {
+        future.cancel(true);
+      }
+    }
+  }
+}
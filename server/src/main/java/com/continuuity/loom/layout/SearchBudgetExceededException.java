@@ -0,0 +1,27 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.layout;
+
+/**
+ * Thrown when the solver runs out of time looking for a cluster layout. This is different from there being no valid
+ * layout, which the solver can prove, in that a valid layout may exist but was not found in time.
+ */
+public class SearchBudgetExceededException extends RuntimeException {
+
+  public SearchBudgetExceededException(String message) {
+    super(message);
+  }
+}
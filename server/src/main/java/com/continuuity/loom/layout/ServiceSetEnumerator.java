@@ -0,0 +1,197 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.layout;
+
+import com.continuuity.loom.admin.LayoutConstraint;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Enumerates the non-empty sets of services that satisfy the must coexist and cant coexist constraints of a
+ * {@link LayoutConstraint}, giving the same sets as checking every subset with
+ * {@link NodeLayoutGenerator#isValidServiceSet(Set, LayoutConstraint, Set)}, without looking at every subset.
+ * <p/>
+ * Services are represented as bits of a long, so there can be at most {@link #MAX_SERVICES} of them. Services that
+ * must coexist with each other are folded into a single unit that is either entirely in a set or entirely out of it,
+ * and services that must coexist with a service that can not be in any set are dropped. Sets are then built by
+ * deciding, one unit at a time, whether or not the unit is in the set. Adding a unit that completes a cant coexist
+ * constraint prunes every set that would contain the unit along with the units already in the set.
+ */
+final class ServiceSetEnumerator {
+  static final int MAX_SERVICES = 63;
+  private final List<String> services;
+  // bits of the services in each unit
+  private final long[] unitMasks;
+  // bits of the cant coexist constraints that include some service of each unit
+  private final long[][] unitCantCoexistMasks;
+
+  /**
+   * Create an enumerator for the given services.
+   *
+   * @param services Services to build sets of.
+   * @param layoutConstraint Layout constraint the sets must satisfy.
+   * @param clusterServices Services on the cluster, used to prune the layout constraint.
+   */
+  ServiceSetEnumerator(Set<String> services, LayoutConstraint layoutConstraint, Set<String> clusterServices) {
+    Preconditions.checkArgument(services.size() <= MAX_SERVICES,
+                                "Can not place more than %s constrained services.", MAX_SERVICES);
+    this.services = Lists.newArrayList(services);
+    Map<String, Integer> serviceIndexes = Maps.newHashMap();
+    for (int i = 0; i < this.services.size(); i++) {
+      serviceIndexes.put(this.services.get(i), i);
+    }
+
+    // each service starts out as its own unit, must coexist constraints merge units together.
+    int[] unitOf = new int[this.services.size()];
+    for (int i = 0; i < unitOf.length; i++) {
+      unitOf[i] = i;
+    }
+    long excluded = 0;
+    for (Set<String> mustCoexist : layoutConstraint.getServicesThatMustCoexist()) {
+      Set<String> trueMustCoexist = Sets.intersection(mustCoexist, clusterServices);
+      long mask = toMask(trueMustCoexist, serviceIndexes);
+      if (mask == -1) {
+        // some service in the constraint can never be in a set, so none of the others can be either.
+        for (String service : trueMustCoexist) {
+          Integer index = serviceIndexes.get(service);
+          if (index != null) {
+            excluded |= 1L << index;
+          }
+        }
+        continue;
+      }
+      int first = Long.numberOfTrailingZeros(mask);
+      for (int i = first + 1; i < unitOf.length; i++) {
+        if ((mask & (1L << i)) != 0) {
+          union(unitOf, first, i);
+        }
+      }
+    }
+
+    Map<Integer, Long> masksByUnit = Maps.newLinkedHashMap();
+    for (int i = 0; i < unitOf.length; i++) {
+      int unit = find(unitOf, i);
+      Long mask = masksByUnit.get(unit);
+      masksByUnit.put(unit, (mask == null ? 0 : mask) | (1L << i));
+    }
+    // a unit that contains an excluded service can not be in any set either.
+    List<Long> units = Lists.newArrayList();
+    for (long mask : masksByUnit.values()) {
+      if ((mask & excluded) == 0) {
+        units.add(mask);
+      }
+    }
+    for (long mask : masksByUnit.values()) {
+      if ((mask & excluded) != 0) {
+        excluded |= mask;
+      }
+    }
+
+    List<Long> cantCoexistMasks = Lists.newArrayList();
+    for (Set<String> cantCoexist : layoutConstraint.getServicesThatMustNotCoexist()) {
+      long mask = toMask(cantCoexist, serviceIndexes);
+      // constraints with services that are not placed can never be completed.
+      if (mask != -1 && (mask & excluded) == 0) {
+        cantCoexistMasks.add(mask);
+      }
+    }
+
+    this.unitMasks = new long[units.size()];
+    this.unitCantCoexistMasks = new long[units.size()][];
+    for (int i = 0; i < unitMasks.length; i++) {
+      unitMasks[i] = units.get(i);
+      List<Long> touching = Lists.newArrayList();
+      for (long cantCoexistMask : cantCoexistMasks) {
+        // an empty constraint is contained in every set.
+        if (cantCoexistMask == 0 || (cantCoexistMask & unitMasks[i]) != 0) {
+          touching.add(cantCoexistMask);
+        }
+      }
+      unitCantCoexistMasks[i] = new long[touching.size()];
+      for (int j = 0; j < touching.size(); j++) {
+        unitCantCoexistMasks[i][j] = touching.get(j);
+      }
+    }
+  }
+
+  /**
+   * Get all non-empty sets of services that satisfy the layout constraint.
+   *
+   * @return Valid sets of services. The returned sets can be modified.
+   */
+  Set<Set<String>> getValidServiceSets() {
+    List<Long> validMasks = Lists.newArrayList();
+    addValidMasks(0, 0, validMasks);
+    Set<Set<String>> validServiceSets = Sets.newHashSetWithExpectedSize(validMasks.size());
+    for (long mask : validMasks) {
+      Set<String> serviceSet = Sets.newHashSetWithExpectedSize(Long.bitCount(mask));
+      for (long remaining = mask; remaining != 0; remaining &= remaining - 1) {
+        serviceSet.add(services.get(Long.numberOfTrailingZeros(remaining)));
+      }
+      validServiceSets.add(serviceSet);
+    }
+    return validServiceSets;
+  }
+
+  // decides whether or not the given unit is in the set, for all units starting from the given unit.
+  private void addValidMasks(int unit, long current, List<Long> validMasks) {
+    if (unit == unitMasks.length) {
+      if (current != 0) {
+        validMasks.add(current);
+      }
+      return;
+    }
+    addValidMasks(unit + 1, current, validMasks);
+    long withUnit = current | unitMasks[unit];
+    for (long cantCoexistMask : unitCantCoexistMasks[unit]) {
+      if ((withUnit & cantCoexistMask) == cantCoexistMask) {
+        return;
+      }
+    }
+    addValidMasks(unit + 1, withUnit, validMasks);
+  }
+
+  // returns -1 if some service is not one of the services to build sets of.
+  private static long toMask(Set<String> serviceSet, Map<String, Integer> serviceIndexes) {
+    long mask = 0;
+    for (String service : serviceSet) {
+      Integer index = serviceIndexes.get(service);
+      if (index == null) {
+        return -1;
+      }
+      mask |= 1L << index;
+    }
+    return mask;
+  }
+
+  private static int find(int[] unitOf, int i) {
+    while (unitOf[i] != i) {
+      unitOf[i] = unitOf[unitOf[i]];
+      i = unitOf[i];
+    }
+    return i;
+  }
+
+  private static void union(int[] unitOf, int i, int j) {
+    unitOf[find(unitOf, j)] = find(unitOf, i);
+  }
+}
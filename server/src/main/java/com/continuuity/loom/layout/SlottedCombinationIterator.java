@@ -43,11 +43,21 @@ import java.util.NoSuchElementException;
  *
  * Also supports passing in an array specifying the max number of items that can be placed in any given slot. If no
  * max counts are given, the max defaults to the integer max.
+ *
+ * Besides the {@link Iterator} methods, which return a copy of each combination, the iterator can be used as a cursor
+ * that is moved with {@link #advance()} and read in place with {@link #getCount(int)}, so that going through a large
+ * number of combinations does not allocate anything. A {@link Listener} can also be given to
+ * {@link #advance(Listener)} to be told which slots changed, since moving to the next combination usually only
+ * changes a few of the rightmost slots.
  */
 public class SlottedCombinationIterator implements Iterator<int[]> {
   private final int[] counts;
   private final int[] maxCounts;
   private final int lastSlot;
+  // counts as of the last time the cursor was advanced, used to tell listeners how much each slot changed by.
+  private final int[] reportedCounts;
+  // slots to the left of this one have not changed since the cursor was last advanced.
+  private int firstChangedSlot = 0;
   private boolean stillSearching = true;
   private boolean canAdvance = false;
 
@@ -69,6 +79,7 @@ public class SlottedCombinationIterator implements Iterator<int[]> {
   public SlottedCombinationIterator(int[] initialState, int[] maxCounts) {
     this.counts = Arrays.copyOf(initialState, initialState.length);
     this.lastSlot = initialState.length - 1;
+    this.reportedCounts = new int[initialState.length];
     if (maxCounts == null) {
       this.maxCounts = defaultMaxCounts(initialState.length);
     } else {
@@ -120,6 +131,7 @@ public class SlottedCombinationIterator implements Iterator<int[]> {
     }
 
     this.lastSlot = numSlots - 1;
+    this.reportedCounts = new int[numSlots];
     int[] counts = new int[numSlots];
     counts[0] = numItems;
     for (int i = 1; i < counts.length; i++) {
@@ -153,6 +165,61 @@ public class SlottedCombinationIterator implements Iterator<int[]> {
     throw new UnsupportedOperationException("remove unsupported");
   }
 
+  /**
+   * Move the cursor to the next combination, which can then be read through {@link #getCount(int)}. The first call
+   * moves the cursor to the first combination.
+   *
+   * @return True if the cursor was moved to the next combination, false if there are no more combinations.
+   */
+  public boolean advance() {
+    return advance(null);
+  }
+
+  /**
+   * Move the cursor to the next combination, calling the given listener once for each slot whose count is different
+   * from what it was at the previous combination. The first call moves the cursor to the first combination, and
+   * reports each slot that is not empty in it as changed from 0.
+   *
+   * @param listener Listener to tell about changed slots, or null if no listener is needed.
+   * @return True if the cursor was moved to the next combination, false if there are no more combinations.
+   */
+  public boolean advance(Listener listener) {
+    if (!hasNext()) {
+      return false;
+    }
+    canAdvance = true;
+    for (int i = firstChangedSlot; i <= lastSlot; i++) {
+      int delta = counts[i] - reportedCounts[i];
+      if (delta != 0) {
+        reportedCounts[i] = counts[i];
+        if (listener != null) {
+          listener.slotChanged(i, delta);
+        }
+      }
+    }
+    firstChangedSlot = counts.length;
+    return true;
+  }
+
+  /**
+   * Get the number of items in a slot at the combination the iterator is currently at.
+   *
+   * @param slot Slot to get the number of items of.
+   * @return Number of items in the slot.
+   */
+  public int getCount(int slot) {
+    return counts[slot];
+  }
+
+  /**
+   * Get the number of slots items are placed into.
+   *
+   * @return Number of slots.
+   */
+  public int getNumSlots() {
+    return counts.length;
+  }
+
   private int[] defaultMaxCounts(int numSlots) {
     int[] defaultMax = new int[numSlots];
     for (int i = 0; i < this.maxCounts.length; i++) {
@@ -230,6 +297,7 @@ public class SlottedCombinationIterator implements Iterator<int[]> {
       }
       moveItemsRight(frontSlot, 1);
     } else {
+      firstChangedSlot = Math.min(firstChangedSlot, slot);
       counts[slot] -= count;
       int itemsToAdd = count;
       for (int i = slot + 1; i < counts.length; i++) {
@@ -319,4 +387,17 @@ public class SlottedCombinationIterator implements Iterator<int[]> {
     }
     return sum;
   }
+
+  /**
+   * Listener for changes in slot counts as the cursor is advanced.
+   */
+  public interface Listener {
+    /**
+     * Called when the number of items in a slot changes.
+     *
+     * @param slot Slot that changed.
+     * @param delta Number of items added to the slot, negative if items were removed.
+     */
+    void slotChanged(int slot, int delta);
+  }
 }
@@ -24,6 +24,8 @@ import com.continuuity.loom.admin.ProviderType;
 import com.continuuity.loom.admin.Service;
 import com.continuuity.loom.cluster.Cluster;
 import com.continuuity.loom.cluster.Node;
+import com.continuuity.loom.common.conf.Configuration;
+import com.continuuity.loom.common.conf.Constants;
 import com.continuuity.loom.layout.change.ClusterLayoutChange;
 import com.continuuity.loom.layout.change.ClusterLayoutTracker;
 import com.continuuity.loom.scheduler.task.NodeService;
@@ -33,7 +35,10 @@ import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,6 +47,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 
 /**
  * The solver takes a cluster template, a number of machines, and figures out what services to put on what hardware
@@ -55,11 +61,22 @@ public class Solver {
   private static final Logger LOG  = LoggerFactory.getLogger(Solver.class);
   private final EntityStoreService entityStoreService;
   private final ClusterLayoutUpdater updater;
+  private final NodeLayoutPreferencesCache layoutPreferencesCache;
+  private final long maxSearchMillis;
+  private final ExecutorService searchExecutor;
+  private final int searchNumThreads;
 
   @Inject
-  private Solver(EntityStoreService entityStoreService, ClusterLayoutUpdater updater) {
+  private Solver(EntityStoreService entityStoreService, ClusterLayoutUpdater updater,
+                 NodeLayoutPreferencesCache layoutPreferencesCache,
+                 @Named("solver.search.executor.service") ListeningExecutorService searchExecutor,
+                 Configuration conf) {
     this.entityStoreService = entityStoreService;
     this.updater = updater;
+    this.layoutPreferencesCache = layoutPreferencesCache;
+    this.maxSearchMillis = conf.getLong(Constants.SOLVER_MAX_SEARCH_MS);
+    this.searchExecutor = searchExecutor;
+    this.searchNumThreads = OrderedSearch.getNumThreads(conf);
   }
 
   /**
@@ -146,7 +163,9 @@ public class Solver {
       throw new IllegalArgumentException("provider type " + providerType + " does not exist.");
     }
 
-    // add user given provider fields to the provider object
+    // add user given provider fields to a copy of the provider object, since the store may share the one it returns
+    provider = new Provider(provider.getName(), provider.getDescription(), provider.getProviderType(),
+                            provider.getProvisionerFields());
     provider.addUserFields(request.getProviderFields(), providerType);
     cluster.setProvider(provider);
 
@@ -219,9 +238,12 @@ public class Solver {
       dnsSuffix = template.getClusterDefaults().getDnsSuffix();
     }
 
+    List<NodeLayout> traversalOrder = layoutPreferencesCache.getNodeLayoutPreferences(
+      template, serviceNames, hardwareTypeFlavors.keySet(), imageTypeMap.keySet());
     Map<String, Node> nodes =
       solveConstraints(cluster.getId(), template, request.getName(), request.getNumMachines(), hardwareTypeFlavors,
-                       imageTypeMap, serviceNames, serviceMap, dnsSuffix);
+                       imageTypeMap, serviceNames, serviceMap, dnsSuffix, traversalOrder, maxSearchMillis,
+                       searchExecutor, searchNumThreads);
 
     // Update cluster object
     // TODO: this should happen outside Solver.
@@ -239,7 +261,7 @@ public class Solver {
       if (service == null) {
         throw new IllegalArgumentException("service " + serviceName + " does not exist");
       }
-      map.put(serviceName, entityStore.getService(serviceName));
+      map.put(serviceName, service);
     }
     return map;
   }
@@ -394,15 +416,30 @@ public class Solver {
                                             String dnsSuffix) {
     NodeLayoutGenerator nodeLayoutGenerator =
       new NodeLayoutGenerator(clusterTemplate, serviceNames, hardwareTypeMap.keySet(), imageTypeMap.keySet());
+    return solveConstraints(clusterId, clusterTemplate, clusterName, numMachines, hardwareTypeMap, imageTypeMap,
+                            serviceNames, serviceMap, dnsSuffix, nodeLayoutGenerator.generateNodeLayoutPreferences(),
+                            0, MoreExecutors.sameThreadExecutor(), 1);
+  }
 
-    // We need to deterministically choose the same cluster.  Nodelayouts earlier in the traversal order are
-    // preferred.
-    List<NodeLayout> traversalOrder = nodeLayoutGenerator.generateNodeLayoutPreferences();
-
+  // same as above, but with node layouts that were already generated, with a limit on how long to search for a
+  // cluster layout for, 0 for no limit, and with the search split across the given number of threads of the given
+  // executor. We need to deterministically choose the same cluster. Nodelayouts earlier in the traversal order are
+  // preferred.
+  static Map<String, Node> solveConstraints(String clusterId, ClusterTemplate clusterTemplate, String clusterName,
+                                            int numMachines,
+                                            Map<String, String> hardwareTypeMap,
+                                            Map<String, String> imageTypeMap,
+                                            Set<String> serviceNames,
+                                            Map<String, Service> serviceMap,
+                                            String dnsSuffix,
+                                            List<NodeLayout> traversalOrder,
+                                            long maxSearchMillis,
+                                            ExecutorService searchExecutor,
+                                            int searchNumThreads) {
     long start = System.nanoTime();
     ClusterLayoutFinder layoutFinder =
-      new ClusterLayoutFinder(traversalOrder, clusterTemplate, serviceNames, numMachines);
-    int[] clusterlayout = layoutFinder.findValidNodeCounts();
+      new ClusterLayoutFinder(traversalOrder, clusterTemplate, serviceNames, numMachines, maxSearchMillis);
+    int[] clusterlayout = layoutFinder.findValidNodeCounts(searchExecutor, searchNumThreads);
     long dur = (System.nanoTime() - start) / 1000000;
     LOG.debug("took {} ms to find cluster layout", dur);
 
@@ -38,7 +38,7 @@ import java.util.Set;
 public class AddServiceChangeIterator implements Iterator<ClusterLayoutChange> {
   private final String service;
   private final List<NodeLayout> expandableNodeLayouts;
-  private Iterator<int[]> nodeLayoutCountIterator;
+  private SlottedCombinationIterator nodeLayoutCountIterator;
   private int[] nodeLayoutMaxCounts;
   private int nodesToAddTo;
   private int minNodesToAddTo;
@@ -105,12 +105,11 @@ public class AddServiceChangeIterator implements Iterator<ClusterLayoutChange> {
 
   @Override
   public ClusterLayoutChange next() {
-    if (hasNext()) {
-      int[] nodeLayoutCounts = nodeLayoutCountIterator.next();
-      // create the change object from the integer array
+    if (hasNext() && nodeLayoutCountIterator.advance()) {
+      // create the change object from the counts the iterator is at
       Multiset<NodeLayout> counts = HashMultiset.create();
-      for (int i = 0; i < nodeLayoutCounts.length; i++) {
-        counts.add(expandableNodeLayouts.get(i), nodeLayoutCounts[i]);
+      for (int i = 0; i < nodeLayoutCountIterator.getNumSlots(); i++) {
+        counts.add(expandableNodeLayouts.get(i), nodeLayoutCountIterator.getCount(i));
       }
       return new AddServicesChange(counts, service);
     }
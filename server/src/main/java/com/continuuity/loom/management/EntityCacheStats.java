@@ -0,0 +1,65 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.management;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hits and misses of the entity cache used for JMX. A lookup of a single entity and a lookup of all entities of a type
+ * each count as one hit or one miss.
+ */
+@SuppressWarnings("UnusedDeclaration")
+public class EntityCacheStats {
+  private final AtomicLong hits;
+  private final AtomicLong misses;
+  private final AtomicLong invalidations;
+
+  public EntityCacheStats() {
+    this.hits = new AtomicLong(0);
+    this.misses = new AtomicLong(0);
+    this.invalidations = new AtomicLong(0);
+  }
+
+  public void hit() {
+    hits.incrementAndGet();
+  }
+
+  public void miss() {
+    misses.incrementAndGet();
+  }
+
+  public void invalidated() {
+    invalidations.incrementAndGet();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getInvalidations() {
+    return invalidations.get();
+  }
+
+  public double getHitRatio() {
+    long numHits = hits.get();
+    long total = numHits + misses.get();
+    return total == 0 ? 0 : (double) numHits / total;
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.management;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency of scheduling cluster jobs used for JMX. Latency of a job is measured from the time the job scheduler takes
+ * the job from its queue to the time it is done scheduling the tasks of the job, so it includes time spent waiting
+ * behind other jobs of the same cluster.
+ */
+@SuppressWarnings("UnusedDeclaration")
+public class JobSchedulingStats {
+  private final AtomicLong count;
+  private final AtomicLong totalMillis;
+  private final AtomicLong maxMillis;
+  private final AtomicLong lastMillis;
+
+  public JobSchedulingStats() {
+    this.count = new AtomicLong(0);
+    this.totalMillis = new AtomicLong(0);
+    this.maxMillis = new AtomicLong(0);
+    this.lastMillis = new AtomicLong(0);
+  }
+
+  /**
+   * Record the latency of scheduling a job.
+   *
+   * @param millis Milliseconds it took to schedule the job.
+   */
+  public void record(long millis) {
+    count.incrementAndGet();
+    totalMillis.addAndGet(millis);
+    lastMillis.set(millis);
+    long max = maxMillis.get();
+    while (millis > max && !maxMillis.compareAndSet(max, millis)) {
+      max = maxMillis.get();
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getTotalMillis() {
+    return totalMillis.get();
+  }
+
+  public long getMaxMillis() {
+    return maxMillis.get();
+  }
+
+  public long getLastMillis() {
+    return lastMillis.get();
+  }
+
+  public long getAverageMillis() {
+    long num = count.get();
+    return num == 0 ? 0 : totalMillis.get() / num;
+  }
+}
@@ -32,6 +32,12 @@ public class LoomStats implements LoomStatsMXBean {
   private final ClusterStats failedClusterStats;
   private final ClusterStats successfulClusterStats;
 
+  private final JobSchedulingStats jobSchedulingStats;
+
+  private final EntityCacheStats entityCacheStats;
+
+  private final StatementCacheStats statementCacheStats;
+
   public LoomStats() {
     this.queueLength = new AtomicInteger(0);
 
@@ -43,6 +49,12 @@ public class LoomStats implements LoomStatsMXBean {
     this.clusterStats = new ClusterStats();
     this.failedClusterStats = new ClusterStats();
     this.successfulClusterStats = new ClusterStats();
+
+    this.jobSchedulingStats = new JobSchedulingStats();
+
+    this.entityCacheStats = new EntityCacheStats();
+
+    this.statementCacheStats = new StatementCacheStats();
   }
 
   @Override
@@ -85,6 +97,21 @@ public class LoomStats implements LoomStatsMXBean {
     return successfulClusterStats;
   }
 
+  @Override
+  public JobSchedulingStats getJobSchedulingStats() {
+    return jobSchedulingStats;
+  }
+
+  @Override
+  public EntityCacheStats getEntityCacheStats() {
+    return entityCacheStats;
+  }
+
+  @Override
+  public StatementCacheStats getStatementCacheStats() {
+    return statementCacheStats;
+  }
+
   public void setQueueLength(int queueLength) {
     this.queueLength.set(queueLength);
   }
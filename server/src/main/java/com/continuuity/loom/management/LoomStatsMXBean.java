@@ -34,5 +34,11 @@ public interface LoomStatsMXBean {
   ClusterStats getFailedClusterStats();
 
   ClusterStats getSuccessfulClusterStats();
+
+  JobSchedulingStats getJobSchedulingStats();
+
+  EntityCacheStats getEntityCacheStats();
+
+  StatementCacheStats getStatementCacheStats();
 }
 
@@ -51,6 +51,7 @@ public final class DummyProvisioner {
   private static boolean runOnce;
   private static long taskMs;
   private static long sleepMs;
+  private static long waitMs;
   private static String host;
   private static int port;
   private static int numTasks;
@@ -65,6 +66,7 @@ public final class DummyProvisioner {
     options.addOption("o", "once", false, "whether or not only one task should be taken before exiting");
     options.addOption("t", "taskMs", true, "number of milliseconds it should take to finish a task");
     options.addOption("s", "sleepMs", true, "number of milliseconds a thread will sleep before taking another task");
+    options.addOption("w", "waitMs", true, "number of milliseconds the server should wait for a task to take");
     options.addOption("n", "numTasks", true, "number of tasks to try and take from the queue.  Default is infinite.");
 
     try {
@@ -77,6 +79,7 @@ public final class DummyProvisioner {
       runOnce = cmd.hasOption('o');
       taskMs = cmd.hasOption('t') ? Long.valueOf(cmd.getOptionValue('t')) : 1000;
       sleepMs = cmd.hasOption('s') ? Long.valueOf(cmd.getOptionValue('s')) : 1000;
+      waitMs = cmd.hasOption('w') ? Long.valueOf(cmd.getOptionValue('w')) : 0;
       numTasks = cmd.hasOption('n') ? Integer.valueOf(cmd.getOptionValue('n')) : -1;
     } catch (ParseException e) {
       LOG.error("exception parsing input arguments.", e);
@@ -88,19 +91,21 @@ public final class DummyProvisioner {
     }
 
     if (runOnce) {
-      new Provisioner("dummy-0", host, port, failurePercent, taskMs, sleepMs, 1).runOnce();
+      new Provisioner("dummy-0", host, port, failurePercent, taskMs, sleepMs, waitMs, 1).runOnce();
     } else {
       LOG.info("running with " + concurrency + " threads, connecting to " + host + ":" + port + " with a failure % of "
-                 + failurePercent + ", task time of " + taskMs + " ms, and sleep time of " + sleepMs + " ms.");
+                 + failurePercent + ", task time of " + taskMs + " ms, sleep time of " + sleepMs + " ms, and wait time of "
+                 + waitMs + " ms.");
       pool = Executors.newFixedThreadPool(concurrency);
 
       try {
         int tasksPerProvisioner = numTasks >= 0 ? numTasks / concurrency : -1;
         int extra = numTasks < 0 ? 0 : numTasks % concurrency;
         pool.execute(
-          new Provisioner("dummy-0", host, port, failurePercent, taskMs, sleepMs, tasksPerProvisioner + extra));
+          new Provisioner("dummy-0", host, port, failurePercent, taskMs, sleepMs, waitMs, tasksPerProvisioner + extra));
         for (int i = 1; i < concurrency; i++) {
-          pool.execute(new Provisioner("dummy-" + i, host, port, failurePercent, taskMs, sleepMs, tasksPerProvisioner));
+          pool.execute(new Provisioner("dummy-" + i, host, port, failurePercent, taskMs, sleepMs, waitMs,
+                                       tasksPerProvisioner));
         }
       } catch (Exception e) {
         LOG.error("Caught exception, shutting down now.", e);
@@ -121,15 +126,18 @@ public final class DummyProvisioner {
     private final int numTasks;
     private final long taskMs;
     private final long sleepMs;
+    private final long waitMs;
     private int tasksTaken;
 
-    public Provisioner(String id, String host, int port, int failureRate, long taskMs, long sleepMs, int numTasks) {
+    public Provisioner(String id, String host, int port, int failureRate, long taskMs, long sleepMs, long waitMs,
+                       int numTasks) {
       this.id = id;
       this.host = host;
       this.port = port;
       this.failureRate = failureRate;
       this.taskMs = taskMs;
       this.sleepMs = sleepMs;
+      this.waitMs = waitMs;
       this.numTasks = numTasks;
       this.tasksTaken = 0;
     }
@@ -160,7 +168,13 @@ public final class DummyProvisioner {
     private String takeTask() throws IOException {
       DefaultHttpClient client = new DefaultHttpClient();
       HttpPost post = new HttpPost(String.format("http://%s:%d/v1/loom/tasks/take", host, port));
-      post.setEntity(new StringEntity("{ \"workerId\":\"" + id + "\" }"));
+      JsonObject body = new JsonObject();
+      body.addProperty("workerId", id);
+      if (waitMs > 0) {
+        // the server holds the request until a task is available, instead of us having to keep asking.
+        body.addProperty("waitMs", waitMs);
+      }
+      post.setEntity(new StringEntity(GSON.toJson(body)));
       HttpResponse response = client.execute(post);
       if (response.getStatusLine().getStatusCode() != 200) {
         return null;
@@ -24,6 +24,7 @@ import com.continuuity.loom.common.zookeeper.IdService;
 import com.continuuity.loom.common.zookeeper.guice.ZookeeperModule;
 import com.continuuity.loom.http.guice.HttpModule;
 import com.continuuity.loom.http.handler.LoomService;
+import com.continuuity.loom.layout.OrderedSearch;
 import com.continuuity.loom.management.LoomStats;
 import com.continuuity.loom.management.guice.ManagementModule;
 import com.continuuity.loom.scheduler.Scheduler;
@@ -68,7 +69,11 @@ public final class LoomServerMain extends DaemonMain {
   private Scheduler scheduler;
   private Configuration conf;
   private int solverNumThreads;
+  private int solverSearchNumThreads;
+  private int jobSchedulerNumThreads;
   private ListeningExecutorService solverExecutorService;
+  private ListeningExecutorService solverSearchExecutorService;
+  private ListeningExecutorService jobExecutorService;
   private ListeningExecutorService callbackExecutorService;
   private ClusterStoreService clusterStoreService;
   private EntityStoreService entityStoreService;
@@ -95,6 +100,8 @@ public final class LoomServerMain extends DaemonMain {
       }
 
       solverNumThreads = conf.getInt(Constants.SOLVER_NUM_THREADS);
+      solverSearchNumThreads = OrderedSearch.getNumThreads(conf);
+      jobSchedulerNumThreads = conf.getInt(Constants.JOB_SCHEDULER_NUM_THREADS);
     } catch (Exception e) {
       LOG.error("Exception initializing loom", e);
     }
@@ -117,6 +124,20 @@ public final class LoomServerMain extends DaemonMain {
                                      .setDaemon(true)
                                      .build()));
 
+    solverSearchExecutorService = MoreExecutors.listeningDecorator(
+      Executors.newFixedThreadPool(solverSearchNumThreads,
+                                   new ThreadFactoryBuilder()
+                                     .setNameFormat("solver-search-%d")
+                                     .setDaemon(true)
+                                     .build()));
+
+    jobExecutorService = MoreExecutors.listeningDecorator(
+      Executors.newFixedThreadPool(jobSchedulerNumThreads,
+                                   new ThreadFactoryBuilder()
+                                     .setNameFormat("job-scheduler-%d")
+                                     .setDaemon(true)
+                                     .build()));
+
     callbackExecutorService = MoreExecutors.listeningDecorator(
       Executors.newCachedThreadPool(new ThreadFactoryBuilder()
                                       .setNameFormat("callback-%d")
@@ -131,7 +152,8 @@ public final class LoomServerMain extends DaemonMain {
         new ZookeeperModule(zkClientService),
         new StoreModule(),
         new QueueModule(zkClientService),
-        new SchedulerModule(conf, callbackExecutorService, solverExecutorService),
+        new SchedulerModule(conf, callbackExecutorService, solverExecutorService, solverSearchExecutorService,
+                            jobExecutorService),
         new HttpModule(),
         new ManagementModule()
       );
@@ -186,6 +208,23 @@ public final class LoomServerMain extends DaemonMain {
         LOG.error("Got Exception: ", e);
       }
     }
+    // solves wait on searches, so searches can only be stopped once solves are done
+    if (solverSearchExecutorService != null) {
+      solverSearchExecutorService.shutdown();
+      try {
+        solverSearchExecutorService.awaitTermination(100, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        LOG.error("Got Exception: ", e);
+      }
+    }
+    if (jobExecutorService != null) {
+      jobExecutorService.shutdown();
+      try {
+        jobExecutorService.awaitTermination(100, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        LOG.error("Got Exception: ", e);
+      }
+    }
     if (callbackExecutorService != null) {
       callbackExecutorService.shutdown();
       try {
@@ -152,7 +152,9 @@ public class ClusterCleanup implements Runnable {
           nodeService.failAction(node, "", statusMessage);
 
           // Schedule the job
-          jobQueue.add(new Element(task.getJobId()));
+          if (taskService.recordTaskStatus(task)) {
+            jobQueue.add(new Element(task.getJobId()));
+          }
         }
       }
     } catch (Throwable e) {
@@ -24,6 +24,7 @@ import com.continuuity.loom.common.queue.Element;
 import com.continuuity.loom.common.queue.TrackingQueue;
 import com.continuuity.loom.common.zookeeper.lib.ZKInterProcessReentrantLock;
 import com.continuuity.loom.macro.Expander;
+import com.continuuity.loom.management.LoomStats;
 import com.continuuity.loom.scheduler.task.ClusterJob;
 import com.continuuity.loom.scheduler.task.ClusterTask;
 import com.continuuity.loom.scheduler.task.JobId;
@@ -37,6 +38,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.gson.JsonObject;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import org.apache.twill.zookeeper.ZKClient;
@@ -55,6 +58,9 @@ import java.util.Set;
  * If some task was failed, the appropriate retry and rollback actions are taken for the task. If the job itself fails,
  * unneeded tasks are dropped and cluster and job state is managed. If all tasks for the job have completed, status
  * is updated across the job and cluster.
+ * <p/>
+ * Jobs are scheduled on a pool of worker threads. Jobs of different clusters are scheduled in parallel, while jobs of
+ * the same cluster are scheduled one at a time, under the lock of the cluster.
  */
 public class JobScheduler implements Runnable {
   private static final Logger LOG = LoggerFactory.getLogger(JobScheduler.class);
@@ -67,13 +73,18 @@ public class JobScheduler implements Runnable {
   private final ZKClient zkClient;
   private final TaskService taskService;
   private final int maxTaskRetries;
+  private final LoomStats loomStats;
+  // schedules jobs of different clusters in parallel, and jobs of the same cluster one after the other.
+  private final KeyedSerialExecutor jobExecutor;
 
   @Inject
   private JobScheduler(ClusterStoreService clusterStoreService,
                        @Named(Constants.Queue.PROVISIONER) TrackingQueue provisionerQueue,
                        @Named(Constants.Queue.JOB) TrackingQueue jobQueue,
+                       @Named("job.executor.service") ListeningExecutorService executorService,
                        ZKClient zkClient,
                        TaskService taskService,
+                       LoomStats loomStats,
                        Configuration conf) {
     this.clusterStore = clusterStoreService.getSystemView();
     this.provisionerQueue = provisionerQueue;
@@ -81,120 +92,179 @@ public class JobScheduler implements Runnable {
     this.zkClient = ZKClients.namespace(zkClient, Constants.LOCK_NAMESPACE);
     this.taskService = taskService;
     this.maxTaskRetries = conf.getInt(Constants.MAX_ACTION_RETRIES);
+    this.loomStats = loomStats;
+    this.jobExecutor = new KeyedSerialExecutor(executorService, conf.getInt(Constants.JOB_SCHEDULER_NUM_THREADS));
   }
 
+  /**
+   * Takes jobs from the job queue and hands them off to be scheduled, without taking more jobs than there are job
+   * scheduler threads. Jobs that can't be scheduled right away stay in the queue, where they are not lost if this
+   * server goes away. Jobs of different clusters are scheduled in parallel, while jobs of the same cluster are
+   * scheduled one after the other, so that threads do not sit idle waiting on the lock of a cluster that another
+   * thread is holding.
+   */
   @Override
   public void run() {
     try {
       while (true) {
-        Element element = jobQueue.take(consumerId);
-        if (element == null) {
-          return;
-        }
-        String jobIdStr = element.getValue();
-
-        LOG.debug("Got job {} to schedule", jobIdStr);
-        JobId jobId = JobId.fromString(jobIdStr);
-        ZKInterProcessReentrantLock lock = new ZKInterProcessReentrantLock(zkClient, "/" + jobId.getClusterId());
+        jobExecutor.reserve();
+        boolean handedOff = false;
         try {
-          lock.acquire();
-          ClusterJob job = clusterStore.getClusterJob(jobId);
-          Cluster cluster = clusterStore.getCluster(job.getClusterId());
-          // this can happen if 2 tasks complete around the same time and the first one places the job in the queue,
-          // sees 0 in progress tasks, and sets the cluster status. The job is still in the queue as another element
-          // from the 2nd task and gets here.  In that case, no need to go further.
-          if (cluster.getStatus() != Cluster.Status.PENDING) {
-            continue;
+          Element element = jobQueue.take(consumerId);
+          if (element == null) {
+            return;
           }
-          LOG.trace("Scheduling job {}", job);
-          Set<String> currentStage = job.getCurrentStage();
-
-          // Check how many tasks are completed/not-submitted
-          boolean jobFailed = job.getJobStatus() == ClusterJob.Status.FAILED;
-          int completedTasks = 0;
-          int inProgressTasks = 0;
-          Set<ClusterTask> notSubmittedTasks = Sets.newHashSet();
-          Set<ClusterTask> retryTasks = Sets.newHashSet();
-          // TODO: avoid looking up every single task every time
-          LOG.debug("Verifying task statuses for stage {} for job {}", job.getCurrentStageNumber(), jobIdStr);
-          for (String taskId : currentStage) {
-            ClusterTask task = clusterStore.getClusterTask(TaskId.fromString(taskId));
-            job.setTaskStatus(task.getTaskId(), task.getStatus());
-            LOG.debug("Status of task {} is {}", taskId, task.getStatus());
-            if (task.getStatus() == ClusterTask.Status.COMPLETE) {
-              ++completedTasks;
-            } else if (task.getStatus() == ClusterTask.Status.NOT_SUBMITTED) {
-              notSubmittedTasks.add(task);
-            } else if (task.getStatus() == ClusterTask.Status.FAILED) {
-              // If max retries has not reached, retry task. Else, fail job.
-              if (task.getNumAttempts() < maxTaskRetries) {
-                retryTasks.add(task);
-              } else {
-                jobFailed = true;
-              }
-            } else if (task.getStatus() == ClusterTask.Status.IN_PROGRESS) {
-              ++inProgressTasks;
+          final TakenElement takenElement = new TakenElement(element);
+          // elements that are dropped are not marked as finished, so the queue will give them out again once they
+          // time out.
+          jobExecutor.execute(JobId.fromString(element.getValue()).getClusterId(), new Runnable() {
+            @Override
+            public void run() {
+              schedule(takenElement);
             }
+          });
+          handedOff = true;
+        } finally {
+          if (!handedOff) {
+            jobExecutor.unreserve();
           }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Throwable e) {
+      LOG.error("Got exception: ", e);
+    }
+  }
 
-          // If the job has not failed continue with scheduling other tasks.
-          if (!jobFailed) {
-            Set<Node> clusterNodes = clusterStore.getClusterNodes(job.getClusterId());
-            Map<String, Node> nodeMap = Maps.newHashMap();
-            for (Node node : clusterNodes) {
-              nodeMap.put(node.getId(), node);
-            }
+  private void schedule(TakenElement takenElement) {
+    Element element = takenElement.element;
+    String jobIdStr = element.getValue();
 
-            // Handle retry tasks if any
-            if (!retryTasks.isEmpty()) {
-              for (ClusterTask task : retryTasks) {
-                notSubmittedTasks.add(scheduleRetry(cluster, job, task, nodeMap.get(task.getNodeId())));
-              }
-            }
+    LOG.debug("Got job {} to schedule", jobIdStr);
+    JobId jobId = JobId.fromString(jobIdStr);
+    ZKInterProcessReentrantLock lock = new ZKInterProcessReentrantLock(zkClient, "/" + jobId.getClusterId());
+    try {
+      lock.acquire();
+      ClusterJob job = clusterStore.getClusterJob(jobId);
+      Cluster cluster = clusterStore.getCluster(job.getClusterId());
+      // this can happen if 2 tasks complete around the same time and the first one places the job in the queue,
+      // sees 0 in progress tasks, and sets the cluster status. The job is still in the queue as another element
+      // from the 2nd task and gets here.  In that case, no need to go further.
+      if (cluster.getStatus() != Cluster.Status.PENDING) {
+        return;
+      }
+      LOG.trace("Scheduling job {}", job);
+      Set<String> currentStage = job.getCurrentStage();
 
-            // Submit any tasks not yet submitted
-            if (!notSubmittedTasks.isEmpty()) {
-              submitTasks(notSubmittedTasks, cluster, nodeMap, clusterNodes, job);
-            }
+      boolean jobFailed = job.getJobStatus() == ClusterJob.Status.FAILED;
+      Set<ClusterTask> notSubmittedTasks = Sets.newHashSet();
+      Set<ClusterTask> retryTasks = Sets.newHashSet();
+      // The job keeps count of the tasks in the current stage that are completed or in progress, as they finish.
+      // Only if there are other tasks in the stage, the ones that are not submitted or that failed, is there anything
+      // to look up in the store.
+      LOG.debug("Verifying task statuses for stage {} for job {}", job.getCurrentStageNumber(), jobIdStr);
+      Set<TaskId> stageTaskIds = Sets.newHashSet();
+      if (job.getCurrentStageCompletedTasks() + job.getCurrentStageInProgressTasks() < currentStage.size()) {
+        for (String taskId : currentStage) {
+          ClusterTask.Status status = job.getTaskStatus().get(taskId);
+          if (status != ClusterTask.Status.COMPLETE && status != ClusterTask.Status.IN_PROGRESS) {
+            stageTaskIds.add(TaskId.fromString(taskId));
+          }
+        }
+      }
+      Set<TaskId> tasksToRead = Sets.newHashSet();
+      for (Map.Entry<TaskId, ClusterTask.Status> entry : clusterStore.getClusterTaskStatuses(stageTaskIds).entrySet()) {
+        ClusterTask.Status status = entry.getValue();
+        LOG.debug("Status of task {} is {}", entry.getKey(), status);
+        if (status == ClusterTask.Status.NOT_SUBMITTED || status == ClusterTask.Status.FAILED) {
+          tasksToRead.add(entry.getKey());
+        } else {
+          job.setTaskStatus(entry.getKey().getId(), status);
+        }
+      }
+      for (ClusterTask task : clusterStore.getClusterTasks(tasksToRead).values()) {
+        job.setTaskStatus(task.getTaskId(), task.getStatus());
+        if (task.getStatus() == ClusterTask.Status.NOT_SUBMITTED) {
+          notSubmittedTasks.add(task);
+        } else if (task.getStatus() == ClusterTask.Status.FAILED) {
+          // If max retries has not reached, retry task. Else, fail job.
+          if (task.getNumAttempts() < maxTaskRetries) {
+            retryTasks.add(task);
+          } else {
+            jobFailed = true;
+          }
+        }
+      }
 
-            // Note: before moving cluster out of pending state, make sure that all in progress tasks are done.
-            // If all tasks are completed then move to next stage
-            if (completedTasks == currentStage.size()) {
-              if (job.hasNextStage()) {
-                LOG.debug("Advancing to next stage {} for job {}", job.getCurrentStageNumber(), job.getJobId());
-                job.advanceStage();
-                jobQueue.add(new Element(jobIdStr));
-              } else {
-                taskService.completeJob(job, cluster);
-              }
-            }
-            clusterStore.writeClusterJob(job);
-          } else if (inProgressTasks == 0) {
-            // Job failed and no in progress tasks remaining, update cluster status
-            taskService.failJobAndSetClusterStatus(job, cluster);
+      // If the job has not failed continue with scheduling other tasks.
+      if (!jobFailed) {
+        Set<Node> clusterNodes = clusterStore.getClusterNodes(job.getClusterId());
+        Map<String, Node> nodeMap = Maps.newHashMap();
+        for (Node node : clusterNodes) {
+          nodeMap.put(node.getId(), node);
+        }
+
+        // Handle retry tasks if any
+        if (!retryTasks.isEmpty()) {
+          for (ClusterTask task : retryTasks) {
+            notSubmittedTasks.add(scheduleRetry(cluster, job, task, nodeMap.get(task.getNodeId())));
+          }
+        }
+
+        // Submit any tasks not yet submitted
+        if (!notSubmittedTasks.isEmpty()) {
+          submitTasks(notSubmittedTasks, cluster, nodeMap, clusterNodes, job);
+        }
+
+        // Note: before moving cluster out of pending state, make sure that all in progress tasks are done.
+        // If all tasks are completed then move to next stage
+        if (job.isCurrentStageComplete()) {
+          if (job.hasNextStage()) {
+            LOG.debug("Advancing to next stage {} for job {}", job.getCurrentStageNumber(), job.getJobId());
+            job.advanceStage();
+            jobQueue.add(new Element(jobIdStr));
           } else {
-            // Job failed but tasks are still in progress, wait for them to finish before setting cluster status
-            taskService.failJob(job);
+            taskService.completeJob(job, cluster);
           }
-        } finally {
-          lock.release();
-          jobQueue.recordProgress(consumerId, element.getId(), TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY, "");
         }
+        clusterStore.writeClusterJob(job);
+      } else if (job.getCurrentStageInProgressTasks() == 0) {
+        // Job failed and no in progress tasks remaining, update cluster status
+        taskService.failJobAndSetClusterStatus(job, cluster);
+      } else {
+        // Job failed but tasks are still in progress, wait for them to finish before setting cluster status
+        taskService.failJob(job);
       }
     } catch (Throwable e) {
-      LOG.error("Got exception: ", e);
+      LOG.error("Got exception while scheduling job {}: ", jobIdStr, e);
+    } finally {
+      lock.release();
+      jobQueue.recordProgress(consumerId, element.getId(), TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY, "");
+      long latency = System.currentTimeMillis() - takenElement.takenTime;
+      loomStats.getJobSchedulingStats().record(latency);
+      LOG.debug("Scheduled job {} {} ms after taking it from the queue", jobIdStr, latency);
     }
   }
 
   private void submitTasks(Set<ClusterTask> notSubmittedTasks, Cluster cluster, Map<String, Node> nodeMap,
                            Set<Node> clusterNodes, ClusterJob job) throws Exception {
+    if (notSubmittedTasks.isEmpty()) {
+      return;
+    }
+
+    // The node list is the same for every task of the job, so store it once and only reference it from each task.
+    // It gets added back to the task config when the task is taken.
+    JsonObject sharedConfig = TaskConfig.getSharedConfig(clusterNodes);
+    String sharedConfigId = TaskConfig.getSharedConfigId(sharedConfig);
+    clusterStore.writeSharedTaskConfig(JobId.fromString(job.getJobId()), sharedConfigId, sharedConfig);
 
     for (final ClusterTask task : notSubmittedTasks) {
       Node taskNode = nodeMap.get(task.getNodeId());
       TaskConfig.updateNodeProperties(task.getConfig(), taskNode);
 
-      // Add the node list
-      TaskConfig.addNodeList(task.getConfig(), clusterNodes);
+      // Reference the node list
+      task.getConfig().addProperty(TaskConfig.SHARED_CONFIG_ID, sharedConfigId);
 
       // TODO: do this only once and save it
       if (!task.getTaskName().isHardwareAction()) {
@@ -238,14 +308,10 @@ public class JobScheduler implements Runnable {
     }
 
     // store all retry tasks
-    for (ClusterTask t : retryTasks) {
-      clusterStore.writeClusterTask(t);
-    }
+    clusterStore.writeClusterTasks(retryTasks);
 
-    // Remove self from current stage
-    job.getCurrentStage().remove(task.getTaskId());
-    // Add first retry task to current stage
-    job.getCurrentStage().add(retryTasks.get(0).getTaskId());
+    // Replace self with first retry task in current stage
+    job.replaceTaskInCurrentStage(task.getTaskId(), retryTasks.get(0).getTaskId());
     // Add the rest of retry tasks after current stage. TODO: this needs to be revisited.
     job.insertTasksAfterCurrentStage(ImmutableList.copyOf(Iterables.transform(Iterables.skip(retryTasks, 1),
                                                                               CLUSTER_TASK_STRING_FUNCTION)));
@@ -280,4 +346,17 @@ public class JobScheduler implements Runnable {
         return clusterTask.getTaskId();
       }
     };
+
+  /**
+   * Element taken from the job queue, along with the time it was taken.
+   */
+  private static final class TakenElement {
+    private final Element element;
+    private final long takenTime;
+
+    private TakenElement(Element element) {
+      this.element = element;
+      this.takenTime = System.currentTimeMillis();
+    }
+  }
 }
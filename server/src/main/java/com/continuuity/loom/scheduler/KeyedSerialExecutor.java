@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.scheduler;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs tasks on an executor so that tasks with different keys run in parallel, while tasks with the same key run one
+ * after the other, in the order they were given. Tasks with the same key never sit on an executor thread waiting for
+ * each other. The number of tasks that were given but are not done yet is limited, so that callers can hold off on
+ * getting more work with {@link #reserve()} until there is room for it.
+ */
+final class KeyedSerialExecutor {
+  private static final Logger LOG = LoggerFactory.getLogger(KeyedSerialExecutor.class);
+
+  private final Executor executor;
+  private final Semaphore permits;
+  // key -> tasks waiting to run. A key is in the map for as long as a worker is running its tasks.
+  private final Map<String, Queue<Runnable>> pending;
+
+  /**
+   * Create an executor that runs tasks on the given executor and allows up to the given number of tasks that are not
+   * done yet.
+   *
+   * @param executor Executor to run tasks on.
+   * @param maxPending Max number of tasks that were given but are not done yet.
+   */
+  KeyedSerialExecutor(Executor executor, int maxPending) {
+    this.executor = executor;
+    this.permits = new Semaphore(maxPending);
+    this.pending = Maps.newHashMap();
+  }
+
+  /**
+   * Wait until there is room for another task. Every reservation must be followed by either a call to
+   * {@link #execute(String, Runnable)} or a call to {@link #unreserve()}.
+   *
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  void reserve() throws InterruptedException {
+    permits.acquire();
+  }
+
+  /**
+   * Give back a reservation that was not used.
+   */
+  void unreserve() {
+    permits.release();
+  }
+
+  /**
+   * Run a task after all tasks with the same key that were given before it. Must be preceded by a call to
+   * {@link #reserve()}, which is given back once the task is done. If the executor rejects running the task, it is
+   * dropped, along with the tasks with the same key that are waiting to run.
+   *
+   * @param key Key of the task.
+   * @param task Task to run.
+   */
+  void execute(String key, Runnable task) {
+    Worker worker;
+    synchronized (pending) {
+      Queue<Runnable> tasks = pending.get(key);
+      if (tasks != null) {
+        tasks.add(task);
+        return;
+      }
+      tasks = Lists.newLinkedList();
+      tasks.add(task);
+      pending.put(key, tasks);
+      worker = new Worker(key, tasks);
+    }
+    try {
+      executor.execute(worker);
+    } catch (RejectedExecutionException e) {
+      LOG.error("Unable to run tasks for {}.", key, e);
+      synchronized (pending) {
+        pending.remove(key);
+        permits.release(worker.tasks.size());
+      }
+    }
+  }
+
+  /**
+   * Runs the tasks of a key until there are none left.
+   */
+  private final class Worker implements Runnable {
+    private final String key;
+    // guarded by pending
+    private final Queue<Runnable> tasks;
+
+    private Worker(String key, Queue<Runnable> tasks) {
+      this.key = key;
+      this.tasks = tasks;
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        Runnable next;
+        synchronized (pending) {
+          next = tasks.poll();
+          if (next == null) {
+            pending.remove(key);
+            return;
+          }
+        }
+        try {
+          next.run();
+        } catch (Throwable t) {
+          LOG.error("Caught exception while running task for {}.", key, t);
+        } finally {
+          permits.release();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a {@link Runnable} on an executor whenever it is asked to. The runnable never runs concurrently with itself.
+ * Requests that come in while the runnable is running are folded into a single extra run once the current run
+ * is done, so that whatever prompted the request is never missed, but a burst of requests does not cause a burst of
+ * runs. Requesting a run never blocks.
+ */
+final class OnDemandRunner {
+  private static final Logger LOG = LoggerFactory.getLogger(OnDemandRunner.class);
+  private static final int IDLE = 0;
+  private static final int RUNNING = 1;
+  private static final int RUNNING_AND_REQUESTED = 2;
+
+  private final Runnable runnable;
+  private final Executor executor;
+  private final AtomicInteger state;
+  private final Runnable runLoop;
+
+  OnDemandRunner(Runnable runnable, Executor executor) {
+    this.runnable = runnable;
+    this.executor = executor;
+    this.state = new AtomicInteger(IDLE);
+    this.runLoop = new Runnable() {
+      @Override
+      public void run() {
+        runUntilNotRequested();
+      }
+    };
+  }
+
+  /**
+   * Request a run. Starts a run right away if the runnable is not running, or makes it run again once it is done if
+   * it is running.
+   */
+  void request() {
+    while (true) {
+      int current = state.get();
+      if (current == IDLE) {
+        if (state.compareAndSet(IDLE, RUNNING)) {
+          try {
+            executor.execute(runLoop);
+          } catch (RejectedExecutionException e) {
+            // executor is shutting down, nothing will run anymore.
+            state.set(IDLE);
+            LOG.debug("Not running {} since the executor rejected it.", runnable);
+          }
+          return;
+        }
+      } else if (current == RUNNING) {
+        if (state.compareAndSet(RUNNING, RUNNING_AND_REQUESTED)) {
+          return;
+        }
+      } else {
+        // a run is already requested
+        return;
+      }
+    }
+  }
+
+  private void runUntilNotRequested() {
+    while (true) {
+      try {
+        runnable.run();
+      } catch (Throwable t) {
+        LOG.error("Caught exception while running {}.", runnable, t);
+      }
+      if (state.compareAndSet(RUNNING, IDLE)) {
+        return;
+      }
+      // a run was requested while running
+      state.set(RUNNING);
+    }
+  }
+}
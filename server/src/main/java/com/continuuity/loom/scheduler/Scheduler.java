@@ -17,12 +17,15 @@ package com.continuuity.loom.scheduler;
 
 import com.continuuity.loom.common.conf.Configuration;
 import com.continuuity.loom.common.conf.Constants;
+import com.continuuity.loom.common.queue.TrackingQueue;
 import com.continuuity.loom.common.zookeeper.ElectionHandler;
 import com.continuuity.loom.common.zookeeper.LeaderElection;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import org.apache.twill.common.Cancellable;
 import org.apache.twill.common.Threads;
 import org.apache.twill.zookeeper.ZKClient;
 import org.slf4j.Logger;
@@ -52,6 +55,11 @@ public class Scheduler extends AbstractIdleService {
   private final ClusterCleanup clusterCleanup;
   private final long clusterCleanupRunInterval;
   private final Set<ScheduledFuture<?>> scheduledFutures;
+  private final Set<Cancellable> queueListeners;
+  private final TrackingQueue clusterQueue;
+  private final TrackingQueue jobQueue;
+  private final TrackingQueue solverQueue;
+  private final TrackingQueue callbackQueue;
   private final LeaderElection leaderElection;
 
   @Inject
@@ -61,7 +69,11 @@ public class Scheduler extends AbstractIdleService {
                     SolverScheduler solverScheduler,
                     CallbackScheduler callbackScheduler,
                     ClusterCleanup clusterCleanup,
-                    ZKClient zkClient) {
+                    ZKClient zkClient,
+                    @Named(Constants.Queue.CLUSTER) TrackingQueue clusterQueue,
+                    @Named(Constants.Queue.JOB) TrackingQueue jobQueue,
+                    @Named(Constants.Queue.SOLVER) TrackingQueue solverQueue,
+                    @Named(Constants.Queue.CALLBACK) TrackingQueue callbackQueue) {
     int schedulerRunInterval = conf.getInt(Constants.SCHEDULER_INTERVAL_SECS);
     long clusterCleanupRunInterval = conf.getLong(Constants.CLUSTER_CLEANUP_SECS);
     this.executorService = Executors.newScheduledThreadPool(5,
@@ -76,6 +88,11 @@ public class Scheduler extends AbstractIdleService {
     this.callbackScheduler = callbackScheduler;
     this.clusterCleanup = clusterCleanup;
     this.scheduledFutures = Sets.newHashSet();
+    this.queueListeners = Sets.newHashSet();
+    this.clusterQueue = clusterQueue;
+    this.jobQueue = jobQueue;
+    this.solverQueue = solverQueue;
+    this.callbackQueue = callbackQueue;
 
     this.leaderElection = new LeaderElection(zkClient, "/server-election", new ElectionHandler() {
       private final ExecutorService executor = Executors.newSingleThreadExecutor(
@@ -119,25 +136,12 @@ public class Scheduler extends AbstractIdleService {
   }
 
   private void schedule() {
-    LOG.info("Scheduling cluster scheduler every {} secs...", schedulerRunInterval);
-    scheduledFutures.add(
-      executorService.scheduleAtFixedRate(clusterScheduler, 1, schedulerRunInterval, TimeUnit.SECONDS)
-    );
-
-    LOG.info("Scheduling job scheduler every {} secs...", schedulerRunInterval);
-    scheduledFutures.add(
-      executorService.scheduleAtFixedRate(jobScheduler, 1, schedulerRunInterval, TimeUnit.SECONDS)
-    );
-
-    LOG.info("Scheduling solver scheduler every {} secs...", schedulerRunInterval);
-    scheduledFutures.add(
-      executorService.scheduleAtFixedRate(solverScheduler, 1, schedulerRunInterval, TimeUnit.SECONDS)
-    );
-
-    LOG.info("Scheduling callback scheduler every {} secs...", schedulerRunInterval);
-    scheduledFutures.add(
-      executorService.scheduleAtFixedRate(callbackScheduler, 1, schedulerRunInterval, TimeUnit.SECONDS)
-    );
+    // schedulers run as soon as there is something in their queue, and also every so often in case something
+    // was missed, for example while this server was not the leader.
+    scheduleOnDemand("cluster scheduler", clusterScheduler, clusterQueue);
+    scheduleOnDemand("job scheduler", jobScheduler, jobQueue);
+    scheduleOnDemand("solver scheduler", solverScheduler, solverQueue);
+    scheduleOnDemand("callback scheduler", callbackScheduler, callbackQueue);
 
     LOG.info("Scheduling cluster cleanup every {} secs...", clusterCleanupRunInterval);
     scheduledFutures.add(
@@ -145,6 +149,24 @@ public class Scheduler extends AbstractIdleService {
     );
   }
 
+  private void scheduleOnDemand(String name, Runnable scheduler, TrackingQueue queue) {
+    final OnDemandRunner runner = new OnDemandRunner(scheduler, executorService);
+
+    LOG.info("Scheduling {} on queue changes and every {} secs...", name, schedulerRunInterval);
+    queueListeners.add(queue.addListener(new TrackingQueue.Listener() {
+      @Override
+      public void available(String elementId) {
+        runner.request();
+      }
+    }));
+    scheduledFutures.add(executorService.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        runner.request();
+      }
+    }, 1, schedulerRunInterval, TimeUnit.SECONDS));
+  }
+
   private void unschedule() {
     for (ScheduledFuture<?> future : scheduledFutures) {
       try {
@@ -154,5 +176,9 @@ public class Scheduler extends AbstractIdleService {
       }
     }
     scheduledFutures.clear();
+    for (Cancellable queueListener : queueListeners) {
+      queueListener.cancel();
+    }
+    queueListeners.clear();
   }
 }
@@ -24,6 +24,7 @@ import com.continuuity.loom.common.queue.TrackingQueue;
 import com.continuuity.loom.common.zookeeper.IdService;
 import com.continuuity.loom.http.request.AddServicesRequest;
 import com.continuuity.loom.layout.ClusterCreateRequest;
+import com.continuuity.loom.layout.SearchBudgetExceededException;
 import com.continuuity.loom.layout.Solver;
 import com.continuuity.loom.management.LoomStats;
 import com.continuuity.loom.scheduler.task.ClusterJob;
@@ -206,9 +207,9 @@ public class SolverScheduler implements Runnable {
       // TODO: stuff like this should be wrapped in a transaction
       Set<String> changedNodeIds = Sets.newHashSet();
       for (Node node : changedNodes) {
-        clusterStore.writeNode(node);
         changedNodeIds.add(node.getId());
       }
+      clusterStore.writeNodes(changedNodes);
       clusterStore.writeCluster(cluster);
 
       // Create new Job for creating cluster.
@@ -238,6 +239,9 @@ public class SolverScheduler implements Runnable {
       } catch (IllegalArgumentException e) {
         LOG.error("Layout solving failed due to impossible constraints.", e);
         errorMessage = errorMessage + ": " + e.getMessage();
+      } catch (SearchBudgetExceededException e) {
+        LOG.error("Layout solving gave up before finding a layout.", e);
+        errorMessage = errorMessage + ": " + e.getMessage();
       }
 
       long duration = (System.nanoTime() - start) / 1000000;
@@ -261,9 +265,7 @@ public class SolverScheduler implements Runnable {
       // TODO: loom status update should happen in TaskService.
       loomStats.getSuccessfulClusterStats().incrementStat(ClusterAction.SOLVE_LAYOUT);
 
-      for (Node node : clusterNodes.values()) {
-        clusterStore.writeNode(node);
-      }
+      clusterStore.writeNodes(clusterNodes.values());
 
       // Create new Job for creating cluster.
       JobId clusterJobId = idService.getNewJobId(cluster.getId());
@@ -2,11 +2,13 @@ package com.continuuity.loom.scheduler.guice;
 
 import com.continuuity.loom.common.conf.Configuration;
 import com.continuuity.loom.common.conf.Constants;
+import com.continuuity.loom.layout.NodeLayoutPreferencesCache;
 import com.continuuity.loom.scheduler.ClusterScheduler;
 import com.continuuity.loom.scheduler.JobScheduler;
 import com.continuuity.loom.scheduler.Scheduler;
 import com.continuuity.loom.scheduler.SolverScheduler;
 import com.continuuity.loom.scheduler.callback.ClusterCallback;
+import com.continuuity.loom.scheduler.task.TaskQueueService;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.inject.AbstractModule;
 import com.google.inject.Scopes;
@@ -18,14 +20,20 @@ import com.google.inject.name.Names;
 public class SchedulerModule extends AbstractModule {
   private final ListeningExecutorService callbackExecutorService;
   private final ListeningExecutorService solverExecutorService;
+  private final ListeningExecutorService solverSearchExecutorService;
+  private final ListeningExecutorService jobExecutorService;
   private final String schedulerId;
   private final Class callbackClass;
 
   public SchedulerModule(Configuration conf,
                          ListeningExecutorService callbackExecutorService,
-                         ListeningExecutorService solverExecutorService) throws ClassNotFoundException {
+                         ListeningExecutorService solverExecutorService,
+                         ListeningExecutorService solverSearchExecutorService,
+                         ListeningExecutorService jobExecutorService) throws ClassNotFoundException {
     this.callbackExecutorService = callbackExecutorService;
     this.solverExecutorService = solverExecutorService;
+    this.solverSearchExecutorService = solverSearchExecutorService;
+    this.jobExecutorService = jobExecutorService;
     this.schedulerId = "scheduler-" + conf.get(Constants.HOST);
     this.callbackClass = Class.forName(conf.get(Constants.CALLBACK_CLASS));
   }
@@ -38,13 +46,21 @@ public class SchedulerModule extends AbstractModule {
     bind(ListeningExecutorService.class)
       .annotatedWith(Names.named("solver.executor.service"))
       .toInstance(solverExecutorService);
+    bind(ListeningExecutorService.class)
+      .annotatedWith(Names.named("solver.search.executor.service"))
+      .toInstance(solverSearchExecutorService);
     bind(ListeningExecutorService.class)
       .annotatedWith(Names.named("callback.executor.service"))
       .toInstance(callbackExecutorService);
+    bind(ListeningExecutorService.class)
+      .annotatedWith(Names.named("job.executor.service"))
+      .toInstance(jobExecutorService);
 
     bind(JobScheduler.class).in(Scopes.SINGLETON);
     bind(ClusterScheduler.class).in(Scopes.SINGLETON);
     bind(SolverScheduler.class).in(Scopes.SINGLETON);
     bind(Scheduler.class).in(Scopes.SINGLETON);
+    bind(TaskQueueService.class).in(Scopes.SINGLETON);
+    bind(NodeLayoutPreferencesCache.class).in(Scopes.SINGLETON);
   }
 }
@@ -28,7 +28,9 @@ import java.util.Set;
 
 /**
  * A job contains information related to what needs to be done to perform and coordinate a cluster operation. It keeps
- * track of node level tasks that must be executed, and the stages in which tasks must be executed.
+ * track of node level tasks that must be executed, and the stages in which tasks must be executed. Counts of the tasks
+ * in the current stage that are completed, failed, or in progress are kept up to date as task statuses are set, so
+ * that checking whether the current stage is done does not require looking at every task in the stage.
  */
 public class ClusterJob {
 
@@ -51,6 +53,9 @@ public class ClusterJob {
   private final Map<String, ClusterTask.Status> taskStatus;
   private Status jobStatus;
   private String statusMessage;
+  // counts for the current stage, null if they need to be recounted from the task statuses. Not persisted, so that
+  // they are always recounted from the task statuses when the job is read.
+  private transient StageCounts currentStageCounts;
 
   /**
    * Create a cluster job with the given job id that represent the given action to perform on a cluster across all
@@ -154,6 +159,7 @@ public class ClusterJob {
     for (String task : tasks) {
       taskStatus.put(task, ClusterTask.Status.NOT_SUBMITTED);
     }
+    currentStageCounts = null;
   }
 
   /**
@@ -171,6 +177,20 @@ public class ClusterJob {
   public void clearTasks() {
     stagedTasks.clear();
     taskStatus.clear();
+    currentStageCounts = null;
+  }
+
+  /**
+   * Replace a task in the current stage with another task. Used when a task is retried using different tasks.
+   *
+   * @param taskId Id of the task to remove from the current stage.
+   * @param replacementTaskId Id of the task to add to the current stage.
+   */
+  public void replaceTaskInCurrentStage(String taskId, String replacementTaskId) {
+    Set<String> currentStage = getCurrentStage();
+    currentStage.remove(taskId);
+    currentStage.add(replacementTaskId);
+    currentStageCounts = null;
   }
 
   /**
@@ -198,6 +218,7 @@ public class ClusterJob {
    */
   public void advanceStage() {
     ++currentStageNumber;
+    currentStageCounts = null;
   }
 
   /**
@@ -216,7 +237,70 @@ public class ClusterJob {
    * @param status Status to set the task status to.
    */
   public void setTaskStatus(String taskId, ClusterTask.Status status) {
-    this.taskStatus.put(taskId, status);
+    ClusterTask.Status oldStatus = this.taskStatus.put(taskId, status);
+    if (currentStageCounts != null && oldStatus != status && isInCurrentStage(taskId)) {
+      currentStageCounts.add(oldStatus, -1);
+      currentStageCounts.add(status, 1);
+    }
+  }
+
+  /**
+   * Return whether or not a task is part of the current stage.
+   *
+   * @param taskId Id of the task to check.
+   * @return true if the task is part of the current stage, false otherwise.
+   */
+  public boolean isInCurrentStage(String taskId) {
+    return currentStageNumber < stagedTasks.size() && getCurrentStage().contains(taskId);
+  }
+
+  /**
+   * Get the number of tasks in the current stage that are complete.
+   *
+   * @return Number of tasks in the current stage that are complete.
+   */
+  public int getCurrentStageCompletedTasks() {
+    return getCurrentStageCounts().completed;
+  }
+
+  /**
+   * Get the number of tasks in the current stage that failed.
+   *
+   * @return Number of tasks in the current stage that failed.
+   */
+  public int getCurrentStageFailedTasks() {
+    return getCurrentStageCounts().failed;
+  }
+
+  /**
+   * Get the number of tasks in the current stage that are in progress.
+   *
+   * @return Number of tasks in the current stage that are in progress.
+   */
+  public int getCurrentStageInProgressTasks() {
+    return getCurrentStageCounts().inProgress;
+  }
+
+  /**
+   * Return whether or not all tasks in the current stage are complete.
+   *
+   * @return true if all tasks in the current stage are complete, false otherwise.
+   */
+  public boolean isCurrentStageComplete() {
+    return currentStageNumber < stagedTasks.size() && getCurrentStageCompletedTasks() == getCurrentStage().size();
+  }
+
+  private StageCounts getCurrentStageCounts() {
+    if (currentStageCounts == null) {
+      StageCounts counts = new StageCounts();
+      if (currentStageNumber < stagedTasks.size()) {
+        for (String taskId : getCurrentStage()) {
+          counts.add(taskStatus.get(taskId), 1);
+        }
+      }
+      currentStageCounts = counts;
+    }
+    return currentStageCounts;
   }
 
   /**
@@ -297,4 +381,23 @@ public class ClusterJob {
   public int hashCode() {
     return Objects.hashCode(jobId, clusterId, stagedTasks, currentStageNumber, taskStatus, jobStatus, statusMessage);
   }
+
+  /**
+   * Counts of tasks in a stage by status. Only statuses the job scheduler needs to act on are counted.
+   */
+  private static final class StageCounts {
+    private int completed;
+    private int failed;
+    private int inProgress;
+
+    private void add(ClusterTask.Status status, int delta) {
+      if (status == ClusterTask.Status.COMPLETE) {
+        completed += delta;
+      } else if (status == ClusterTask.Status.FAILED) {
+        failed += delta;
+      } else if (status == ClusterTask.Status.IN_PROGRESS) {
+        inProgress += delta;
+      }
+    }
+  }
 }
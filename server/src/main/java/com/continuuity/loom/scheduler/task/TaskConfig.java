@@ -21,6 +21,8 @@ import com.continuuity.loom.admin.ServiceAction;
 import com.continuuity.loom.cluster.Cluster;
 import com.continuuity.loom.cluster.Node;
 import com.continuuity.loom.codec.json.JsonSerde;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import org.slf4j.Logger;
@@ -36,6 +38,12 @@ public class TaskConfig {
   private static final Logger LOG = LoggerFactory.getLogger(TaskConfig.class);
   private static final JsonSerde JSON_SERDE = new JsonSerde();
 
+  /**
+   * Property of a task config that holds the id of the config shared by all tasks of the job, which is stored once
+   * for the job and added to the task config when the task is taken.
+   */
+  public static final String SHARED_CONFIG_ID = "sharedConfigId";
+
   /**
    * Create a configuration json object to use for a given cluster, node, service, and action.
    *
@@ -123,4 +131,41 @@ public class TaskConfig {
     jsonObject.add("nodes", nodesJson);
     return jsonObject;
   }
+
+  /**
+   * Create the configuration shared by all tasks of a job, which contains the properties of all nodes in the cluster.
+   *
+   * @param clusterNodes Set of nodes in the cluster.
+   * @return Configuration shared by all tasks of a job.
+   */
+  public static JsonObject getSharedConfig(Set<Node> clusterNodes) {
+    return addNodeList(new JsonObject(), clusterNodes);
+  }
+
+  /**
+   * Get the id of a shared configuration. The id is derived from the contents of the configuration, so the same
+   * configuration always gets the same id, and different configurations get different ids.
+   *
+   * @param sharedConfig Shared configuration to get the id of.
+   * @return Id of the shared configuration.
+   */
+  public static String getSharedConfigId(JsonObject sharedConfig) {
+    return Hashing.md5().hashString(sharedConfig.toString(), Charsets.UTF_8).toString();
+  }
+
+  /**
+   * Add the contents of a shared configuration to a task configuration, replacing the reference to the shared
+   * configuration.
+   *
+   * @param jsonObject Task configuration to add the shared configuration to.
+   * @param sharedConfig Shared configuration referenced by the task configuration.
+   * @return Updated json object.
+   */
+  public static JsonObject addSharedConfig(JsonObject jsonObject, JsonObject sharedConfig) {
+    jsonObject.remove(SHARED_CONFIG_ID);
+    for (Map.Entry<String, JsonElement> entry : sharedConfig.entrySet()) {
+      jsonObject.add(entry.getKey(), entry.getValue());
+    }
+    return jsonObject;
+  }
 }
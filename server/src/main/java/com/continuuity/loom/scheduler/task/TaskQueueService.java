@@ -16,26 +16,57 @@
 package com.continuuity.loom.scheduler.task;
 
 import com.continuuity.loom.cluster.Node;
+import com.continuuity.loom.codec.json.JsonSerde;
+import com.continuuity.loom.common.conf.Configuration;
 import com.continuuity.loom.common.conf.Constants;
 import com.continuuity.loom.common.queue.Element;
 import com.continuuity.loom.common.queue.TrackingQueue;
 import com.continuuity.loom.management.LoomStats;
 import com.continuuity.loom.store.cluster.ClusterStore;
 import com.continuuity.loom.store.cluster.ClusterStoreService;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Manages handing out tasks from task queue, and recording status after the task is done.
  */
 public class TaskQueueService {
   private static final Logger LOG = LoggerFactory.getLogger(TaskQueueService.class);
+  private static final Gson GSON = new JsonSerde().getGson();
+  // shared task configs never change, so they can be cached for as long as there is room for them.
+  private static final int SHARED_CONFIG_CACHE_SIZE = 50;
 
   private final TrackingQueue taskQueue;
   private final ClusterStore clusterStore;
@@ -43,6 +74,21 @@ public class TaskQueueService {
   private final TaskService taskService;
   private final NodeService nodeService;
   private final LoomStats loomStats;
+  private final int maxTasksPerTake;
+  private final long maxTakeWaitMs;
+  private final int numTakeThreads;
+  // workers waiting for tasks, in the order they started waiting.
+  private final BlockingDeque<Waiter> waiters;
+  // number of take threads currently giving tasks to waiting workers.
+  private final AtomicInteger activeTakes;
+  // whether tasks were added since a take thread last started taking tasks.
+  private final AtomicBoolean tasksAdded;
+  // times out waiting workers.
+  private final ScheduledExecutorService waiterExecutor;
+  // takes tasks for waiting workers, so that waiting workers don't hold up the threads of the requests.
+  private final ExecutorService takeExecutor;
+  // jobId:configId->shared task config
+  private final Cache<String, JsonObject> sharedConfigs;
 
   @Inject
   private TaskQueueService(@Named(Constants.Queue.PROVISIONER) TrackingQueue taskQueue,
@@ -50,62 +96,316 @@ public class TaskQueueService {
                            ClusterStoreService clusterStoreService,
                            TaskService taskService,
                            NodeService nodeService,
-                           LoomStats loomStats) {
+                           LoomStats loomStats,
+                           Configuration conf) {
     this.taskQueue = taskQueue;
     this.clusterStore = clusterStoreService.getSystemView();
     this.jobQueue = jobQueue;
     this.taskService = taskService;
     this.nodeService = nodeService;
     this.loomStats = loomStats;
+    this.maxTasksPerTake = conf.getInt(Constants.TASK_TAKE_MAX_TASKS);
+    this.maxTakeWaitMs = conf.getLong(Constants.TASK_TAKE_MAX_WAIT_MS);
+    this.numTakeThreads = conf.getInt(Constants.TASK_TAKE_NUM_THREADS);
+    this.waiters = new LinkedBlockingDeque<Waiter>();
+    this.activeTakes = new AtomicInteger(0);
+    this.tasksAdded = new AtomicBoolean(false);
+    this.sharedConfigs = CacheBuilder.newBuilder().maximumSize(SHARED_CONFIG_CACHE_SIZE).build();
+    this.waiterExecutor = Executors.newSingleThreadScheduledExecutor(
+      Threads.createDaemonThreadFactory("task-take-waiters"));
+    this.takeExecutor = Executors.newFixedThreadPool(numTakeThreads, Threads.createDaemonThreadFactory("task-take-%d"));
+    this.taskQueue.addListener(new TrackingQueue.Listener() {
+      @Override
+      public void available(String elementId) {
+        tasksAdded.set(true);
+        wakeWaiters();
+      }
+    });
   }
 
   /**
-   * Returns the next task from task queue that can be handed out for provisioning.
+   * Returns up to the given number of tasks from task queue that can be handed out for provisioning, capped by the
+   * configured max number of tasks per take. Tasks are taken from the queue at once, and tasks, jobs and nodes are
+   * read from the store for all taken tasks at once.
    * When it goes through the task queue, if it gets a task whose job is already marked as FAILED then
    * the task gets marked as DROPPED, and is skipped.
    *
    * @param workerId worker ID of the provisioner worker.
-   * @return Task JSON to be handed over to the provisioner.
+   * @param maxTasks max number of tasks to take.
+   * @return Task JSONs to be handed over to the provisioner, in the order they were taken. Empty if there are no tasks
+   *         to take.
    * @throws Exception
    */
-  public String takeNextClusterTask(String workerId) throws Exception {
+  public List<String> takeNextClusterTasks(String workerId, int maxTasks) throws Exception {
+    return ImmutableList.copyOf(takeTasks(workerId, maxTasks).values());
+  }
+
+  // takes tasks like takeNextClusterTasks, returning the task JSONs by task id.
+  private Map<String, String> takeTasks(String workerId, int maxTasks) throws Exception {
     loomStats.setQueueLength(taskQueue.size());
 
-    ClusterTask clusterTask = null;
-    String taskJson = null;
+    int numTasks = Math.min(maxTasks, maxTasksPerTake);
+    Map<String, String> taskJsons = Maps.newLinkedHashMap();
+    List<ClusterTask> clusterTasks = Lists.newArrayListWithCapacity(numTasks);
 
-    while (clusterTask == null) {
-      Element task = taskQueue.take(workerId);
-      if (task == null) {
+    // skipped tasks don't count, so keep taking until there is nothing left to take.
+    while (taskJsons.size() < numTasks) {
+      List<Element> tasks = taskQueue.take(workerId, numTasks - taskJsons.size());
+      if (tasks.isEmpty()) {
         break;
       }
 
-      clusterTask = clusterStore.getClusterTask(TaskId.fromString(task.getId()));
-      if (clusterTask != null) {
-        String jobId = clusterTask.getJobId();
-        ClusterJob clusterJob = clusterStore.getClusterJob(JobId.fromString(jobId));
+      Set<TaskId> taskIds = Sets.newHashSet();
+      for (Element task : tasks) {
+        taskIds.add(TaskId.fromString(task.getId()));
+      }
+      Map<TaskId, ClusterTask> storedTasks = clusterStore.getClusterTasks(taskIds);
+
+      Set<JobId> jobIds = Sets.newHashSet();
+      for (ClusterTask clusterTask : storedTasks.values()) {
+        jobIds.add(JobId.fromString(clusterTask.getJobId()));
+      }
+      Map<JobId, ClusterJob> jobs = clusterStore.getClusterJobs(jobIds, Constants.SUPERADMIN_TENANT);
 
-        if (clusterJob == null || clusterJob.getJobStatus() == ClusterJob.Status.FAILED) {
-          // we don't want to give out tasks for failed jobs.  Remove from the queue and move on.
-          taskQueue.recordProgress(workerId, clusterTask.getTaskId(),
-                                   TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY, "Skipped due to job failure.");
-          taskService.dropTask(clusterTask);
-          jobQueue.add(new Element(clusterTask.getJobId()));
-          clusterTask = null;
+      for (Element task : tasks) {
+        final ClusterTask clusterTask = storedTasks.get(TaskId.fromString(task.getId()));
+        if (clusterTask != null) {
+          ClusterJob clusterJob = jobs.get(JobId.fromString(clusterTask.getJobId()));
+
+          if (clusterJob == null || clusterJob.getJobStatus() == ClusterJob.Status.FAILED) {
+            // we don't want to give out tasks for failed jobs.  Remove from the queue and move on.
+            taskQueue.recordProgress(workerId, clusterTask.getTaskId(),
+                                     TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY,
+                                     "Skipped due to job failure.");
+            boolean scheduleJob = taskService.recordTaskStatus(clusterTask, new Callable<Void>() {
+              @Override
+              public Void call() throws Exception {
+                taskService.dropTask(clusterTask);
+                return null;
+              }
+            });
+            if (scheduleJob) {
+              jobQueue.add(new Element(clusterTask.getJobId()));
+            }
+          } else {
+            String taskJson;
+            try {
+              taskJson = getTaskJson(task.getValue(), clusterTask);
+            } catch (Exception e) {
+              // fail only this task, so that the other tasks taken are still given out.
+              LOG.error("Unable to add the shared config to task {}, failing it.", clusterTask.getTaskId(), e);
+              failTakenTask(workerId, clusterTask, "Unable to get the shared config of the task.");
+              continue;
+            }
+            taskJsons.put(clusterTask.getTaskId(), taskJson);
+            clusterTasks.add(clusterTask);
+          }
         } else {
-          taskJson = task.getValue();
-          startNodeAction(clusterTask);
+          LOG.error("Got empty task JSON for {}, skipping it.", task.getId());
+          taskQueue.recordProgress(workerId, task.getId(), TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY,
+                                   "Skipped due to empty task JSON.");
         }
-      } else {
-        LOG.error("Got empty task JSON for {}, skipping it.", task.getId());
-        taskQueue.recordProgress(workerId, task.getId(), TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY,
-                                 "Skipped due to empty task JSON.");
       }
     }
 
-    LOG.trace("task {} given to worker {}", clusterTask, workerId);
+    startNodeActions(clusterTasks);
+
+    LOG.trace("tasks {} given to worker {}", clusterTasks, workerId);
+
+    return taskJsons;
+  }
+
+  // fails a task that was taken but cannot be given out, removing it from the queue instead of leaving it taken until
+  // it times out. The job scheduler then retries the task, or fails the job, like for any other failed task.
+  private void failTakenTask(String workerId, final ClusterTask clusterTask, String message) throws Exception {
+    taskQueue.recordProgress(workerId, clusterTask.getTaskId(), TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY,
+                             message);
+    clusterTask.setStatusMessage(message);
+    boolean scheduleJob = taskService.recordTaskStatus(clusterTask, new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        taskService.failTask(clusterTask, -1);
+        return null;
+      }
+    });
+    if (scheduleJob) {
+      jobQueue.add(new Element(clusterTask.getJobId()));
+    }
+  }
+
+  // adds the config shared by all tasks of the job to the task json, if the task references one.
+  private String getTaskJson(String queuedJson, ClusterTask clusterTask) throws IOException {
+    JsonObject taskJson = GSON.fromJson(queuedJson, JsonObject.class);
+    JsonObject config = taskJson.getAsJsonObject("config");
+    if (config == null || !config.has(TaskConfig.SHARED_CONFIG_ID)) {
+      return queuedJson;
+    }
+
+    String configId = config.get(TaskConfig.SHARED_CONFIG_ID).getAsString();
+    String cacheKey = clusterTask.getJobId() + ":" + configId;
+    JsonObject sharedConfig = sharedConfigs.getIfPresent(cacheKey);
+    if (sharedConfig == null) {
+      sharedConfig = clusterStore.getSharedTaskConfig(JobId.fromString(clusterTask.getJobId()), configId);
+      if (sharedConfig == null) {
+        throw new IOException("Shared config " + configId + " of task " + clusterTask.getTaskId() + " not found.");
+      }
+      sharedConfigs.put(cacheKey, sharedConfig);
+    }
+    TaskConfig.addSharedConfig(config, sharedConfig);
+    return GSON.toJson(taskJson);
+  }
+
+  /**
+   * Takes up to the given number of tasks like {@link #takeNextClusterTasks(String, int)}, but if there are no tasks to
+   * take right away, waits for up to the given amount of time, capped by the configured max wait time, for tasks to
+   * become available. Waiting does not hold up any thread. Waiting workers are woken up as soon as tasks are added to
+   * the task queue, and are given tasks in the order they started waiting, by a pool of take threads. Tasks that were
+   * taken for a worker that stopped waiting in the meantime are put back in the queue. A worker only waits in one
+   * request at a time, so a worker that starts waiting again stops waiting in its earlier request.
+   *
+   * @param workerId worker ID of the provisioner worker.
+   * @param maxTasks max number of tasks to take.
+   * @param waitMs max number of milliseconds to wait for tasks.
+   * @return Future of the task JSONs to be handed over to the provisioner, which will be empty if no tasks became
+   *         available in time. Cancelling the future stops waiting.
+   * @throws Exception
+   */
+  public ListenableFuture<List<String>> takeNextClusterTasks(String workerId, int maxTasks, long waitMs)
+    throws Exception {
+    List<String> taskJsons = takeNextClusterTasks(workerId, maxTasks);
+    long actualWaitMs = Math.min(waitMs, maxTakeWaitMs);
+    if (!taskJsons.isEmpty() || actualWaitMs <= 0) {
+      return Futures.immediateFuture(taskJsons);
+    }
+
+    // the worker gave up on its earlier request, for example because its connection was closed.
+    for (Waiter earlier : waiters) {
+      if (earlier.workerId.equals(workerId)) {
+        earlier.result.set(ImmutableList.<String>of());
+      }
+    }
+
+    final Waiter waiter = new Waiter(workerId, maxTasks);
+    waiter.result.addListener(new Runnable() {
+      @Override
+      public void run() {
+        waiters.remove(waiter);
+      }
+    }, MoreExecutors.sameThreadExecutor());
+    waiters.add(waiter);
+    waiterExecutor.schedule(new Runnable() {
+      @Override
+      public void run() {
+        // does nothing if the waiter was already given tasks.
+        waiter.result.set(ImmutableList.<String>of());
+      }
+    }, actualWaitMs, TimeUnit.MILLISECONDS);
+
+    // tasks may have been added after the take above, but before the worker started waiting.
+    tasksAdded.set(true);
+    wakeWaiters();
+    return waiter.result;
+  }
+
+  /**
+   * Stop handing out tasks to waiting workers. Workers that are still waiting are given no tasks.
+   */
+  public void shutdown() {
+    waiterExecutor.shutdownNow();
+    takeExecutor.shutdown();
+    try {
+      takeExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (Waiter waiter = waiters.poll(); waiter != null; waiter = waiters.poll()) {
+      waiter.result.set(ImmutableList.<String>of());
+    }
+  }
+
+  // many tasks can be added at once, so there is no need to go through the waiters for every one of them. Starts as
+  // many take threads as there are waiting workers, up to the number of take threads. Each keeps giving tasks to
+  // waiting workers until there are no tasks or no workers left.
+  private void wakeWaiters() {
+    int toWake = waiters.size();
+    while (toWake > 0) {
+      int active = activeTakes.get();
+      if (active >= numTakeThreads) {
+        return;
+      }
+      if (activeTakes.compareAndSet(active, active + 1)) {
+        try {
+          takeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+              giveTasksToWaiters();
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          // shutting down
+          activeTakes.decrementAndGet();
+          return;
+        }
+        toWake--;
+      }
+    }
+  }
+
+  private void giveTasksToWaiters() {
+    try {
+      while (giveTasksToNextWaiter()) {
+        // keep going
+      }
+    } finally {
+      activeTakes.decrementAndGet();
+    }
+    // tasks may have been added while all take threads were busy, in which case no thread was woken up for them.
+    if (tasksAdded.get()) {
+      wakeWaiters();
+    }
+  }
+
+  // gives tasks to the worker that has been waiting the longest. Returns whether or not there may be more to give.
+  private boolean giveTasksToNextWaiter() {
+    tasksAdded.set(false);
+    Waiter waiter = waiters.poll();
+    if (waiter == null) {
+      return false;
+    }
+    if (waiter.result.isDone()) {
+      // timed out or given up on
+      return true;
+    }
+
+    Map<String, String> taskJsons;
+    try {
+      taskJsons = takeTasks(waiter.workerId, waiter.maxTasks);
+    } catch (Exception e) {
+      LOG.error("Exception taking tasks for waiting worker {}.", waiter.workerId, e);
+      waiter.result.setException(e);
+      return true;
+    }
 
-    return taskJson;
+    if (taskJsons.isEmpty()) {
+      // nothing left to take, the worker stays first in line unless it stopped waiting in the meantime.
+      waiters.addFirst(waiter);
+      if (waiter.result.isDone()) {
+        waiters.remove(waiter);
+      }
+      return tasksAdded.get();
+    }
+    if (!waiter.result.set(ImmutableList.copyOf(taskJsons.values()))) {
+      putBack(waiter.workerId, taskJsons.keySet());
+    }
+    return true;
+  }
+
+  // puts tasks taken for a worker that stopped waiting back in the queue, so that other workers can take them.
+  private void putBack(String workerId, Collection<String> taskIds) {
+    LOG.debug("Worker {} stopped waiting, putting back tasks {}", workerId, taskIds);
+    for (String taskId : taskIds) {
+      taskQueue.recordProgress(workerId, taskId, TrackingQueue.ConsumingStatus.FAILED, "Worker stopped waiting.");
+    }
   }
 
   /**
@@ -120,8 +420,8 @@ public class TaskQueueService {
    * @param stderr stderr of the task.
    * @throws Exception
    */
-  public void finishClusterTask(String taskId, String workerId, int status, JsonObject result,
-                                String stdout, String stderr) throws Exception {
+  public void finishClusterTask(final String taskId, final String workerId, final int status,
+                                final JsonObject result, final String stdout, final String stderr) throws Exception {
     loomStats.setQueueLength(taskQueue.size());
 
     TrackingQueue.PossessionState state =
@@ -132,36 +432,54 @@ public class TaskQueueService {
       throw new  IllegalStateException("Worker is not the owner of the task");
     }
 
-    // Queue update was successful, now update the task object
-    ClusterTask clusterTask = clusterStore.getClusterTask(TaskId.fromString(taskId));
-
-    if (status == 0) {
-      LOG.debug("Successful finish of the task reported. Task {} by worker {}", taskId, workerId);
-      taskService.completeTask(clusterTask, status);
-    } else {
-      LOG.debug("Failure to finish task reported. Task {} by worker {}", taskId, workerId);
-      taskService.failTask(clusterTask, status);
-    }
+    // Queue update was successful, now update the task object, the node and the job in a single transaction.
+    // The job is only scheduled once the transaction is committed, so that the job scheduler sees all the changes.
+    final ClusterTask clusterTask = clusterStore.getClusterTask(TaskId.fromString(taskId));
+    boolean scheduleJob = taskService.recordTaskStatus(clusterTask, new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        if (status == 0) {
+          LOG.debug("Successful finish of the task reported. Task {} by worker {}", taskId, workerId);
+          taskService.completeTask(clusterTask, status);
+        } else {
+          LOG.debug("Failure to finish task reported. Task {} by worker {}", taskId, workerId);
+          taskService.failTask(clusterTask, status);
+        }
 
-    finishNodeAction(clusterTask, result, stdout, stderr);
+        finishNodeAction(clusterTask, result, stdout, stderr);
+        return null;
+      }
+    });
 
-    // Schedule the job for processing
-    jobQueue.add(new Element(clusterTask.getJobId()));
+    // Schedule the job for processing only if there is something for the job scheduler to do
+    if (scheduleJob) {
+      jobQueue.add(new Element(clusterTask.getJobId()));
+    }
   }
 
-  void startNodeAction(ClusterTask clusterTask) throws Exception {
+  void startNodeActions(List<ClusterTask> clusterTasks) throws Exception {
     // Update node properties if task is associated with a nodeId.
     // There are cases when we don't associate a nodeId with a task so that the node properties don't get overridden
     // by the task output.
     // Eg. deleting a box during a rollback operation since we reuse nodeIds.
-    if (clusterTask.getNodeId() != null) {
-      Node node = clusterStore.getNode(clusterTask.getNodeId());
-      if (node == null) {
-        LOG.error("Cannot find node {} for task {} to update the properties",
-                  clusterTask.getNodeId(), clusterTask.getTaskId());
-      } else {
-        nodeService.startAction(node, clusterTask.getTaskId(), clusterTask.getService(),
-                                clusterTask.getTaskName().name());
+    Set<String> nodeIds = Sets.newHashSet();
+    for (ClusterTask clusterTask : clusterTasks) {
+      if (clusterTask.getNodeId() != null) {
+        nodeIds.add(clusterTask.getNodeId());
+      }
+    }
+    Map<String, Node> nodes = clusterStore.getNodes(nodeIds);
+
+    for (ClusterTask clusterTask : clusterTasks) {
+      if (clusterTask.getNodeId() != null) {
+        Node node = nodes.get(clusterTask.getNodeId());
+        if (node == null) {
+          LOG.error("Cannot find node {} for task {} to update the properties",
+                    clusterTask.getNodeId(), clusterTask.getTaskId());
+        } else {
+          nodeService.startAction(node, clusterTask.getTaskId(), clusterTask.getService(),
+                                  clusterTask.getTaskName().name());
+        }
       }
     }
   }
@@ -195,4 +513,18 @@ public class TaskQueueService {
     }
   }
 
+  /**
+   * A worker waiting for tasks.
+   */
+  private static final class Waiter {
+    private final String workerId;
+    private final int maxTasks;
+    private final SettableFuture<List<String>> result;
+
+    private Waiter(String workerId, int maxTasks) {
+      this.workerId = workerId;
+      this.maxTasks = maxTasks;
+      this.result = SettableFuture.create();
+    }
+  }
 }
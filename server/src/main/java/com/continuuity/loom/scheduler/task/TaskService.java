@@ -24,6 +24,7 @@ import com.continuuity.loom.common.conf.Constants;
 import com.continuuity.loom.common.queue.Element;
 import com.continuuity.loom.common.queue.TrackingQueue;
 import com.continuuity.loom.common.zookeeper.IdService;
+import com.continuuity.loom.common.zookeeper.lib.ZKInterProcessReentrantLock;
 import com.continuuity.loom.management.LoomStats;
 import com.continuuity.loom.scheduler.Actions;
 import com.continuuity.loom.scheduler.ClusterAction;
@@ -35,11 +36,14 @@ import com.google.common.collect.Lists;
 import com.google.gson.Gson;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.twill.zookeeper.ZKClients;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * Service for performing operations on {@link ClusterTask}s.
@@ -52,16 +56,19 @@ public class TaskService {
   private final LoomStats loomStats;
   private final TrackingQueue callbackQueue;
   private final IdService idService;
+  private final ZKClient zkClient;
 
   @Inject
   private TaskService(ClusterStoreService clusterStoreService,
                       LoomStats loomStats,
                       @Named(Constants.Queue.CALLBACK) TrackingQueue callbackQueue,
-                      IdService idService) {
+                      IdService idService,
+                      ZKClient zkClient) {
     this.clusterStore = clusterStoreService.getSystemView();
     this.loomStats = loomStats;
     this.callbackQueue = callbackQueue;
     this.idService = idService;
+    this.zkClient = ZKClients.namespace(zkClient, Constants.LOCK_NAMESPACE);
   }
 
   /**
@@ -313,4 +320,79 @@ public class TaskService {
     loomStats.getSuccessfulProvisionerStats().incrementStat(clusterTask.getTaskName());
   }
 
+  /**
+   * Records the current status of the given task in the job the task belongs to, and persists the job. This is done
+   * under the lock of the cluster, so that tasks of the same job finishing at the same time do not overwrite each
+   * other's changes to the job. Tasks that are not part of the current stage of their job, such as rollback tasks,
+   * are not recorded, but their job is always scheduled.
+   *
+   * @param clusterTask Task whose status changed.
+   * @return true if the job needs to be scheduled because the current stage completed, the task failed, the job
+   *         failed and has no more tasks in progress, or the task is not in the current stage, false otherwise.
+   * @throws IOException
+   */
+  public boolean recordTaskStatus(ClusterTask clusterTask) throws IOException {
+    ZKInterProcessReentrantLock lock = getClusterLock(clusterTask);
+    try {
+      lock.acquire();
+      return recordTaskStatusLocked(clusterTask);
+    } finally {
+      lock.release();
+    }
+  }
+
+  /**
+   * Runs the given unit of work and then records the current status of the given task in the job the task belongs to,
+   * like {@link #recordTaskStatus(ClusterTask)}, all in a single cluster store transaction. The lock of the cluster is
+   * held until the transaction is committed, so that tasks of the same job finishing at the same time never read the
+   * job before the changes made here are committed.
+   *
+   * @param clusterTask Task whose status changes.
+   * @param unitOfWork Work to do in the same transaction before recording the status, such as writing the task.
+   * @return true if the job needs to be scheduled, false otherwise, as in {@link #recordTaskStatus(ClusterTask)}.
+   * @throws Exception if the unit of work failed or if the transaction could not be committed, in which case nothing
+   *                   was written.
+   */
+  public boolean recordTaskStatus(final ClusterTask clusterTask, final Callable<Void> unitOfWork) throws Exception {
+    ZKInterProcessReentrantLock lock = getClusterLock(clusterTask);
+    try {
+      lock.acquire();
+      return clusterStore.executeInTransaction(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          unitOfWork.call();
+          return recordTaskStatusLocked(clusterTask);
+        }
+      });
+    } finally {
+      lock.release();
+    }
+  }
+
+  private ZKInterProcessReentrantLock getClusterLock(ClusterTask clusterTask) {
+    return new ZKInterProcessReentrantLock(zkClient, "/" + JobId.fromString(clusterTask.getJobId()).getClusterId());
+  }
+
+  // must be called while holding the lock of the cluster the task belongs to.
+  private boolean recordTaskStatusLocked(ClusterTask clusterTask) throws IOException {
+    JobId jobId = JobId.fromString(clusterTask.getJobId());
+    ClusterJob job = clusterStore.getClusterJob(jobId);
+    if (job == null) {
+      LOG.warn("Job {} of task {} does not exist, not recording task status.", jobId, clusterTask.getTaskId());
+      return false;
+    }
+    if (!job.isInCurrentStage(clusterTask.getTaskId())) {
+      // the job scheduler decides what to do with tasks outside the current stage, such as rollback tasks.
+      LOG.debug("Task {} is not in the current stage of job {}, scheduling the job without recording task status.",
+                clusterTask.getTaskId(), jobId);
+      return true;
+    }
+    job.setTaskStatus(clusterTask.getTaskId(), clusterTask.getStatus());
+    clusterStore.writeClusterJob(job);
+
+    if (job.getJobStatus() == ClusterJob.Status.FAILED) {
+      return job.getCurrentStageInProgressTasks() == 0;
+    }
+    return clusterTask.getStatus() == ClusterTask.Status.FAILED || job.isCurrentStageComplete();
+  }
 }
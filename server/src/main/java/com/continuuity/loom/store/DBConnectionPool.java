@@ -17,15 +17,21 @@ package com.continuuity.loom.store;
 
 import com.continuuity.loom.common.conf.Configuration;
 import com.continuuity.loom.common.conf.Constants;
+import com.continuuity.loom.management.LoomStats;
 import com.google.inject.Inject;
 import org.apache.tomcat.jdbc.pool.DataSource;
 import org.apache.tomcat.jdbc.pool.PoolProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 
 /**
  * Connection pool for databases using JDBC.
@@ -34,15 +40,23 @@ public class DBConnectionPool {
   private static final Logger LOG  = LoggerFactory.getLogger(DBConnectionPool.class);
   private final DataSource datasource;
   private final boolean isEmbeddedDerbyDB;
+  private final boolean isMySQLDB;
+  // connection of the transaction in progress in the current thread, if any.
+  private final ThreadLocal<Connection> transactionConnection = new ThreadLocal<Connection>();
 
-  @Inject
   public DBConnectionPool(Configuration conf) throws SQLException {
+    this(conf, new LoomStats());
+  }
+
+  @Inject
+  public DBConnectionPool(Configuration conf, LoomStats loomStats) throws SQLException {
     String driverClass = conf.get(Constants.JDBC_DRIVER);
     String connectionString = conf.get(Constants.JDBC_CONNECTION_STRING);
     String dbUser = conf.get(Constants.DB_USER);
     String dbPassword = conf.get(Constants.DB_PASSWORD);
     String validationQuery = conf.get(Constants.DB_VALIDATION_QUERY);
     int maxConnections = conf.getInt(Constants.DB_MAX_ACTIVE_CONNECTIONS);
+    int statementCacheSize = conf.getInt(Constants.DB_STATEMENT_CACHE_SIZE);
 
     if (driverClass == null || connectionString == null) {
       String localDataDir = conf.get(Constants.LOCAL_DATA_DIR);
@@ -60,6 +74,11 @@ public class DBConnectionPool {
 
     Properties properties = new Properties();
     properties.put("autoReconnect", "true");
+    boolean isMySQL = connectionString.startsWith("jdbc:mysql:");
+    if (isMySQL) {
+      // lets the driver send a batch of inserts as a single multi-row insert.
+      properties.put("rewriteBatchedStatements", "true");
+    }
 
     PoolProperties poolProperties = new PoolProperties();
     poolProperties.setUrl(connectionString);
@@ -90,13 +109,20 @@ public class DBConnectionPool {
     poolProperties.setMinIdle(10);
     poolProperties.setLogAbandoned(false);
     poolProperties.setRemoveAbandoned(true);
-    poolProperties.setJdbcInterceptors("org.apache.tomcat.jdbc.pool.interceptor.ConnectionState;" +
-                                         "org.apache.tomcat.jdbc.pool.interceptor.StatementFinalizer");
+    String interceptors = "org.apache.tomcat.jdbc.pool.interceptor.ConnectionState;" +
+      "org.apache.tomcat.jdbc.pool.interceptor.StatementFinalizer";
+    if (statementCacheSize > 0) {
+      // must come after the finalizer, so that statements left open are given back to the cache instead of closed.
+      interceptors += ";" + StatsStatementCache.class.getName() + "(prepared=true,callable=false,max=" +
+        statementCacheSize + ",stats=" + StatsStatementCache.register(loomStats.getStatementCacheStats()) + ")";
+    }
+    poolProperties.setJdbcInterceptors(interceptors);
     poolProperties.setDbProperties(properties);
 
     this.datasource = new DataSource();
     datasource.setPoolProperties(poolProperties);
     this.isEmbeddedDerbyDB = driverClass.equals(Constants.EMBEDDED_DERBY_DRIVER);
+    this.isMySQLDB = isMySQL;
   }
 
   /**
@@ -109,12 +135,82 @@ public class DBConnectionPool {
   }
 
   /**
-   * Get a {@link Connection} from the pool.
+   * Returns whether or not the connection pool is connected to a MySQL db.
+   *
+   * @return true if connected to a MySQL db, false if not.
+   */
+  public boolean isMySQLDB() {
+    return isMySQLDB;
+  }
+
+  /**
+   * Get a {@link Connection} from the pool. If a transaction is in progress in the current thread, the connection of
+   * the transaction is returned instead. Closing it, or committing, rolling back or changing the auto-commit mode of
+   * it, has no effect, as the transaction is controlled by {@link #executeInTransaction(Callable)}.
    *
    * @return Connection from the pool.
    * @throws SQLException
    */
   public Connection getConnection() throws SQLException {
-    return datasource.getConnection();
+    Connection conn = transactionConnection.get();
+    return conn == null ? datasource.getConnection() : conn;
+  }
+
+  /**
+   * Runs the given unit of work as a single transaction. Every connection the unit of work gets from the pool in the
+   * current thread is the same connection, and everything done with it is committed once the unit of work returns, or
+   * rolled back if it throws an exception. If a transaction is already in progress in the current thread, the unit of
+   * work simply becomes part of it.
+   *
+   * @param unitOfWork Unit of work to run.
+   * @param <T> Type of result of the unit of work.
+   * @return Result of the unit of work.
+   * @throws Exception if the unit of work failed or if the transaction could not be committed.
+   */
+  public <T> T executeInTransaction(Callable<T> unitOfWork) throws Exception {
+    if (transactionConnection.get() != null) {
+      return unitOfWork.call();
+    }
+
+    Connection conn = datasource.getConnection();
+    try {
+      conn.setAutoCommit(false);
+      transactionConnection.set(unclosable(conn));
+      boolean committed = false;
+      try {
+        T result = unitOfWork.call();
+        conn.commit();
+        committed = true;
+        return result;
+      } finally {
+        transactionConnection.remove();
+        if (!committed) {
+          conn.rollback();
+        }
+        conn.setAutoCommit(true);
+      }
+    } finally {
+      conn.close();
+    }
+  }
+
+  // wraps a connection so that only executeInTransaction can end the transaction and give the connection back.
+  private static Connection unclosable(final Connection conn) {
+    return (Connection) Proxy.newProxyInstance(
+      Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (name.equals("close") || name.equals("commit") || name.equals("rollback") ||
+          name.equals("setAutoCommit")) {
+          return null;
+        }
+        try {
+          return method.invoke(conn, args);
+        } catch (InvocationTargetException e) {
+          throw e.getCause();
+        }
+      }
+    });
   }
 }
@@ -1,7 +1,6 @@
 package com.continuuity.loom.store;
 
-import com.continuuity.loom.codec.json.JsonSerde;
-import com.google.common.base.Charsets;
+import com.continuuity.loom.codec.store.StoreSerde;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -9,8 +8,8 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.io.Closeables;
 
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -26,16 +25,34 @@ import java.util.Set;
  * Helper for executing sql statements for getting collections of items that should been deserialized.
  */
 public final class DBQueryHelper {
-  private static final JsonSerde codec = new JsonSerde();
+  private static final StoreSerde codec = new StoreSerde();
 
   public static void createDerbyTable(String createString, DBConnectionPool connectionPool) throws SQLException {
+    executeDerbyUpdate(createString, connectionPool);
+  }
+
+  /**
+   * Adds a column to a table in derby, if the table does not already have it. Used for tables created by an older
+   * version, since the embedded derby database is persistent.
+   *
+   * @param table Table to add the column to.
+   * @param columnDefinition Name and type of the column to add.
+   * @param connectionPool Pool of connections to the derby database.
+   * @throws SQLException
+   */
+  public static void addDerbyColumn(String table, String columnDefinition, DBConnectionPool connectionPool)
+    throws SQLException {
+    executeDerbyUpdate("ALTER TABLE " + table + " ADD COLUMN " + columnDefinition, connectionPool);
+  }
+
+  private static void executeDerbyUpdate(String updateString, DBConnectionPool connectionPool) throws SQLException {
     Connection conn = connectionPool.getConnection();
     try {
       Statement statement = conn.createStatement();
       try {
-        statement.executeUpdate(createString);
+        statement.executeUpdate(updateString);
       } catch (SQLException e) {
-        // code for the table already exists in derby.
+        // code for the table or column already exists in derby.
         if (!e.getSQLState().equals("X0Y32")) {
           throw Throwables.propagate(e);
         }
@@ -119,6 +136,35 @@ public final class DBQueryHelper {
     }
   }
 
+  /**
+   * Queries the store for items, deserializing them one at a time and passing them to the given handler as they are
+   * read, until there are no more items or until the handler asks to stop.
+   *
+   * @param statement PreparedStatement of the query, ready for execution.
+   * @param clazz Class of the items being queried.
+   * @param handler Handler for the items.
+   * @param <T> Type of the items being queried.
+   * @return Number of items passed to the handler.
+   * @throws SQLException
+   * @throws IOException if the handler had a problem handling an item.
+   */
+  public static <T> int handleQueryResults(PreparedStatement statement, Class<T> clazz, ResultHandler<T> handler)
+    throws SQLException, IOException {
+    ResultSet rs = statement.executeQuery();
+    try {
+      int numResults = 0;
+      boolean more = true;
+      while (more && rs.next()) {
+        Blob blob = rs.getBlob(1);
+        more = handler.handle(deserializeBlob(blob, clazz));
+        numResults++;
+      }
+      return numResults;
+    } finally {
+      rs.close();
+    }
+  }
+
   /**
    * Queries the store for a single item, deserializing the item and returning it or null if the item does not exist.
    *
@@ -159,14 +205,14 @@ public final class DBQueryHelper {
   }
 
   public static <T> T deserializeBlob(Blob blob, Class<T> clazz) throws SQLException {
-    Reader reader = new InputStreamReader(blob.getBinaryStream(), Charsets.UTF_8);
-    T object;
+    InputStream input = blob.getBinaryStream();
     try {
-      object = codec.deserialize(reader, clazz);
+      return codec.deserialize(input, clazz);
+    } catch (IOException e) {
+      throw new SQLException("Exception deserializing " + clazz.getSimpleName(), e);
     } finally {
-      Closeables.closeQuietly(reader);
+      Closeables.closeQuietly(input);
     }
-    return object;
   }
 
   // mysql will error if you give it a timestamp of 0...
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.store;
+
+import java.io.IOException;
+
+/**
+ * Handles results of a store query one at a time, as they are read from the store, so that callers can process
+ * query results without holding all of them in memory.
+ *
+ * @param <T> Type of result.
+ */
+public interface ResultHandler<T> {
+
+  /**
+   * Handle a single result.
+   *
+   * @param result Result to handle.
+   * @return True if more results should be read, false to stop reading results.
+   * @throws IOException if there was a problem handling the result.
+   */
+  boolean handle(T result) throws IOException;
+}
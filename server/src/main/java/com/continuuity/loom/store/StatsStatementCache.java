@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.store;
+
+import com.continuuity.loom.management.StatementCacheStats;
+import com.google.common.collect.MapMaker;
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.apache.tomcat.jdbc.pool.interceptor.StatementCache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link StatementCache} that counts cache hits and misses. The pool creates interceptors itself, and only passes them
+ * string properties, so stats are registered here under an id that is then given to the interceptor through its
+ * {@code stats} property. Registering the same stats again gives the same id, and stats are only weakly referenced,
+ * so that pools created and thrown away, as in tests, do not keep adding to the registry.
+ */
+public class StatsStatementCache extends StatementCache {
+  // weak keys are compared by identity, so every stats object gets its own id.
+  private static final ConcurrentMap<StatementCacheStats, String> REGISTERED_IDS =
+    new MapMaker().weakKeys().makeMap();
+  private static final ConcurrentMap<String, StatementCacheStats> REGISTERED_STATS =
+    new MapMaker().weakValues().makeMap();
+  private static final AtomicInteger NEXT_ID = new AtomicInteger(0);
+  private StatementCacheStats stats;
+
+  /**
+   * Register stats for a pool to count in.
+   *
+   * @param stats Stats to count in.
+   * @return Id to give as the {@code stats} property of the interceptor.
+   */
+  static synchronized String register(StatementCacheStats stats) {
+    String id = REGISTERED_IDS.get(stats);
+    if (id == null) {
+      id = String.valueOf(NEXT_ID.getAndIncrement());
+      REGISTERED_IDS.put(stats, id);
+      REGISTERED_STATS.put(id, stats);
+    }
+    return id;
+  }
+
+  @Override
+  public void setProperties(Map<String, PoolProperties.InterceptorProperty> properties) {
+    super.setProperties(properties);
+    PoolProperties.InterceptorProperty statsId = properties.get("stats");
+    stats = statsId == null ? null : REGISTERED_STATS.get(statsId.getValue());
+  }
+
+  @Override
+  public CachedStatement isCached(String sql) {
+    CachedStatement cached = super.isCached(sql);
+    if (stats != null) {
+      if (cached == null) {
+        stats.miss();
+      } else {
+        stats.hit();
+      }
+    }
+    return cached;
+  }
+
+  @Override
+  public boolean cacheStatement(CachedStatement proxy) {
+    boolean isCached = super.cacheStatement(proxy);
+    if (!isCached && stats != null) {
+      stats.notCached();
+    }
+    return isCached;
+  }
+}
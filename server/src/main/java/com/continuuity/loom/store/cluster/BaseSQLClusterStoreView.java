@@ -15,19 +15,26 @@
  */
 package com.continuuity.loom.store.cluster;
 
+import com.continuuity.loom.account.Account;
 import com.continuuity.loom.cluster.Cluster;
+import com.continuuity.loom.cluster.ClusterSummary;
 import com.continuuity.loom.cluster.Node;
-import com.continuuity.loom.codec.json.JsonSerde;
+import com.continuuity.loom.codec.store.StoreSerde;
 import com.continuuity.loom.scheduler.task.ClusterJob;
+import com.continuuity.loom.scheduler.task.JobId;
 import com.continuuity.loom.store.DBConnectionPool;
 import com.continuuity.loom.store.DBQueryHelper;
+import com.continuuity.loom.store.ResultHandler;
 
+import javax.annotation.Nullable;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.List;
 import java.util.Set;
 
@@ -35,14 +42,33 @@ import java.util.Set;
  * Base abstract class for {@link ClusterStoreView} using a SQL database as the persistent store.
  */
 public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
+  // clusters are ordered newest first, with ties broken by id so that the order is stable across pages.
+  static final String CLUSTER_ORDER = "create_time DESC, id DESC";
+  // condition for clusters that come after a given cluster in CLUSTER_ORDER, set with setAfterClusterParameters.
+  static final String AFTER_CLUSTER_CONDITION =
+    "(create_time < (SELECT create_time FROM clusters WHERE id=?) OR " +
+      "(create_time = (SELECT create_time FROM clusters WHERE id=?) AND id < ?))";
+  // select for cluster summaries, joining each cluster with the latest job it stores. Views add a where clause on C.
+  static final String SELECT_CLUSTER_SUMMARIES =
+    "SELECT C.id, C.owner_id, C.tenant_id, C.name, C.create_time, C.expire_time, C.status, C.template_name, " +
+      "C.num_nodes, C.latest_job_num, J.status FROM clusters C " +
+      "LEFT JOIN jobs J ON J.cluster_id=C.id AND J.job_num=C.latest_job_num";
+  // same as CLUSTER_ORDER and AFTER_CLUSTER_CONDITION, for SELECT_CLUSTER_SUMMARIES.
+  static final String SUMMARY_ORDER = "C.create_time DESC, C.id DESC";
+  static final String AFTER_SUMMARY_CONDITION =
+    "(C.create_time < (SELECT create_time FROM clusters WHERE id=?) OR " +
+      "(C.create_time = (SELECT create_time FROM clusters WHERE id=?) AND C.id < ?))";
   private final DBConnectionPool dbConnectionPool;
-  private static final JsonSerde CODEC = new JsonSerde();
+  private static final StoreSerde CODEC = new StoreSerde();
 
   BaseSQLClusterStoreView(DBConnectionPool dbConnectionPool) {
     this.dbConnectionPool = dbConnectionPool;
   }
 
-  abstract PreparedStatement getSelectAllClustersStatement(Connection conn) throws SQLException;
+  abstract PreparedStatement getSelectClustersStatement(Connection conn, @Nullable Long afterId) throws SQLException;
+
+  abstract PreparedStatement getSelectClusterSummariesStatement(Connection conn, @Nullable Long afterId)
+    throws SQLException;
 
   abstract PreparedStatement getSelectClusterStatement(Connection conn, long id) throws SQLException;
 
@@ -57,14 +83,22 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
 
   abstract PreparedStatement getSelectClusterJobsStatement(Connection conn, long id) throws SQLException;
 
-  abstract PreparedStatement getSelectClusterNodesStatement(Connection conn, long id) throws SQLException;
+  abstract PreparedStatement getSelectClusterNodesStatement(Connection conn, long id, @Nullable String afterNodeId)
+    throws SQLException;
+
+  // sets the parameters of AFTER_CLUSTER_CONDITION or AFTER_SUMMARY_CONDITION starting at the given index.
+  static void setAfterClusterParameters(PreparedStatement statement, int index, long afterId) throws SQLException {
+    statement.setLong(index, afterId);
+    statement.setLong(index + 1, afterId);
+    statement.setLong(index + 2, afterId);
+  }
 
   @Override
   public List<Cluster> getAllClusters() throws IOException {
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-        PreparedStatement statement = getSelectAllClustersStatement(conn);
+        PreparedStatement statement = getSelectClustersStatement(conn, null);
         try {
           return DBQueryHelper.getQueryList(statement, Cluster.class);
         } finally {
@@ -78,6 +112,68 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
     }
   }
 
+  @Override
+  public int getClusters(String afterClusterId, int limit, ResultHandler<Cluster> handler) throws IOException {
+    if (limit == 0) {
+      return 0;
+    }
+    Long afterNum = afterClusterId == null ? null : Long.parseLong(afterClusterId);
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement = getSelectClustersStatement(conn, afterNum);
+        try {
+          // always set, since pooled statements keep the max rows of their previous use
+          statement.setMaxRows(limit > 0 ? limit : 0);
+          return DBQueryHelper.handleQueryResults(statement, Cluster.class, handler);
+        } finally {
+          statement.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      throw new IOException("Exception getting clusters after " + afterClusterId + " with limit " + limit, e);
+    }
+  }
+
+  @Override
+  public int getClusterSummaries(String afterClusterId, int limit, ResultHandler<ClusterSummary> handler)
+    throws IOException {
+    if (limit == 0) {
+      return 0;
+    }
+    Long afterNum = afterClusterId == null ? null : Long.parseLong(afterClusterId);
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement = getSelectClusterSummariesStatement(conn, afterNum);
+        try {
+          // always set, since pooled statements keep the max rows of their previous use
+          statement.setMaxRows(limit > 0 ? limit : 0);
+          ResultSet rs = statement.executeQuery();
+          try {
+            int numResults = 0;
+            boolean more = true;
+            while (more && rs.next()) {
+              more = handler.handle(getClusterSummary(rs));
+              numResults++;
+            }
+            return numResults;
+          } finally {
+            rs.close();
+          }
+        } finally {
+          statement.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      throw new IOException("Exception getting cluster summaries after " + afterClusterId + " with limit " + limit, e);
+    }
+  }
+
   @Override
   public Cluster getCluster(String clusterId) throws IOException {
     long clusterNum = Long.parseLong(clusterId);
@@ -203,7 +299,7 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
       Connection conn = dbConnectionPool.getConnection();
       long clusterNum = Long.parseLong(clusterId);
       try {
-        PreparedStatement statement = getSelectClusterNodesStatement(conn, clusterNum);
+        PreparedStatement statement = getSelectClusterNodesStatement(conn, clusterNum, null);
         try {
           return DBQueryHelper.getQuerySet(statement, Node.class);
         } finally {
@@ -217,11 +313,68 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
     }
   }
 
+  @Override
+  public int getClusterNodes(String clusterId, String afterNodeId, int limit, ResultHandler<Node> handler)
+    throws IOException {
+    if (limit == 0) {
+      return 0;
+    }
+    long clusterNum = Long.parseLong(clusterId);
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement = getSelectClusterNodesStatement(conn, clusterNum, afterNodeId);
+        try {
+          // always set, since pooled statements keep the max rows of their previous use
+          statement.setMaxRows(limit > 0 ? limit : 0);
+          return DBQueryHelper.handleQueryResults(statement, Node.class, handler);
+        } finally {
+          statement.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      throw new IOException("Exception getting nodes for cluster " + clusterId + " after " + afterNodeId, e);
+    }
+  }
+
+  static String getTemplateName(Cluster cluster) {
+    return cluster.getClusterTemplate() == null ? null : cluster.getClusterTemplate().getName();
+  }
+
+  static void setLatestJobNum(PreparedStatement statement, int index, Cluster cluster) throws SQLException {
+    if (cluster.getLatestJobId() == null) {
+      statement.setNull(index, Types.BIGINT);
+    } else {
+      statement.setLong(index, JobId.fromString(cluster.getLatestJobId()).getJobNum());
+    }
+  }
+
+  // reads a row of SELECT_CLUSTER_SUMMARIES.
+  private static ClusterSummary getClusterSummary(ResultSet rs) throws SQLException {
+    String id = String.valueOf(rs.getLong(1));
+    Account account = new Account(rs.getString(2), rs.getString(3));
+    Timestamp createTime = rs.getTimestamp(5);
+    Timestamp expireTime = rs.getTimestamp(6);
+    long jobNum = rs.getLong(10);
+    boolean hasJob = !rs.wasNull();
+    String jobStatus = rs.getString(11);
+    return new ClusterSummary(id, account, rs.getString(4),
+                              createTime == null ? 0 : createTime.getTime(),
+                              expireTime == null ? 0 : expireTime.getTime(),
+                              Cluster.Status.valueOf(rs.getString(7)),
+                              rs.getString(8),
+                              rs.getInt(9),
+                              hasJob ? new JobId(id, jobNum).getId() : null,
+                              jobStatus == null ? null : ClusterJob.Status.valueOf(jobStatus));
+  }
+
   private PreparedStatement getInsertClusterStatement(
     Connection conn, long id, Cluster cluster, ByteArrayInputStream clusterBytes) throws SQLException {
     PreparedStatement statement = conn.prepareStatement(
-      "INSERT INTO  clusters (cluster, owner_id, tenant_id, status, expire_time, create_time, name, id) " +
-        "VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+      "INSERT INTO  clusters (cluster, owner_id, tenant_id, status, expire_time, create_time, name, id, " +
+        "template_name, num_nodes, latest_job_num) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
     statement.setBlob(1, clusterBytes);
     statement.setString(2, cluster.getAccount().getUserId());
     statement.setString(3, cluster.getAccount().getTenantId());
@@ -230,6 +383,9 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
     statement.setTimestamp(6, DBQueryHelper.getTimestamp(cluster.getCreateTime()));
     statement.setString(7, cluster.getName());
     statement.setLong(8, id);
+    statement.setString(9, getTemplateName(cluster));
+    statement.setInt(10, cluster.getNodes().size());
+    setLatestJobNum(statement, 11, cluster);
     return statement;
   }
 }
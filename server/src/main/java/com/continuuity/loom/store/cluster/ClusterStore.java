@@ -6,10 +6,13 @@ import com.continuuity.loom.scheduler.task.ClusterJob;
 import com.continuuity.loom.scheduler.task.ClusterTask;
 import com.continuuity.loom.scheduler.task.JobId;
 import com.continuuity.loom.scheduler.task.TaskId;
+import com.google.gson.JsonObject;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * A full view of the cluster store for management purposes. Used within the system for managing jobs and tasks
@@ -40,12 +43,31 @@ public interface ClusterStore extends ClusterStoreView {
   void writeClusterJob(ClusterJob clusterJob) throws IOException;
 
   /**
-   * Deletes the cluster job that has the given id.
+   * Deletes the cluster job that has the given id, along with the task configs shared by its tasks.
    * @param jobId Id of the cluster job to delete.
    * @throws IOException if there was a problem deleting the cluster job.
    */
   void deleteClusterJob(JobId jobId) throws IOException;
 
+  /**
+   * Write config that is shared by tasks of a job, so that it is stored once instead of once per task. Shared task
+   * configs never change once written, so writing a config whose id already exists for the job does nothing.
+   * @param jobId Id of the job whose tasks share the config.
+   * @param configId Id of the config, unique within the job.
+   * @param config The shared config.
+   * @throws IOException if there was a problem writing the shared config.
+   */
+  void writeSharedTaskConfig(JobId jobId, String configId, JsonObject config) throws IOException;
+
+  /**
+   * Get config that is shared by tasks of a job.
+   * @param jobId Id of the job whose tasks share the config.
+   * @param configId Id of the config.
+   * @return The shared config, or null if none exists.
+   * @throws IOException if there was a problem getting the shared config.
+   */
+  JsonObject getSharedTaskConfig(JobId jobId, String configId) throws IOException;
+
   /**
    * Get a cluster task by its id.
    * @param taskId Id of the cluster task to get.
@@ -54,6 +76,23 @@ public interface ClusterStore extends ClusterStoreView {
    */
   ClusterTask getClusterTask(TaskId taskId) throws IOException;
 
+  /**
+   * Get a map of task id to cluster task for all the given task ids, using a single read.
+   * @param taskIds Set of task ids to get.
+   * @return Map of task id to cluster task. Task ids without a cluster task are not included.
+   * @throws IOException if there was a problem getting the cluster tasks.
+   */
+  Map<TaskId, ClusterTask> getClusterTasks(Set<TaskId> taskIds) throws IOException;
+
+  /**
+   * Get a map of task id to task status for all the given task ids, using a single read that does not need to read
+   * the cluster tasks themselves.
+   * @param taskIds Set of task ids to get the status of.
+   * @return Map of task id to task status. Task ids without a cluster task are not included.
+   * @throws IOException if there was a problem getting the task statuses.
+   */
+  Map<TaskId, ClusterTask.Status> getClusterTaskStatuses(Set<TaskId> taskIds) throws IOException;
+
   /**
    * Write a cluster task to the store using its id.
    * @param clusterTask The cluster task to write.
@@ -61,6 +100,14 @@ public interface ClusterStore extends ClusterStoreView {
    */
   void writeClusterTask(ClusterTask clusterTask) throws IOException;
 
+  /**
+   * Write cluster tasks to the store using their ids, all in one transaction and with as few round trips to the
+   * store as possible.
+   * @param clusterTasks The cluster tasks to write.
+   * @throws IOException if there was a problem writing the cluster tasks, in which case none of them are written.
+   */
+  void writeClusterTasks(Collection<ClusterTask> clusterTasks) throws IOException;
+
   /**
    * Deletes the cluster task that has the given id.
    * @param taskId Id of the cluster task to delete.
@@ -76,6 +123,14 @@ public interface ClusterStore extends ClusterStoreView {
    */
   Node getNode(String nodeId) throws IOException;
 
+  /**
+   * Get a map of node id to node for all the given node ids, using a single read.
+   * @param nodeIds Set of node ids to get.
+   * @return Map of node id to node. Node ids without a node are not included.
+   * @throws IOException if there was a problem getting the nodes.
+   */
+  Map<String, Node> getNodes(Set<String> nodeIds) throws IOException;
+
   /**
    * Write the given node to the store.
    * @param node The node to write.
@@ -83,6 +138,13 @@ public interface ClusterStore extends ClusterStoreView {
    */
   void writeNode(Node node) throws IOException;
 
+  /**
+   * Write the given nodes to the store, all in one transaction and with as few round trips to the store as possible.
+   * @param nodes The nodes to write.
+   * @throws IOException if there was a problem writing the nodes, in which case none of them are written.
+   */
+  void writeNodes(Collection<Node> nodes) throws IOException;
+
   /**
    * Delete the node with the given id.
    * @param nodeId Id of the node to delete.
@@ -105,4 +167,15 @@ public interface ClusterStore extends ClusterStoreView {
    * @throws IOException
    */
   Set<Cluster> getExpiringClusters(long timestamp) throws IOException;
+
+  /**
+   * Runs the given unit of work as a single transaction. All reads and writes done through the store by the unit of
+   * work, in the calling thread, are committed together once it returns, or rolled back if it throws an exception.
+   * If a transaction is already in progress in the calling thread, the unit of work becomes part of it.
+   * @param unitOfWork Unit of work to run.
+   * @param <T> Type of result of the unit of work.
+   * @return Result of the unit of work.
+   * @throws Exception if the unit of work failed or if the transaction could not be committed.
+   */
+  <T> T executeInTransaction(Callable<T> unitOfWork) throws Exception;
 }
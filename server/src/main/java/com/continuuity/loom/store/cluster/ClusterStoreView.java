@@ -1,9 +1,12 @@
 package com.continuuity.loom.store.cluster;
 
 import com.continuuity.loom.cluster.Cluster;
+import com.continuuity.loom.cluster.ClusterSummary;
 import com.continuuity.loom.cluster.Node;
 import com.continuuity.loom.scheduler.task.ClusterJob;
+import com.continuuity.loom.store.ResultHandler;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.List;
 import java.util.Set;
@@ -19,6 +22,34 @@ public interface ClusterStoreView {
    */
   List<Cluster> getAllClusters() throws IOException;
 
+  /**
+   * Read clusters from the store one at a time, in the same order as {@link #getAllClusters()}, passing each one to
+   * the given handler as it is read. Reading stops once the limit is reached or once the handler returns false.
+   * Clusters can be read page by page by passing the id of the last cluster of the previous page as the cursor.
+   *
+   * @param afterClusterId Only read clusters that come after the cluster with this id, or null to read from the start.
+   * @param limit Max number of clusters to read. A negative number is interpreted as no limit.
+   * @param handler Handler for the clusters that are read.
+   * @return Number of clusters passed to the handler.
+   * @throws IOException if there was a problem reading the clusters or if the handler threw an IOException.
+   */
+  int getClusters(@Nullable String afterClusterId, int limit, ResultHandler<Cluster> handler) throws IOException;
+
+  /**
+   * Read summaries of clusters from the store one at a time, in the same order as {@link #getAllClusters()}, passing
+   * each one to the given handler as it is read. Summaries only contain fields that are stored outside of the full
+   * cluster, plus the status of the latest job of the cluster, which makes them much cheaper to read than clusters.
+   * Reading stops once the limit is reached or once the handler returns false.
+   *
+   * @param afterClusterId Only read clusters that come after the cluster with this id, or null to read from the start.
+   * @param limit Max number of summaries to read. A negative number is interpreted as no limit.
+   * @param handler Handler for the summaries that are read.
+   * @return Number of summaries passed to the handler.
+   * @throws IOException if there was a problem reading the summaries or if the handler threw an IOException.
+   */
+  int getClusterSummaries(@Nullable String afterClusterId, int limit, ResultHandler<ClusterSummary> handler)
+    throws IOException;
+
   /**
    * Get a specific cluster by id.
    * @param clusterId Id of the cluster to find.
@@ -69,4 +100,19 @@ public interface ClusterStoreView {
    * @throws IOException if there was a problem getting the cluster nodes.
    */
   Set<Node> getClusterNodes(String clusterId) throws IOException;
+
+  /**
+   * Read nodes belonging to a specific cluster from the store one at a time, ordered by node id, passing each one
+   * to the given handler as it is read. Reading stops once the limit is reached or once the handler returns false.
+   * Nodes can be read page by page by passing the id of the last node of the previous page as the cursor.
+   *
+   * @param clusterId Id of the cluster whose nodes will be read.
+   * @param afterNodeId Only read nodes whose id comes after this id, or null to read from the start.
+   * @param limit Max number of nodes to read. A negative number is interpreted as no limit.
+   * @param handler Handler for the nodes that are read.
+   * @return Number of nodes passed to the handler.
+   * @throws IOException if there was a problem reading the nodes or if the handler threw an IOException.
+   */
+  int getClusterNodes(String clusterId, @Nullable String afterNodeId, int limit, ResultHandler<Node> handler)
+    throws IOException;
 }
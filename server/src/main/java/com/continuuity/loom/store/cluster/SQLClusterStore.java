@@ -1,39 +1,128 @@
 package com.continuuity.loom.store.cluster;
 
 import com.continuuity.loom.cluster.Cluster;
+import com.continuuity.loom.cluster.ClusterSummary;
 import com.continuuity.loom.cluster.Node;
-import com.continuuity.loom.codec.json.JsonSerde;
+import com.continuuity.loom.codec.store.StoreSerde;
 import com.continuuity.loom.scheduler.task.ClusterJob;
 import com.continuuity.loom.scheduler.task.ClusterTask;
 import com.continuuity.loom.scheduler.task.JobId;
 import com.continuuity.loom.scheduler.task.TaskId;
 import com.continuuity.loom.store.DBConnectionPool;
 import com.continuuity.loom.store.DBQueryHelper;
-import com.google.common.base.Charsets;
+import com.continuuity.loom.store.ResultHandler;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
-import com.google.common.io.Closeables;
+import com.google.common.collect.Sets;
+import com.google.gson.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  *
  */
 public class SQLClusterStore implements ClusterStore {
   private static final Logger LOG  = LoggerFactory.getLogger(SQLClusterStore.class);
-  private static final JsonSerde CODEC = new JsonSerde();
+  private static final StoreSerde CODEC = new StoreSerde();
+  // statements that are used as is, so that pooled connections can cache them once prepared.
+  private static final String SELECT_JOB = "SELECT job FROM jobs WHERE job_num=? AND cluster_id=?";
+  private static final String DELETE_JOB = "DELETE FROM jobs WHERE job_num=? AND cluster_id=?";
+  private static final String SELECT_TASK_CONFIG =
+    "SELECT config FROM task_configs WHERE id=? AND job_num=? AND cluster_id=?";
+  private static final String INSERT_TASK_CONFIG =
+    "INSERT INTO task_configs (id, job_num, cluster_id, config) VALUES (?, ?, ?, ?)";
+  private static final String DELETE_TASK_CONFIGS = "DELETE FROM task_configs WHERE job_num=? AND cluster_id=?";
+  private static final String SELECT_TASK = "SELECT task FROM tasks WHERE task_num=? AND cluster_id=? AND job_num=?";
+  private static final String DELETE_TASK = "DELETE FROM tasks WHERE task_num=? AND cluster_id=? AND job_num=?";
+  private static final String SELECT_NODE = "SELECT node FROM nodes WHERE id=?";
+  private static final String DELETE_NODE = "DELETE FROM nodes WHERE id=?";
+  private static final String SELECT_RUNNING_TASKS = "SELECT task FROM tasks WHERE status = ? AND submit_time < ?";
+  private static final String SELECT_EXPIRING_CLUSTERS =
+    "SELECT cluster FROM clusters WHERE status IN (?, ?) AND expire_time < ?";
+  private static final Upsert<ClusterJob> JOB_UPSERT = new Upsert<ClusterJob>(
+    "jobs", ImmutableList.of("job_num", "cluster_id"), ImmutableList.of("job", "status"),
+    ImmutableList.of("create_time"), new Upsert.Binder<ClusterJob>() {
+    @Override
+    public int bindKeys(PreparedStatement statement, int index, ClusterJob job) throws SQLException {
+      JobId jobId = JobId.fromString(job.getJobId());
+      statement.setLong(index, jobId.getJobNum());
+      statement.setLong(index + 1, Long.parseLong(jobId.getClusterId()));
+      return index + 2;
+    }
+
+    @Override
+    public int bindValues(PreparedStatement statement, int index, ClusterJob job) throws SQLException {
+      statement.setBlob(index, new ByteArrayInputStream(CODEC.serialize(job, ClusterJob.class)));
+      statement.setString(index + 1, job.getJobStatus().name());
+      return index + 2;
+    }
+
+    @Override
+    public int bindInsertOnlyValues(PreparedStatement statement, int index, ClusterJob job) throws SQLException {
+      statement.setTimestamp(index, DBQueryHelper.getTimestamp(System.currentTimeMillis()));
+      return index + 1;
+    }
+  });
+  private static final Upsert<ClusterTask> TASK_UPSERT = new Upsert<ClusterTask>(
+    "tasks", ImmutableList.of("task_num", "job_num", "cluster_id"),
+    ImmutableList.of("task", "status", "submit_time", "status_time"), ImmutableList.<String>of(),
+    new Upsert.Binder<ClusterTask>() {
+    @Override
+    public int bindKeys(PreparedStatement statement, int index, ClusterTask task) throws SQLException {
+      TaskId taskId = TaskId.fromString(task.getTaskId());
+      statement.setLong(index, taskId.getTaskNum());
+      statement.setLong(index + 1, taskId.getJobNum());
+      statement.setLong(index + 2, Long.parseLong(taskId.getClusterId()));
+      return index + 3;
+    }
+
+    @Override
+    public int bindValues(PreparedStatement statement, int index, ClusterTask task) throws SQLException {
+      statement.setBlob(index, new ByteArrayInputStream(CODEC.serialize(task, ClusterTask.class)));
+      statement.setString(index + 1, task.getStatus().name());
+      statement.setTimestamp(index + 2, DBQueryHelper.getTimestamp(task.getSubmitTime()));
+      statement.setTimestamp(index + 3, DBQueryHelper.getTimestamp(task.getStatusTime()));
+      return index + 4;
+    }
+
+    @Override
+    public int bindInsertOnlyValues(PreparedStatement statement, int index, ClusterTask task) {
+      return index;
+    }
+  });
+  private static final Upsert<Node> NODE_UPSERT = new Upsert<Node>(
+    "nodes", ImmutableList.of("id"), ImmutableList.of("node"), ImmutableList.of("cluster_id"),
+    new Upsert.Binder<Node>() {
+    @Override
+    public int bindKeys(PreparedStatement statement, int index, Node node) throws SQLException {
+      statement.setString(index, node.getId());
+      return index + 1;
+    }
+
+    @Override
+    public int bindValues(PreparedStatement statement, int index, Node node) throws SQLException {
+      statement.setBlob(index, new ByteArrayInputStream(CODEC.serialize(node, Node.class)));
+      return index + 1;
+    }
+
+    @Override
+    public int bindInsertOnlyValues(PreparedStatement statement, int index, Node node) throws SQLException {
+      statement.setLong(index, Long.parseLong(node.getClusterId()));
+      return index + 1;
+    }
+  });
   private final DBConnectionPool dbConnectionPool;
   private final ClusterStoreView systemView;
 
@@ -47,7 +136,7 @@ public class SQLClusterStore implements ClusterStore {
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-        PreparedStatement statement = conn.prepareStatement("SELECT job FROM jobs WHERE job_num=? AND cluster_id=?");
+        PreparedStatement statement = conn.prepareStatement(SELECT_JOB);
         statement.setLong(1, jobId.getJobNum());
         statement.setLong(2, Long.parseLong(jobId.getClusterId()));
         try {
@@ -72,52 +161,29 @@ public class SQLClusterStore implements ClusterStore {
       return jobMap;
     }
 
-    Map<Long, JobId> clusterIdToJobId = Maps.newHashMap();
+    Set<Long> clusterIds = Sets.newHashSet();
+    Set<Long> jobNums = Sets.newHashSet();
     for (JobId jobId : jobIds) {
-      clusterIdToJobId.put(Long.parseLong(jobId.getClusterId()), jobId);
+      clusterIds.add(Long.parseLong(jobId.getClusterId()));
+      jobNums.add(jobId.getJobNum());
     }
 
-    ClusterJob job;
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-
-        int bufferSize = jobIds.size();
-
-        StringBuilder looperString = new StringBuilder(bufferSize * 3);
-        for (int i = 0; i < bufferSize; i++) {
-          looperString.append("?, ");
-        }
-        looperString.setLength(looperString.length() - 2);
-
-        String preparedStatementString =
-          "SELECT cluster_id, job FROM jobs WHERE job_num IN (" + looperString.toString() +
-            ") AND cluster_id IN (" + looperString.toString() + ")";
-
-        PreparedStatement statement = conn.prepareStatement(preparedStatementString);
-
         // TODO: This method currently has a limit of 10k items. Fix this using a table join
-        int count = 1;
-        for (JobId jobId : jobIds) {
-          statement.setLong(count, jobId.getJobNum());
-          statement.setLong(bufferSize + count, Long.parseLong(jobId.getClusterId()));
-          count++;
-        }
-
-        try {
-          ResultSet rs = statement.executeQuery();
-          try {
-            while (rs.next()) {
-              long clusterId = rs.getLong(1);
-              Blob blob = rs.getBlob(2);
-              job = deserializeBlob(blob, ClusterJob.class);
-              jobMap.put(clusterIdToJobId.get(clusterId), job);
-            }
-          } finally {
-            rs.close();
+        PreparedStatement statement = conn.prepareStatement(
+          "SELECT job FROM jobs WHERE job_num IN (" + getPlaceholders(jobNums.size()) +
+            ") AND cluster_id IN (" + getPlaceholders(clusterIds.size()) + ")");
+        int index = setLongs(statement, 1, jobNums);
+        setLongs(statement, index, clusterIds);
+
+        // the IN clauses also match jobs whose job number and cluster id come from different requested jobs
+        for (ClusterJob job : DBQueryHelper.getQuerySet(statement, ClusterJob.class)) {
+          JobId jobId = JobId.fromString(job.getJobId());
+          if (jobIds.contains(jobId)) {
+            jobMap.put(jobId, job);
           }
-        } finally {
-          statement.close();
         }
       } finally {
         conn.close();
@@ -131,49 +197,60 @@ public class SQLClusterStore implements ClusterStore {
 
   @Override
   public void writeClusterJob(ClusterJob clusterJob) throws IOException {
-    JobId jobId = JobId.fromString(clusterJob.getJobId());
-    long clusterId = Long.parseLong(jobId.getClusterId());
+    try {
+      write(JOB_UPSERT, ImmutableList.of(clusterJob));
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public void deleteClusterJob(JobId jobId) throws IOException {
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-        PreparedStatement checkStatement =
-          conn.prepareStatement("SELECT job_num FROM jobs WHERE job_num=? AND cluster_id=?");
-        checkStatement.setLong(1, jobId.getJobNum());
-        checkStatement.setLong(2, Long.parseLong(jobId.getClusterId()));
-        PreparedStatement writeStatement;
-        try {
-          ResultSet rs = checkStatement.executeQuery();
+        // shared task configs reference the job
+        for (String sql : ImmutableList.of(DELETE_TASK_CONFIGS, DELETE_JOB)) {
+          PreparedStatement statement = conn.prepareStatement(sql);
+          statement.setLong(1, jobId.getJobNum());
+          statement.setLong(2, Long.parseLong(jobId.getClusterId()));
           try {
-            if (rs.next()) {
-              // cluster exists already, perform an update.
-              writeStatement =
-                conn.prepareStatement("UPDATE jobs SET job=?, status=? WHERE job_num=? AND cluster_id=?");
-              writeStatement.setBlob(1, new ByteArrayInputStream(CODEC.serialize(clusterJob, ClusterJob.class)));
-              writeStatement.setString(2, clusterJob.getJobStatus().name());
-              writeStatement.setLong(3, jobId.getJobNum());
-              writeStatement.setLong(4, clusterId);
-            } else {
-              // cluster does not exist, perform an insert.
-              writeStatement = conn.prepareStatement(
-                "INSERT INTO jobs (job_num, cluster_id, status, create_time, job) VALUES (?, ?, ?, ?, ?)");
-              writeStatement.setLong(1, jobId.getJobNum());
-              writeStatement.setLong(2, clusterId);
-              writeStatement.setString(3, clusterJob.getJobStatus().name());
-              writeStatement.setTimestamp(4, DBQueryHelper.getTimestamp(System.currentTimeMillis()));
-              writeStatement.setBlob(5, new ByteArrayInputStream(CODEC.serialize(clusterJob, ClusterJob.class)));
-            }
+            statement.executeUpdate();
           } finally {
-            rs.close();
+            statement.close();
           }
-          // perform the update or insert
-          try {
-            writeStatement.executeUpdate();
-          } finally {
-            writeStatement.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public void writeSharedTaskConfig(JobId jobId, String configId, JsonObject config) throws IOException {
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement checkStatement = conn.prepareStatement(SELECT_TASK_CONFIG);
+        try {
+          setTaskConfigKey(checkStatement, jobId, configId);
+          if (DBQueryHelper.hasResults(checkStatement)) {
+            return;
           }
         } finally {
           checkStatement.close();
         }
+
+        PreparedStatement writeStatement = conn.prepareStatement(INSERT_TASK_CONFIG);
+        try {
+          setTaskConfigKey(writeStatement, jobId, configId);
+          writeStatement.setBlob(4, new ByteArrayInputStream(CODEC.serialize(config, JsonObject.class)));
+          writeStatement.executeUpdate();
+        } finally {
+          writeStatement.close();
+        }
       } finally {
         conn.close();
       }
@@ -183,15 +260,14 @@ public class SQLClusterStore implements ClusterStore {
   }
 
   @Override
-  public void deleteClusterJob(JobId jobId) throws IOException {
+  public JsonObject getSharedTaskConfig(JobId jobId, String configId) throws IOException {
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-        PreparedStatement statement = conn.prepareStatement("DELETE FROM jobs WHERE job_num=? AND cluster_id=?");
-        statement.setLong(1, jobId.getJobNum());
-        statement.setLong(2, Long.parseLong(jobId.getClusterId()));
+        PreparedStatement statement = conn.prepareStatement(SELECT_TASK_CONFIG);
         try {
-          statement.executeUpdate();
+          setTaskConfigKey(statement, jobId, configId);
+          return DBQueryHelper.getQueryItem(statement, JsonObject.class);
         } finally {
           statement.close();
         }
@@ -199,17 +275,23 @@ public class SQLClusterStore implements ClusterStore {
         conn.close();
       }
     } catch (SQLException e) {
-      throw new IOException(e);
+      LOG.error("Exception getting shared task config {} of job {}", configId, jobId, e);
+      throw new IOException("Exception getting shared task config " + configId + " of job " + jobId, e);
     }
   }
 
+  private static void setTaskConfigKey(PreparedStatement statement, JobId jobId, String configId) throws SQLException {
+    statement.setString(1, configId);
+    statement.setLong(2, jobId.getJobNum());
+    statement.setLong(3, Long.parseLong(jobId.getClusterId()));
+  }
+
   @Override
   public ClusterTask getClusterTask(TaskId taskId) throws IOException {
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-        PreparedStatement statement =
-          conn.prepareStatement("SELECT task FROM tasks WHERE task_num=? AND cluster_id=? AND job_num=?");
+        PreparedStatement statement = conn.prepareStatement(SELECT_TASK);
         statement.setLong(1, taskId.getTaskNum());
         statement.setLong(2, Long.parseLong(taskId.getClusterId()));
         statement.setLong(3, taskId.getJobNum());
@@ -228,60 +310,116 @@ public class SQLClusterStore implements ClusterStore {
   }
 
   @Override
-  public void writeClusterTask(ClusterTask clusterTask) throws IOException {
-    TaskId taskId = TaskId.fromString(clusterTask.getTaskId());
-    long clusterId = Long.parseLong(taskId.getClusterId());
+  public Map<TaskId, ClusterTask> getClusterTasks(Set<TaskId> taskIds) throws IOException {
+    Map<TaskId, ClusterTask> taskMap = Maps.newHashMap();
+
+    if (taskIds.isEmpty()) {
+      return taskMap;
+    }
+
+    Set<Long> clusterIds = Sets.newHashSet();
+    Set<Long> jobNums = Sets.newHashSet();
+    Set<Long> taskNums = Sets.newHashSet();
+    for (TaskId taskId : taskIds) {
+      clusterIds.add(Long.parseLong(taskId.getClusterId()));
+      jobNums.add(taskId.getJobNum());
+      taskNums.add(taskId.getTaskNum());
+    }
+
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement = conn.prepareStatement(
+          "SELECT task FROM tasks WHERE task_num IN (" + getPlaceholders(taskNums.size()) +
+            ") AND cluster_id IN (" + getPlaceholders(clusterIds.size()) +
+            ") AND job_num IN (" + getPlaceholders(jobNums.size()) + ")");
+        int index = setLongs(statement, 1, taskNums);
+        index = setLongs(statement, index, clusterIds);
+        setLongs(statement, index, jobNums);
+
+        // the IN clauses also match tasks whose numbers and cluster id come from different requested tasks
+        for (ClusterTask task : DBQueryHelper.getQuerySet(statement, ClusterTask.class)) {
+          TaskId taskId = TaskId.fromString(task.getTaskId());
+          if (taskIds.contains(taskId)) {
+            taskMap.put(taskId, task);
+          }
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception getting cluster tasks {}", taskIds, e);
+      throw new IOException("Exception getting cluster tasks " + taskIds, e);
+    }
+    return taskMap;
+  }
+
+  @Override
+  public Map<TaskId, ClusterTask.Status> getClusterTaskStatuses(Set<TaskId> taskIds) throws IOException {
+    Map<TaskId, ClusterTask.Status> statusMap = Maps.newHashMap();
+
+    if (taskIds.isEmpty()) {
+      return statusMap;
+    }
+
+    Set<Long> clusterIds = Sets.newHashSet();
+    Set<Long> jobNums = Sets.newHashSet();
+    Set<Long> taskNums = Sets.newHashSet();
+    // the table only has the numbers in the task id, so requested task ids are looked up by their numbers
+    Map<List<Long>, TaskId> requested = Maps.newHashMap();
+    for (TaskId taskId : taskIds) {
+      long clusterId = Long.parseLong(taskId.getClusterId());
+      clusterIds.add(clusterId);
+      jobNums.add(taskId.getJobNum());
+      taskNums.add(taskId.getTaskNum());
+      requested.put(ImmutableList.of(clusterId, taskId.getJobNum(), taskId.getTaskNum()), taskId);
+    }
+
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-        PreparedStatement checkStatement =
-          conn.prepareStatement("SELECT task_num FROM tasks WHERE task_num=? AND job_num=? AND cluster_id=?");
-        checkStatement.setLong(1, taskId.getTaskNum());
-        checkStatement.setLong(2, taskId.getJobNum());
-        checkStatement.setLong(3, clusterId);
-        PreparedStatement writeStatement;
+        PreparedStatement statement = conn.prepareStatement(
+          "SELECT cluster_id, job_num, task_num, status FROM tasks WHERE task_num IN (" +
+            getPlaceholders(taskNums.size()) + ") AND cluster_id IN (" + getPlaceholders(clusterIds.size()) +
+            ") AND job_num IN (" + getPlaceholders(jobNums.size()) + ")");
         try {
-          ResultSet rs = checkStatement.executeQuery();
+          int index = setLongs(statement, 1, taskNums);
+          index = setLongs(statement, index, clusterIds);
+          setLongs(statement, index, jobNums);
+          ResultSet rs = statement.executeQuery();
           try {
-            if (rs.next()) {
-              // task exists already, perform an update.
-              writeStatement = conn.prepareStatement(
-                "UPDATE tasks SET task=?, status=?, submit_time=?, status_time=?" +
-                  " WHERE task_num=? AND job_num=? AND cluster_id=?");
-              writeStatement.setBlob(1, new ByteArrayInputStream(CODEC.serialize(clusterTask, ClusterTask.class)));
-              writeStatement.setString(2, clusterTask.getStatus().name());
-              writeStatement.setTimestamp(3, DBQueryHelper.getTimestamp(clusterTask.getSubmitTime()));
-              writeStatement.setTimestamp(4, DBQueryHelper.getTimestamp(clusterTask.getStatusTime()));
-              writeStatement.setLong(5, taskId.getTaskNum());
-              writeStatement.setLong(6, taskId.getJobNum());
-              writeStatement.setLong(7, clusterId);
-            } else {
-              // task does not exist, perform an insert.
-              writeStatement = conn.prepareStatement(
-                "INSERT INTO tasks (task_num, job_num, cluster_id, status, submit_time, task)" +
-                  " VALUES (?, ?, ?, ?, ?, ?)");
-              writeStatement.setLong(1, taskId.getTaskNum());
-              writeStatement.setLong(2, taskId.getJobNum());
-              writeStatement.setLong(3, clusterId);
-              writeStatement.setString(4, clusterTask.getStatus().name());
-              writeStatement.setTimestamp(5, DBQueryHelper.getTimestamp(clusterTask.getSubmitTime()));
-              writeStatement.setBlob(6, new ByteArrayInputStream(CODEC.serialize(clusterTask, ClusterTask.class)));
+            while (rs.next()) {
+              // the IN clauses also match tasks whose numbers and cluster id come from different requested tasks
+              TaskId taskId = requested.get(ImmutableList.of(rs.getLong(1), rs.getLong(2), rs.getLong(3)));
+              if (taskId != null) {
+                statusMap.put(taskId, ClusterTask.Status.valueOf(rs.getString(4)));
+              }
             }
           } finally {
             rs.close();
           }
-          // perform the update or insert
-          try {
-            writeStatement.executeUpdate();
-          } finally {
-            writeStatement.close();
-          }
         } finally {
-          checkStatement.close();
+          statement.close();
         }
       } finally {
         conn.close();
       }
+    } catch (SQLException e) {
+      LOG.error("Exception getting statuses of cluster tasks {}", taskIds, e);
+      throw new IOException("Exception getting statuses of cluster tasks " + taskIds, e);
+    }
+    return statusMap;
+  }
+
+  @Override
+  public void writeClusterTask(ClusterTask clusterTask) throws IOException {
+    writeClusterTasks(ImmutableList.of(clusterTask));
+  }
+
+  @Override
+  public void writeClusterTasks(Collection<ClusterTask> clusterTasks) throws IOException {
+    try {
+      write(TASK_UPSERT, clusterTasks);
     } catch (SQLException e) {
       throw new IOException(e);
     }
@@ -292,8 +430,7 @@ public class SQLClusterStore implements ClusterStore {
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-        PreparedStatement statement =
-          conn.prepareStatement("DELETE FROM tasks WHERE task_num=? AND cluster_id=? AND job_num=?");
+        PreparedStatement statement = conn.prepareStatement(DELETE_TASK);
         statement.setLong(1, taskId.getTaskNum());
         statement.setLong(2, Long.parseLong(taskId.getClusterId()));
         statement.setLong(3, taskId.getJobNum());
@@ -315,7 +452,7 @@ public class SQLClusterStore implements ClusterStore {
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-        PreparedStatement statement = conn.prepareStatement("SELECT node FROM nodes WHERE id=? ");
+        PreparedStatement statement = conn.prepareStatement(SELECT_NODE);
         statement.setString(1, nodeId);
         try {
           return DBQueryHelper.getQueryItem(statement, Node.class);
@@ -331,42 +468,21 @@ public class SQLClusterStore implements ClusterStore {
   }
 
   @Override
-  public void writeNode(Node node) throws IOException {
-    // sticking with standard sql... this could be done in one step with replace, or with
-    // insert ... on duplicate key update with mysql.
+  public Map<String, Node> getNodes(Set<String> nodeIds) throws IOException {
+    Map<String, Node> nodeMap = Maps.newHashMap();
+
+    if (nodeIds.isEmpty()) {
+      return nodeMap;
+    }
+
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-        PreparedStatement checkStatement = conn.prepareStatement("SELECT id FROM nodes WHERE id=?");
-        checkStatement.setString(1, node.getId());
-        PreparedStatement writeStatement;
-        try {
-          ResultSet rs = checkStatement.executeQuery();
-          try {
-            if (rs.next()) {
-              // node exists already, perform an update.
-              writeStatement = conn.prepareStatement("UPDATE nodes SET node=? WHERE id=?");
-              writeStatement.setBlob(1, new ByteArrayInputStream(CODEC.serialize(node, Node.class)));
-              writeStatement.setString(2, node.getId());
-            } else {
-              // node does not exist, perform an insert.
-              writeStatement = conn.prepareStatement(
-                "INSERT INTO nodes (id, cluster_id, node) VALUES (?, ?, ?)");
-              writeStatement.setString(1, node.getId());
-              writeStatement.setLong(2, Long.parseLong(node.getClusterId()));
-              writeStatement.setBlob(3, new ByteArrayInputStream(CODEC.serialize(node, Node.class)));
-            }
-          } finally {
-            rs.close();
-          }
-          // perform the update or insert
-          try {
-            writeStatement.executeUpdate();
-          } finally {
-            writeStatement.close();
-          }
-        } finally {
-          checkStatement.close();
+        PreparedStatement statement =
+          conn.prepareStatement("SELECT node FROM nodes WHERE id IN (" + getPlaceholders(nodeIds.size()) + ")");
+        setStrings(statement, 1, nodeIds);
+        for (Node node : DBQueryHelper.getQuerySet(statement, Node.class)) {
+          nodeMap.put(node.getId(), node);
         }
       } finally {
         conn.close();
@@ -374,6 +490,21 @@ public class SQLClusterStore implements ClusterStore {
     } catch (SQLException e) {
       throw new IOException(e);
     }
+    return nodeMap;
+  }
+
+  @Override
+  public void writeNode(Node node) throws IOException {
+    writeNodes(ImmutableList.of(node));
+  }
+
+  @Override
+  public void writeNodes(Collection<Node> nodes) throws IOException {
+    try {
+      write(NODE_UPSERT, nodes);
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
   }
 
   @Override
@@ -381,7 +512,7 @@ public class SQLClusterStore implements ClusterStore {
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-        PreparedStatement statement = conn.prepareStatement("DELETE FROM nodes WHERE id=? ");
+        PreparedStatement statement = conn.prepareStatement(DELETE_NODE);
         try {
           statement.setString(1, nodeId);
           statement.executeUpdate();
@@ -401,8 +532,7 @@ public class SQLClusterStore implements ClusterStore {
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-        PreparedStatement statement =
-          conn.prepareStatement("SELECT task FROM tasks WHERE status = ? AND submit_time < ?");
+        PreparedStatement statement = conn.prepareStatement(SELECT_RUNNING_TASKS);
         statement.setString(1, ClusterTask.Status.IN_PROGRESS.name());
         statement.setTimestamp(2, DBQueryHelper.getTimestamp(timestamp));
         try {
@@ -423,8 +553,7 @@ public class SQLClusterStore implements ClusterStore {
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-        PreparedStatement statement =
-          conn.prepareStatement("SELECT cluster FROM clusters WHERE status IN (?, ?) AND expire_time < ?");
+        PreparedStatement statement = conn.prepareStatement(SELECT_EXPIRING_CLUSTERS);
         statement.setString(1, Cluster.Status.ACTIVE.name());
         statement.setString(2, Cluster.Status.INCOMPLETE.name());
         statement.setTimestamp(3, DBQueryHelper.getTimestamp(timestamp));
@@ -441,15 +570,86 @@ public class SQLClusterStore implements ClusterStore {
     }
   }
 
-  private <T> T deserializeBlob(Blob blob, Class<T> clazz) throws SQLException {
-    Reader reader = new InputStreamReader(blob.getBinaryStream(), Charsets.UTF_8);
-    T object;
+  @Override
+  public <T> T executeInTransaction(Callable<T> unitOfWork) throws Exception {
+    return dbConnectionPool.executeInTransaction(unitOfWork);
+  }
+
+  // writes the given objects, in a single transaction if it takes more than one statement.
+  private <T> void write(Upsert<T> upsert, Collection<? extends T> objects) throws SQLException {
+    boolean isMySQL = dbConnectionPool.isMySQLDB();
+    Connection conn = dbConnectionPool.getConnection();
     try {
-      object = CODEC.deserialize(reader, clazz);
+      if (isMySQL && objects.size() == 1) {
+        upsert.write(conn, true, objects);
+        return;
+      }
+      conn.setAutoCommit(false);
+      boolean committed = false;
+      try {
+        upsert.write(conn, isMySQL, objects);
+        conn.commit();
+        committed = true;
+      } finally {
+        if (!committed) {
+          conn.rollback();
+        }
+        conn.setAutoCommit(true);
+      }
     } finally {
-      Closeables.closeQuietly(reader);
+      conn.close();
     }
-    return object;
+  }
+
+  // IN clauses are padded up to the next power of two by repeating the last value, so that lookups of different
+  // numbers of items share a few statements instead of each preparing, and filling the statement cache with, its own.
+  private static int getPaddedSize(int num) {
+    return num <= 1 ? 1 : Integer.highestOneBit(num - 1) << 1;
+  }
+
+  // comma separated list of parameter placeholders for the given number of values, for use in IN clauses.
+  private static String getPlaceholders(int num) {
+    int paddedNum = getPaddedSize(num);
+    StringBuilder placeholders = new StringBuilder(paddedNum * 3);
+    for (int i = 0; i < paddedNum; i++) {
+      placeholders.append("?, ");
+    }
+    placeholders.setLength(placeholders.length() - 2);
+    return placeholders.toString();
+  }
+
+  // sets the given values as parameters of an IN clause starting at the given index, and returns the index of the
+  // next parameter.
+  private static int setLongs(PreparedStatement statement, int index, Set<Long> values) throws SQLException {
+    int next = index;
+    long last = 0;
+    for (long value : values) {
+      statement.setLong(next, value);
+      last = value;
+      next++;
+    }
+    for (int i = values.size(); i < getPaddedSize(values.size()); i++) {
+      statement.setLong(next, last);
+      next++;
+    }
+    return next;
+  }
+
+  // sets the given values as parameters of an IN clause starting at the given index, and returns the index of the
+  // next parameter.
+  private static int setStrings(PreparedStatement statement, int index, Set<String> values) throws SQLException {
+    int next = index;
+    String last = null;
+    for (String value : values) {
+      statement.setString(next, value);
+      last = value;
+      next++;
+    }
+    for (int i = values.size(); i < getPaddedSize(values.size()); i++) {
+      statement.setString(next, last);
+      next++;
+    }
+    return next;
   }
 
   @Override
@@ -457,6 +657,17 @@ public class SQLClusterStore implements ClusterStore {
     return systemView.getAllClusters();
   }
 
+  @Override
+  public int getClusters(String afterClusterId, int limit, ResultHandler<Cluster> handler) throws IOException {
+    return systemView.getClusters(afterClusterId, limit, handler);
+  }
+
+  @Override
+  public int getClusterSummaries(String afterClusterId, int limit, ResultHandler<ClusterSummary> handler)
+    throws IOException {
+    return systemView.getClusterSummaries(afterClusterId, limit, handler);
+  }
+
   @Override
   public Cluster getCluster(String clusterId) throws IOException {
     return systemView.getCluster(clusterId);
@@ -486,4 +697,10 @@ public class SQLClusterStore implements ClusterStore {
   public Set<Node> getClusterNodes(String clusterId) throws IOException {
     return systemView.getClusterNodes(clusterId);
   }
+
+  @Override
+  public int getClusterNodes(String clusterId, String afterNodeId, int limit, ResultHandler<Node> handler)
+    throws IOException {
+    return systemView.getClusterNodes(clusterId, afterNodeId, limit, handler);
+  }
 }
@@ -1,6 +1,7 @@
 package com.continuuity.loom.store.cluster;
 
 import com.continuuity.loom.account.Account;
+import com.continuuity.loom.cluster.Cluster;
 import com.continuuity.loom.store.DBConnectionPool;
 import com.continuuity.loom.store.DBQueryHelper;
 import com.google.common.util.concurrent.AbstractIdleService;
@@ -9,8 +10,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.List;
 
 /**
  * Service for getting views of the cluster store. Getting a view is a lightweight operation as no data is preloaded.
@@ -34,6 +37,8 @@ public class SQLClusterStoreService extends AbstractIdleService implements Clust
       try {
         stmt.execute("DELETE FROM clusters");
         stmt = conn.createStatement();
+        stmt.execute("DELETE FROM task_configs");
+        stmt = conn.createStatement();
         stmt.execute("DELETE FROM jobs");
         stmt = conn.createStatement();
         stmt.execute("DELETE FROM tasks");
@@ -60,8 +65,15 @@ public class SQLClusterStoreService extends AbstractIdleService implements Clust
                                        "create_time TIMESTAMP, " +
                                        "expire_time TIMESTAMP, " +
                                        "status VARCHAR(32), " +
+                                       "template_name VARCHAR(255), " +
+                                       "num_nodes INT, " +
+                                       "latest_job_num BIGINT, " +
                                        "cluster BLOB )",
                                      dbConnectionPool);
+      // the database is persistent, so the clusters table may have been created before the summary columns existed
+      DBQueryHelper.addDerbyColumn("clusters", "template_name VARCHAR(255)", dbConnectionPool);
+      DBQueryHelper.addDerbyColumn("clusters", "num_nodes INT", dbConnectionPool);
+      DBQueryHelper.addDerbyColumn("clusters", "latest_job_num BIGINT", dbConnectionPool);
       DBQueryHelper.createDerbyTable("CREATE TABLE jobs ( cluster_id BIGINT, job_num BIGINT, status VARCHAR(32)," +
                                        " create_time TIMESTAMP, job BLOB)",
                                      dbConnectionPool);
@@ -70,6 +82,54 @@ public class SQLClusterStoreService extends AbstractIdleService implements Clust
                                      dbConnectionPool);
       DBQueryHelper.createDerbyTable("CREATE TABLE nodes ( cluster_id BIGINT, id VARCHAR(64), node BLOB )",
                                      dbConnectionPool);
+      DBQueryHelper.createDerbyTable("CREATE TABLE task_configs ( cluster_id BIGINT, job_num BIGINT, id VARCHAR(64)," +
+                                       " config BLOB )",
+                                     dbConnectionPool);
+    }
+    fillSummaryColumns();
+  }
+
+  // clusters written before the summary columns existed only have them filled in on their next write, so fill them in
+  // now to keep cluster summaries correct.
+  private void fillSummaryColumns() throws SQLException {
+    Connection conn = dbConnectionPool.getConnection();
+    try {
+      PreparedStatement selectStatement;
+      try {
+        selectStatement =
+          conn.prepareStatement("SELECT cluster FROM clusters WHERE num_nodes IS NULL OR latest_job_num IS NULL");
+      } catch (SQLException e) {
+        LOG.error("Unable to read the template_name, num_nodes and latest_job_num columns of the clusters table. " +
+                    "Tables created with an older version must be altered to add them, see the upgrade guide.");
+        throw e;
+      }
+      List<Cluster> clusters;
+      try {
+        clusters = DBQueryHelper.getQueryList(selectStatement, Cluster.class);
+      } finally {
+        selectStatement.close();
+      }
+      // clusters without a job are selected on every startup, but every cluster gets a job when it is created.
+      if (clusters.isEmpty()) {
+        return;
+      }
+      LOG.info("Filling in summary columns of {} clusters.", clusters.size());
+      PreparedStatement updateStatement =
+        conn.prepareStatement("UPDATE clusters SET template_name=?, num_nodes=?, latest_job_num=? WHERE id=?");
+      try {
+        for (Cluster cluster : clusters) {
+          updateStatement.setString(1, BaseSQLClusterStoreView.getTemplateName(cluster));
+          updateStatement.setInt(2, cluster.getNodes().size());
+          BaseSQLClusterStoreView.setLatestJobNum(updateStatement, 3, cluster);
+          updateStatement.setLong(4, Long.parseLong(cluster.getId()));
+          updateStatement.addBatch();
+        }
+        updateStatement.executeBatch();
+      } finally {
+        updateStatement.close();
+      }
+    } finally {
+      conn.close();
     }
   }
 
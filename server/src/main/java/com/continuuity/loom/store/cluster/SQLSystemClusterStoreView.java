@@ -19,9 +19,24 @@ public class SQLSystemClusterStoreView extends BaseSQLClusterStoreView {
   }
 
   @Override
-  protected PreparedStatement getSelectAllClustersStatement(Connection conn) throws SQLException {
+  protected PreparedStatement getSelectClustersStatement(Connection conn, Long afterId) throws SQLException {
+    if (afterId == null) {
+      return conn.prepareStatement("SELECT cluster FROM clusters ORDER BY " + CLUSTER_ORDER);
+    }
     PreparedStatement statement = conn.prepareStatement(
-      "SELECT cluster FROM clusters ORDER BY create_time DESC");
+      "SELECT cluster FROM clusters WHERE " + AFTER_CLUSTER_CONDITION + " ORDER BY " + CLUSTER_ORDER);
+    setAfterClusterParameters(statement, 1, afterId);
+    return statement;
+  }
+
+  @Override
+  protected PreparedStatement getSelectClusterSummariesStatement(Connection conn, Long afterId) throws SQLException {
+    String condition = afterId == null ? "" : " WHERE " + AFTER_SUMMARY_CONDITION;
+    PreparedStatement statement = conn.prepareStatement(
+      SELECT_CLUSTER_SUMMARIES + condition + " ORDER BY " + SUMMARY_ORDER);
+    if (afterId != null) {
+      setAfterClusterParameters(statement, 1, afterId);
+    }
     return statement;
   }
 
@@ -41,14 +56,18 @@ public class SQLSystemClusterStoreView extends BaseSQLClusterStoreView {
   protected PreparedStatement getSetClusterStatement(
     Connection conn, long id, Cluster cluster, ByteArrayInputStream clusterBytes) throws SQLException {
     PreparedStatement statement = conn.prepareStatement(
-      "UPDATE clusters SET cluster=?, owner_id=?, tenant_id=?, status=?, expire_time=? WHERE id=?");
+      "UPDATE clusters SET cluster=?, owner_id=?, tenant_id=?, status=?, expire_time=?, template_name=?, num_nodes=?" +
+        ", latest_job_num=? WHERE id=?");
     statement.setBlob(1, clusterBytes);
     statement.setString(2, cluster.getAccount().getUserId());
     statement.setString(3, cluster.getAccount().getTenantId());
     statement.setString(4, cluster.getStatus().name());
     statement.setTimestamp(5, DBQueryHelper.getTimestamp(cluster.getExpireTime()));
+    statement.setString(6, getTemplateName(cluster));
+    statement.setInt(7, cluster.getNodes().size());
+    setLatestJobNum(statement, 8, cluster);
     // where clause
-    statement.setLong(6, id);
+    statement.setLong(9, id);
     return statement;
   }
 
@@ -70,15 +89,21 @@ public class SQLSystemClusterStoreView extends BaseSQLClusterStoreView {
   @Override
   protected PreparedStatement getSelectClusterJobsStatement(Connection conn, long id) throws SQLException {
     PreparedStatement statement =
-      conn.prepareStatement("SELECT job FROM jobs WHERE cluster_id=? ORDER BY job_num DESC");
+      conn.prepareStatement("SELECT job FROM jobs WHERE cluster_id=? ORDER BY create_time DESC, job_num DESC");
     statement.setLong(1, id);
     return statement;
   }
 
   @Override
-  protected PreparedStatement getSelectClusterNodesStatement(Connection conn, long id) throws SQLException {
-    PreparedStatement statement = conn.prepareStatement("SELECT node FROM nodes WHERE cluster_id=?");
+  protected PreparedStatement getSelectClusterNodesStatement(Connection conn, long id, String afterNodeId)
+    throws SQLException {
+    String condition = afterNodeId == null ? "" : " AND id>?";
+    PreparedStatement statement = conn.prepareStatement(
+      "SELECT node FROM nodes WHERE cluster_id=?" + condition + " ORDER BY id");
     statement.setLong(1, id);
+    if (afterNodeId != null) {
+      statement.setString(2, afterNodeId);
+    }
     return statement;
   }
 }
@@ -23,11 +23,28 @@ public class SQLUserClusterStoreView extends BaseSQLClusterStoreView {
   }
 
   @Override
-  protected PreparedStatement getSelectAllClustersStatement(Connection conn) throws SQLException {
+  protected PreparedStatement getSelectClustersStatement(Connection conn, Long afterId) throws SQLException {
+    String condition = afterId == null ? "" : " AND " + AFTER_CLUSTER_CONDITION;
     PreparedStatement statement = conn.prepareStatement(
-      "SELECT cluster FROM clusters WHERE tenant_id=? AND owner_id=? ORDER BY create_time DESC");
+      "SELECT cluster FROM clusters WHERE tenant_id=? AND owner_id=?" + condition + " ORDER BY " + CLUSTER_ORDER);
     statement.setString(1, account.getTenantId());
     statement.setString(2, account.getUserId());
+    if (afterId != null) {
+      setAfterClusterParameters(statement, 3, afterId);
+    }
+    return statement;
+  }
+
+  @Override
+  protected PreparedStatement getSelectClusterSummariesStatement(Connection conn, Long afterId) throws SQLException {
+    String condition = afterId == null ? "" : " AND " + AFTER_SUMMARY_CONDITION;
+    PreparedStatement statement = conn.prepareStatement(
+      SELECT_CLUSTER_SUMMARIES + " WHERE C.tenant_id=? AND C.owner_id=?" + condition + " ORDER BY " + SUMMARY_ORDER);
+    statement.setString(1, account.getTenantId());
+    statement.setString(2, account.getUserId());
+    if (afterId != null) {
+      setAfterClusterParameters(statement, 3, afterId);
+    }
     return statement;
   }
 
@@ -50,17 +67,20 @@ public class SQLUserClusterStoreView extends BaseSQLClusterStoreView {
   protected PreparedStatement getSetClusterStatement(
     Connection conn, long id, Cluster cluster, ByteArrayInputStream clusterBytes) throws SQLException {
     PreparedStatement statement = conn.prepareStatement(
-      "UPDATE clusters SET cluster=?, owner_id=?, tenant_id=?, status=?, expire_time=?" +
-        " WHERE id=? AND tenant_id=? AND owner_id=?");
+      "UPDATE clusters SET cluster=?, owner_id=?, tenant_id=?, status=?, expire_time=?, template_name=?, num_nodes=?" +
+        ", latest_job_num=? WHERE id=? AND tenant_id=? AND owner_id=?");
     statement.setBlob(1, clusterBytes);
     statement.setString(2, cluster.getAccount().getUserId());
     statement.setString(3, cluster.getAccount().getTenantId());
     statement.setString(4, cluster.getStatus().name());
     statement.setTimestamp(5, DBQueryHelper.getTimestamp(cluster.getExpireTime()));
+    statement.setString(6, getTemplateName(cluster));
+    statement.setInt(7, cluster.getNodes().size());
+    setLatestJobNum(statement, 8, cluster);
     // where clause
-    statement.setLong(6, id);
-    statement.setString(7, account.getTenantId());
-    statement.setString(8, account.getUserId());
+    statement.setLong(9, id);
+    statement.setString(10, account.getTenantId());
+    statement.setString(11, account.getUserId());
     return statement;
   }
 
@@ -88,8 +108,8 @@ public class SQLUserClusterStoreView extends BaseSQLClusterStoreView {
   @Override
   protected PreparedStatement getSelectClusterJobsStatement(Connection conn, long id) throws SQLException {
     PreparedStatement statement = conn.prepareStatement(
-      "SELECT J.job FROM jobs J, clusters C " +
-        "WHERE C.id=? AND C.tenant_id=? AND C.owner_id=? AND C.id=J.cluster_id ORDER BY job_num DESC");
+      "SELECT J.job FROM jobs J, clusters C WHERE C.id=? AND C.tenant_id=? AND C.owner_id=? AND C.id=J.cluster_id " +
+        "ORDER BY J.create_time DESC, J.job_num DESC");
     statement.setLong(1, id);
     statement.setString(2, account.getTenantId());
     statement.setString(3, account.getUserId());
@@ -97,12 +117,18 @@ public class SQLUserClusterStoreView extends BaseSQLClusterStoreView {
   }
 
   @Override
-  protected PreparedStatement getSelectClusterNodesStatement(Connection conn, long id) throws SQLException {
+  protected PreparedStatement getSelectClusterNodesStatement(Connection conn, long id, String afterNodeId)
+    throws SQLException {
+    String condition = afterNodeId == null ? "" : " AND N.id>?";
     PreparedStatement statement = conn.prepareStatement(
-      "SELECT N.node FROM nodes N, clusters C WHERE C.id=? AND C.tenant_id=? AND C.owner_id=? AND N.cluster_id=C.id");
+      "SELECT N.node FROM nodes N, clusters C WHERE C.id=? AND C.tenant_id=? AND C.owner_id=? AND N.cluster_id=C.id" +
+        condition + " ORDER BY N.id");
     statement.setLong(1, id);
     statement.setString(2, account.getTenantId());
     statement.setString(3, account.getUserId());
+    if (afterNodeId != null) {
+      statement.setString(4, afterNodeId);
+    }
     return statement;
   }
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.store.cluster;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes rows of a table that may or may not exist already, inserting the ones that don't exist and updating the
+ * ones that do, for any number of rows at once using JDBC batches. On MySQL, rows are written with a single
+ * INSERT ... ON DUPLICATE KEY UPDATE batch, which relies on the key columns being the primary key of the table.
+ * On other databases, rows are written with an UPDATE batch followed by an INSERT batch of the rows that were not
+ * updated. Rows whose update count the driver does not report are updated again one at a time to find out.
+ * <p/>
+ * Rows are written within the transaction of the connection they are written with, so callers that write multiple
+ * rows should write them in a transaction if they need all or none of them to be written.
+ *
+ * @param <T> Type of object written as a row.
+ */
+final class Upsert<T> {
+  private final Binder<T> binder;
+  private final String updateSql;
+  private final String insertSql;
+  private final String insertOrUpdateSql;
+
+  /**
+   * Create an upsert for a table.
+   *
+   * @param table Table to write to.
+   * @param keyColumns Columns that identify a row.
+   * @param valueColumns Columns that are written on both insert and update.
+   * @param insertOnlyColumns Columns that are only written when a row is inserted.
+   * @param binder Binder for setting column values of objects.
+   */
+  Upsert(String table, List<String> keyColumns, List<String> valueColumns, List<String> insertOnlyColumns,
+         Binder<T> binder) {
+    this.binder = binder;
+    Joiner commaJoiner = Joiner.on(", ");
+    List<String> insertColumns = Lists.newArrayList(Iterables.concat(keyColumns, valueColumns, insertOnlyColumns));
+    List<String> setValues = Lists.newArrayList();
+    List<String> setInsertedValues = Lists.newArrayList();
+    for (String column : valueColumns) {
+      setValues.add(column + "=?");
+      setInsertedValues.add(column + "=VALUES(" + column + ")");
+    }
+    List<String> keyConditions = Lists.newArrayList();
+    for (String column : keyColumns) {
+      keyConditions.add(column + "=?");
+    }
+    this.updateSql = "UPDATE " + table + " SET " + commaJoiner.join(setValues) +
+      " WHERE " + Joiner.on(" AND ").join(keyConditions);
+    this.insertSql = "INSERT INTO " + table + " (" + commaJoiner.join(insertColumns) + ") VALUES (" +
+      commaJoiner.join(Collections.nCopies(insertColumns.size(), "?")) + ")";
+    this.insertOrUpdateSql = insertSql + " ON DUPLICATE KEY UPDATE " + commaJoiner.join(setInsertedValues);
+  }
+
+  /**
+   * Write the given objects as rows.
+   *
+   * @param conn Connection to write with.
+   * @param isMySQL Whether or not the connection is to a MySQL database.
+   * @param objects Objects to write.
+   * @throws SQLException if there was a problem writing the rows.
+   */
+  void write(Connection conn, boolean isMySQL, Collection<? extends T> objects) throws SQLException {
+    if (objects.isEmpty()) {
+      return;
+    }
+    if (isMySQL) {
+      executeInserts(conn, insertOrUpdateSql, objects);
+      return;
+    }
+
+    List<T> notUpdated = Lists.newArrayList();
+    PreparedStatement statement = conn.prepareStatement(updateSql);
+    try {
+      for (T object : objects) {
+        bindUpdate(statement, object);
+        statement.addBatch();
+      }
+      int[] counts = statement.executeBatch();
+      // drivers may not tell how many rows a statement of a batch updated, by giving Statement.SUCCESS_NO_INFO.
+      // Those rows are updated again one at a time, which does tell, so that rows that don't exist are inserted.
+      List<T> unknown = Lists.newArrayList();
+      int i = 0;
+      for (T object : objects) {
+        if (counts[i] == 0) {
+          notUpdated.add(object);
+        } else if (counts[i] < 0) {
+          unknown.add(object);
+        }
+        i++;
+      }
+      for (T object : unknown) {
+        bindUpdate(statement, object);
+        if (statement.executeUpdate() == 0) {
+          notUpdated.add(object);
+        }
+      }
+    } finally {
+      statement.close();
+    }
+    if (!notUpdated.isEmpty()) {
+      executeInserts(conn, insertSql, notUpdated);
+    }
+  }
+
+  private void bindUpdate(PreparedStatement statement, T object) throws SQLException {
+    int index = binder.bindValues(statement, 1, object);
+    binder.bindKeys(statement, index, object);
+  }
+
+  private void executeInserts(Connection conn, String sql, Collection<? extends T> objects) throws SQLException {
+    PreparedStatement statement = conn.prepareStatement(sql);
+    try {
+      for (T object : objects) {
+        int index = binder.bindKeys(statement, 1, object);
+        index = binder.bindValues(statement, index, object);
+        binder.bindInsertOnlyValues(statement, index, object);
+        statement.addBatch();
+      }
+      statement.executeBatch();
+    } finally {
+      statement.close();
+    }
+  }
+
+  /**
+   * Sets column values of an object as statement parameters. Each method sets the columns in the order they were
+   * given to the {@link Upsert}, starting at the given parameter index, and returns the index of the next parameter.
+   *
+   * @param <T> Type of object.
+   */
+  interface Binder<T> {
+    int bindKeys(PreparedStatement statement, int index, T object) throws SQLException;
+
+    int bindValues(PreparedStatement statement, int index, T object) throws SQLException;
+
+    int bindInsertOnlyValues(PreparedStatement statement, int index, T object) throws SQLException;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.store.entity;
+
+import com.continuuity.loom.account.Account;
+import com.continuuity.loom.common.conf.Configuration;
+import com.continuuity.loom.common.conf.Constants;
+import com.continuuity.loom.management.LoomStats;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.inject.Inject;
+
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EntityStoreService} that caches the entities of every tenant in front of a {@link SQLEntityStoreService}.
+ * Entities are read from the database once and then served from memory until they are changed through this service
+ * or until they expire.
+ */
+public class CachingEntityStoreService extends AbstractIdleService implements EntityStoreService {
+  private final SQLEntityStoreService delegate;
+  private final LoomStats loomStats;
+  private final long ttlMillis;
+  private final ConcurrentMap<String, TenantEntityCache> tenantCaches;
+
+  @Inject
+  public CachingEntityStoreService(SQLEntityStoreService delegate, LoomStats loomStats, Configuration conf) {
+    this(delegate, loomStats, TimeUnit.SECONDS.toMillis(conf.getLong(Constants.ENTITY_CACHE_TTL_SECS)));
+  }
+
+  public CachingEntityStoreService(SQLEntityStoreService delegate, LoomStats loomStats, long ttlMillis) {
+    this.delegate = delegate;
+    this.loomStats = loomStats;
+    this.ttlMillis = ttlMillis;
+    this.tenantCaches = Maps.newConcurrentMap();
+  }
+
+  // for unit tests only
+  public void clearData() throws SQLException {
+    delegate.clearData();
+    tenantCaches.clear();
+  }
+
+  @Override
+  protected void startUp() throws Exception {
+    delegate.startAndWait();
+  }
+
+  @Override
+  protected void shutDown() throws Exception {
+    delegate.stopAndWait();
+  }
+
+  @Override
+  public EntityStoreView getView(Account account) {
+    EntityStoreView view = delegate.getView(account);
+    if (ttlMillis <= 0) {
+      return view;
+    }
+    return new CachingEntityStoreView(view, getTenantCache(account.getTenantId()));
+  }
+
+  private TenantEntityCache getTenantCache(String tenantId) {
+    TenantEntityCache cache = tenantCaches.get(tenantId);
+    if (cache == null) {
+      cache = new TenantEntityCache(ttlMillis, loomStats.getEntityCacheStats());
+      TenantEntityCache existing = tenantCaches.putIfAbsent(tenantId, cache);
+      if (existing != null) {
+        cache = existing;
+      }
+    }
+    return cache;
+  }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.store.entity;
+
+import com.continuuity.loom.admin.AutomatorType;
+import com.continuuity.loom.admin.ClusterTemplate;
+import com.continuuity.loom.admin.HardwareType;
+import com.continuuity.loom.admin.ImageType;
+import com.continuuity.loom.admin.Provider;
+import com.continuuity.loom.admin.ProviderType;
+import com.continuuity.loom.admin.Service;
+import com.continuuity.loom.store.entity.BaseEntityStoreView.EntityType;
+import com.continuuity.loom.store.entity.TenantEntityCache.Loader;
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * {@link EntityStoreView} that serves reads from the cache of the tenant of the view, and reads from another view
+ * only when the cache does not have what is asked for. Writes and deletes go to the other view and invalidate the
+ * cache of the tenant. Entities returned by the view may be shared with other callers and must not be modified.
+ */
+class CachingEntityStoreView implements EntityStoreView {
+  private final EntityStoreView delegate;
+  private final TenantEntityCache cache;
+
+  CachingEntityStoreView(EntityStoreView delegate, TenantEntityCache cache) {
+    this.delegate = delegate;
+    this.cache = cache;
+  }
+
+  @Override
+  public Provider getProvider(final String providerName) throws IOException {
+    return cache.get(getKey(EntityType.PROVIDER, providerName), new Loader<Provider>() {
+      @Override
+      public Provider load() throws IOException {
+        return delegate.getProvider(providerName);
+      }
+    });
+  }
+
+  @Override
+  public Collection<Provider> getAllProviders() throws IOException {
+    return cache.get(getKey(EntityType.PROVIDER), new Loader<Collection<Provider>>() {
+      @Override
+      public Collection<Provider> load() throws IOException {
+        return ImmutableList.copyOf(delegate.getAllProviders());
+      }
+    });
+  }
+
+  @Override
+  public void writeProvider(Provider provider) throws IOException, IllegalAccessException {
+    try {
+      delegate.writeProvider(provider);
+    } finally {
+      cache.invalidate();
+    }
+  }
+
+  @Override
+  public void deleteProvider(String providerName) throws IOException, IllegalAccessException {
+    try {
+      delegate.deleteProvider(providerName);
+    } finally {
+      cache.invalidate();
+    }
+  }
+
+  @Override
+  public HardwareType getHardwareType(final String hardwareTypeName) throws IOException {
+    return cache.get(getKey(EntityType.HARDWARE_TYPE, hardwareTypeName), new Loader<HardwareType>() {
+      @Override
+      public HardwareType load() throws IOException {
+        return delegate.getHardwareType(hardwareTypeName);
+      }
+    });
+  }
+
+  @Override
+  public Collection<HardwareType> getAllHardwareTypes() throws IOException {
+    return cache.get(getKey(EntityType.HARDWARE_TYPE), new Loader<Collection<HardwareType>>() {
+      @Override
+      public Collection<HardwareType> load() throws IOException {
+        return ImmutableList.copyOf(delegate.getAllHardwareTypes());
+      }
+    });
+  }
+
+  @Override
+  public void writeHardwareType(HardwareType hardwareType) throws IOException, IllegalAccessException {
+    try {
+      delegate.writeHardwareType(hardwareType);
+    } finally {
+      cache.invalidate();
+    }
+  }
+
+  @Override
+  public void deleteHardwareType(String hardwareTypeName) throws IOException, IllegalAccessException {
+    try {
+      delegate.deleteHardwareType(hardwareTypeName);
+    } finally {
+      cache.invalidate();
+    }
+  }
+
+  @Override
+  public ImageType getImageType(final String imageTypeName) throws IOException {
+    return cache.get(getKey(EntityType.IMAGE_TYPE, imageTypeName), new Loader<ImageType>() {
+      @Override
+      public ImageType load() throws IOException {
+        return delegate.getImageType(imageTypeName);
+      }
+    });
+  }
+
+  @Override
+  public Collection<ImageType> getAllImageTypes() throws IOException {
+    return cache.get(getKey(EntityType.IMAGE_TYPE), new Loader<Collection<ImageType>>() {
+      @Override
+      public Collection<ImageType> load() throws IOException {
+        return ImmutableList.copyOf(delegate.getAllImageTypes());
+      }
+    });
+  }
+
+  @Override
+  public void writeImageType(ImageType imageType) throws IOException, IllegalAccessException {
+    try {
+      delegate.writeImageType(imageType);
+    } finally {
+      cache.invalidate();
+    }
+  }
+
+  @Override
+  public void deleteImageType(String imageTypeName) throws IOException, IllegalAccessException {
+    try {
+      delegate.deleteImageType(imageTypeName);
+    } finally {
+      cache.invalidate();
+    }
+  }
+
+  @Override
+  public Service getService(final String serviceName) throws IOException {
+    return cache.get(getKey(EntityType.SERVICE, serviceName), new Loader<Service>() {
+      @Override
+      public Service load() throws IOException {
+        return delegate.getService(serviceName);
+      }
+    });
+  }
+
+  @Override
+  public Collection<Service> getAllServices() throws IOException {
+    return cache.get(getKey(EntityType.SERVICE), new Loader<Collection<Service>>() {
+      @Override
+      public Collection<Service> load() throws IOException {
+        return ImmutableList.copyOf(delegate.getAllServices());
+      }
+    });
+  }
+
+  @Override
+  public void writeService(Service service) throws IOException, IllegalAccessException {
+    try {
+      delegate.writeService(service);
+    } finally {
+      cache.invalidate();
+    }
+  }
+
+  @Override
+  public void deleteService(String serviceName) throws IOException, IllegalAccessException {
+    try {
+      delegate.deleteService(serviceName);
+    } finally {
+      cache.invalidate();
+    }
+  }
+
+  @Override
+  public ClusterTemplate getClusterTemplate(final String clusterTemplateName) throws IOException {
+    return cache.get(getKey(EntityType.CLUSTER_TEMPLATE, clusterTemplateName), new Loader<ClusterTemplate>() {
+      @Override
+      public ClusterTemplate load() throws IOException {
+        return delegate.getClusterTemplate(clusterTemplateName);
+      }
+    });
+  }
+
+  @Override
+  public Collection<ClusterTemplate> getAllClusterTemplates() throws IOException {
+    return cache.get(getKey(EntityType.CLUSTER_TEMPLATE), new Loader<Collection<ClusterTemplate>>() {
+      @Override
+      public Collection<ClusterTemplate> load() throws IOException {
+        return ImmutableList.copyOf(delegate.getAllClusterTemplates());
+      }
+    });
+  }
+
+  @Override
+  public void writeClusterTemplate(ClusterTemplate clusterTemplate) throws IOException, IllegalAccessException {
+    try {
+      delegate.writeClusterTemplate(clusterTemplate);
+    } finally {
+      cache.invalidate();
+    }
+  }
+
+  @Override
+  public void deleteClusterTemplate(String clusterTemplateName) throws IOException, IllegalAccessException {
+    try {
+      delegate.deleteClusterTemplate(clusterTemplateName);
+    } finally {
+      cache.invalidate();
+    }
+  }
+
+  @Override
+  public ProviderType getProviderType(final String providerTypeName) throws IOException {
+    return cache.get(getKey(EntityType.PROVIDER_TYPE, providerTypeName), new Loader<ProviderType>() {
+      @Override
+      public ProviderType load() throws IOException {
+        return delegate.getProviderType(providerTypeName);
+      }
+    });
+  }
+
+  @Override
+  public Collection<ProviderType> getAllProviderTypes() throws IOException {
+    return cache.get(getKey(EntityType.PROVIDER_TYPE), new Loader<Collection<ProviderType>>() {
+      @Override
+      public Collection<ProviderType> load() throws IOException {
+        return ImmutableList.copyOf(delegate.getAllProviderTypes());
+      }
+    });
+  }
+
+  @Override
+  public void writeProviderType(ProviderType providerType) throws IOException, IllegalAccessException {
+    try {
+      delegate.writeProviderType(providerType);
+    } finally {
+      cache.invalidate();
+    }
+  }
+
+  @Override
+  public void deleteProviderType(String providerTypeName) throws IOException, IllegalAccessException {
+    try {
+      delegate.deleteProviderType(providerTypeName);
+    } finally {
+      cache.invalidate();
+    }
+  }
+
+  @Override
+  public AutomatorType getAutomatorType(final String automatorTypeName) throws IOException {
+    return cache.get(getKey(EntityType.AUTOMATOR_TYPE, automatorTypeName), new Loader<AutomatorType>() {
+      @Override
+      public AutomatorType load() throws IOException {
+        return delegate.getAutomatorType(automatorTypeName);
+      }
+    });
+  }
+
+  @Override
+  public Collection<AutomatorType> getAllAutomatorTypes() throws IOException {
+    return cache.get(getKey(EntityType.AUTOMATOR_TYPE), new Loader<Collection<AutomatorType>>() {
+      @Override
+      public Collection<AutomatorType> load() throws IOException {
+        return ImmutableList.copyOf(delegate.getAllAutomatorTypes());
+      }
+    });
+  }
+
+  @Override
+  public void writeAutomatorType(AutomatorType automatorType) throws IOException, IllegalAccessException {
+    try {
+      delegate.writeAutomatorType(automatorType);
+    } finally {
+      cache.invalidate();
+    }
+  }
+
+  @Override
+  public void deleteAutomatorType(String automatorTypeName) throws IOException, IllegalAccessException {
+    try {
+      delegate.deleteAutomatorType(automatorTypeName);
+    } finally {
+      cache.invalidate();
+    }
+  }
+
+  private static String getKey(EntityType entityType) {
+    return entityType.getId();
+  }
+
+  // keys for single entities always have a slash, so they never clash with keys for all entities of a type.
+  private static String getKey(EntityType entityType, String entityName) {
+    return entityType.getId() + "/" + entityName;
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.store.entity;
+
+import com.continuuity.loom.management.EntityCacheStats;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the entities of a single tenant. The cache has a version that changes every time it is invalidated, and
+ * every cached value is tagged with the version it was loaded at. Values tagged with an older version are never
+ * returned, and a value is only cached if the cache was not invalidated while it was being loaded, so that a load
+ * racing with a write can not bring back what the write replaced. Values also expire after a while, so that changes
+ * made through other servers are eventually seen.
+ */
+final class TenantEntityCache {
+  private static final Object ABSENT = new Object();
+  private final AtomicLong version;
+  private final ConcurrentMap<String, Entry> entries;
+  private final long ttlMillis;
+  private final EntityCacheStats stats;
+
+  TenantEntityCache(long ttlMillis, EntityCacheStats stats) {
+    this.version = new AtomicLong(0);
+    this.entries = Maps.newConcurrentMap();
+    this.ttlMillis = ttlMillis;
+    this.stats = stats;
+  }
+
+  /**
+   * Get a value from the cache, loading and caching it if it is not cached or is out of date.
+   *
+   * @param key Key of the value to get.
+   * @param loader Loader for the value, used if the cached value can not be used.
+   * @param <T> Type of value to get.
+   * @return Value for the key, which may be null.
+   * @throws IOException if there was an exception loading the value.
+   */
+  @SuppressWarnings("unchecked")
+  <T> T get(String key, Loader<T> loader) throws IOException {
+    long currentVersion = version.get();
+    long now = System.currentTimeMillis();
+    Entry entry = entries.get(key);
+    if (entry != null && entry.version == currentVersion && now < entry.expireTime) {
+      stats.hit();
+      return entry.value == ABSENT ? null : (T) entry.value;
+    }
+    stats.miss();
+    T value = loader.load();
+    if (version.get() == currentVersion) {
+      entries.put(key, new Entry(value == null ? ABSENT : value, currentVersion, now + ttlMillis));
+    }
+    return value;
+  }
+
+  /**
+   * Invalidate everything in the cache.
+   */
+  void invalidate() {
+    version.incrementAndGet();
+    entries.clear();
+    stats.invalidated();
+  }
+
+  /**
+   * Loads a value that is not cached.
+   *
+   * @param <T> Type of value to load.
+   */
+  interface Loader<T> {
+    T load() throws IOException;
+  }
+
+  private static final class Entry {
+    private final Object value;
+    private final long version;
+    private final long expireTime;
+
+    private Entry(Object value, long version, long expireTime) {
+      this.value = value;
+      this.version = version;
+      this.expireTime = expireTime;
+    }
+  }
+}
@@ -3,6 +3,7 @@ package com.continuuity.loom.store.guice;
 import com.continuuity.loom.store.DBConnectionPool;
 import com.continuuity.loom.store.cluster.ClusterStoreService;
 import com.continuuity.loom.store.cluster.SQLClusterStoreService;
+import com.continuuity.loom.store.entity.CachingEntityStoreService;
 import com.continuuity.loom.store.entity.EntityStoreService;
 import com.continuuity.loom.store.entity.SQLEntityStoreService;
 import com.continuuity.loom.store.tenant.SQLTenantStore;
@@ -17,11 +18,12 @@ public class StoreModule extends AbstractModule {
 
   @Override
   protected void configure() {
-    bind(EntityStoreService.class).to(SQLEntityStoreService.class).in(Scopes.SINGLETON);
+    bind(EntityStoreService.class).to(CachingEntityStoreService.class).in(Scopes.SINGLETON);
     bind(ClusterStoreService.class).to(SQLClusterStoreService.class).in(Scopes.SINGLETON);
     bind(TenantStore.class).to(SQLTenantStore.class).in(Scopes.SINGLETON);
     bind(DBConnectionPool.class).in(Scopes.SINGLETON);
     bind(SQLClusterStoreService.class).in(Scopes.SINGLETON);
+    bind(CachingEntityStoreService.class).in(Scopes.SINGLETON);
     bind(SQLEntityStoreService.class).in(Scopes.SINGLETON);
     bind(SQLTenantStore.class).in(Scopes.SINGLETON);
   }
@@ -91,7 +91,8 @@ public class BaseTest {
         new StoreModule(),
         new QueueModule(zkClientService),
         new HttpModule(),
-        new SchedulerModule(conf, MoreExecutors.sameThreadExecutor(), MoreExecutors.sameThreadExecutor())
+        new SchedulerModule(conf, MoreExecutors.sameThreadExecutor(), MoreExecutors.sameThreadExecutor(),
+                            MoreExecutors.sameThreadExecutor(), MoreExecutors.sameThreadExecutor())
       ).with(
         new AbstractModule() {
           @Override
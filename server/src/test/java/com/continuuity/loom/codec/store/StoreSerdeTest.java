@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.codec.store;
+
+import com.continuuity.loom.admin.ProvisionerAction;
+import com.continuuity.loom.cluster.Node;
+import com.continuuity.loom.codec.json.JsonSerde;
+import com.continuuity.loom.scheduler.ClusterAction;
+import com.continuuity.loom.scheduler.SchedulerTest;
+import com.continuuity.loom.scheduler.task.ClusterTask;
+import com.continuuity.loom.scheduler.task.JobId;
+import com.continuuity.loom.scheduler.task.TaskId;
+import com.google.common.base.Charsets;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+/**
+ *
+ */
+public class StoreSerdeTest {
+  private static final JsonSerde JSON_SERDE = new JsonSerde();
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    StoreSerde serde = new StoreSerde();
+    ClusterTask task = createTask();
+    byte[] bytes = serde.serialize(task, ClusterTask.class);
+    ClusterTask read = serde.deserialize(new ByteArrayInputStream(bytes), ClusterTask.class);
+    Assert.assertEquals(task, read);
+    Assert.assertEquals(task.getConfig(), read.getConfig());
+
+    // repeated config compresses well
+    Assert.assertTrue(bytes.length * 4 < JSON_SERDE.serialize(task, ClusterTask.class).length);
+
+    Node node = JSON_SERDE.getGson().fromJson(SchedulerTest.NODE1, Node.class);
+    Node readNode = serde.deserialize(new ByteArrayInputStream(serde.serialize(node, Node.class)), Node.class);
+    Assert.assertEquals(node.getProperties(), readNode.getProperties());
+  }
+
+  @Test
+  public void testReadPlainJson() throws IOException {
+    StoreSerde serde = new StoreSerde();
+    ClusterTask task = createTask();
+    byte[] json = JSON_SERDE.serialize(task, ClusterTask.class);
+    ClusterTask read = serde.deserialize(new ByteArrayInputStream(json), ClusterTask.class);
+    Assert.assertEquals(task, read);
+    Assert.assertEquals(task.getConfig(), read.getConfig());
+
+    byte[] indented = ("\n  " + new String(json, Charsets.UTF_8)).getBytes(Charsets.UTF_8);
+    Assert.assertEquals(task, serde.deserialize(new ByteArrayInputStream(indented), ClusterTask.class));
+  }
+
+  @Test
+  public void testFormats() throws IOException {
+    StoreFormat deflated = new DeflatedJsonFormat(JSON_SERDE);
+    StoreFormat plain = new PlainJsonFormat();
+    StoreSerde plainSerde = new StoreSerde(JSON_SERDE, plain, deflated);
+    StoreSerde deflatedSerde = new StoreSerde(JSON_SERDE, deflated);
+    ClusterTask task = createTask();
+
+    byte[] plainBytes = plainSerde.serialize(task, ClusterTask.class);
+    byte[] deflatedBytes = deflatedSerde.serialize(task, ClusterTask.class);
+    Assert.assertEquals(PlainJsonFormat.VERSION, plainBytes[1]);
+    Assert.assertEquals(DeflatedJsonFormat.VERSION, deflatedBytes[1]);
+
+    // objects written with any registered format can be read
+    Assert.assertEquals(task, plainSerde.deserialize(new ByteArrayInputStream(plainBytes), ClusterTask.class));
+    Assert.assertEquals(task, plainSerde.deserialize(new ByteArrayInputStream(deflatedBytes), ClusterTask.class));
+    try {
+      deflatedSerde.deserialize(new ByteArrayInputStream(plainBytes), ClusterTask.class);
+      Assert.fail();
+    } catch (IOException e) {
+      // expected, format is unknown
+    }
+  }
+
+  private ClusterTask createTask() {
+    JsonObject config = new JsonObject();
+    JsonArray nodes = new JsonArray();
+    for (int i = 0; i < 50; i++) {
+      JsonObject node = new JsonObject();
+      node.addProperty("hostname", "node" + i + ".cluster.example.com");
+      node.addProperty("ipaddress", "10.0.0." + i);
+      node.addProperty("automators", "chef-solo,shell");
+      nodes.add(node);
+    }
+    config.add("nodes", nodes);
+    ClusterTask task = new ClusterTask(ProvisionerAction.CONFIGURE, new TaskId(new JobId("1", 1), 1),
+                                       "node1", "service", ClusterAction.CLUSTER_CREATE, config);
+    task.setStatus(ClusterTask.Status.COMPLETE);
+    return task;
+  }
+
+  private static final class PlainJsonFormat implements StoreFormat {
+    private static final byte VERSION = 100;
+
+    @Override
+    public byte getVersion() {
+      return VERSION;
+    }
+
+    @Override
+    public <T> void write(T object, Type type, OutputStream out) throws IOException {
+      out.write(JSON_SERDE.serialize(object, type));
+    }
+
+    @Override
+    public <T> T read(InputStream in, Type type) throws IOException {
+      return JSON_SERDE.deserialize(new InputStreamReader(in, Charsets.UTF_8), type);
+    }
+  }
+}
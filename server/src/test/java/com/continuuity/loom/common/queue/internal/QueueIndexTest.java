@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.common.queue.internal;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class QueueIndexTest {
+
+  @Test
+  public void testOrdering() {
+    QueueIndex<String> index = new QueueIndex<String>();
+    index.putQueued("b", 5L, "b");
+    index.putQueued("a", 5L, "a");
+    index.putQueued("c", 1L, "c");
+    index.putQueued("d", 10L, "d");
+
+    // ordered by priority, ties broken by id
+    Assert.assertEquals(ImmutableList.of("c", "a", "b", "d"), ImmutableList.copyOf(index.getQueued()));
+    Assert.assertEquals("c", index.getFirstQueued());
+
+    // re-indexing an element moves it
+    index.putQueued("d", 0L, "d");
+    Assert.assertEquals(ImmutableList.of("d", "c", "a", "b"), ImmutableList.copyOf(index.getQueued()));
+    Assert.assertEquals(4, index.size());
+  }
+
+  @Test
+  public void testBeingConsumed() {
+    QueueIndex<String> index = new QueueIndex<String>();
+    index.putQueued("a", 1L, "a");
+    index.putQueued("b", 2L, "b");
+
+    index.putBeingConsumed("a", "a");
+    Assert.assertEquals("b", index.getFirstQueued());
+    Assert.assertNull(index.getQueued("a"));
+    Assert.assertEquals("a", index.getBeingConsumed("a"));
+    Assert.assertEquals(ImmutableList.of("b"), ImmutableList.copyOf(index.getQueued()));
+    Assert.assertEquals(ImmutableSet.of("a"), ImmutableSet.copyOf(index.getBeingConsumed()));
+    Assert.assertEquals(2, index.size());
+
+    index.putQueued("a", 3L, "a");
+    Assert.assertNull(index.getBeingConsumed("a"));
+    Assert.assertEquals(ImmutableList.of("b", "a"), ImmutableList.copyOf(index.getQueued()));
+
+    index.remove("b");
+    index.remove("unknown");
+    Assert.assertEquals(ImmutableList.of("a"), ImmutableList.copyOf(index.getQueued()));
+    Assert.assertEquals(1, index.size());
+
+    index.clear();
+    Assert.assertNull(index.getFirstQueued());
+    Assert.assertEquals(0, index.size());
+  }
+}
@@ -25,7 +25,11 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.concurrent.TimeUnit;
+
 public class TimeoutTrackingQueueCliToolTest extends BaseZKTest {
+  // how long to wait for changes made by the tool to reach the queue
+  private static final long WAIT_TIMEOUT_MS = 5000;
   private String queueName;
 
   private TimeoutTrackingQueue queue;
@@ -60,6 +64,8 @@ public class TimeoutTrackingQueueCliToolTest extends BaseZKTest {
     TimeoutTrackingQueueCliTool.main(("list" + qOpts).split(" "));
 
     TimeoutTrackingQueueCliTool.main(("remove --element elem1" + qOpts).split(" "));
+    // changes made by the tool reach the queue through watches, which takes a moment
+    waitForSize(queue, 2);
     Assert.assertEquals(2, getQueuedCount(queue));
     Assert.assertEquals(0, Iterators.size(queue.getBeingConsumed()));
 
@@ -68,19 +74,44 @@ public class TimeoutTrackingQueueCliToolTest extends BaseZKTest {
     // moving elem3 to top of the queue
     Assert.assertEquals("elem2", queue.getQueued().next().getElement().getId());
     TimeoutTrackingQueueCliTool.main(("promote --element elem3" + qOpts).split(" "));
+    waitForFirstQueued(queue, "elem3");
     Assert.assertEquals("elem3", queue.getQueued().next().getElement().getId());
 
     TimeoutTrackingQueueCliTool.main(("list " + qOpts).split(" "));
     TimeoutTrackingQueueCliTool.main(("remove --element elem2" + qOpts).split(" "));
+    waitForSize(queue, 1);
     Assert.assertEquals(1, getQueuedCount(queue));
     Assert.assertEquals(0, Iterators.size(queue.getBeingConsumed()));
     TimeoutTrackingQueueCliTool.main(("list " + qOpts).split(" "));
     TimeoutTrackingQueueCliTool.main(("remove_all" + qOpts).split(" "));
+    waitForSize(queue, 0);
     Assert.assertEquals(0, getQueuedCount(queue));
     Assert.assertEquals(0, Iterators.size(queue.getBeingConsumed()));
     TimeoutTrackingQueueCliTool.main(("list " + qOpts).split(" "));
   }
 
+  private static void waitForSize(TrackingQueue queue, int size) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + WAIT_TIMEOUT_MS;
+    while (queue.size() != size) {
+      if (System.currentTimeMillis() > deadline) {
+        Assert.fail("Queue size still " + queue.size() + " instead of " + size + " after " + WAIT_TIMEOUT_MS + " ms");
+      }
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+  }
+
+  private static void waitForFirstQueued(TrackingQueue queue, String elementId) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + WAIT_TIMEOUT_MS;
+    String firstId = queue.getQueued().next().getElement().getId();
+    while (!elementId.equals(firstId)) {
+      if (System.currentTimeMillis() > deadline) {
+        Assert.fail("First queued element still " + firstId + " instead of " + elementId + " after " +
+                      WAIT_TIMEOUT_MS + " ms");
+      }
+      TimeUnit.MILLISECONDS.sleep(10);
+      firstId = queue.getQueued().next().getElement().getId();
+    }
+  }
 
   private static int getQueuedCount(TrackingQueue queue) {
     return Iterators.size(queue.getQueued());
@@ -18,14 +18,20 @@ package com.continuuity.loom.common.queue.internal;
 import com.continuuity.loom.common.queue.Element;
 import com.continuuity.loom.common.queue.QueuedElement;
 import com.continuuity.loom.common.queue.TrackingQueue;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.twill.common.Cancellable;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -173,6 +179,79 @@ public abstract class TimeoutTrackingQueueTestBase {
     Assert.assertNull(queue.take("worker6"));
   }
 
+  @Test
+  public void testTakeMultiple() throws Exception {
+    TimeoutTrackingQueue queue = getQueue(getRescheduleInterval(), getRescheduleInterval());
+    queue.add(new Element("work1", "data1"));
+    Thread.sleep(1);
+    queue.add(new Element("work2", "data2"));
+    Thread.sleep(1);
+    queue.add(new Element("work3", "data3"));
+
+    List<Element> taken = queue.take("worker1", 2);
+    Assert.assertEquals(2, taken.size());
+    Assert.assertEquals("work1", taken.get(0).getId());
+    Assert.assertEquals("work2", taken.get(1).getId());
+    Assert.assertEquals(1, getQueuedCount(queue));
+    Assert.assertEquals(2, Iterators.size(queue.getBeingConsumed()));
+
+    // taken elements are owned by the consumer that took them
+    Assert.assertEquals(TrackingQueue.PossessionState.POSSESSES,
+                        queue.recordProgress("worker1", "work2", TrackingQueue.ConsumingStatus.FAILED, null));
+
+    // asking for more than is available returns what is available
+    taken = queue.take("worker2", 5);
+    Assert.assertEquals(2, taken.size());
+    Assert.assertEquals(ImmutableSet.of("work2", "work3"), ImmutableSet.of(taken.get(0).getId(), taken.get(1).getId()));
+    Assert.assertEquals(0, getQueuedCount(queue));
+
+    Assert.assertTrue(queue.take("worker3", 5).isEmpty());
+    queue.removeAll();
+  }
+
+  @Test
+  public void testQueuedElementsNotModified() throws Exception {
+    TimeoutTrackingQueue queue = getQueue(getRescheduleInterval(), getRescheduleInterval());
+    queue.add(new Element("work1", "data1"));
+    Thread.sleep(1);
+    queue.add(new Element("work2", "data2"));
+
+    Iterator<QueuedElement> elems = queue.getQueued();
+    QueuedElement first = elems.next();
+    Assert.assertEquals("work1", queue.take("worker1").getId());
+
+    // elements already returned by the iterator keep the state they were returned with
+    Assert.assertEquals("work1", first.getElement().getId());
+    Assert.assertEquals("", first.getConsumerId());
+    Assert.assertEquals("worker1", queue.getBeingConsumed().next().getConsumerId());
+    Assert.assertEquals("work2", elems.next().getElement().getId());
+  }
+
+  @Test(timeout = 10000)
+  public void testListener() throws Exception {
+    TimeoutTrackingQueue queue = getQueue(getRescheduleInterval(), getRescheduleInterval());
+    final BlockingQueue<String> available = new LinkedBlockingQueue<String>();
+    Cancellable cancellable = queue.addListener(new TrackingQueue.Listener() {
+      @Override
+      public void available(String elementId) {
+        available.add(elementId);
+      }
+    });
+
+    queue.add(new Element("work1", "data1"));
+    Assert.assertEquals("work1", available.take());
+
+    // taking an element doesn't make anything available, putting it back does
+    Element taken = queue.take("worker1");
+    queue.recordProgress("worker1", taken.getId(), TrackingQueue.ConsumingStatus.FAILED, null);
+    Assert.assertEquals("work1", available.take());
+
+    cancellable.cancel();
+    queue.add(new Element("work2", "data2"));
+    Assert.assertNull(available.poll(100, TimeUnit.MILLISECONDS));
+    queue.removeAll();
+  }
+
   @Test(timeout = 30000)
   public void testConcurrentAccess() throws Exception {
     final TimeoutTrackingQueue queue = getQueue(300, 100);
@@ -15,15 +15,22 @@
  */
 package com.continuuity.loom.common.queue.internal;
 
+import com.continuuity.loom.common.queue.Element;
+import com.continuuity.loom.common.queue.TrackingQueue;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
 import org.apache.twill.internal.zookeeper.InMemoryZKServer;
 import org.apache.twill.zookeeper.ZKClientService;
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Rule;
+import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -68,4 +75,46 @@ public class TimeoutTrackingQueueZkTest extends TimeoutTrackingQueueTestBase {
   protected long getRescheduleInterval() {
     return 500;
   }
+
+  private void waitForQueued(TimeoutTrackingQueue queue, int count) throws InterruptedException {
+    while (Iterators.size(queue.getQueued()) != count) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testSharedAcrossTrackings() throws Exception {
+    String queueName = "/shared-queue";
+    TimeoutTrackingQueue queue1 = new TimeoutTrackingQueue(new ZKElementsTracking(zkClient, queueName),
+                                                           Long.MAX_VALUE, Long.MAX_VALUE);
+    TimeoutTrackingQueue queue2 = new TimeoutTrackingQueue(new ZKElementsTracking(zkClient, queueName),
+                                                           Long.MAX_VALUE, Long.MAX_VALUE);
+    queue1.start();
+    queue2.start();
+
+    queue1.add(new Element("work1", "data1"));
+    queue1.add(new Element("work2", "data2"));
+    // other trackings see changes through watches, which takes a moment
+    waitForQueued(queue2, 2);
+
+    // each element can only be taken once, no matter which tracking it is taken through
+    Element taken1 = queue2.take("worker1");
+    Element taken2 = queue1.take("worker2");
+    Assert.assertEquals(ImmutableSet.of("work1", "work2"), ImmutableSet.of(taken1.getId(), taken2.getId()));
+    Assert.assertNull(queue1.take("worker3"));
+    Assert.assertNull(queue2.take("worker3"));
+
+    // progress can be reported through a different tracking than the one the element was taken through
+    Assert.assertEquals(TrackingQueue.PossessionState.POSSESSES,
+                        queue1.recordProgress("worker1", taken1.getId(),
+                                              TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY, null));
+    Assert.assertEquals(TrackingQueue.PossessionState.NOT_POSSESSES,
+                        queue2.recordProgress("worker1", taken1.getId(),
+                                              TrackingQueue.ConsumingStatus.IN_PROGRESS, null));
+    Assert.assertEquals(TrackingQueue.PossessionState.POSSESSES,
+                        queue2.recordProgress("worker2", taken2.getId(),
+                                              TrackingQueue.ConsumingStatus.FAILED, null));
+    waitForQueued(queue1, 1);
+    Assert.assertEquals(taken2.getId(), queue1.take("worker3").getId());
+  }
 }
@@ -18,7 +18,9 @@ package com.continuuity.loom.common.zookeeper;
 import com.continuuity.loom.common.zookeeper.IdService;
 import com.google.common.base.Throwables;
 import org.apache.twill.internal.zookeeper.InMemoryZKServer;
+import org.apache.twill.zookeeper.ZKClient;
 import org.apache.twill.zookeeper.ZKClientService;
+import org.apache.twill.zookeeper.ZKClients;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -28,10 +30,14 @@ import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -59,7 +65,7 @@ public class IdServiceTest {
 
   @Test
   public void testIds() throws InterruptedException, SQLException, ClassNotFoundException {
-    final IdService idService = new IdService(zkClient, 3, 10);
+    final IdService idService = new IdService(zkClient, 3, 10, 1000);
     idService.startAndWait();
     final int incrementsPerThread = 100;
     final int numThreads = 20;
@@ -92,4 +98,46 @@ public class IdServiceTest {
     Assert.assertEquals(expected, actual);
   }
 
+  @Test
+  public void testIdsAcrossServices() throws InterruptedException {
+    final int numServices = 4;
+    final int idsPerService = 500;
+    final Set<Long> ids = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    final CyclicBarrier barrier = new CyclicBarrier(numServices);
+    final CountDownLatch latch = new CountDownLatch(numServices);
+
+    // separate namespace so that counters created by other tests are not used
+    ZKClient namespacedClient = ZKClients.namespace(zkClient, "/across");
+    ExecutorService executor = Executors.newFixedThreadPool(numServices);
+    for (int i = 0; i < numServices; i++) {
+      // small blocks so that services keep leasing blocks at the same time
+      final IdService idService = new IdService(namespacedClient, 5, 3, 7);
+      idService.startAndWait();
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            barrier.await();
+            for (int j = 0; j < idsPerService; j++) {
+              ids.add(idService.getNewJobId("1").getJobNum());
+            }
+          } catch (Exception e) {
+            Throwables.propagate(e);
+          } finally {
+            latch.countDown();
+          }
+        }
+      });
+    }
+
+    Assert.assertTrue(latch.await(60, TimeUnit.SECONDS));
+    executor.shutdown();
+
+    // all ids are unique, start at 5 and go up by 3
+    Assert.assertEquals(numServices * idsPerService, ids.size());
+    for (long id : ids) {
+      Assert.assertTrue(id >= 5);
+      Assert.assertEquals(2, id % 3);
+    }
+  }
 }
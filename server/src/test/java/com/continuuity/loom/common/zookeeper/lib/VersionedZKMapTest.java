@@ -0,0 +1,180 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.common.zookeeper.lib;
+
+import com.continuuity.loom.common.zookeeper.BaseZKTest;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import org.apache.twill.zookeeper.ForwardingZKClient;
+import org.apache.twill.zookeeper.NodeData;
+import org.apache.twill.zookeeper.OperationFuture;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ */
+public class VersionedZKMapTest extends BaseZKTest {
+
+  @Test(timeout = 10000)
+  public void testConditionalWrites() {
+    VersionedZKMap<String> map1 = new VersionedZKMap<String>(zkClient, "/foo/vmap", Serializers.stringSerializer());
+    VersionedZKMap<String> map2 = new VersionedZKMap<String>(zkClient, "/foo/vmap", Serializers.stringSerializer());
+
+    Versioned<String> value = map1.put("key1", "value1");
+    Assert.assertEquals("value1", value.getValue());
+    Assert.assertEquals("value1", map1.get("key1").getValue());
+
+    // both writers see the same version, only the first write can succeed
+    Versioned<String> seen = map2.refresh("key1");
+    Assert.assertEquals(value.getVersion(), seen.getVersion());
+    Versioned<String> replaced = map1.replace("key1", "value1_m1", value.getVersion());
+    Assert.assertNotNull(replaced);
+    Assert.assertNull(map2.replace("key1", "value1_m2", seen.getVersion()));
+    // failed write re-reads the entry
+    Assert.assertEquals("value1_m1", map2.get("key1").getValue());
+    Assert.assertFalse(map2.remove("key1", seen.getVersion()));
+    Assert.assertTrue(map2.remove("key1", map2.get("key1").getVersion()));
+    Assert.assertNull(map2.get("key1"));
+
+    // writes to keys that are gone fail
+    Assert.assertNull(map1.replace("key1", "value1", replaced.getVersion()));
+    Assert.assertFalse(map1.remove("key1", replaced.getVersion()));
+    Assert.assertNull(map1.get("key1"));
+  }
+
+  @Test(timeout = 10000)
+  public void testViewsSync() throws InterruptedException {
+    VersionedZKMap<String> map1 = new VersionedZKMap<String>(zkClient, "/foo/vmap", Serializers.stringSerializer());
+    map1.put("key1", "value1");
+    map1.put("key2", "value2");
+
+    // new map should see existing entries right away
+    VersionedZKMap<String> map2 = new VersionedZKMap<String>(zkClient, "/foo/vmap", Serializers.stringSerializer());
+    Assert.assertEquals(2, map2.size());
+    Assert.assertEquals("value2", map2.get("key2").getValue());
+
+    map1.put("key2", "value2_m");
+    map1.put("key3", "value3");
+    map1.remove("key1");
+    Assert.assertTrue(eventuallyEquals(map2, "key2", "value2_m", "key3", "value3"));
+
+    map2.clear();
+    Assert.assertEquals(0, map2.size());
+    Assert.assertTrue(eventuallyEquals(map1));
+  }
+
+  @Test(timeout = 10000)
+  public void testOneWatchPerKey() throws InterruptedException {
+    WatchCountingZKClient countingClient = new WatchCountingZKClient(zkClient);
+    VersionedZKMap<String> map1 =
+      new VersionedZKMap<String>(countingClient, "/foo/vmap", Serializers.stringSerializer());
+    VersionedZKMap<String> map2 = new VersionedZKMap<String>(zkClient, "/foo/vmap", Serializers.stringSerializer());
+    Versioned<String> value = map1.put("key1", "value1");
+    Assert.assertEquals(1, countingClient.getNumWatches("/foo/vmap/key1"));
+
+    // writes that lose a race re-read the key, which must not set another watch on it
+    for (int i = 0; i < 5; i++) {
+      Assert.assertNull(map1.replace("key1", "value1_m1", value.getVersion() + 1));
+      Assert.assertFalse(map1.remove("key1", value.getVersion() + 1));
+    }
+    Assert.assertEquals(1, countingClient.getNumWatches("/foo/vmap/key1"));
+
+    // a change made elsewhere fires the watch, which is then set again
+    map2.put("key1", "value1_m2");
+    Assert.assertTrue(eventuallyEquals(map1, "key1", "value1_m2"));
+    Assert.assertEquals(1, countingClient.getNumWatches("/foo/vmap/key1"));
+  }
+
+  // local views don't immediately sync up with changes made through other maps.
+  private boolean eventuallyEquals(VersionedZKMap<String> map, String... keyvals) throws InterruptedException {
+    int numRetries = 0;
+    while (numRetries < 50) {
+      if (equals(map, keyvals)) {
+        return true;
+      }
+      numRetries++;
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    return false;
+  }
+
+  private boolean equals(VersionedZKMap<String> map, String... keyvals) {
+    if (map.size() != keyvals.length / 2) {
+      return false;
+    }
+    for (int i = 0; i < keyvals.length; i += 2) {
+      Versioned<String> value = map.get(keyvals[i]);
+      if (value == null || !value.getValue().equals(keyvals[i + 1])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Client that counts the data watches set on each path that have not fired yet.
+   */
+  private static final class WatchCountingZKClient extends ForwardingZKClient {
+    private final ConcurrentMap<String, AtomicInteger> numWatches = Maps.newConcurrentMap();
+
+    private WatchCountingZKClient(ZKClient delegate) {
+      super(delegate);
+    }
+
+    private int getNumWatches(String path) {
+      AtomicInteger count = numWatches.get(path);
+      return count == null ? 0 : count.get();
+    }
+
+    @Override
+    public OperationFuture<NodeData> getData(String path, final Watcher watcher) {
+      if (watcher == null) {
+        return super.getData(path, null);
+      }
+      numWatches.putIfAbsent(path, new AtomicInteger(0));
+      final AtomicInteger count = numWatches.get(path);
+      count.incrementAndGet();
+      OperationFuture<NodeData> result = super.getData(path, new Watcher() {
+        @Override
+        public void process(WatchedEvent event) {
+          count.decrementAndGet();
+          watcher.process(event);
+        }
+      });
+      Futures.addCallback(result, new FutureCallback<NodeData>() {
+        @Override
+        public void onSuccess(NodeData nodeData) {
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          // no watch is set when the read fails
+          count.decrementAndGet();
+        }
+      });
+      return result;
+    }
+  }
+}
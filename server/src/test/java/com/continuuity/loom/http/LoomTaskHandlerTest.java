@@ -41,6 +41,7 @@ import org.junit.Test;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -66,6 +67,79 @@ public class LoomTaskHandlerTest extends LoomServiceTestBase {
     nodeProvisionTaskQueue.removeAll();
   }
 
+  @Test
+  public void testTakeMultipleTasks() throws Exception {
+    ClusterJob clusterJob = new ClusterJob(JobId.fromString("1-1"), ClusterAction.CLUSTER_CREATE);
+    clusterStore.writeClusterJob(clusterJob);
+    for (int i = 1; i <= 3; i++) {
+      ClusterTask clusterTask = new ClusterTask(
+        ProvisionerAction.CREATE, TaskId.fromString("1-1-" + i), "node_id", "service", ClusterAction.CLUSTER_CREATE,
+        new JsonObject());
+      clusterStore.writeClusterTask(clusterTask);
+      nodeProvisionTaskQueue.add(new Element(clusterTask.getTaskId(), GSON.toJson(clusterTask)));
+    }
+
+    HttpResponse response = doPost("/v1/loom/tasks/take", "{ \"workerId\":\"worker1\", \"maxTasks\":2 }");
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    Reader reader = new InputStreamReader(response.getEntity().getContent(), Charsets.UTF_8);
+    JsonArray tasks = GSON.fromJson(reader, JsonArray.class);
+    Assert.assertEquals(2, tasks.size());
+
+    response = doPost("/v1/loom/tasks/take", "{ \"workerId\":\"worker1\", \"maxTasks\":2 }");
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    reader = new InputStreamReader(response.getEntity().getContent(), Charsets.UTF_8);
+    tasks = GSON.fromJson(reader, JsonArray.class);
+    Assert.assertEquals(1, tasks.size());
+
+    response = doPost("/v1/loom/tasks/take", "{ \"workerId\":\"worker1\", \"maxTasks\":2 }");
+    assertResponseStatus(response, HttpResponseStatus.NO_CONTENT);
+
+    response = doPost("/v1/loom/tasks/take", "{ \"workerId\":\"worker1\", \"maxTasks\":0 }");
+    assertResponseStatus(response, HttpResponseStatus.BAD_REQUEST);
+
+    nodeProvisionTaskQueue.removeAll();
+  }
+
+  @Test(timeout = 20000)
+  public void testTakeTaskWaits() throws Exception {
+    // nothing to take, should wait and then give up
+    long start = System.currentTimeMillis();
+    HttpResponse response = doPost("/v1/loom/tasks/take", "{ \"workerId\":\"worker1\", \"waitMs\":200 }");
+    assertResponseStatus(response, HttpResponseStatus.NO_CONTENT);
+    Assert.assertTrue(System.currentTimeMillis() - start >= 200);
+
+    final ClusterTask clusterTask = new ClusterTask(
+      ProvisionerAction.CREATE, TaskId.fromString("1-1-1"), "node_id", "service", ClusterAction.CLUSTER_CREATE,
+      new JsonObject());
+    clusterStore.writeClusterTask(clusterTask);
+    ClusterJob clusterJob = new ClusterJob(JobId.fromString("1-1"), ClusterAction.CLUSTER_CREATE);
+    clusterStore.writeClusterJob(clusterJob);
+
+    // task added while waiting should be handed out right away
+    Thread adder = new Thread() {
+      @Override
+      public void run() {
+        try {
+          TimeUnit.MILLISECONDS.sleep(500);
+          nodeProvisionTaskQueue.add(new Element(clusterTask.getTaskId(), GSON.toJson(clusterTask)));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    adder.start();
+    response = doPost("/v1/loom/tasks/take", "{ \"workerId\":\"worker1\", \"waitMs\":10000 }");
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    JsonObject responseJson = getResponseJson(response);
+    Assert.assertEquals(clusterTask.getTaskId(), responseJson.get("taskId").getAsString());
+    adder.join();
+
+    response = doPost("/v1/loom/tasks/take", "{ \"workerId\":\"worker1\", \"waitMs\":-1 }");
+    assertResponseStatus(response, HttpResponseStatus.BAD_REQUEST);
+
+    nodeProvisionTaskQueue.removeAll();
+  }
+
   @Test
   public void testFinishTask() throws Exception {
     Node node = new Node("node_id1", "1", ImmutableSet.<Service>of(), ImmutableMap.<String, String>of());
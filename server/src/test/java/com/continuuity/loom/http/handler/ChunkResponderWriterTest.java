@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.http.handler;
+
+import com.continuuity.http.HttpResponder;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.google.gson.Gson;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+/**
+ *
+ */
+public class ChunkResponderWriterTest {
+
+  @Test
+  public void testChunking() throws Exception {
+    RecordingResponder recorder = new RecordingResponder();
+    ChunkResponderWriter writer = new ChunkResponderWriter(recorder.getResponder(), 4);
+    writer.write("ab");
+    // nothing is sent until the buffer is full
+    Assert.assertFalse(writer.isStarted());
+    Assert.assertTrue(recorder.calls.isEmpty());
+
+    writer.write("cdefghij");
+    Assert.assertTrue(writer.isStarted());
+    Assert.assertEquals(Lists.newArrayList("start", "abcd", "efgh"), recorder.calls);
+
+    writer.close();
+    Assert.assertEquals(Lists.newArrayList("start", "abcd", "efgh", "ij", "end"), recorder.calls);
+    // closing again does nothing
+    writer.close();
+    Assert.assertEquals(5, recorder.calls.size());
+  }
+
+  @Test
+  public void testSurrogatePairNotSplit() throws Exception {
+    RecordingResponder recorder = new RecordingResponder();
+    ChunkResponderWriter writer = new ChunkResponderWriter(recorder.getResponder(), 4);
+    String clef = new String(Character.toChars(0x1D11E));
+    writer.write("abc" + clef + "d");
+    writer.close();
+    Assert.assertEquals(Lists.newArrayList("start", "abc", clef + "d", "end"), recorder.calls);
+  }
+
+  @Test
+  public void testEmptyResponseIsStartedOnClose() throws Exception {
+    RecordingResponder recorder = new RecordingResponder();
+    ChunkResponderWriter writer = new ChunkResponderWriter(recorder.getResponder(), 4);
+    writer.close();
+    Assert.assertEquals(Lists.newArrayList("start", "end"), recorder.calls);
+  }
+
+  @Test
+  public void testJson() throws Exception {
+    RecordingResponder recorder = new RecordingResponder();
+    ChunkResponderWriter writer = new ChunkResponderWriter(recorder.getResponder(), 8);
+    List<String> expected = Lists.newArrayList("one", "two", "three", "four");
+    new Gson().toJson(expected, writer);
+    writer.close();
+
+    StringBuilder json = new StringBuilder();
+    for (String call : recorder.calls.subList(1, recorder.calls.size() - 1)) {
+      json.append(call);
+    }
+    Assert.assertEquals(new Gson().toJson(expected), json.toString());
+  }
+
+  // records calls to the responder, with chunks recorded as their content.
+  private static final class RecordingResponder implements InvocationHandler {
+    private final List<String> calls = Lists.newArrayList();
+
+    private HttpResponder getResponder() {
+      return (HttpResponder) Proxy.newProxyInstance(HttpResponder.class.getClassLoader(),
+                                                    new Class<?>[] { HttpResponder.class }, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      if (method.getName().equals("sendChunkStart")) {
+        Assert.assertEquals(HttpResponseStatus.OK, args[0]);
+        Assert.assertEquals("application/json", ((Multimap) args[1]).get("Content-Type").iterator().next());
+        calls.add("start");
+      } else if (method.getName().equals("sendChunk")) {
+        calls.add(((ChannelBuffer) args[0]).toString(Charsets.UTF_8));
+      } else if (method.getName().equals("sendChunkEnd")) {
+        calls.add("end");
+      } else {
+        throw new UnsupportedOperationException(method.getName());
+      }
+      return null;
+    }
+  }
+}
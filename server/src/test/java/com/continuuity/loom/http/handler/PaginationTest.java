@@ -0,0 +1,65 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.http.handler;
+
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class PaginationTest {
+
+  @Test
+  public void testNoParameters() {
+    Pagination pagination = Pagination.fromClusterRequest(request("/clusters"));
+    Assert.assertEquals(-1, pagination.getLimit());
+    Assert.assertNull(pagination.getAfter());
+  }
+
+  @Test
+  public void testParameters() {
+    Pagination pagination = Pagination.fromClusterRequest(request("/clusters?limit=10&after=00000123"));
+    Assert.assertEquals(10, pagination.getLimit());
+    Assert.assertEquals("00000123", pagination.getAfter());
+
+    pagination = Pagination.fromRequest(request("/getNodeProperties?after=node-abc"));
+    Assert.assertEquals("node-abc", pagination.getAfter());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidLimit() {
+    Pagination.fromRequest(request("/clusters?limit=abc"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeLimit() {
+    Pagination.fromRequest(request("/clusters?limit=-1"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidClusterAfter() {
+    Pagination.fromClusterRequest(request("/clusters?after=abc"));
+  }
+
+  private HttpRequest request(String uri) {
+    return new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+  }
+}
@@ -25,13 +25,21 @@ import com.continuuity.loom.admin.ServiceConstraint;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.gson.JsonObject;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  *
@@ -125,6 +133,165 @@ public class ClusterLayoutFinderTest extends BaseSolverTest {
     Assert.assertNull(finder.findValidNodeCounts());
   }
 
+  @Test
+  public void testSameAsExhaustiveSearch() {
+    Random random = new Random(0);
+    for (int i = 0; i < 300; i++) {
+      int numServices = 1 + random.nextInt(4);
+      Map<String, ServiceConstraint> serviceConstraints = Maps.newHashMap();
+      List<String> serviceList = Lists.newArrayList();
+      for (int j = 0; j < numServices; j++) {
+        String service = "s" + j;
+        serviceList.add(service);
+        if (random.nextBoolean()) {
+          int min = random.nextInt(4);
+          int max = min + random.nextInt(6);
+          serviceConstraints.put(service, new ServiceConstraint(null, null, min, max, 1, null));
+        }
+      }
+      List<NodeLayout> nodePreferences = Lists.newArrayList();
+      int numLayouts = 1 + random.nextInt(4);
+      for (int j = 0; j < numLayouts; j++) {
+        Set<String> layoutServices = Sets.newHashSet();
+        for (String service : serviceList) {
+          if (random.nextInt(3) == 0) {
+            layoutServices.add(service);
+          }
+        }
+        nodePreferences.add(new NodeLayout("small", "centos6", layoutServices));
+      }
+      Set<String> services = ImmutableSet.copyOf(serviceList);
+      ClusterTemplate template = createTemplate(services, serviceConstraints);
+      int numMachines = 1 + random.nextInt(10);
+
+      // first valid layout of all possible layouts, in order of preference
+      int[] expected = null;
+      ClusterLayoutFinder checker = new ClusterLayoutFinder(nodePreferences, template, services, numMachines);
+      Iterator<int[]> layoutIter = new SlottedCombinationIterator(numLayouts, numMachines);
+      while (layoutIter.hasNext() && expected == null) {
+        int[] candidate = layoutIter.next();
+        if (checker.isValidCluster(candidate)) {
+          expected = candidate;
+        }
+      }
+      int[] actual = new ClusterLayoutFinder(nodePreferences, template, services, numMachines).findValidNodeCounts();
+      Assert.assertTrue("layouts " + nodePreferences + ", constraints " + serviceConstraints + ", expected "
+                          + Arrays.toString(expected) + " but was " + Arrays.toString(actual),
+                        Arrays.equals(expected, actual));
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testParallelSameAsSequential() {
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      Random random = new Random(0);
+      for (int i = 0; i < 200; i++) {
+        int numServices = 1 + random.nextInt(5);
+        Map<String, ServiceConstraint> serviceConstraints = Maps.newHashMap();
+        List<String> serviceList = Lists.newArrayList();
+        for (int j = 0; j < numServices; j++) {
+          String service = "s" + j;
+          serviceList.add(service);
+          if (random.nextBoolean()) {
+            int min = random.nextInt(10);
+            int max = min + random.nextInt(30);
+            serviceConstraints.put(service, new ServiceConstraint(null, null, min, max, 1, null));
+          }
+        }
+        List<NodeLayout> nodePreferences = Lists.newArrayList();
+        int numLayouts = 2 + random.nextInt(4);
+        for (int j = 0; j < numLayouts; j++) {
+          Set<String> layoutServices = Sets.newHashSet();
+          for (String service : serviceList) {
+            if (random.nextInt(3) == 0) {
+              layoutServices.add(service);
+            }
+          }
+          nodePreferences.add(new NodeLayout("small", "centos6", layoutServices));
+        }
+        Set<String> services = ImmutableSet.copyOf(serviceList);
+        ClusterTemplate template = createTemplate(services, serviceConstraints);
+        int numMachines = 1 + random.nextInt(50);
+
+        ClusterLayoutFinder finder = new ClusterLayoutFinder(nodePreferences, template, services, numMachines);
+        int[] expected = finder.findValidNodeCounts();
+        for (int numThreads = 2; numThreads <= 4; numThreads++) {
+          int[] actual = finder.findValidNodeCounts(executor, numThreads);
+          Assert.assertTrue("layouts " + nodePreferences + ", constraints " + serviceConstraints + ", expected "
+                              + Arrays.toString(expected) + " but was " + Arrays.toString(actual),
+                            Arrays.equals(expected, actual));
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testLargeClusterWithTightMins() {
+    // every layout but the last has a service that can be on at most 5 nodes, and the last has the only service
+    // that needs to be on a lot of nodes.
+    Map<String, ServiceConstraint> serviceConstraints = Maps.newHashMap();
+    List<NodeLayout> nodePreferences = Lists.newArrayList();
+    Set<String> services = Sets.newHashSet();
+    for (int i = 0; i < 20; i++) {
+      String service = "capped" + i;
+      services.add(service);
+      serviceConstraints.put(service, new ServiceConstraint(null, null, 0, 5, 1, null));
+      nodePreferences.add(new NodeLayout("small", "centos6", ImmutableSet.of(service, "everywhere")));
+    }
+    services.add("everywhere");
+    services.add("worker");
+    serviceConstraints.put("everywhere", new ServiceConstraint(null, null, 0, 50, 1, null));
+    serviceConstraints.put("worker", new ServiceConstraint(null, null, 950, 1000, 1, null));
+    nodePreferences.add(new NodeLayout("large", "centos6", ImmutableSet.of("worker")));
+
+    ClusterTemplate template = createTemplate(services, serviceConstraints);
+    int[] expected = new int[21];
+    for (int i = 0; i < 10; i++) {
+      expected[i] = 5;
+    }
+    expected[20] = 950;
+    int[] actual = new ClusterLayoutFinder(nodePreferences, template, services, 1000).findValidNodeCounts();
+    Assert.assertTrue(Arrays.toString(actual), Arrays.equals(expected, actual));
+  }
+
+  @Test(timeout = 10000)
+  public void testSearchBudgetExceeded() {
+    // 15 services that can each be on at most one node, and a layout for every pair of them. Only 7 nodes can be
+    // placed since each uses two of the services, but the search can only tell by trying every way of placing them.
+    Map<String, ServiceConstraint> serviceConstraints = Maps.newHashMap();
+    List<NodeLayout> nodePreferences = Lists.newArrayList();
+    Set<String> services = Sets.newHashSet();
+    for (int i = 0; i < 15; i++) {
+      services.add("svc" + i);
+      serviceConstraints.put("svc" + i, new ServiceConstraint(null, null, 0, 1, 1, null));
+      for (int j = i + 1; j < 15; j++) {
+        nodePreferences.add(new NodeLayout("small", "centos6", ImmutableSet.of("svc" + i, "svc" + j)));
+      }
+    }
+    ClusterTemplate template = createTemplate(services, serviceConstraints);
+    Assert.assertNotNull(new ClusterLayoutFinder(nodePreferences, template, services, 7, 50).findValidNodeCounts());
+    try {
+      new ClusterLayoutFinder(nodePreferences, template, services, 8, 50).findValidNodeCounts();
+      Assert.fail();
+    } catch (SearchBudgetExceededException e) {
+      // expected
+    }
+  }
+
+  private ClusterTemplate createTemplate(Set<String> services, Map<String, ServiceConstraint> serviceConstraints) {
+    return new ClusterTemplate(
+      "template", "template",
+      new ClusterDefaults(services, "joyent", null, null, null, new JsonObject()),
+      new Compatibilities(null, null, services),
+      new Constraints(serviceConstraints,
+                      new LayoutConstraint(ImmutableSet.<Set<String>>of(), ImmutableSet.<Set<String>>of())),
+      Administration.EMPTY_ADMINISTRATION
+    );
+  }
+
   private void assertClusterLayout(List<NodeLayout> nodeLayouts, ClusterTemplate template,
                                    int[] nodeCounts, int numMachines, boolean expected) {
     ClusterLayoutFinder clusterLayoutFinder =
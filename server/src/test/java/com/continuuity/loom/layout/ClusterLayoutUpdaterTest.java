@@ -17,17 +17,30 @@ package com.continuuity.loom.layout;
 
 import com.continuuity.loom.Entities;
 import com.continuuity.loom.account.Account;
+import com.continuuity.loom.admin.Administration;
+import com.continuuity.loom.admin.ClusterDefaults;
+import com.continuuity.loom.admin.ClusterTemplate;
+import com.continuuity.loom.admin.Compatibilities;
+import com.continuuity.loom.admin.Constraints;
+import com.continuuity.loom.admin.LayoutConstraint;
+import com.continuuity.loom.admin.ProvisionerAction;
+import com.continuuity.loom.admin.Service;
+import com.continuuity.loom.admin.ServiceAction;
+import com.continuuity.loom.admin.ServiceConstraint;
 import com.continuuity.loom.cluster.Cluster;
 import com.continuuity.loom.cluster.Node;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
+import com.google.gson.JsonObject;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -89,6 +102,52 @@ public class ClusterLayoutUpdaterTest extends BaseSolverTest {
       resourcemanager.getName(), nodemanager.getName(), zookeeper.getName())));
   }
 
+  @Test(timeout = 20000)
+  public void testAddServicesToLargeCluster() throws Exception {
+    // 500 nodes, 125 of each of 4 hardware types, all with a base service.
+    Service base = createService("base");
+    Set<String> serviceNames = Sets.newHashSet("base", "isolated");
+    Map<String, ServiceConstraint> serviceConstraints = Maps.newHashMap();
+    Set<String> loose = Sets.newHashSet();
+    for (int i = 0; i < 4; i++) {
+      String service = "loose" + i;
+      loose.add(service);
+      serviceNames.add(service);
+      serviceConstraints.put(service, new ServiceConstraint(null, null, 1, 3, 1, null));
+    }
+    // the isolated service can not be on a node with the base service, so there is nowhere to put it.
+    serviceConstraints.put("isolated", new ServiceConstraint(null, null, 1, 500, 1, null));
+    ClusterTemplate template = new ClusterTemplate(
+      "template", "template",
+      new ClusterDefaults(serviceNames, "joyent", null, null, null, new JsonObject()),
+      new Compatibilities(null, null, serviceNames),
+      new Constraints(serviceConstraints,
+                      new LayoutConstraint(ImmutableSet.<Set<String>>of(),
+                                           ImmutableSet.<Set<String>>of(ImmutableSet.of("base", "isolated")))),
+      Administration.EMPTY_ADMINISTRATION
+    );
+    Set<Node> largeClusterNodes = Sets.newHashSet();
+    for (int i = 0; i < 500; i++) {
+      largeClusterNodes.add(new Node(UUID.randomUUID().toString(), "456", ImmutableSet.of(base),
+                                     ImmutableMap.<String, String>of(
+                                       Node.Properties.HARDWARETYPE.name().toLowerCase(), "hardware" + (i % 4),
+                                       Node.Properties.IMAGETYPE.name().toLowerCase(), "centos6")));
+    }
+    Cluster largeCluster = new Cluster("456", new Account("user1", "tenant1"), "large", System.currentTimeMillis(),
+                                       "large cluster", Entities.ProviderExample.RACKSPACE, template,
+                                       ImmutableSet.<String>of(), ImmutableSet.of("base"));
+
+    ClusterLayout layout = updater.addServicesToCluster(largeCluster, largeClusterNodes, loose).getCurrentLayout();
+    Assert.assertTrue(layout.isValid());
+    // should fail right away instead of trying every way to add the loose services first.
+    Assert.assertNull(updater.addServicesToCluster(largeCluster, largeClusterNodes,
+                                                   Sets.union(loose, ImmutableSet.of("isolated"))));
+  }
+
+  private Service createService(String name) {
+    return new Service(name, "", ImmutableSet.<String>of(), ImmutableMap.<ProvisionerAction, ServiceAction>of());
+  }
+
   @Before
   public void beforeLayoutUpdater() throws Exception {
     updater = injector.getInstance(ClusterLayoutUpdater.class);
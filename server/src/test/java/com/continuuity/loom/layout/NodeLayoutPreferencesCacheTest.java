@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.layout;
+
+import com.continuuity.loom.admin.ClusterTemplate;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ *
+ */
+public class NodeLayoutPreferencesCacheTest extends BaseSolverTest {
+  private static final Set<String> HARDWARE_TYPES = ImmutableSet.of("small", "medium", "large-mem", "large-cpu");
+  private static final Set<String> IMAGE_TYPES = ImmutableSet.of("centos6", "ubuntu12");
+
+  @Test
+  public void testPreferencesAreCached() {
+    NodeLayoutPreferencesCache cache = new NodeLayoutPreferencesCache(10);
+    Set<String> services = reactorTemplate.getClusterDefaults().getServices();
+
+    List<NodeLayout> preferences = cache.getNodeLayoutPreferences(reactorTemplate, services,
+                                                                  HARDWARE_TYPES, IMAGE_TYPES);
+    List<NodeLayout> expected =
+      new NodeLayoutGenerator(reactorTemplate, services, HARDWARE_TYPES, IMAGE_TYPES).generateNodeLayoutPreferences();
+    Assert.assertEquals(expected, preferences);
+    Assert.assertSame(preferences, cache.getNodeLayoutPreferences(reactorTemplate, ImmutableSet.copyOf(services),
+                                                                  HARDWARE_TYPES, IMAGE_TYPES));
+
+    // a different version of the template, or different services or types, do not use the cached preferences
+    ClusterTemplate changedTemplate = new ClusterTemplate(
+      reactorTemplate.getName(), reactorTemplate.getDescription(), reactorTemplate.getClusterDefaults(),
+      reactorTemplate.getCompatibilities(), reactorTemplate2.getConstraints(), reactorTemplate.getAdministration());
+    Assert.assertNotSame(preferences, cache.getNodeLayoutPreferences(changedTemplate, services,
+                                                                     HARDWARE_TYPES, IMAGE_TYPES));
+    Assert.assertNotSame(preferences, cache.getNodeLayoutPreferences(reactorTemplate, services,
+                                                                     ImmutableSet.of("medium"), IMAGE_TYPES));
+    Assert.assertEquals(3, cache.size());
+
+    cache.clear();
+    Assert.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEvicted() {
+    NodeLayoutPreferencesCache cache = new NodeLayoutPreferencesCache(2);
+    Set<String> services = reactorTemplate.getClusterDefaults().getServices();
+    Set<String> centos = ImmutableSet.of("centos6");
+    Set<String> ubuntu = ImmutableSet.of("ubuntu12");
+
+    List<NodeLayout> preferences1 = cache.getNodeLayoutPreferences(reactorTemplate, services, HARDWARE_TYPES, centos);
+    List<NodeLayout> preferences2 = cache.getNodeLayoutPreferences(reactorTemplate, services, HARDWARE_TYPES, ubuntu);
+    Assert.assertSame(preferences1, cache.getNodeLayoutPreferences(reactorTemplate, services, HARDWARE_TYPES, centos));
+
+    // preferences2 were used least recently, so they get evicted
+    cache.getNodeLayoutPreferences(reactorTemplate, services, HARDWARE_TYPES, IMAGE_TYPES);
+    Assert.assertEquals(2, cache.size());
+    Assert.assertSame(preferences1, cache.getNodeLayoutPreferences(reactorTemplate, services, HARDWARE_TYPES, centos));
+    List<NodeLayout> regenerated = cache.getNodeLayoutPreferences(reactorTemplate, services, HARDWARE_TYPES, ubuntu);
+    Assert.assertNotSame(preferences2, regenerated);
+    Assert.assertEquals(preferences2, regenerated);
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.layout;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ */
+public class OrderedSearchTest {
+
+  @Test(timeout = 10000)
+  public void testEarliestResultWins() {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      // the last part finds something right away, the second part finds something only after that.
+      final CountDownLatch lastPartDone = new CountDownLatch(1);
+      List<Callable<String>> parts = Lists.newArrayList();
+      parts.add(result(null));
+      parts.add(new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          lastPartDone.await(5, TimeUnit.SECONDS);
+          return "second";
+        }
+      });
+      parts.add(new Callable<String>() {
+        @Override
+        public String call() {
+          lastPartDone.countDown();
+          return "third";
+        }
+      });
+      Assert.assertEquals("second", OrderedSearch.findFirst(executor, parts.iterator(), 4));
+      Assert.assertEquals("third", OrderedSearch.findFirst(executor, parts.subList(2, 3).iterator(), 4));
+      Assert.assertNull(OrderedSearch.findFirst(executor, ImmutableList.of(result(null), result(null)).iterator(), 1));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testExceptionsBeforeResultAreThrown() {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      List<Callable<String>> parts = ImmutableList.of(result(null), new Callable<String>() {
+        @Override
+        public String call() {
+          throw new SearchBudgetExceededException("out of time");
+        }
+      }, result("third"));
+      try {
+        OrderedSearch.findFirst(executor, parts.iterator(), 2);
+        Assert.fail();
+      } catch (SearchBudgetExceededException e) {
+        // expected
+      }
+      // exceptions in parts after the result are ignored
+      Assert.assertEquals("first", OrderedSearch.findFirst(executor, ImmutableList.of(result("first"), parts.get(1))
+        .iterator(), 2));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Callable<String> result(final String result) {
+    return new Callable<String>() {
+      @Override
+      public String call() {
+        return result;
+      }
+    };
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.layout;
+
+import com.continuuity.loom.admin.LayoutConstraint;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ *
+ */
+public class ServiceSetEnumeratorTest {
+
+  @Test
+  public void testFoldsAndPrunes() {
+    Set<String> services = ImmutableSet.of("s1", "s2", "s3", "s4", "s5");
+    Set<String> clusterServices = ImmutableSet.of("s1", "s2", "s3", "s4", "s5", "s6");
+    LayoutConstraint layoutConstraint = new LayoutConstraint(
+      ImmutableSet.<Set<String>>of(
+        ImmutableSet.of("s1", "s2"),
+        // s4 must coexist with s6, which is on the cluster but not placed, so s4 can never be placed
+        ImmutableSet.of("s4", "s6"),
+        // not on the cluster, so it does not matter
+        ImmutableSet.of("s3", "s7")),
+      ImmutableSet.<Set<String>>of(
+        ImmutableSet.of("s2", "s3"),
+        ImmutableSet.of("s4", "s5")));
+    Set<Set<String>> expected = ImmutableSet.<Set<String>>of(
+      ImmutableSet.of("s1", "s2"),
+      ImmutableSet.of("s1", "s2", "s5"),
+      ImmutableSet.of("s3"),
+      ImmutableSet.of("s3", "s5"),
+      ImmutableSet.of("s5"));
+    Assert.assertEquals(expected,
+                        new ServiceSetEnumerator(services, layoutConstraint, clusterServices).getValidServiceSets());
+  }
+
+  @Test
+  public void testSameAsCheckingEverySubset() {
+    Random random = new Random(0);
+    for (int i = 0; i < 200; i++) {
+      int numServices = 1 + random.nextInt(10);
+      List<String> services = Lists.newArrayList();
+      for (int j = 0; j < numServices; j++) {
+        services.add("s" + j);
+      }
+      Set<String> clusterServices = Sets.newHashSet(services);
+      clusterServices.add("unplaced");
+      List<String> candidates = Lists.newArrayList(clusterServices);
+      candidates.add("missing");
+      LayoutConstraint layoutConstraint =
+        new LayoutConstraint(randomSets(random, candidates), randomSets(random, candidates));
+
+      Set<Set<String>> expected = Sets.newHashSet();
+      for (Set<String> candidateSet : Sets.powerSet(ImmutableSet.copyOf(services))) {
+        if (!candidateSet.isEmpty()
+          && NodeLayoutGenerator.isValidServiceSet(candidateSet, layoutConstraint, clusterServices)) {
+          expected.add(ImmutableSet.copyOf(candidateSet));
+        }
+      }
+      Set<Set<String>> actual =
+        new ServiceSetEnumerator(ImmutableSet.copyOf(services), layoutConstraint, clusterServices)
+          .getValidServiceSets();
+      Assert.assertEquals("layout constraint " + layoutConstraint, expected, actual);
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testManyServices() {
+    Set<String> services = Sets.newHashSet();
+    Set<Set<String>> mustCoexist = Sets.newHashSet();
+    Set<Set<String>> cantCoexist = Sets.newHashSet();
+    for (int i = 0; i < 30; i++) {
+      services.add("s" + i);
+      // every service can only be placed with its neighbors
+      for (int j = i + 2; j < 30; j++) {
+        cantCoexist.add(ImmutableSet.of("s" + i, "s" + j));
+      }
+    }
+    mustCoexist.add(ImmutableSet.of("s0", "s1"));
+    LayoutConstraint layoutConstraint = new LayoutConstraint(mustCoexist, cantCoexist);
+
+    Set<Set<String>> validSets = new ServiceSetEnumerator(services, layoutConstraint, services).getValidServiceSets();
+    // s0 and s1 together, s1 and s2 with s0, and every other service alone or with its neighbor
+    Assert.assertEquals(1 + 28 + 27, validSets.size());
+    Assert.assertTrue(validSets.contains(ImmutableSet.of("s0", "s1")));
+    Assert.assertFalse(validSets.contains(ImmutableSet.of("s1", "s2")));
+  }
+
+  private Set<Set<String>> randomSets(Random random, List<String> candidates) {
+    Set<Set<String>> sets = Sets.newHashSet();
+    int numSets = random.nextInt(4);
+    for (int i = 0; i < numSets; i++) {
+      Set<String> set = Sets.newHashSet();
+      int size = 1 + random.nextInt(3);
+      for (int j = 0; j < size; j++) {
+        set.add(candidates.get(random.nextInt(candidates.size())));
+      }
+      sets.add(set);
+    }
+    return sets;
+  }
+}
@@ -16,6 +16,7 @@
 package com.continuuity.loom.layout;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -197,6 +198,83 @@ public class SlottedCombinationIteratorTest {
     new SlottedCombinationIterator(new int[]{5}, new int[]{10, 5});
   }
 
+  @Test
+  public void testCursorMatchesIterator() {
+    int[] maxCounts = new int[]{3, 1, 4, 2, 5};
+    Iterator<int[]> iter = new SlottedCombinationIterator(5, 7, maxCounts);
+    SlottedCombinationIterator cursor = new SlottedCombinationIterator(5, 7, maxCounts);
+    int numCombinations = 0;
+    while (iter.hasNext()) {
+      int[] expected = iter.next();
+      Assert.assertTrue(cursor.advance());
+      Assert.assertEquals(expected.length, cursor.getNumSlots());
+      for (int i = 0; i < expected.length; i++) {
+        Assert.assertEquals(expected[i], cursor.getCount(i));
+      }
+      numCombinations++;
+    }
+    Assert.assertTrue(numCombinations > 1);
+    Assert.assertFalse(cursor.advance());
+    Assert.assertFalse(cursor.advance());
+  }
+
+  @Test
+  public void testListenerDeltasAddUpToCounts() {
+    final int[] counts = new int[6];
+    SlottedCombinationIterator.Listener listener = new SlottedCombinationIterator.Listener() {
+      @Override
+      public void slotChanged(int slot, int delta) {
+        Assert.assertTrue(delta != 0);
+        counts[slot] += delta;
+      }
+    };
+    Iterator<int[]> iter = new SlottedCombinationIterator(6, 8, new int[]{2, 5, 1, 3, 3, 4});
+    SlottedCombinationIterator cursor = new SlottedCombinationIterator(6, 8, new int[]{2, 5, 1, 3, 3, 4});
+    // mix in advancing without a listener, deltas should still be relative to the last reported counts.
+    int numAdvances = 0;
+    while (iter.hasNext()) {
+      int[] expected = iter.next();
+      if (numAdvances % 3 == 2) {
+        Assert.assertTrue(cursor.advance());
+        for (int i = 0; i < expected.length; i++) {
+          counts[i] = cursor.getCount(i);
+        }
+      } else {
+        Assert.assertTrue(cursor.advance(listener));
+      }
+      Assert.assertTrue(Arrays.equals(expected, counts));
+      numAdvances++;
+    }
+    Assert.assertFalse(cursor.advance(listener));
+  }
+
+  @Test
+  public void testListenerOnlyToldAboutChangedSlots() {
+    final List<Integer> changedSlots = Lists.newArrayList();
+    SlottedCombinationIterator.Listener listener = new SlottedCombinationIterator.Listener() {
+      @Override
+      public void slotChanged(int slot, int delta) {
+        changedSlots.add(slot);
+      }
+    };
+    SlottedCombinationIterator cursor = new SlottedCombinationIterator(4, 3);
+    // 3, 0, 0, 0
+    Assert.assertTrue(cursor.advance(listener));
+    Assert.assertEquals(ImmutableList.of(0), changedSlots);
+    changedSlots.clear();
+    // 2, 1, 0, 0
+    Assert.assertTrue(cursor.advance(listener));
+    Assert.assertEquals(ImmutableList.of(0, 1), changedSlots);
+    changedSlots.clear();
+    // 2, 0, 1, 0
+    Assert.assertTrue(cursor.advance(listener));
+    Assert.assertEquals(ImmutableList.of(1, 2), changedSlots);
+    changedSlots.clear();
+    // 2, 0, 0, 1
+    Assert.assertTrue(cursor.advance(listener));
+    Assert.assertEquals(ImmutableList.of(2, 3), changedSlots);
+  }
+
   private void assertIteratorIsExpected(List<int[]> expected, Iterator<int[]> iter) {
     for (int i = 0; i < expected.size(); i++) {
       Assert.assertTrue(iter.hasNext());
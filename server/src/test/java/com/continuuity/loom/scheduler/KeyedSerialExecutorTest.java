@@ -0,0 +1,177 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.scheduler;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ */
+public class KeyedSerialExecutorTest {
+
+  @Test(timeout = 10000)
+  public void testDifferentKeysRunInParallel() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      KeyedSerialExecutor keyedExecutor = new KeyedSerialExecutor(executor, 2);
+      // each task waits for the other one, so they only both finish if they run at the same time
+      final CountDownLatch started = new CountDownLatch(2);
+      final CountDownLatch finished = new CountDownLatch(2);
+      for (String key : ImmutableList.of("cluster1", "cluster2")) {
+        keyedExecutor.reserve();
+        keyedExecutor.execute(key, new Runnable() {
+          @Override
+          public void run() {
+            started.countDown();
+            try {
+              if (started.await(5, TimeUnit.SECONDS)) {
+                finished.countDown();
+              }
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        });
+      }
+      Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testSameKeyRunsSerially() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(5);
+    try {
+      KeyedSerialExecutor keyedExecutor = new KeyedSerialExecutor(executor, 10);
+      final AtomicInteger concurrent = new AtomicInteger(0);
+      final AtomicInteger maxConcurrent = new AtomicInteger(0);
+      final List<Integer> order = Collections.synchronizedList(Lists.<Integer>newArrayList());
+      final CountDownLatch finished = new CountDownLatch(10);
+      for (int i = 0; i < 10; i++) {
+        final int taskNum = i;
+        keyedExecutor.reserve();
+        keyedExecutor.execute("cluster1", new Runnable() {
+          @Override
+          public void run() {
+            int current = concurrent.incrementAndGet();
+            maxConcurrent.set(Math.max(maxConcurrent.get(), current));
+            try {
+              TimeUnit.MILLISECONDS.sleep(10);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            order.add(taskNum);
+            concurrent.decrementAndGet();
+            finished.countDown();
+          }
+        });
+      }
+      Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+      Assert.assertEquals(1, maxConcurrent.get());
+      Assert.assertEquals(ImmutableList.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), order);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testReservationsLimitPendingTasks() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final KeyedSerialExecutor keyedExecutor = new KeyedSerialExecutor(executor, 2);
+      final CountDownLatch proceed = new CountDownLatch(1);
+      Runnable blocked = new Runnable() {
+        @Override
+        public void run() {
+          try {
+            proceed.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      };
+      keyedExecutor.reserve();
+      keyedExecutor.execute("cluster1", blocked);
+      keyedExecutor.reserve();
+      keyedExecutor.execute("cluster1", blocked);
+
+      // no room until a task is done
+      final CountDownLatch reserved = new CountDownLatch(1);
+      Thread reserver = new Thread() {
+        @Override
+        public void run() {
+          try {
+            keyedExecutor.reserve();
+            reserved.countDown();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      };
+      reserver.start();
+      Assert.assertFalse(reserved.await(200, TimeUnit.MILLISECONDS));
+
+      proceed.countDown();
+      Assert.assertTrue(reserved.await(5, TimeUnit.SECONDS));
+
+      // unused reservations are given back
+      keyedExecutor.unreserve();
+      keyedExecutor.reserve();
+      keyedExecutor.reserve();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testKeepsRunningAfterException() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      KeyedSerialExecutor keyedExecutor = new KeyedSerialExecutor(executor, 1);
+      keyedExecutor.reserve();
+      keyedExecutor.execute("cluster1", new Runnable() {
+        @Override
+        public void run() {
+          throw new RuntimeException("expected");
+        }
+      });
+      final CountDownLatch ran = new CountDownLatch(1);
+      // the reservation of the failed task was given back
+      keyedExecutor.reserve();
+      keyedExecutor.execute("cluster1", new Runnable() {
+        @Override
+        public void run() {
+          ran.countDown();
+        }
+      });
+      Assert.assertTrue(ran.await(5, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.scheduler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ */
+public class OnDemandRunnerTest {
+
+  @Test(timeout = 10000)
+  public void testRequestsWhileRunningAreFolded() throws Exception {
+    final CountDownLatch running = new CountDownLatch(1);
+    final CountDownLatch proceed = new CountDownLatch(1);
+    final AtomicInteger runs = new AtomicInteger(0);
+    final AtomicInteger concurrent = new AtomicInteger(0);
+    final AtomicInteger maxConcurrent = new AtomicInteger(0);
+    ExecutorService executor = Executors.newFixedThreadPool(5);
+    try {
+      OnDemandRunner runner = new OnDemandRunner(new Runnable() {
+        @Override
+        public void run() {
+          int current = concurrent.incrementAndGet();
+          maxConcurrent.set(Math.max(maxConcurrent.get(), current));
+          running.countDown();
+          try {
+            proceed.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          runs.incrementAndGet();
+          concurrent.decrementAndGet();
+        }
+      }, executor);
+
+      runner.request();
+      running.await();
+      // all of these come in during the first run, so should result in a single extra run
+      for (int i = 0; i < 10; i++) {
+        runner.request();
+      }
+      proceed.countDown();
+
+      while (runs.get() < 2) {
+        TimeUnit.MILLISECONDS.sleep(10);
+      }
+      TimeUnit.MILLISECONDS.sleep(100);
+      Assert.assertEquals(2, runs.get());
+      Assert.assertEquals(1, maxConcurrent.get());
+
+      // once idle, a request starts a new run
+      runner.request();
+      while (runs.get() < 3) {
+        TimeUnit.MILLISECONDS.sleep(10);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testKeepsRunningAfterException() throws Exception {
+    final AtomicInteger runs = new AtomicInteger(0);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      OnDemandRunner runner = new OnDemandRunner(new Runnable() {
+        @Override
+        public void run() {
+          runs.incrementAndGet();
+          throw new RuntimeException("expected");
+        }
+      }, executor);
+
+      runner.request();
+      while (runs.get() < 1) {
+        TimeUnit.MILLISECONDS.sleep(10);
+      }
+      runner.request();
+      while (runs.get() < 2) {
+        TimeUnit.MILLISECONDS.sleep(10);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.scheduler.task;
+
+import com.continuuity.loom.codec.json.JsonSerde;
+import com.continuuity.loom.scheduler.ClusterAction;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class ClusterJobTest {
+  private static final Gson GSON = new JsonSerde().getGson();
+
+  @Test
+  public void testStageCounts() {
+    ClusterJob job = new ClusterJob(new JobId("1", 1), ClusterAction.CLUSTER_CREATE);
+    job.addStage(Sets.newHashSet("1-001-001", "1-001-002", "1-001-003"));
+    job.addStage(Sets.newHashSet("1-001-004"));
+
+    assertCounts(job, 0, 0, 0);
+    job.setTaskStatus("1-001-001", ClusterTask.Status.IN_PROGRESS);
+    job.setTaskStatus("1-001-002", ClusterTask.Status.IN_PROGRESS);
+    job.setTaskStatus("1-001-003", ClusterTask.Status.IN_PROGRESS);
+    assertCounts(job, 0, 0, 3);
+
+    // tasks outside the current stage are not counted
+    job.setTaskStatus("1-001-004", ClusterTask.Status.COMPLETE);
+    job.setTaskStatus("1-001-001", ClusterTask.Status.COMPLETE);
+    // setting the same status twice does not count twice
+    job.setTaskStatus("1-001-001", ClusterTask.Status.COMPLETE);
+    job.setTaskStatus("1-001-002", ClusterTask.Status.FAILED);
+    assertCounts(job, 1, 1, 1);
+    Assert.assertFalse(job.isCurrentStageComplete());
+
+    // retry the failed task using a different task
+    job.replaceTaskInCurrentStage("1-001-002", "1-001-005");
+    job.setTaskStatus("1-001-005", ClusterTask.Status.IN_PROGRESS);
+    assertCounts(job, 1, 0, 2);
+
+    // counts are not serialized, but recounted from the task statuses
+    String jobJson = GSON.toJson(job);
+    Assert.assertFalse(jobJson.contains("currentStageCounts"));
+    job = GSON.fromJson(jobJson, ClusterJob.class);
+    assertCounts(job, 1, 0, 2);
+    job.setTaskStatus("1-001-003", ClusterTask.Status.COMPLETE);
+    job.setTaskStatus("1-001-005", ClusterTask.Status.COMPLETE);
+    assertCounts(job, 3, 0, 0);
+    Assert.assertTrue(job.isCurrentStageComplete());
+
+    // counts are for the new stage after advancing
+    job.advanceStage();
+    assertCounts(job, 1, 0, 0);
+    Assert.assertTrue(job.isCurrentStageComplete());
+    Assert.assertFalse(job.isInCurrentStage("1-001-001"));
+    Assert.assertTrue(job.isInCurrentStage("1-001-004"));
+  }
+
+  @Test
+  public void testStageCountsWithoutStages() {
+    ClusterJob job = new ClusterJob(new JobId("1", 1), ClusterAction.CLUSTER_CREATE);
+    assertCounts(job, 0, 0, 0);
+    Assert.assertFalse(job.isCurrentStageComplete());
+    Assert.assertFalse(job.isInCurrentStage("1-001-001"));
+  }
+
+  private void assertCounts(ClusterJob job, int completed, int failed, int inProgress) {
+    Assert.assertEquals(completed, job.getCurrentStageCompletedTasks());
+    Assert.assertEquals(failed, job.getCurrentStageFailedTasks());
+    Assert.assertEquals(inProgress, job.getCurrentStageInProgressTasks());
+  }
+}
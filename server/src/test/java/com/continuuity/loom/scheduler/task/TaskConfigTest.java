@@ -155,6 +155,31 @@ public class TaskConfigTest {
     Assert.assertEquals(GSON.fromJson(USER_CONFIG, JsonObject.class), actualUserConfig);
   }
 
+  @Test
+  public void testSharedConfig() {
+    Node node1 = new Node("node1", "1", ImmutableSet.<Service>of(),
+                          ImmutableMap.of("hostname", "node1.loom.continuuity.net", "ipaddress", "1.2.3.4"));
+    Node node2 = new Node("node2", "1", ImmutableSet.<Service>of(),
+                          ImmutableMap.of("hostname", "node2.loom.continuuity.net", "ipaddress", "1.2.3.5"));
+
+    JsonObject sharedConfig = TaskConfig.getSharedConfig(ImmutableSet.of(node1, node2));
+    Assert.assertEquals(TaskConfig.addNodeList(new JsonObject(), ImmutableSet.of(node1, node2)), sharedConfig);
+
+    // ids only depend on the contents
+    String id = TaskConfig.getSharedConfigId(sharedConfig);
+    Assert.assertEquals(id, TaskConfig.getSharedConfigId(TaskConfig.getSharedConfig(ImmutableSet.of(node1, node2))));
+    Assert.assertFalse(id.equals(TaskConfig.getSharedConfigId(TaskConfig.getSharedConfig(ImmutableSet.of(node1)))));
+
+    JsonObject taskConfig = new JsonObject();
+    taskConfig.addProperty("hostname", "node1.loom.continuuity.net");
+    taskConfig.addProperty(TaskConfig.SHARED_CONFIG_ID, id);
+    TaskConfig.addSharedConfig(taskConfig, sharedConfig);
+
+    JsonObject expected = TaskConfig.addNodeList(new JsonObject(), ImmutableSet.of(node1, node2));
+    expected.addProperty("hostname", "node1.loom.continuuity.net");
+    Assert.assertEquals(expected, taskConfig);
+  }
+
   private static final String DEFAULT_CONFIG =
     "{\n" +
       "  \"cluster\": {\n" +
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.scheduler.task;
+
+import com.continuuity.loom.BaseTest;
+import com.continuuity.loom.admin.ProvisionerAction;
+import com.continuuity.loom.cluster.Node;
+import com.continuuity.loom.codec.json.JsonSerde;
+import com.continuuity.loom.common.conf.Constants;
+import com.continuuity.loom.common.queue.Element;
+import com.continuuity.loom.common.queue.internal.TimeoutTrackingQueue;
+import com.continuuity.loom.scheduler.ClusterAction;
+import com.continuuity.loom.scheduler.SchedulableTask;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ */
+public class TaskQueueServiceTest extends BaseTest {
+  private static final Gson GSON = new JsonSerde().getGson();
+  private static TimeoutTrackingQueue taskQueue;
+  private static TimeoutTrackingQueue jobQueue;
+  private static TaskQueueService taskQueueService;
+
+  @BeforeClass
+  public static void setupTaskQueueServiceTest() {
+    taskQueue = injector.getInstance(Key.get(TimeoutTrackingQueue.class, Names.named(Constants.Queue.PROVISIONER)));
+    taskQueue.start();
+    jobQueue = injector.getInstance(Key.get(TimeoutTrackingQueue.class, Names.named(Constants.Queue.JOB)));
+    jobQueue.start();
+    taskQueueService = injector.getInstance(TaskQueueService.class);
+  }
+
+  @AfterClass
+  public static void cleanupTaskQueueServiceTest() {
+    taskQueueService.shutdown();
+    taskQueue.stop();
+    jobQueue.stop();
+  }
+
+  @Before
+  public void setupTest() {
+    taskQueue.removeAll();
+    jobQueue.removeAll();
+  }
+
+  @Test(timeout = 20000)
+  public void testWaitForTasks() throws Exception {
+    ListenableFuture<List<String>> taken = taskQueueService.takeNextClusterTasks("worker1", 5, 10000);
+    Assert.assertFalse(taken.isDone());
+
+    ClusterTask task = addTask("1-1-1", new JsonObject());
+    List<String> taskJsons = taken.get();
+    Assert.assertEquals(1, taskJsons.size());
+    JsonObject taskJson = GSON.fromJson(taskJsons.get(0), JsonObject.class);
+    Assert.assertEquals(task.getTaskId(), taskJson.get("taskId").getAsString());
+  }
+
+  @Test(timeout = 20000)
+  public void testWaitTimesOut() throws Exception {
+    ListenableFuture<List<String>> taken = taskQueueService.takeNextClusterTasks("worker1", 5, 100);
+    Assert.assertTrue(taken.get().isEmpty());
+  }
+
+  @Test(timeout = 20000)
+  public void testWaitAgain() throws Exception {
+    ListenableFuture<List<String>> first = taskQueueService.takeNextClusterTasks("worker1", 5, 10000);
+    ListenableFuture<List<String>> second = taskQueueService.takeNextClusterTasks("worker1", 5, 10000);
+    // the worker stopped waiting in its first request
+    Assert.assertTrue(first.get(5, TimeUnit.SECONDS).isEmpty());
+
+    addTask("1-1-1", new JsonObject());
+    Assert.assertEquals(1, second.get().size());
+  }
+
+  @Test(timeout = 20000)
+  public void testCancelledWaitLeavesTasks() throws Exception {
+    ListenableFuture<List<String>> taken = taskQueueService.takeNextClusterTasks("worker1", 5, 10000);
+    taken.cancel(true);
+
+    addTask("1-1-1", new JsonObject());
+    Assert.assertEquals(1, taskQueueService.takeNextClusterTasks("worker2", 5).size());
+  }
+
+  @Test
+  public void testTakeAddsSharedConfig() throws Exception {
+    JsonObject sharedConfig = TaskConfig.getSharedConfig(ImmutableSet.<Node>of());
+    String sharedConfigId = TaskConfig.getSharedConfigId(sharedConfig);
+    clusterStore.writeSharedTaskConfig(JobId.fromString("1-1"), sharedConfigId, sharedConfig);
+    JsonObject config = new JsonObject();
+    config.addProperty(TaskConfig.SHARED_CONFIG_ID, sharedConfigId);
+    addTask("1-1-1", config);
+
+    List<String> taskJsons = taskQueueService.takeNextClusterTasks("worker1", 5);
+    Assert.assertEquals(1, taskJsons.size());
+    JsonObject takenConfig = GSON.fromJson(taskJsons.get(0), JsonObject.class).getAsJsonObject("config");
+    Assert.assertTrue(takenConfig.has("nodes"));
+    Assert.assertFalse(takenConfig.has(TaskConfig.SHARED_CONFIG_ID));
+  }
+
+  @Test
+  public void testMissingSharedConfigFailsOnlyThatTask() throws Exception {
+    JsonObject config = new JsonObject();
+    config.addProperty(TaskConfig.SHARED_CONFIG_ID, "missing");
+    ClusterTask badTask = addTask("1-1-1", config);
+    ClusterTask goodTask = addTask("1-1-2", new JsonObject());
+
+    List<String> taskJsons = taskQueueService.takeNextClusterTasks("worker1", 5);
+    Assert.assertEquals(1, taskJsons.size());
+    Assert.assertEquals(goodTask.getTaskId(),
+                        GSON.fromJson(taskJsons.get(0), JsonObject.class).get("taskId").getAsString());
+    // the failed task is no longer in the queue, and is failed in the store
+    Assert.assertEquals(1, taskQueue.size());
+    Assert.assertEquals(ClusterTask.Status.FAILED,
+                        clusterStore.getClusterTask(TaskId.fromString(badTask.getTaskId())).getStatus());
+    // the job is scheduled so that the job scheduler can retry the task
+    Assert.assertEquals(1, jobQueue.size());
+  }
+
+  private ClusterTask addTask(String taskId, JsonObject config) throws Exception {
+    TaskId id = TaskId.fromString(taskId);
+    clusterStore.writeClusterJob(new ClusterJob(id.getJobId(), ClusterAction.CLUSTER_CREATE));
+    ClusterTask task = new ClusterTask(ProvisionerAction.CREATE, id, null, null, ClusterAction.CLUSTER_CREATE, config);
+    clusterStore.writeClusterTask(task);
+    taskQueue.add(new Element(task.getTaskId(), GSON.toJson(new SchedulableTask(task))));
+    return task;
+  }
+}
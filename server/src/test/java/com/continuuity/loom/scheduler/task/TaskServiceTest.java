@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.scheduler.task;
+
+import com.continuuity.loom.BaseTest;
+import com.continuuity.loom.admin.ProvisionerAction;
+import com.continuuity.loom.scheduler.ClusterAction;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class TaskServiceTest extends BaseTest {
+  private static TaskService taskService;
+
+  @BeforeClass
+  public static void setupTaskServiceTest() {
+    taskService = injector.getInstance(TaskService.class);
+  }
+
+  @Test
+  public void testRecordTaskStatus() throws Exception {
+    JobId jobId = new JobId("1", 1);
+    ClusterJob job = new ClusterJob(jobId, ClusterAction.CLUSTER_CREATE);
+    job.addStage(ImmutableSet.of("1-001-001", "1-001-002"));
+    clusterStore.writeClusterJob(job);
+
+    // the stage is not done until both tasks complete
+    Assert.assertFalse(taskService.recordTaskStatus(createTask("1-001-001", ClusterTask.Status.COMPLETE)));
+    Assert.assertTrue(taskService.recordTaskStatus(createTask("1-001-002", ClusterTask.Status.COMPLETE)));
+    job = clusterStore.getClusterJob(jobId);
+    Assert.assertEquals(ClusterTask.Status.COMPLETE, job.getTaskStatus().get("1-001-001"));
+    Assert.assertTrue(job.isCurrentStageComplete());
+  }
+
+  @Test
+  public void testFailedTaskSchedulesJob() throws Exception {
+    JobId jobId = new JobId("1", 1);
+    ClusterJob job = new ClusterJob(jobId, ClusterAction.CLUSTER_CREATE);
+    job.addStage(ImmutableSet.of("1-001-001", "1-001-002"));
+    clusterStore.writeClusterJob(job);
+
+    Assert.assertTrue(taskService.recordTaskStatus(createTask("1-001-001", ClusterTask.Status.FAILED)));
+    Assert.assertEquals(ClusterTask.Status.FAILED, clusterStore.getClusterJob(jobId).getTaskStatus().get("1-001-001"));
+  }
+
+  @Test
+  public void testRollbackTaskSchedulesJob() throws Exception {
+    JobId jobId = new JobId("1", 1);
+    ClusterJob job = new ClusterJob(jobId, ClusterAction.CLUSTER_CREATE);
+    job.addStage(ImmutableSet.of("1-001-001", "1-001-002"));
+    clusterStore.writeClusterJob(job);
+
+    // rollback tasks are not part of any stage, but the job scheduler still needs to see them finish
+    Assert.assertTrue(taskService.recordTaskStatus(createTask("1-001-003", ClusterTask.Status.COMPLETE)));
+    job = clusterStore.getClusterJob(jobId);
+    Assert.assertFalse(job.getTaskStatus().containsKey("1-001-003"));
+    Assert.assertEquals(0, job.getCurrentStageCompletedTasks());
+  }
+
+  @Test
+  public void testMissingJobDoesNotScheduleJob() throws Exception {
+    Assert.assertFalse(taskService.recordTaskStatus(createTask("1-001-001", ClusterTask.Status.COMPLETE)));
+  }
+
+  private ClusterTask createTask(String taskId, ClusterTask.Status status) {
+    ClusterTask task = new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString(taskId), null, null,
+                                       ClusterAction.CLUSTER_CREATE, new JsonObject());
+    task.setStatus(status);
+    return task;
+  }
+}
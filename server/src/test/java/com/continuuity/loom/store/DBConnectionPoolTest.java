@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.store;
+
+import com.continuuity.loom.common.conf.Configuration;
+import com.continuuity.loom.common.conf.Constants;
+import com.continuuity.loom.management.LoomStats;
+import com.continuuity.loom.management.StatementCacheStats;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ *
+ */
+public class DBConnectionPoolTest {
+
+  @Test
+  public void testStatementCache() throws SQLException {
+    LoomStats loomStats = new LoomStats();
+    DBConnectionPool dbConnectionPool = new DBConnectionPool(getConf(10), loomStats);
+    StatementCacheStats stats = loomStats.getStatementCacheStats();
+
+    Assert.assertEquals(1, query(dbConnectionPool, "VALUES 1"));
+    Assert.assertEquals(0, stats.getHits());
+    Assert.assertEquals(1, stats.getMisses());
+
+    // the single connection is given back with the statement cached
+    Assert.assertEquals(1, query(dbConnectionPool, "VALUES 1"));
+    Assert.assertEquals(2, query(dbConnectionPool, "VALUES 2"));
+    Assert.assertEquals(1, stats.getHits());
+    Assert.assertEquals(2, stats.getMisses());
+    Assert.assertEquals(1.0 / 3, stats.getHitRatio(), 0.0001);
+  }
+
+  @Test
+  public void testStatementCacheDisabled() throws SQLException {
+    LoomStats loomStats = new LoomStats();
+    DBConnectionPool dbConnectionPool = new DBConnectionPool(getConf(0), loomStats);
+    StatementCacheStats stats = loomStats.getStatementCacheStats();
+
+    Assert.assertEquals(1, query(dbConnectionPool, "VALUES 1"));
+    Assert.assertEquals(1, query(dbConnectionPool, "VALUES 1"));
+    Assert.assertEquals(0, stats.getHits());
+    Assert.assertEquals(0, stats.getMisses());
+  }
+
+  @Test
+  public void testStatementCacheStatsRegisteredOnce() throws SQLException {
+    LoomStats loomStats = new LoomStats();
+    StatementCacheStats stats = loomStats.getStatementCacheStats();
+    String id = StatsStatementCache.register(stats);
+    Assert.assertEquals(id, StatsStatementCache.register(stats));
+    Assert.assertFalse(id.equals(StatsStatementCache.register(new LoomStats().getStatementCacheStats())));
+
+    // pools created with the same stats share the registered stats
+    Assert.assertEquals(3, query(new DBConnectionPool(getConf(10), loomStats), "VALUES 3"));
+    Assert.assertEquals(4, query(new DBConnectionPool(getConf(10), loomStats), "VALUES 4"));
+    Assert.assertEquals(id, StatsStatementCache.register(stats));
+    Assert.assertEquals(2, stats.getMisses());
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    DBQueryHelper.dropDerbyDB();
+  }
+
+  private static Configuration getConf(int statementCacheSize) {
+    Configuration conf = Configuration.create();
+    conf.set(Constants.JDBC_DRIVER, "org.apache.derby.jdbc.EmbeddedDriver");
+    conf.set(Constants.JDBC_CONNECTION_STRING, "jdbc:derby:memory:loom;create=true");
+    conf.setInt(Constants.DB_MAX_ACTIVE_CONNECTIONS, 1);
+    conf.setInt(Constants.DB_STATEMENT_CACHE_SIZE, statementCacheSize);
+    return conf;
+  }
+
+  private static int query(DBConnectionPool dbConnectionPool, String sql) throws SQLException {
+    Connection conn = dbConnectionPool.getConnection();
+    try {
+      PreparedStatement statement = conn.prepareStatement(sql);
+      try {
+        ResultSet rs = statement.executeQuery();
+        try {
+          rs.next();
+          return rs.getInt(1);
+        } finally {
+          rs.close();
+        }
+      } finally {
+        statement.close();
+      }
+    } finally {
+      conn.close();
+    }
+  }
+}
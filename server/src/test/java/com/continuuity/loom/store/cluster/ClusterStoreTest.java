@@ -19,6 +19,7 @@ import com.continuuity.loom.Entities;
 import com.continuuity.loom.account.Account;
 import com.continuuity.loom.admin.ProvisionerAction;
 import com.continuuity.loom.cluster.Cluster;
+import com.continuuity.loom.cluster.ClusterSummary;
 import com.continuuity.loom.cluster.Node;
 import com.continuuity.loom.codec.json.JsonSerde;
 import com.continuuity.loom.common.conf.Constants;
@@ -28,7 +29,12 @@ import com.continuuity.loom.scheduler.task.ClusterJob;
 import com.continuuity.loom.scheduler.task.ClusterTask;
 import com.continuuity.loom.scheduler.task.JobId;
 import com.continuuity.loom.scheduler.task.TaskId;
+import com.continuuity.loom.store.ResultHandler;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
@@ -38,7 +44,9 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * Tests for getting and setting cluster objects.  Test classes for different types of stores must set the
@@ -200,6 +208,30 @@ public abstract class ClusterStoreTest {
     Assert.assertTrue(jobs.containsAll(fetchedJobs));
   }
 
+  @Test
+  public void testGetClusterJobsNewestFirst() throws Exception {
+    Cluster cluster = new Cluster(
+      "1", tenant1_user1, "example-hdfs-delete", System.currentTimeMillis(), "hdfs cluster",
+      Entities.ProviderExample.RACKSPACE,
+      Entities.ClusterTemplateExample.HDFS,
+      ImmutableSet.of("node1", "node2"),
+      ImmutableSet.of("s1", "s2")
+    );
+    ClusterStoreView user1view = clusterStoreService.getView(cluster.getAccount());
+    user1view.writeCluster(cluster);
+    // ids are leased in blocks, so a newer job can have a lower id than an older one
+    ClusterJob olderJob = new ClusterJob(new JobId(cluster.getId(), 1000), ClusterAction.CLUSTER_CREATE);
+    systemView.writeClusterJob(olderJob);
+    Thread.sleep(10);
+    ClusterJob newerJob = new ClusterJob(new JobId(cluster.getId(), 5), ClusterAction.RESTART_SERVICES);
+    systemView.writeClusterJob(newerJob);
+
+    List<ClusterJob> expected = ImmutableList.of(newerJob, olderJob);
+    Assert.assertEquals(expected, user1view.getClusterJobs(cluster.getId(), -1));
+    Assert.assertEquals(expected, systemView.getClusterJobs(cluster.getId(), -1));
+    Assert.assertEquals(expected, clusterStoreService.getView(tenant1_admin).getClusterJobs(cluster.getId(), -1));
+  }
+
   @Test
   public void testGetStoreDeleteTask() throws IOException {
     TaskId id = new TaskId(new JobId("1", 1), 1);
@@ -216,6 +248,98 @@ public abstract class ClusterStoreTest {
     Assert.assertNull(systemView.getClusterTask(id));
   }
 
+  @Test
+  public void testGetClusterTasks() throws IOException {
+    TaskId id1 = new TaskId(new JobId("1", 1), 1);
+    TaskId id2 = new TaskId(new JobId("1", 1), 2);
+    TaskId id3 = new TaskId(new JobId("2", 3), 1);
+    // matches the numbers of the other tasks, but isn't one of them
+    TaskId id4 = new TaskId(new JobId("2", 1), 2);
+    Map<TaskId, ClusterTask> tasks = Maps.newHashMap();
+    for (TaskId id : ImmutableSet.of(id1, id2, id3, id4)) {
+      ClusterTask task = new ClusterTask(ProvisionerAction.CONFIGURE, id,
+                                         "node1", "service", ClusterAction.CLUSTER_CREATE, new JsonObject());
+      systemView.writeClusterTask(task);
+      tasks.put(id, task);
+    }
+
+    TaskId missing = new TaskId(new JobId("3", 1), 1);
+    Assert.assertEquals(ImmutableMap.of(id1, tasks.get(id1), id2, tasks.get(id2), id3, tasks.get(id3)),
+                        systemView.getClusterTasks(ImmutableSet.of(id1, id2, id3, missing)));
+    Assert.assertTrue(systemView.getClusterTasks(ImmutableSet.<TaskId>of()).isEmpty());
+  }
+
+  @Test
+  public void testGetClusterTaskStatuses() throws IOException {
+    TaskId id1 = new TaskId(new JobId("1", 1), 1);
+    TaskId id2 = new TaskId(new JobId("1", 1), 2);
+    TaskId id3 = new TaskId(new JobId("2", 3), 1);
+    // matches the numbers of the other tasks, but isn't one of them
+    TaskId id4 = new TaskId(new JobId("2", 1), 2);
+    for (TaskId id : ImmutableSet.of(id1, id2, id3, id4)) {
+      ClusterTask task = new ClusterTask(ProvisionerAction.CONFIGURE, id,
+                                         "node1", "service", ClusterAction.CLUSTER_CREATE, new JsonObject());
+      systemView.writeClusterTask(task);
+    }
+    ClusterTask task = systemView.getClusterTask(id2);
+    task.setStatus(ClusterTask.Status.COMPLETE);
+    systemView.writeClusterTask(task);
+
+    TaskId missing = new TaskId(new JobId("3", 1), 1);
+    Assert.assertEquals(ImmutableMap.of(id1, ClusterTask.Status.NOT_SUBMITTED,
+                                        id2, ClusterTask.Status.COMPLETE,
+                                        id3, ClusterTask.Status.NOT_SUBMITTED),
+                        systemView.getClusterTaskStatuses(ImmutableSet.of(id1, id2, id3, missing)));
+    Assert.assertTrue(systemView.getClusterTaskStatuses(ImmutableSet.<TaskId>of()).isEmpty());
+  }
+
+  @Test
+  public void testWriteClusterTasks() throws IOException {
+    TaskId id1 = new TaskId(new JobId("1", 1), 1);
+    TaskId id2 = new TaskId(new JobId("1", 1), 2);
+    TaskId id3 = new TaskId(new JobId("2", 1), 1);
+    List<ClusterTask> tasks = Lists.newArrayList();
+    for (TaskId id : ImmutableList.of(id1, id2, id3)) {
+      tasks.add(new ClusterTask(ProvisionerAction.CONFIGURE, id,
+                                "node1", "service", ClusterAction.CLUSTER_CREATE, new JsonObject()));
+    }
+    systemView.writeClusterTask(tasks.get(0));
+
+    // mix of an existing task and new tasks
+    tasks.get(0).setStatus(ClusterTask.Status.COMPLETE);
+    systemView.writeClusterTasks(tasks);
+    Assert.assertEquals(ImmutableMap.of(id1, ClusterTask.Status.COMPLETE,
+                                        id2, ClusterTask.Status.NOT_SUBMITTED,
+                                        id3, ClusterTask.Status.NOT_SUBMITTED),
+                        systemView.getClusterTaskStatuses(ImmutableSet.of(id1, id2, id3)));
+
+    // only existing tasks
+    tasks.get(2).setStatus(ClusterTask.Status.FAILED);
+    systemView.writeClusterTasks(tasks);
+    Assert.assertEquals(ImmutableMap.of(id1, tasks.get(0), id2, tasks.get(1), id3, tasks.get(2)),
+                        systemView.getClusterTasks(ImmutableSet.of(id1, id2, id3)));
+    Assert.assertEquals(ClusterTask.Status.FAILED, systemView.getClusterTask(id3).getStatus());
+
+    systemView.writeClusterTasks(ImmutableList.<ClusterTask>of());
+  }
+
+  @Test
+  public void testGetClusterJobsById() throws IOException {
+    JobId id1 = new JobId("1", 1);
+    JobId id2 = new JobId("2", 2);
+    // matches the numbers of the other jobs, but isn't one of them
+    JobId id3 = new JobId("1", 2);
+    Map<JobId, ClusterJob> jobs = Maps.newHashMap();
+    for (JobId id : ImmutableSet.of(id1, id2, id3)) {
+      ClusterJob job = new ClusterJob(id, ClusterAction.CLUSTER_CREATE);
+      systemView.writeClusterJob(job);
+      jobs.put(id, job);
+    }
+
+    Assert.assertEquals(ImmutableMap.of(id1, jobs.get(id1), id2, jobs.get(id2)),
+                        systemView.getClusterJobs(ImmutableSet.of(id1, id2), Constants.SUPERADMIN_TENANT));
+  }
+
   @Test
   public void testGetAllClusters() throws Exception {
     Assert.assertEquals(0, systemView.getAllClusters().size());
@@ -250,6 +374,103 @@ public abstract class ClusterStoreTest {
     Assert.assertEquals(cluster1, clusters.get(1));
   }
 
+  @Test
+  public void testGetClustersPaginated() throws Exception {
+    long now = System.currentTimeMillis();
+    List<Cluster> expected = Lists.newArrayList();
+    ClusterStoreView store = clusterStoreService.getView(tenant1_user1);
+    // clusters with the same create time are ordered by id
+    for (String id : ImmutableList.of("10", "11", "12")) {
+      Cluster cluster = new Cluster(
+        id, tenant1_user1, "cluster" + id, id.equals("10") ? now : now + 1, "hdfs cluster",
+        Entities.ProviderExample.RACKSPACE,
+        Entities.ClusterTemplateExample.HDFS,
+        ImmutableSet.of("node" + id),
+        ImmutableSet.of("s1")
+      );
+      store.writeCluster(cluster);
+      expected.add(0, cluster);
+    }
+    // clusters of other users are not visible
+    clusterStoreService.getView(tenant1_user2).writeCluster(new Cluster(
+      "20", tenant1_user2, "cluster20", now, "hdfs cluster",
+      Entities.ProviderExample.RACKSPACE,
+      Entities.ClusterTemplateExample.HDFS,
+      ImmutableSet.of("node20"),
+      ImmutableSet.of("s1")
+    ));
+
+    Assert.assertEquals(expected, store.getAllClusters());
+    Assert.assertEquals(expected, getClusters(store, null, -1));
+    Assert.assertEquals(expected.subList(0, 2), getClusters(store, null, 2));
+    Assert.assertEquals(expected.subList(1, 3), getClusters(store, "12", 5));
+    Assert.assertEquals(expected.subList(2, 3), getClusters(store, "11", 1));
+    Assert.assertTrue(getClusters(store, "10", -1).isEmpty());
+    Assert.assertTrue(getClusters(store, null, 0).isEmpty());
+
+    // handler can stop reading early
+    final List<Cluster> read = Lists.newArrayList();
+    int numRead = store.getClusters(null, -1, new ResultHandler<Cluster>() {
+      @Override
+      public boolean handle(Cluster result) {
+        read.add(result);
+        return false;
+      }
+    });
+    Assert.assertEquals(1, numRead);
+    Assert.assertEquals(expected.subList(0, 1), read);
+  }
+
+  @Test
+  public void testGetClusterSummaries() throws Exception {
+    long now = System.currentTimeMillis();
+    Cluster cluster1 = new Cluster(
+      "10", tenant1_user1, "cluster10", now, "hdfs cluster",
+      Entities.ProviderExample.RACKSPACE,
+      Entities.ClusterTemplateExample.HDFS,
+      ImmutableSet.of("node1", "node2"),
+      ImmutableSet.of("s1")
+    );
+    Cluster cluster2 = new Cluster(
+      "11", tenant1_user1, "cluster11", now + 1, "hdfs cluster",
+      Entities.ProviderExample.RACKSPACE,
+      Entities.ClusterTemplateExample.HDFS,
+      ImmutableSet.of("node3"),
+      ImmutableSet.of("s1")
+    );
+    // only the latest job of a cluster is part of its summary. Ids are leased in blocks, so the latest job can have
+    // a lower id than an older one.
+    ClusterJob oldJob = new ClusterJob(new JobId("10", 1000), ClusterAction.CLUSTER_CREATE);
+    oldJob.setJobStatus(ClusterJob.Status.FAILED);
+    ClusterJob latestJob = new ClusterJob(new JobId("10", 5), ClusterAction.CLUSTER_DELETE);
+    latestJob.setJobStatus(ClusterJob.Status.RUNNING);
+    systemView.writeClusterJob(oldJob);
+    systemView.writeClusterJob(latestJob);
+    cluster1.setLatestJobId(latestJob.getJobId());
+
+    ClusterStoreView store = clusterStoreService.getView(tenant1_user1);
+    store.writeCluster(cluster1);
+    store.writeCluster(cluster2);
+
+    String templateName = Entities.ClusterTemplateExample.HDFS.getName();
+    ClusterSummary summary1 = new ClusterSummary(
+      "10", tenant1_user1, "cluster10", now, 0, cluster1.getStatus(), templateName, 2,
+      latestJob.getJobId(), ClusterJob.Status.RUNNING);
+    ClusterSummary summary2 = new ClusterSummary(
+      "11", tenant1_user1, "cluster11", now + 1, 0, cluster2.getStatus(), templateName, 1, null, null);
+    Assert.assertEquals(ImmutableList.of(summary2, summary1), getClusterSummaries(store, null, -1));
+    Assert.assertEquals(ImmutableList.of(summary2), getClusterSummaries(store, null, 1));
+    Assert.assertEquals(ImmutableList.of(summary1), getClusterSummaries(store, "11", -1));
+    Assert.assertTrue(getClusterSummaries(clusterStoreService.getView(tenant1_user2), null, -1).isEmpty());
+    Assert.assertEquals(ImmutableList.of(summary2, summary1),
+                        getClusterSummaries(clusterStoreService.getView(tenant1_admin), null, -1));
+
+    // summary columns are kept up to date when clusters are written
+    cluster2.setStatus(Cluster.Status.TERMINATED);
+    store.writeCluster(cluster2);
+    Assert.assertEquals(Cluster.Status.TERMINATED, getClusterSummaries(systemView, null, 1).get(0).getStatus());
+  }
+
   @Test
   public void testGetStoreDeleteNode() throws Exception {
     Node node = GSON.fromJson(SchedulerTest.NODE1, Node.class);
@@ -295,6 +516,66 @@ public abstract class ClusterStoreTest {
     Assert.assertNull(store.getCluster(cluster.getId()));
   }
 
+  @Test
+  public void testGetClusterNodesPaginated() throws Exception {
+    Cluster cluster = GSON.fromJson(SchedulerTest.TEST_CLUSTER, Cluster.class);
+    ClusterStoreView store = clusterStoreService.getView(cluster.getAccount());
+    store.writeCluster(cluster);
+
+    // NODE2 has the smaller id
+    Node node1 = GSON.fromJson(SchedulerTest.NODE1, Node.class);
+    Node node2 = GSON.fromJson(SchedulerTest.NODE2, Node.class);
+    systemView.writeNode(node1);
+    systemView.writeNode(node2);
+
+    Assert.assertEquals(ImmutableList.of(node2, node1), getClusterNodes(store, cluster.getId(), null, -1));
+    Assert.assertEquals(ImmutableList.of(node2), getClusterNodes(store, cluster.getId(), null, 1));
+    Assert.assertEquals(ImmutableList.of(node1), getClusterNodes(store, cluster.getId(), node2.getId(), 1));
+    Assert.assertTrue(getClusterNodes(store, cluster.getId(), node1.getId(), -1).isEmpty());
+    Assert.assertTrue(getClusterNodes(clusterStoreService.getView(tenant2_user1), cluster.getId(), null, -1).isEmpty());
+  }
+
+  private List<Cluster> getClusters(ClusterStoreView store, String after, int limit) throws IOException {
+    final List<Cluster> clusters = Lists.newArrayList();
+    int numRead = store.getClusters(after, limit, new ResultHandler<Cluster>() {
+      @Override
+      public boolean handle(Cluster result) {
+        clusters.add(result);
+        return true;
+      }
+    });
+    Assert.assertEquals(clusters.size(), numRead);
+    return clusters;
+  }
+
+  protected List<ClusterSummary> getClusterSummaries(ClusterStoreView store, String after, int limit)
+    throws IOException {
+    final List<ClusterSummary> summaries = Lists.newArrayList();
+    int numRead = store.getClusterSummaries(after, limit, new ResultHandler<ClusterSummary>() {
+      @Override
+      public boolean handle(ClusterSummary result) {
+        summaries.add(result);
+        return true;
+      }
+    });
+    Assert.assertEquals(summaries.size(), numRead);
+    return summaries;
+  }
+
+  private List<Node> getClusterNodes(ClusterStoreView store, String clusterId, String after, int limit)
+    throws IOException {
+    final List<Node> nodes = Lists.newArrayList();
+    int numRead = store.getClusterNodes(clusterId, after, limit, new ResultHandler<Node>() {
+      @Override
+      public boolean handle(Node result) {
+        nodes.add(result);
+        return true;
+      }
+    });
+    Assert.assertEquals(nodes.size(), numRead);
+    return nodes;
+  }
+
   @Test
   public void testGetNodes() throws Exception {
     Node node1 = GSON.fromJson(SchedulerTest.NODE1, Node.class);
@@ -303,6 +584,10 @@ public abstract class ClusterStoreTest {
     Node node2 = GSON.fromJson(SchedulerTest.NODE2, Node.class);
     systemView.writeNode(node2);
 
+    Assert.assertEquals(ImmutableMap.of(node1.getId(), node1, node2.getId(), node2),
+                        systemView.getNodes(ImmutableSet.of(node1.getId(), node2.getId(), "missing")));
+    Assert.assertTrue(systemView.getNodes(ImmutableSet.<String>of()).isEmpty());
+
     systemView.deleteNode(node1.getId());
     Assert.assertNull(systemView.getNode(node1.getId()));
 
@@ -310,6 +595,93 @@ public abstract class ClusterStoreTest {
     Assert.assertNull(systemView.getNode(node1.getId()));
   }
 
+  @Test
+  public void testTransaction() throws Exception {
+    final ClusterTask task = new ClusterTask(ProvisionerAction.CONFIGURE, new TaskId(new JobId("1", 1), 1),
+                                             "node1", "service", ClusterAction.CLUSTER_CREATE, new JsonObject());
+    final Node node = GSON.fromJson(SchedulerTest.NODE1, Node.class);
+    String result = systemView.executeInTransaction(new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        systemView.writeClusterTask(task);
+        // nested units of work are part of the outer transaction
+        systemView.executeInTransaction(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            systemView.writeNodes(ImmutableList.of(node));
+            return null;
+          }
+        });
+        // writes are visible within the transaction
+        Assert.assertEquals(task, systemView.getClusterTask(TaskId.fromString(task.getTaskId())));
+        return "done";
+      }
+    });
+    Assert.assertEquals("done", result);
+    Assert.assertEquals(task, systemView.getClusterTask(TaskId.fromString(task.getTaskId())));
+    Assert.assertEquals(node, systemView.getNode(node.getId()));
+  }
+
+  @Test
+  public void testTransactionRollback() throws Exception {
+    final ClusterTask task = new ClusterTask(ProvisionerAction.CONFIGURE, new TaskId(new JobId("1", 1), 1),
+                                             "node1", "service", ClusterAction.CLUSTER_CREATE, new JsonObject());
+    final Node node = GSON.fromJson(SchedulerTest.NODE1, Node.class);
+    systemView.writeClusterTask(task);
+    try {
+      systemView.executeInTransaction(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          task.setStatus(ClusterTask.Status.COMPLETE);
+          systemView.writeClusterTask(task);
+          systemView.writeNode(node);
+          throw new IOException("failed in the middle of the transaction");
+        }
+      });
+      Assert.fail();
+    } catch (IOException e) {
+      // expected
+    }
+    Assert.assertEquals(ClusterTask.Status.NOT_SUBMITTED,
+                        systemView.getClusterTask(TaskId.fromString(task.getTaskId())).getStatus());
+    Assert.assertNull(systemView.getNode(node.getId()));
+  }
+
+  @Test
+  public void testWriteNodes() throws Exception {
+    Node node1 = GSON.fromJson(SchedulerTest.NODE1, Node.class);
+    Node node2 = GSON.fromJson(SchedulerTest.NODE2, Node.class);
+    systemView.writeNode(node1);
+
+    node1.getProperties().addProperty("written", "twice");
+    systemView.writeNodes(ImmutableList.of(node1, node2));
+    Assert.assertEquals(ImmutableMap.of(node1.getId(), node1, node2.getId(), node2),
+                        systemView.getNodes(ImmutableSet.of(node1.getId(), node2.getId())));
+    Assert.assertEquals("twice", systemView.getNode(node1.getId()).getProperties().get("written").getAsString());
+  }
+
+  @Test
+  public void testGetStoreDeleteSharedTaskConfig() throws Exception {
+    JobId jobId = new JobId("1", 1);
+    systemView.writeClusterJob(new ClusterJob(jobId, ClusterAction.CLUSTER_CREATE));
+    Assert.assertNull(systemView.getSharedTaskConfig(jobId, "config1"));
+
+    JsonObject config = new JsonObject();
+    config.addProperty("nodes", "node1");
+    systemView.writeSharedTaskConfig(jobId, "config1", config);
+    Assert.assertEquals(config, systemView.getSharedTaskConfig(jobId, "config1"));
+    Assert.assertNull(systemView.getSharedTaskConfig(new JobId("1", 2), "config1"));
+
+    // shared configs never change, so writing the same id again does nothing
+    JsonObject otherConfig = new JsonObject();
+    otherConfig.addProperty("nodes", "node2");
+    systemView.writeSharedTaskConfig(jobId, "config1", otherConfig);
+    Assert.assertEquals(config, systemView.getSharedTaskConfig(jobId, "config1"));
+
+    systemView.deleteClusterJob(jobId);
+    Assert.assertNull(systemView.getSharedTaskConfig(jobId, "config1"));
+  }
+
   @Test
   public void testGetRunningTasks() throws Exception {
     ClusterTask task1 = new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("1-1-1"), "node1", "service",
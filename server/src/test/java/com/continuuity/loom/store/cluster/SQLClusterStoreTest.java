@@ -15,13 +15,29 @@
  */
 package com.continuuity.loom.store.cluster;
 
+import com.continuuity.loom.Entities;
+import com.continuuity.loom.account.Account;
+import com.continuuity.loom.cluster.Cluster;
+import com.continuuity.loom.cluster.ClusterSummary;
+import com.continuuity.loom.codec.store.StoreSerde;
 import com.continuuity.loom.common.conf.Configuration;
 import com.continuuity.loom.common.conf.Constants;
+import com.continuuity.loom.scheduler.ClusterAction;
+import com.continuuity.loom.scheduler.task.ClusterJob;
+import com.continuuity.loom.scheduler.task.JobId;
 import com.continuuity.loom.store.DBConnectionPool;
 import com.continuuity.loom.store.DBQueryHelper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import org.junit.AfterClass;
+import org.junit.Assert;
 import org.junit.BeforeClass;
+import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
 /**
@@ -52,6 +68,74 @@ public class SQLClusterStoreTest extends ClusterStoreTest {
     return sqlClusterStoreService;
   }
 
+  @Test
+  public void testStartWithOldClustersTable() throws Exception {
+    Configuration sqlConf = Configuration.create();
+    sqlConf.set(Constants.JDBC_DRIVER, "org.apache.derby.jdbc.EmbeddedDriver");
+    sqlConf.set(Constants.JDBC_CONNECTION_STRING, "jdbc:derby:memory:loomold;create=true");
+    DBConnectionPool dbConnectionPool = new DBConnectionPool(sqlConf);
+    try {
+      // clusters table as created before the summary columns existed
+      DBQueryHelper.createDerbyTable("CREATE TABLE clusters ( id BIGINT, owner_id VARCHAR(255), " +
+                                       "tenant_id VARCHAR(255), name VARCHAR(255), create_time TIMESTAMP, " +
+                                       "expire_time TIMESTAMP, status VARCHAR(32), cluster BLOB )", dbConnectionPool);
+      long now = System.currentTimeMillis();
+      Account account = new Account("user1", "tenant1");
+      Cluster cluster = new Cluster(
+        "10", account, "cluster10", now, "hdfs cluster",
+        Entities.ProviderExample.RACKSPACE,
+        Entities.ClusterTemplateExample.HDFS,
+        ImmutableSet.of("node1", "node2"),
+        ImmutableSet.of("s1")
+      );
+      ClusterJob job = new ClusterJob(new JobId("10", 5), ClusterAction.CLUSTER_CREATE);
+      job.setJobStatus(ClusterJob.Status.RUNNING);
+      cluster.setLatestJobId(job.getJobId());
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement = conn.prepareStatement(
+          "INSERT INTO clusters (id, owner_id, tenant_id, name, create_time, status, cluster) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)");
+        try {
+          statement.setLong(1, 10);
+          statement.setString(2, account.getUserId());
+          statement.setString(3, account.getTenantId());
+          statement.setString(4, cluster.getName());
+          statement.setTimestamp(5, DBQueryHelper.getTimestamp(now));
+          statement.setString(6, cluster.getStatus().name());
+          statement.setBlob(7, new ByteArrayInputStream(new StoreSerde().serialize(cluster, Cluster.class)));
+          statement.executeUpdate();
+        } finally {
+          statement.close();
+        }
+      } finally {
+        conn.close();
+      }
+
+      // the missing columns are added and filled in on startup
+      SQLClusterStoreService service = new SQLClusterStoreService(dbConnectionPool);
+      service.startAndWait();
+      service.getSystemView().writeClusterJob(job);
+      ClusterSummary expected = new ClusterSummary(
+        "10", account, "cluster10", now, 0, cluster.getStatus(), Entities.ClusterTemplateExample.HDFS.getName(), 2,
+        job.getJobId(), ClusterJob.Status.RUNNING);
+      Assert.assertEquals(ImmutableList.of(expected), getClusterSummaries(service.getView(account), null, -1));
+      service.stopAndWait();
+
+      // starting again with the columns already there works
+      service = new SQLClusterStoreService(dbConnectionPool);
+      service.startAndWait();
+      Assert.assertEquals(ImmutableList.of(expected), getClusterSummaries(service.getView(account), null, -1));
+      service.stopAndWait();
+    } finally {
+      try {
+        DriverManager.getConnection("jdbc:derby:memory:loomold;drop=true");
+      } catch (SQLException e) {
+        // this is normal when a drop happens
+      }
+    }
+  }
+
   @AfterClass
   public static void afterClass() {
     DBQueryHelper.dropDerbyDB();
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.store.cluster;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ */
+public class UpsertTest {
+  private static final Upsert<String[]> UPSERT =
+    new Upsert<String[]>("entries", ImmutableList.of("name"), ImmutableList.of("val"),
+                         ImmutableList.of("created"), new Upsert.Binder<String[]>() {
+      @Override
+      public int bindKeys(PreparedStatement statement, int index, String[] object) throws SQLException {
+        statement.setString(index, object[0]);
+        return index + 1;
+      }
+
+      @Override
+      public int bindValues(PreparedStatement statement, int index, String[] object) throws SQLException {
+        statement.setString(index, object[1]);
+        return index + 1;
+      }
+
+      @Override
+      public int bindInsertOnlyValues(PreparedStatement statement, int index, String[] object) throws SQLException {
+        statement.setString(index, object[1]);
+        return index + 1;
+      }
+    });
+  private Connection conn;
+
+  @Before
+  public void setupTable() throws Exception {
+    Class.forName("org.apache.derby.jdbc.EmbeddedDriver");
+    conn = DriverManager.getConnection("jdbc:derby:memory:upsert;create=true");
+    Statement statement = conn.createStatement();
+    try {
+      statement.executeUpdate("CREATE TABLE entries ( name VARCHAR(255), val VARCHAR(255), created VARCHAR(255) )");
+    } finally {
+      statement.close();
+    }
+  }
+
+  @After
+  public void dropTable() throws SQLException {
+    Statement statement = conn.createStatement();
+    try {
+      statement.executeUpdate("DROP TABLE entries");
+    } finally {
+      statement.close();
+    }
+    conn.close();
+  }
+
+  @Test
+  public void testWrite() throws SQLException {
+    UPSERT.write(conn, false, ImmutableList.of(new String[] { "a", "1" }));
+    UPSERT.write(conn, false, ImmutableList.of(new String[] { "a", "2" }, new String[] { "b", "3" }));
+    Assert.assertEquals(ImmutableList.of("a=2,1", "b=3,3"), readRows());
+  }
+
+  @Test
+  public void testWriteWithoutBatchUpdateCounts() throws SQLException {
+    Connection noInfoConn = withoutBatchUpdateCounts(conn);
+    UPSERT.write(noInfoConn, false, ImmutableList.of(new String[] { "a", "1" }));
+    UPSERT.write(noInfoConn, false, ImmutableList.of(new String[] { "a", "2" }, new String[] { "b", "3" }));
+    Assert.assertEquals(ImmutableList.of("a=2,1", "b=3,3"), readRows());
+  }
+
+  private List<String> readRows() throws SQLException {
+    List<String> rows = Lists.newArrayList();
+    Statement statement = conn.createStatement();
+    try {
+      ResultSet rs = statement.executeQuery("SELECT name, val, created FROM entries ORDER BY name");
+      try {
+        while (rs.next()) {
+          rows.add(rs.getString(1) + "=" + rs.getString(2) + "," + rs.getString(3));
+        }
+      } finally {
+        rs.close();
+      }
+    } finally {
+      statement.close();
+    }
+    return rows;
+  }
+
+  // wraps a connection so that its statements give SUCCESS_NO_INFO for every statement of a batch, like some drivers
+  private static Connection withoutBatchUpdateCounts(final Connection conn) {
+    return (Connection) Proxy.newProxyInstance(
+      UpsertTest.class.getClassLoader(), new Class[] { Connection.class }, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Object result = invokeOn(conn, method, args);
+        if (result instanceof PreparedStatement) {
+          return withoutBatchUpdateCounts((PreparedStatement) result);
+        }
+        return result;
+      }
+    });
+  }
+
+  private static PreparedStatement withoutBatchUpdateCounts(final PreparedStatement statement) {
+    return (PreparedStatement) Proxy.newProxyInstance(
+      UpsertTest.class.getClassLoader(), new Class[] { PreparedStatement.class }, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Object result = invokeOn(statement, method, args);
+        if (method.getName().equals("executeBatch")) {
+          int[] counts = new int[((int[]) result).length];
+          Arrays.fill(counts, Statement.SUCCESS_NO_INFO);
+          return counts;
+        }
+        return result;
+      }
+    });
+  }
+
+  private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+}
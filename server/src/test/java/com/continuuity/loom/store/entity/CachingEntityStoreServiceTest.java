@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012-2014, Continuuity, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.continuuity.loom.store.entity;
+
+import com.continuuity.loom.Entities;
+import com.continuuity.loom.account.Account;
+import com.continuuity.loom.admin.Provider;
+import com.continuuity.loom.common.conf.Configuration;
+import com.continuuity.loom.common.conf.Constants;
+import com.continuuity.loom.management.EntityCacheStats;
+import com.continuuity.loom.management.LoomStats;
+import com.continuuity.loom.store.DBConnectionPool;
+import com.continuuity.loom.store.DBQueryHelper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ */
+public class CachingEntityStoreServiceTest extends EntityStoreServiceTest {
+  private static SQLEntityStoreService sqlStore;
+  private static CachingEntityStoreService cachingStore;
+  private static LoomStats loomStats;
+
+  @BeforeClass
+  public static void beforeClass() throws SQLException, ClassNotFoundException {
+    Configuration sqlConf = Configuration.create();
+    sqlConf.set(Constants.JDBC_DRIVER, "org.apache.derby.jdbc.EmbeddedDriver");
+    sqlConf.set(Constants.JDBC_CONNECTION_STRING, "jdbc:derby:memory:loom;create=true");
+    DBConnectionPool dbConnectionPool = new DBConnectionPool(sqlConf);
+    sqlStore = new SQLEntityStoreService(dbConnectionPool);
+    loomStats = new LoomStats();
+    cachingStore = new CachingEntityStoreService(sqlStore, loomStats, TimeUnit.HOURS.toMillis(1));
+    cachingStore.startAndWait();
+    entityStoreService = cachingStore;
+  }
+
+  @Override
+  public void clearState() throws Exception {
+    cachingStore.clearData();
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    DBQueryHelper.dropDerbyDB();
+  }
+
+  @Test
+  public void testReadsServedFromCache() throws Exception {
+    Account admin = new Account(Constants.ADMIN_USER, "cachetenant");
+    Account otherAdmin = new Account(Constants.ADMIN_USER, "othertenant");
+    EntityCacheStats stats = loomStats.getEntityCacheStats();
+    EntityStoreView cachedView = cachingStore.getView(admin);
+    EntityStoreView sqlView = sqlStore.getView(admin);
+    Provider provider = Entities.ProviderExample.JOYENT;
+    Provider changed = new Provider(provider.getName(), "changed", provider.getProviderType(),
+                                    ImmutableMap.<String, String>of());
+
+    cachedView.writeProvider(provider);
+    long hits = stats.getHits();
+    long misses = stats.getMisses();
+    Assert.assertEquals(provider, cachedView.getProvider(provider.getName()));
+    Assert.assertEquals(ImmutableList.of(provider), ImmutableList.copyOf(cachedView.getAllProviders()));
+    Assert.assertEquals(misses + 2, stats.getMisses());
+
+    // changes that bypass the cache are not seen, since reads no longer go to the database
+    sqlView.writeProvider(changed);
+    Assert.assertEquals(provider, cachingStore.getView(admin).getProvider(provider.getName()));
+    Assert.assertEquals(ImmutableList.of(provider), ImmutableList.copyOf(cachedView.getAllProviders()));
+    Assert.assertEquals(hits + 2, stats.getHits());
+    Assert.assertEquals(misses + 2, stats.getMisses());
+
+    // caches are per tenant
+    Assert.assertNull(cachingStore.getView(otherAdmin).getProvider(provider.getName()));
+    Assert.assertEquals(misses + 3, stats.getMisses());
+
+    // changes through the cache invalidate it
+    long invalidations = stats.getInvalidations();
+    cachedView.writeProvider(changed);
+    Assert.assertEquals(invalidations + 1, stats.getInvalidations());
+    Assert.assertEquals(changed, cachedView.getProvider(provider.getName()));
+    cachedView.deleteProvider(provider.getName());
+    Assert.assertNull(cachedView.getProvider(provider.getName()));
+    Assert.assertTrue(cachedView.getAllProviders().isEmpty());
+    Assert.assertEquals(invalidations + 2, stats.getInvalidations());
+  }
+}